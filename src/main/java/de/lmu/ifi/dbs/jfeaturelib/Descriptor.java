@@ -110,4 +110,16 @@ public interface Descriptor {
      * @param listener Listenerobject that will be informed about the progress
      */
     public void addPropertyChangeListener(PropertyChangeListener listener);
+
+    /**
+     * Sets the telemetry that is informed about the progress and the duration
+     * of the processing stages. Like property change events, no implementation
+     * is forced to report anything. The default implementation ignores the
+     * telemetry.
+     *
+     * @param telemetry the telemetry (must not be null, use
+     * {@link Telemetry#NOOP} to disable)
+     */
+    public default void setTelemetry(Telemetry telemetry) {
+    }
 }
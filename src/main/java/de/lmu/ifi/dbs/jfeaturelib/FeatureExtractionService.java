@@ -0,0 +1,411 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib;
+
+import de.lmu.ifi.dbs.jfeaturelib.features.FeatureDescriptor;
+import ij.ImagePlus;
+import ij.io.Opener;
+import ij.process.ImageProcessor;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.log4j.Logger;
+
+/**
+ * Headless service that extracts features asynchronously from single images or
+ * batches of images.
+ *
+ * For each image a fresh descriptor instance is created and configured with the
+ * given properties, as descriptors are not thread safe. The amount of images
+ * that are decoded or processed at the same time is bounded: if the limit is
+ * reached, the submitting thread blocks until a slot gets free. This keeps the
+ * memory footprint predictable even if huge batches are submitted.
+ *
+ * Images are passed to the descriptor in their native type. Unlike the old
+ * {@link ThreadWrapper}, no conversion to RGB is applied, so the descriptor
+ * decides itself if and how it needs to convert.
+ *
+ * Example:
+ * <pre>
+ * try (FeatureExtractionService service = new FeatureExtractionService(PHOG.class)) {
+ *     FeatureMatrix m = service.submit(new File("image.jpg")).get();
+ * }
+ * </pre>
+ */
+public class FeatureExtractionService implements Closeable {
+
+    private static final Logger log = Logger.getLogger(FeatureExtractionService.class);
+    /**
+     * Timeout used when closing an owned executor.
+     */
+    private static final int TERMINATION_TIMEOUT = 100; // days
+    private final Class<? extends FeatureDescriptor> descriptorClass;
+    private final LibProperties properties;
+    private final Executor executor;
+    /**
+     * true if the executor was created by this service and must thus be shut
+     * down on close.
+     */
+    private final boolean ownsExecutor;
+    /**
+     * Bounds the amount of images in flight.
+     */
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private volatile Telemetry telemetry = Telemetry.NOOP;
+
+    /**
+     * Creates a service using the default properties, a thread pool with one
+     * thread per available processor and the same amount of images in flight.
+     *
+     * @param descriptorClass the descriptor to apply
+     * @throws IOException if the default properties cannot be read
+     */
+    public FeatureExtractionService(Class<? extends FeatureDescriptor> descriptorClass) throws IOException {
+        this(descriptorClass, LibProperties.get());
+    }
+
+    /**
+     * Creates a service using a thread pool with one thread per available
+     * processor and the same amount of images in flight.
+     *
+     * @param descriptorClass the descriptor to apply
+     * @param properties properties that are injected into each descriptor
+     */
+    public FeatureExtractionService(Class<? extends FeatureDescriptor> descriptorClass, LibProperties properties) {
+        this(descriptorClass, properties, newDefaultExecutor(Runtime.getRuntime().availableProcessors()),
+                Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Creates a service that runs the extraction on the given executor.
+     *
+     * The executor is not shut down by {@link #close()}. To use virtual threads
+     * on a JVM that supports them, pass {@link #newVirtualThreadExecutor()}.
+     *
+     * @param descriptorClass the descriptor to apply
+     * @param properties properties that are injected into each descriptor
+     * @param executor executor that runs decoding and extraction
+     * @param maxInFlight maximum amount of images that are processed at the same
+     * time
+     * @throws IllegalArgumentException if maxInFlight &lt; 1
+     */
+    public FeatureExtractionService(Class<? extends FeatureDescriptor> descriptorClass, LibProperties properties,
+            Executor executor, int maxInFlight) {
+        this(descriptorClass, properties, executor, maxInFlight, false);
+    }
+
+    private FeatureExtractionService(Class<? extends FeatureDescriptor> descriptorClass, LibProperties properties,
+            Executor executor, int maxInFlight, boolean ownsExecutor) {
+        if (descriptorClass == null) {
+            throw new NullPointerException("descriptor class must not be null");
+        }
+        if (properties == null) {
+            throw new NullPointerException("properties must not be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor must not be null");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be > 0 but was " + maxInFlight);
+        }
+        this.descriptorClass = descriptorClass;
+        this.properties = properties;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.ownsExecutor = ownsExecutor;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Extracts the features of the given image. A mask that is set on the
+     * processor is respected if the descriptor supports masking.
+     *
+     * @param ip the image
+     * @return future holding the features
+     */
+    public CompletableFuture<FeatureMatrix> submit(final ImageProcessor ip) {
+        if (ip == null) {
+            throw new NullPointerException("image processor must not be null");
+        }
+        return schedule(new Task() {
+            @Override
+            public FeatureMatrix call() throws Exception {
+                return extract(ip);
+            }
+        });
+    }
+
+    /**
+     * Decodes the image file and extracts its features.
+     *
+     * @param image the image file
+     * @return future holding the features
+     */
+    public CompletableFuture<FeatureMatrix> submit(File image) {
+        return submit(image, null);
+    }
+
+    /**
+     * Decodes the image and mask file and extracts the features of the masked
+     * image.
+     *
+     * @param image the image file
+     * @param mask the mask file (may be null)
+     * @return future holding the features
+     */
+    public CompletableFuture<FeatureMatrix> submit(final File image, final File mask) {
+        if (image == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        return schedule(new Task() {
+            @Override
+            public FeatureMatrix call() throws Exception {
+                ImageProcessor ip = open(image);
+                if (mask != null) {
+                    ip.setMask(open(mask));
+                }
+                return extract(ip);
+            }
+        });
+    }
+
+    /**
+     * Extracts the features of all images. The order of the results
+     * corresponds to the order of the input.
+     *
+     * This method blocks while the maximum amount of images is in flight.
+     *
+     * @param images the images
+     * @return future holding one matrix per image
+     */
+    public CompletableFuture<List<FeatureMatrix>> submitAll(List<? extends ImageProcessor> images) {
+        List<CompletableFuture<FeatureMatrix>> futures = new ArrayList<>(images.size());
+        for (ImageProcessor ip : images) {
+            futures.add(submit(ip));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * Decodes all files and extracts their features. The order of the results
+     * corresponds to the order of the input.
+     *
+     * This method blocks while the maximum amount of images is in flight.
+     *
+     * @param images the image files
+     * @return future holding one matrix per image
+     */
+    public CompletableFuture<List<FeatureMatrix>> submitFiles(List<File> images) {
+        List<CompletableFuture<FeatureMatrix>> futures = new ArrayList<>(images.size());
+        for (File file : images) {
+            futures.add(submit(file));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * @return the maximum amount of images that are processed at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the telemetry that is passed to each descriptor instance. The
+     * telemetry is shared between concurrently running descriptors and must
+     * thus be thread safe.
+     *
+     * @param telemetry the telemetry (use {@link Telemetry#NOOP} to disable)
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        if (telemetry == null) {
+            throw new NullPointerException("telemetry must not be null");
+        }
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Shuts down the executor if it was created by this service and waits for
+     * running extractions. Executors passed by the caller are left untouched.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ExecutorService pool = (ExecutorService) executor;
+            pool.shutdown();
+            try {
+                pool.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log.warn(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Creates a fixed size pool of daemon threads.
+     *
+     * @param threads amount of threads
+     * @return new executor
+     */
+    public static ExecutorService newDefaultExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task if the JVM
+     * supports virtual threads (Java 21+). On older JVMs, a cached pool of
+     * daemon threads is returned instead. In both cases, the amount of
+     * concurrent extractions is bounded by the service itself.
+     *
+     * @return new executor
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            log.debug("virtual threads are not available, using platform threads");
+            return Executors.newCachedThreadPool(new DaemonThreadFactory());
+        }
+    }
+
+    /**
+     * Runs the task on the executor after a slot became available.
+     */
+    private CompletableFuture<FeatureMatrix> schedule(final Task task) {
+        final CompletableFuture<FeatureMatrix> future = new CompletableFuture<>();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(ex);
+            return future;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                @SuppressWarnings("BroadCatchBlock")
+                public void run() {
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Creates and configures a new descriptor instance and applies it to the
+     * image.
+     */
+    private FeatureMatrix extract(ImageProcessor ip) throws IOException {
+        FeatureDescriptor fd;
+        try {
+            fd = descriptorClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Error during instantiation of " + descriptorClass.getSimpleName(), ex);
+        }
+        fd.setProperties(properties);
+        fd.setTelemetry(telemetry);
+        fd.run(ip);
+        return new FeatureMatrix(fd.getFeatures());
+    }
+
+    /**
+     * Opens the image file without any conversion.
+     */
+    private ImageProcessor open(File file) {
+        ImagePlus imp = new Opener().openImage(file.getAbsolutePath());
+        if (imp == null) {
+            throw new IllegalArgumentException("could not open image " + file.getAbsolutePath());
+        }
+        return imp.getProcessor();
+    }
+
+    /**
+     * Combines the futures to a single future holding the results in order.
+     */
+    private static CompletableFuture<List<FeatureMatrix>> collect(
+            final List<CompletableFuture<FeatureMatrix>> futures) {
+        CompletableFuture<?>[] array = futures.toArray(new CompletableFuture<?>[futures.size()]);
+        return CompletableFuture.allOf(array).thenApply(new Function<Void, List<FeatureMatrix>>() {
+            @Override
+            public List<FeatureMatrix> apply(Void ignored) {
+                List<FeatureMatrix> result = new ArrayList<>(futures.size());
+                for (CompletableFuture<FeatureMatrix> future : futures) {
+                    result.add(future.join());
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Unit of work that is executed inside the executor.
+     */
+    private interface Task {
+
+        FeatureMatrix call() throws Exception;
+    }
+
+    /**
+     * Creates daemon threads so that an unclosed service does not prevent the
+     * JVM from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "jfeaturelib-extraction-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of a single feature extraction: the list of feature vectors
+ * that a descriptor computed for one image.
+ *
+ * Most descriptors produce a single row. Descriptors like SIFT or SURF produce
+ * one row per interest point.
+ *
+ * @see FeatureExtractionService
+ */
+public class FeatureMatrix {
+
+    private final List<double[]> rows;
+
+    /**
+     * Creates a new matrix holding the given rows. The list is copied, the
+     * arrays are NOT.
+     *
+     * @param rows the feature vectors
+     * @throws NullPointerException if rows is null
+     */
+    public FeatureMatrix(List<double[]> rows) {
+        if (rows == null) {
+            throw new NullPointerException("rows must not be null");
+        }
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+    }
+
+    /**
+     * @return unmodifiable list of all feature vectors
+     */
+    public List<double[]> getRows() {
+        return rows;
+    }
+
+    /**
+     * @param index row index
+     * @return the feature vector at the given index
+     */
+    public double[] getRow(int index) {
+        return rows.get(index);
+    }
+
+    /**
+     * @return amount of feature vectors
+     */
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * @return length of the first feature vector or 0 if the matrix is empty
+     */
+    public int getDimension() {
+        return rows.isEmpty() ? 0 : rows.get(0).length;
+    }
+
+    /**
+     * @return true if the descriptor did not produce any feature vector
+     */
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+}
@@ -60,6 +60,7 @@ public class LibProperties extends PropertyContainer {
     public static final String SIFT_BINARY = "features.sift.binary";
     public static final String HISTOGRAMS_TYPE = "features.histogram.type";
     public static final String HISTOGRAMS_BINS = "features.histogram.bins";
+    public static final String HISTOGRAMS_SEPARATE = "features.histogram.separate";
     // reference color similarity
     public static final String REFERENCE_COLOR_SIMILARITY_INIT = "features.referenceColorSimilarity.init";
     public static final String REFERENCE_COLOR_SIMILARITY_H = "features.referenceColorSimilarity.h";
@@ -72,12 +73,15 @@ public class LibProperties extends PropertyContainer {
     public static final String COLOR_HISTOGRAMS_BINS_X = "features.colorhistograms.bins.x";
     public static final String COLOR_HISTOGRAMS_BINS_Y = "features.colorhistograms.bins.y";
     public static final String COLOR_HISTOGRAMS_BINS_Z = "features.colorhistograms.bins.z";
+    public static final String COLOR_HISTOGRAMS_KEY_BITS = "features.colorhistograms.keyBits";
     // Phog
     public static final String PHOG_CANNY = "features.phog.canny";
     public static final String PHOG_BINS = "features.phog.bins";
     public static final String PHOG_RECURSIONS = "features.phog.recursions";
     // Haralick
     public static final String HARALICK_DISTANCE = "features.haralick.distance";
+    public static final String HARALICK_GRAY_VALUES = "features.haralick.grayValues";
+    public static final String HARALICK_FEATURES = "features.haralick.features";
     // CEDD
     public static final String CEDD_T0 = "features.cedd.t0";
     public static final String CEDD_T1 = "features.cedd.t1";
@@ -103,6 +107,7 @@ public class LibProperties extends PropertyContainer {
     public static final String CANNY_KERNEL_RADIUS = "edge.canny.gaussianKernelRadius";
     public static final String CANNY_KERNEL_WIDTH = "edge.canny.gaussianKernelWidth";
     public static final String CANNY_NORMALIZE_CONTRAST = "edge.canny.contrastNormalized";
+    public static final String CANNY_FAST_MATH = "edge.canny.fastMath";
     // MeanPatchIntensitiesDescriptor
     public static final String MEAN_PATCH_INTENSITIES_PATCH_SIZE = "features.meanPatchIntensities.patchSize";
     public static final String MEAN_PATCH_INTENSITIES_BINS = "features.meanPatchIntensities.bins";
@@ -114,6 +119,9 @@ public class LibProperties extends PropertyContainer {
     public static final String LBP_NEIGHBORHOOD_SIZE = "features.lbp.neighborhoodSize";
     public static final String LBP_CONSTANT = "features.lbp.constant";
     public static final String LBP_HISTOGRAM_SIZE = "features.lbp.histogramSize";
+    public static final String LBP_MAPPING = "features.lbp.mapping";
+    public static final String LBP_STRIDE = "features.lbp.stride";
+    public static final String LBP_PYRAMID_LEVELS = "features.lbp.pyramidLevels";
 
     /**
      * Initializes an empty properties set. You should know what you are doing as the needed Properties will not be
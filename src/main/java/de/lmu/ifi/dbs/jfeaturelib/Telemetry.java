@@ -0,0 +1,71 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib;
+
+/**
+ * Lightweight listener that is informed about the progress and the duration of
+ * the processing stages of a descriptor.
+ *
+ * In contrast to property change events, telemetry calls do not allocate any
+ * objects and are not synchronized. Progress is reported at most once per
+ * percent, so implementations may be called from hot loops without noticeable
+ * overhead. Implementations must be thread safe if they are shared between
+ * descriptors that run concurrently.
+ *
+ * @see Descriptor#setTelemetry(Telemetry)
+ */
+public interface Telemetry {
+
+    /**
+     * Telemetry that ignores all calls. This is the default for all
+     * descriptors.
+     */
+    public static final Telemetry NOOP = new Telemetry() {
+        @Override
+        public void progress(Descriptor source, int progress) {
+        }
+
+        @Override
+        public void stage(Descriptor source, String stage, long nanos) {
+        }
+    };
+
+    /**
+     * Called when the progress of the descriptor changed.
+     *
+     * @param source the reporting descriptor
+     * @param progress progress in [0,100]
+     */
+    public void progress(Descriptor source, int progress);
+
+    /**
+     * Called when a named processing stage of the descriptor has finished.
+     *
+     * @param source the reporting descriptor
+     * @param stage name of the stage, for example "normalize"
+     * @param nanos duration of the stage in nanoseconds as measured by
+     * {@link System#nanoTime()}
+     */
+    public void stage(Descriptor source, String stage, long nanos);
+}
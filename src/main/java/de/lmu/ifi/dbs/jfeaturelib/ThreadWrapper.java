@@ -41,7 +41,7 @@ import org.apache.log4j.Logger;
  * to 100.
  *
  * @author Benedikt
- * @deprecated since after v1.0.0
+ * @deprecated since after v1.0.0, use {@link FeatureExtractionService} for headless (batch) extraction
  */
 @Deprecated
 public class ThreadWrapper extends SwingWorker<List<double[]>, Object>
@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.Telemetry;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
@@ -36,20 +37,79 @@ import java.io.IOException;
 public abstract class AbstractDescriptor implements Descriptor {
 
     protected final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+    private Telemetry telemetry = Telemetry.NOOP;
+    private volatile int lastProgress = -1;
 
     @Override
     public void addPropertyChangeListener(PropertyChangeListener listener) {
         pcs.addPropertyChangeListener(listener);
     }
 
+    @Override
+    public void setTelemetry(Telemetry telemetry) {
+        if (telemetry == null) {
+            throw new NullPointerException("telemetry must not be null");
+        }
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return the current telemetry (never null)
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
     protected void startProgress() {
+        lastProgress = 0;
+        telemetry.progress(this, 0);
         pcs.firePropertyChange(Progress.getName(), null, Progress.START);
     }
 
     protected void endProgress() {
+        lastProgress = 100;
+        telemetry.progress(this, 100);
         pcs.firePropertyChange(Progress.getName(), null, Progress.END);
     }
 
+    /**
+     * Reports the progress of a loop. Telemetry and listeners are only informed
+     * if the percentage changed. Parallel row bands should count the finished
+     * rows of all bands, but only report from the band starting at row 0.
+     *
+     * @param done amount of processed units
+     * @param total total amount of units
+     * @see de.lmu.ifi.dbs.jfeaturelib.features.AbstractFeatureDescriptor#progress(int, int)
+     */
+    protected void progress(int done, int total) {
+        int p = total <= 0 ? 100 : (int) Math.min(100, 100L * done / total);
+        if (p != lastProgress) {
+            synchronized (this) {
+                if (p == lastProgress) {
+                    return;
+                }
+                lastProgress = p;
+                telemetry.progress(this, p);
+                if (pcs.hasListeners(Progress.getName())) {
+                    pcs.firePropertyChange(Progress.getName(), null, new Progress(p));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the duration of a processing stage to the telemetry.
+     *
+     * @param stage name of the stage
+     * @param start start time of the stage as obtained by {@link System#nanoTime()}
+     * @return current time which can be used as start time for the next stage
+     */
+    protected long stage(String stage, long start) {
+        long now = System.nanoTime();
+        telemetry.stage(this, stage, now - start);
+        return now;
+    }
+
     public void setProperties(LibProperties properties) throws IOException {
     }
 }
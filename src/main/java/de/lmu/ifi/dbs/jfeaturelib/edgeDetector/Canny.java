@@ -26,10 +26,14 @@ package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor.Supports;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.FastMath;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Palette;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.plugin.filter.PlugInFilter;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.*;
 
@@ -41,6 +45,11 @@ import java.util.*;
  * <b>The original source code was provided by Tom Gibara who released the code to
  * the public domain.</b>
  *
+ * The luminance is read directly from the pixels of the image processor and
+ * the edges are written into a {@link ByteProcessor} (255 for edge pixels, 0
+ * otherwise). All convolutions traverse the image row by row and are computed
+ * in parallel row bands, see {@link #setParallelism(int)}.
+ *
  * @author Tom Gibara
  * @link http://www.tomgibara.com/computer-vision/canny-edge-detector
  */
@@ -57,13 +66,13 @@ public class Canny extends AbstractDescriptor {
     private int picsize;
     private int[] data;
     private int[] magnitude;
-    private BufferedImage sourceImage;
-    private BufferedImage edgesImage;
     private float gaussianKernelRadius;
     private float lowThreshold;
     private float highThreshold;
     private int gaussianKernelWidth;
     private boolean contrastNormalized;
+    private boolean fastMath;
+    private int parallelism = RowBands.defaultParallelism();
     private float[] xConv;
     private float[] yConv;
     private float[] xGradient;
@@ -87,19 +96,28 @@ public class Canny extends AbstractDescriptor {
         gaussianKernelRadius = properties.getFloat(LibProperties.CANNY_KERNEL_RADIUS);
         gaussianKernelWidth = properties.getInteger(LibProperties.CANNY_KERNEL_WIDTH);
         contrastNormalized = properties.getBoolean(LibProperties.CANNY_NORMALIZE_CONTRAST);
+        fastMath = properties.getBoolean(LibProperties.CANNY_FAST_MATH, false);
     }
 
-    private void process() {
-        startProgress();
-
-        width = sourceImage.getWidth();
-        height = sourceImage.getHeight();
+    private ByteProcessor process(ImageProcessor ip) {
+        width = ip.getWidth();
+        height = ip.getHeight();
         picsize = width * height;
 
+        ByteProcessor edges = new ByteProcessor(width, height);
         initialize();
+        try {
+            detectEdges(ip, (byte[]) edges.getPixels());
+        } finally {
+            release();
+        }
+        return edges;
+    }
+
+    private void detectEdges(ImageProcessor ip, byte[] edges) {
         pcs.firePropertyChange(Progress.getName(), null, new Progress(20, "arrays initialized"));
 
-        readLuminance();
+        readLuminance(ip);
         pcs.firePropertyChange(Progress.getName(), null, new Progress(30, "luminance read"));
 
         if (contrastNormalized) {
@@ -113,24 +131,36 @@ public class Canny extends AbstractDescriptor {
         performHysteresis(low, high);
         pcs.firePropertyChange(Progress.getName(), null, new Progress(80, "hysteresis performed"));
 
-        thresholdEdges();
+        thresholdEdges(edges);
         pcs.firePropertyChange(Progress.getName(), null, new Progress(90, "edges tresholded"));
+    }
 
-        writeEdges(data);
+    /**
+     * Borrows the working arrays from the {@link ScratchPool}. Note that the
+     * arrays may be longer than {@link #picsize}.
+     */
+    private void initialize() {
+        data = ScratchPool.borrowInts(picsize);
+        magnitude = ScratchPool.borrowInts(picsize);
 
-        endProgress();
+        xConv = ScratchPool.borrowFloats(picsize);
+        yConv = ScratchPool.borrowFloats(picsize);
+        xGradient = ScratchPool.borrowFloats(picsize);
+        yGradient = ScratchPool.borrowFloats(picsize);
     }
 
-    private void initialize() {
-        if (data == null || picsize != data.length) {
-            data = new int[picsize];
-            magnitude = new int[picsize];
-
-            xConv = new float[picsize];
-            yConv = new float[picsize];
-            xGradient = new float[picsize];
-            yGradient = new float[picsize];
-        }
+    /**
+     * Returns the working arrays to the {@link ScratchPool}.
+     */
+    private void release() {
+        ScratchPool.release(data);
+        ScratchPool.release(magnitude);
+        ScratchPool.release(xConv);
+        ScratchPool.release(yConv);
+        ScratchPool.release(xGradient);
+        ScratchPool.release(yGradient);
+        data = magnitude = null;
+        xConv = yConv = xGradient = yGradient = null;
     }
 
     //NOTE: The elements of the method below (specifically the technique for
@@ -160,145 +190,205 @@ public class Canny extends AbstractDescriptor {
             diffKernel[kwidth] = g3 - g2;
         }
 
-        int initX = kwidth - 1;
-        int maxX = width - (kwidth - 1);
-        int initY = width * (kwidth - 1);
-        int maxY = width * (height - (kwidth - 1));
-
-        //perform convolution in x and y directions
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                float sumX = data[index] * kernel[0];
-                float sumY = sumX;
-                int xOffset = 1;
-                int yOffset = width;
-                for (; xOffset < kwidth;) {
-                    sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
-                    sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
-                    yOffset += width;
-                    xOffset++;
-                }
-
-                yConv[index] = sumY;
-                xConv[index] = sumX;
-            }
-
-        }
+        convolve(kernel, kwidth);
+        differentiate(diffKernel, kwidth);
+        suppressNonMaxima(kwidth);
+    }
 
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0f;
-                int index = x + y;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+    /**
+     * Smoothes the luminance in x (xConv) and in y (yConv) direction. Only
+     * pixels with a distance of at least kwidth - 1 to the border are
+     * computed.
+     */
+    private void convolve(final float[] kernel, final int kwidth) {
+        final int[] data = this.data;
+        final float[] xConv = this.xConv;
+        final float[] yConv = this.yConv;
+        final int initX = kwidth - 1;
+        final int maxX = width - (kwidth - 1);
+        final int initY = kwidth - 1;
+        final int maxY = height - (kwidth - 1);
+
+        RowBands.run(Math.max(0, maxY - initY), parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int y = initY + from; y < initY + to; y++) {
+                    for (int x = initX, index = y * width + initX; x < maxX; x++, index++) {
+                        float sumX = data[index] * kernel[0];
+                        float sumY = sumX;
+                        int xOffset = 1;
+                        int yOffset = width;
+                        for (; xOffset < kwidth;) {
+                            sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
+                            sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
+                            yOffset += width;
+                            xOffset++;
+                        }
+
+                        yConv[index] = sumY;
+                        xConv[index] = sumX;
+                    }
                 }
-
-                xGradient[index] = sum;
             }
+        });
+    }
 
-        }
-
-        for (int x = kwidth; x < width - kwidth; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                int yOffset = width;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
-                    yOffset += width;
+    /**
+     * Computes the gradients in x and y direction and the gradient magnitude
+     * of every pixel.
+     *
+     * The magnitudes are written into yConv: the x gradient of a row only
+     * reads yConv in the same row, so each band can overwrite its own rows
+     * as soon as their gradients are known. xConv is still read across band
+     * borders and is left untouched.
+     */
+    private void differentiate(final float[] diffKernel, final int kwidth) {
+        final float[] xConv = this.xConv;
+        final float[] yConv = this.yConv;
+        final float[] xGradient = this.xGradient;
+        final float[] yGradient = this.yGradient;
+        final int initY = kwidth - 1;
+        final int maxY = height - (kwidth - 1);
+
+        RowBands.run(height, parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int y = from; y < to; y++) {
+                    final int row = y * width;
+                    if (y >= initY && y < maxY) {
+                        for (int x = kwidth - 1; x < width - (kwidth - 1); x++) {
+                            float sum = 0f;
+                            int index = row + x;
+                            for (int i = 1; i < kwidth; i++) {
+                                sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+                            }
+
+                            xGradient[index] = sum;
+                        }
+
+                        for (int x = kwidth; x < width - kwidth; x++) {
+                            float sum = 0.0f;
+                            int index = row + x;
+                            int yOffset = width;
+                            for (int i = 1; i < kwidth; i++) {
+                                sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
+                                yOffset += width;
+                            }
+
+                            yGradient[index] = sum;
+                        }
+                    }
+
+                    // each magnitude is computed once instead of once for
+                    // each of its 9 uses in the suppression
+                    for (int index = row; index < row + width; index++) {
+                        yConv[index] = hypot(xGradient[index], yGradient[index]);
+                    }
                 }
-
-                yGradient[index] = sum;
             }
+        });
+    }
 
-        }
-
-        initX = kwidth;
-        maxX = width - kwidth;
-        initY = width * kwidth;
-        maxY = width * (height - kwidth);
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                int indexN = index - width;
-                int indexS = index + width;
-                int indexW = index - 1;
-                int indexE = index + 1;
-                int indexNW = indexN - 1;
-                int indexNE = indexN + 1;
-                int indexSW = indexS - 1;
-                int indexSE = indexS + 1;
-
-                float xGrad = xGradient[index];
-                float yGrad = yGradient[index];
-                float gradMag = hypot(xGrad, yGrad);
-
-                //perform non-maximal supression
-                float nMag = hypot(xGradient[indexN], yGradient[indexN]);
-                float sMag = hypot(xGradient[indexS], yGradient[indexS]);
-                float wMag = hypot(xGradient[indexW], yGradient[indexW]);
-                float eMag = hypot(xGradient[indexE], yGradient[indexE]);
-                float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
-                float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
-                float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
-                float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
-                float tmp;
-                /*
-                 * An explanation of what's happening here, for those who want
-                 * to understand the source: This performs the "non-maximal
-                 * supression" phase of the Canny edge detection in which we
-                 * need to compare the gradient magnitude to that in the
-                 * direction of the gradient; only if the value is a local
-                 * maximum do we consider the point as an edge candidate.
-                 *
-                 * We need to break the comparison into a number of different
-                 * cases depending on the gradient direction so that the
-                 * appropriate values can be used. To avoid computing the
-                 * gradient direction, we use two simple comparisons: first we
-                 * check that the partial derivatives have the same sign (1) and
-                 * then we check which is larger (2). As a consequence, we have
-                 * reduced the problem to one of four identical cases that each
-                 * test the central gradient magnitude against the values at two
-                 * points with 'identical support'; what this means is that the
-                 * geometry required to accurately interpolate the magnitude of
-                 * gradient function at those points has an identical geometry
-                 * (upto right-angled-rotation/reflection).
-                 *
-                 * When comparing the central gradient to the two interpolated
-                 * values, we avoid performing any divisions by multiplying both
-                 * sides of each inequality by the greater of the two partial
-                 * derivatives. The common comparand is stored in a temporary
-                 * variable (3) and reused in the mirror case (4).
-                 *
-                 */
-                if (xGrad * yGrad <= (float) 0 /*(1)*/
-                        ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
-                        && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
-                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
-                        && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
-                        : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
-                        && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
-                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
-                        && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/) {
-                    magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
-                    //NOTE: The orientation of the edge is not employed by this
-                    //implementation. It is a simple matter to compute it at
-                    //this point as: Math.atan2(yGrad, xGrad);
-                } else {
-                    magnitude[index] = 0;
+    /**
+     * Keeps the gradient magnitudes that are local maxima in gradient
+     * direction.
+     */
+    private void suppressNonMaxima(int kwidth) {
+        final float[] xGradient = this.xGradient;
+        final float[] yGradient = this.yGradient;
+        final float[] gradMags = this.yConv;
+        final int[] magnitude = this.magnitude;
+        final int initX = kwidth;
+        final int maxX = width - kwidth;
+        final int initY = kwidth;
+        final int maxY = height - kwidth;
+
+        RowBands.run(Math.max(0, maxY - initY), parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int y = initY + from; y < initY + to; y++) {
+                    for (int x = initX; x < maxX; x++) {
+                        int index = x + y * width;
+                        int indexN = index - width;
+                        int indexS = index + width;
+                        int indexW = index - 1;
+                        int indexE = index + 1;
+                        int indexNW = indexN - 1;
+                        int indexNE = indexN + 1;
+                        int indexSW = indexS - 1;
+                        int indexSE = indexS + 1;
+
+                        float xGrad = xGradient[index];
+                        float yGrad = yGradient[index];
+                        float gradMag = gradMags[index];
+
+                        //perform non-maximal supression
+                        float nMag = gradMags[indexN];
+                        float sMag = gradMags[indexS];
+                        float wMag = gradMags[indexW];
+                        float eMag = gradMags[indexE];
+                        float neMag = gradMags[indexNE];
+                        float seMag = gradMags[indexSE];
+                        float swMag = gradMags[indexSW];
+                        float nwMag = gradMags[indexNW];
+                        float tmp;
+                        /*
+                         * An explanation of what's happening here, for those who want
+                         * to understand the source: This performs the "non-maximal
+                         * supression" phase of the Canny edge detection in which we
+                         * need to compare the gradient magnitude to that in the
+                         * direction of the gradient; only if the value is a local
+                         * maximum do we consider the point as an edge candidate.
+                         *
+                         * We need to break the comparison into a number of different
+                         * cases depending on the gradient direction so that the
+                         * appropriate values can be used. To avoid computing the
+                         * gradient direction, we use two simple comparisons: first we
+                         * check that the partial derivatives have the same sign (1) and
+                         * then we check which is larger (2). As a consequence, we have
+                         * reduced the problem to one of four identical cases that each
+                         * test the central gradient magnitude against the values at two
+                         * points with 'identical support'; what this means is that the
+                         * geometry required to accurately interpolate the magnitude of
+                         * gradient function at those points has an identical geometry
+                         * (upto right-angled-rotation/reflection).
+                         *
+                         * When comparing the central gradient to the two interpolated
+                         * values, we avoid performing any divisions by multiplying both
+                         * sides of each inequality by the greater of the two partial
+                         * derivatives. The common comparand is stored in a temporary
+                         * variable (3) and reused in the mirror case (4).
+                         *
+                         */
+                        if (xGrad * yGrad <= (float) 0 /*(1)*/
+                                ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+                                ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
+                                && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
+                                : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
+                                && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
+                                : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+                                ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
+                                && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
+                                : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
+                                && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/) {
+                            magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+                            //NOTE: The orientation of the edge is not employed by this
+                            //implementation. It is a simple matter to compute it at
+                            //this point as: Math.atan2(yGrad, xGrad);
+                        } else {
+                            magnitude[index] = 0;
+                        }
+                    }
                 }
             }
-        }
+        });
     }
 
     //NOTE: It is quite feasible to replace the implementation of this method
     //with one which only loosely approximates the hypot function. I've tested
     //simple approximations such as Math.abs(x) + Math.abs(y) and they work fine.
     private float hypot(float x, float y) {
-        return (float) Math.hypot(x, y);
+        return fastMath ? FastMath.hypot(x, y) : (float) Math.hypot(x, y);
     }
 
     private float gaussian(float x, float sigma) {
@@ -306,7 +396,12 @@ public class Canny extends AbstractDescriptor {
     }
 
     private void performHysteresis(int low, int high) {
-        Arrays.fill(data, 0);
+        Arrays.fill(data, 0, picsize, 0);
+
+        // marked pixels are recognized by a magnitude > 0, so pixels without
+        // a gradient must never be followed
+        low = Math.max(low, 1);
+        high = Math.max(high, 1);
 
         int offset = 0;
         for (int y = 0; y < height; y++) {
@@ -319,29 +414,44 @@ public class Canny extends AbstractDescriptor {
         }
     }
 
+    /**
+     * Follows an edge from pixel (x1, y1): each pixel is marked and the edge
+     * continues at its first unmarked neighbor whose magnitude reaches the
+     * threshold, until there is none.
+     *
+     * As only one neighbor is followed from each pixel, the edge is traced in
+     * a loop, so long edges in large images need no stack space.
+     */
     private void follow(int x1, int y1, int i1, int threshold) {
-        int x0 = x1 == 0 ? x1 : x1 - 1;
-        int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        int y0 = y1 == 0 ? y1 : y1 - 1;
-        int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-        data[i1] = magnitude[i1];
-        for (int x = x0; x <= x2; x++) {
-            for (int y = y0; y <= y2; y++) {
-                int i2 = x + y * width;
-                if ((y != y1 || x != x1)
-                        && data[i2] == 0
-                        && magnitude[i2] >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
+        while (i1 >= 0) {
+            int x0 = x1 == 0 ? x1 : x1 - 1;
+            int x2 = x1 == width - 1 ? x1 : x1 + 1;
+            int y0 = y1 == 0 ? y1 : y1 - 1;
+            int y2 = y1 == height - 1 ? y1 : y1 + 1;
+
+            data[i1] = magnitude[i1];
+            int next = -1;
+            search:
+            for (int x = x0; x <= x2; x++) {
+                for (int y = y0; y <= y2; y++) {
+                    int i2 = x + y * width;
+                    if ((y != y1 || x != x1)
+                            && data[i2] == 0
+                            && magnitude[i2] >= threshold) {
+                        next = i2;
+                        x1 = x;
+                        y1 = y;
+                        break search;
+                    }
                 }
             }
+            i1 = next;
         }
     }
 
-    private void thresholdEdges() {
+    private void thresholdEdges(byte[] edges) {
         for (int i = 0; i < picsize; i++) {
-            data[i] = data[i] > 0 ? -1 : 0xff000000;
+            edges[i] = data[i] > 0 ? (byte) 255 : 0;
         }
     }
 
@@ -349,44 +459,40 @@ public class Canny extends AbstractDescriptor {
         return Math.round(0.299f * r + 0.587f * g + 0.114f * b);
     }
 
-    private void readLuminance() {
-        int type = sourceImage.getType();
-        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
+    private int luminance(int rgb) {
+        return luminance((rgb & 0xff0000) >> 16, (rgb & 0xff00) >> 8, rgb & 0xff);
+    }
+
+    /**
+     * Reads the luminance of each pixel. 8 bit images with an index color
+     * model use the luminance of the palette colors, 16 and 32 bit images are
+     * scaled to 8 bit first.
+     */
+    private void readLuminance(ImageProcessor ip) {
+        if (ip instanceof ColorProcessor) {
+            int[] pixels = (int[]) ip.getPixels();
             for (int i = 0; i < picsize; i++) {
-                int p = pixels[i];
-                int r = (p & 0xff0000) >> 16;
-                int g = (p & 0xff00) >> 8;
-                int b = p & 0xff;
-                data[i] = luminance(r, g, b);
+                data[i] = luminance(pixels[i]);
             }
-        } else if (type == BufferedImage.TYPE_BYTE_GRAY) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xff);
+        } else {
+            if (!(ip instanceof ByteProcessor)) {
+                ip = ip.convertToByte(true);
             }
-        } else if (type == BufferedImage.TYPE_USHORT_GRAY) {
-            short[] pixels = (short[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xffff) / 256;
+            int[] lut = new int[256];
+            int[] palette = Palette.colors(ip);
+            for (int i = 0; i < 256; i++) {
+                lut[i] = palette == null ? i : luminance(palette[i]);
             }
-        } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            int offset = 0;
+            byte[] pixels = (byte[]) ip.getPixels();
             for (int i = 0; i < picsize; i++) {
-                int b = pixels[offset++] & 0xff;
-                int g = pixels[offset++] & 0xff;
-                int r = pixels[offset++] & 0xff;
-                data[i] = luminance(r, g, b);
+                data[i] = lut[pixels[i] & 0xff];
             }
-        } else {
-            throw new IllegalArgumentException("Unsupported image type: " + type);
         }
     }
 
     private void normalizeContrast() {
         int[] histogram = new int[256];
-        for (int i = 0; i < data.length; i++) {
+        for (int i = 0; i < picsize; i++) {
             histogram[data[i]]++;
         }
         int[] remap = new int[256];
@@ -401,21 +507,11 @@ public class Canny extends AbstractDescriptor {
             j = target;
         }
 
-        for (int i = 0; i < data.length; i++) {
+        for (int i = 0; i < picsize; i++) {
             data[i] = remap[data[i]];
         }
     }
 
-    private void writeEdges(int pixels[]) {
-        //NOTE: There is currently no mechanism for obtaining the edge data
-        //in any other format other than an INT_ARGB type BufferedImage.
-        //This may be easily remedied by providing alternative accessors.
-        if (edgesImage == null) {
-            edgesImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        }
-        edgesImage.getWritableTile(0, 0).setDataElements(0, 0, width, height, pixels);
-    }
-
     /**
      * Defines the capability of the algorithm.
      *
@@ -430,23 +526,41 @@ public class Canny extends AbstractDescriptor {
     }
 
     /**
-     * Starts the canny edge detection.
+     * Starts the canny edge detection. The edges replace the content of the
+     * image (white edges on black background).
      *
      * @param ip ImageProcessor of the source image
      */
     @Override
     public void run(ImageProcessor ip) {
-        startProgress();
-
-        setSourceImage(ip.getBufferedImage());
-        process();
-        writeResult(ip);
+        writeResult(ip, findEdges(ip));
+    }
 
+    /**
+     * Detects the edges without modifying the image.
+     *
+     * @param ip ImageProcessor of the source image
+     * @return the edge map, 255 for edge pixels and 0 otherwise
+     */
+    public ByteProcessor findEdges(ImageProcessor ip) {
+        startProgress();
+        ByteProcessor edges = process(ip);
         endProgress();
+        return edges;
     }
 
-    private void writeResult(ImageProcessor ip) {
-        ip.insert(new ColorProcessor(edgesImage), 0, 0);
+    private void writeResult(ImageProcessor ip, ByteProcessor edges) {
+        byte[] edgePixels = (byte[]) edges.getPixels();
+        if (ip instanceof ByteProcessor) {
+            System.arraycopy(edgePixels, 0, (byte[]) ip.getPixels(), 0, picsize);
+        } else if (ip instanceof ColorProcessor) {
+            int[] pixels = (int[]) ip.getPixels();
+            for (int i = 0; i < picsize; i++) {
+                pixels[i] = edgePixels[i] != 0 ? 0xffffffff : 0xff000000;
+            }
+        } else {
+            ip.insert(edges, 0, 0);
+        }
     }
 
     //<editor-fold defaultstate="collapsed" desc="accessor methods">
@@ -567,8 +681,42 @@ public class Canny extends AbstractDescriptor {
         this.contrastNormalized = contrastNormalized;
     }
 
-    private void setSourceImage(BufferedImage srcImage) {
-        this.sourceImage = srcImage;
+    /**
+     * Whether the gradient magnitudes are computed by
+     * {@link FastMath#hypot(float, float)}. The default value is false.
+     *
+     * @return whether fast math is used
+     */
+    public boolean isFastMath() {
+        return fastMath;
+    }
+
+    /**
+     * Sets whether the gradient magnitudes are computed by
+     * {@link FastMath#hypot(float, float)} (at most one ulp off) instead of
+     * {@link Math#hypot(double, double)}.
+     *
+     * @param fastMath true if the faster computation should be used
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
+    /**
+     * @return the maximum number of parallel row bands
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
     }
     //</editor-fold>
 }
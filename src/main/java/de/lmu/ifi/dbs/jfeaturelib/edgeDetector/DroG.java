@@ -25,8 +25,11 @@ package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
-import ij.plugin.filter.Convolver;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Convolution;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -52,6 +55,7 @@ public class DroG implements Descriptor {
      * This is the threshold value. [0-255]
      */
     private int threshold;
+    private int parallelism = RowBands.defaultParallelism();
 
     public DroG() {
         edge = 0;
@@ -106,36 +110,84 @@ public class DroG implements Descriptor {
         return DOES_ALL;
     }
 
+    /**
+     * Filters the luminance of the image with the DroG kernel and writes 255
+     * where the absolute response reaches the threshold and 0 elsewhere.
+     *
+     * @param ip ImageProcessor of the source image
+     */
     @Override
     public void run(ImageProcessor ip) {
         pcs.firePropertyChange(Progress.getName(), null, Progress.START);
 
-        ByteProcessor bp = Service.getByteProcessor(ip);
-        ImageProcessor floatForConv = bp.convertToFloat();
-        Convolver conv = new Convolver();
-        conv.setNormalize(false);
-        conv.convolve(floatForConv, this.edgeFilter, (int) Math.sqrt(this.edgeFilter.length), (int) Math.sqrt(this.edgeFilter.length));
-        bp = Service.getByteProcessor(floatForConv);
-        ImageProcessor out = bp.duplicate();
-        //ImagePlus newImg = new ImagePlus("DroG Result", out);
-        //newImg.show();
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final int size = (int) Math.sqrt(this.edgeFilter.length);
+        final boolean spectral = Convolution.useFFT(size, size);
 
-        // Lut processor.
-        int lut[] = new int[256];
-        int i = 0;
-        for (; i < threshold; i++) {
-            lut[i] = 0;
+        float[] work = ScratchPool.borrowFloats(width * height);
+        float[] response = spectral ? work : ScratchPool.borrowFloats(width * height);
+        try {
+            byte[] luminance = (byte[]) (ip instanceof ByteProcessor ? ip : ip.convertToByte(true)).getPixels();
+            for (int i = 0; i < width * height; i++) {
+                work[i] = luminance[i] & 0xff;
+            }
+            // the kernel is not normalized
+            if (spectral) {
+                new Convolution.SpectralKernel(edgeFilter, size, size, width, height).correlate(work, null);
+            } else {
+                new Convolution.Kernel2D(edgeFilter, size, size).correlate(work, response, width, height, parallelism);
+            }
+            writeResult(response, ip);
+        } finally {
+            ScratchPool.release(work);
+            if (response != work) {
+                ScratchPool.release(response);
+            }
         }
-        for (int j = i; j < lut.length; j++) {
-            lut[j] = 255;
+
+        pcs.firePropertyChange(Progress.getName(), null, Progress.END);
+    }
+
+    /**
+     * Thresholds the rounded absolute response and writes the result directly
+     * into the pixels of byte and RGB images.
+     */
+    private void writeResult(float[] response, ImageProcessor ip) {
+        final int size = ip.getWidth() * ip.getHeight();
+        // |v| rounds to a value >= threshold
+        final float limit = threshold - 0.5f;
+        if (ip instanceof ByteProcessor) {
+            byte[] pixels = (byte[]) ip.getPixels();
+            for (int i = 0; i < size; i++) {
+                pixels[i] = Math.abs(response[i]) >= limit ? (byte) 255 : 0;
+            }
+        } else if (ip instanceof ColorProcessor) {
+            int[] pixels = (int[]) ip.getPixels();
+            for (int i = 0; i < size; i++) {
+                pixels[i] = Math.abs(response[i]) >= limit ? 0xffffffff : 0xff000000;
+            }
+        } else {
+            byte[] edges = new byte[size];
+            for (int i = 0; i < size; i++) {
+                edges[i] = Math.abs(response[i]) >= limit ? (byte) 255 : 0;
+            }
+            ip.insert(new ByteProcessor(ip.getWidth(), ip.getHeight(), edges, null), 0, 0);
         }
-        bp.applyTable(lut);
-        //ImagePlus newImgLut = new ImagePlus("Lut result after DroG", bp);
-        //newImgLut.show();
+    }
 
-        ip.insert(bp, 0, 0);
+    public int getParallelism() {
+        return parallelism;
+    }
 
-        pcs.firePropertyChange(Progress.getName(), null, Progress.END);
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -188,21 +240,6 @@ class Service {
     /***********************************************************************************
      * Methods of Support
      * *********************************************************************************/
-    /**
-     * This method copies an ImageProcessor in a ByteProcessor.
-     * @param ip the input ImageProcessor.
-     * @return ByteProcessor.
-     */
-    public static ByteProcessor getByteProcessor(ImageProcessor ip) {
-        ByteProcessor bp = new ByteProcessor(ip.getWidth(), ip.getHeight());
-        for (int y = 0; y < ip.getHeight(); y++) {
-            for (int x = 0; x < ip.getWidth(); x++) {
-                bp.set(x, y, ip.getPixel(x, y));
-            }
-        }
-        return bp;
-    }
-
     /**
      * This method makes a LoG kernel in an array[].
      * @param window number of row and columns of LoG matrix. It must be an odd.
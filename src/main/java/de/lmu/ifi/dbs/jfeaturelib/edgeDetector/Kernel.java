@@ -25,19 +25,22 @@ package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor.Supports;
-import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Convolution;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Performs convolution with a given Kernel directly on this image.
  *
- * Basiacally it is just a wrapper for ImageJ's ImageProcessor.convolve().
+ * It computes the same result as ImageJ's ImageProcessor.convolve() with the
+ * kernel and its clockwise rotation, but in a single row major pass that can
+ * be split into parallel row bands, see {@link #setParallelism(int)}.
  *
  * Predefined masks are SOBEL, SCHARR, PREWITT
  *
@@ -77,9 +80,9 @@ public class Kernel extends AbstractDescriptor {
         -1, 0, 1,
         -1, 0, 1
     };
-    private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
     private ByteProcessor image;
     private int treshold = 0;
+    private int parallelism = RowBands.defaultParallelism();
     float[] kernel;
 
     /**
@@ -185,69 +188,106 @@ public class Kernel extends AbstractDescriptor {
     }
 
     /**
-     * Proceses the image applying the kernel in x- and y-direction
+     * Returns the maximum number of row bands that are processed in parallel.
+     *
+     * @return parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    //</editor-fold>
+
+    /**
+     * Proceses the image applying the kernel in x- and y-direction.
+     *
+     * Both responses are computed with the semantics of
+     * {@link ImageProcessor#convolve(float[], int, int)} (normalized kernel,
+     * replicated borders, results clamped to 0..255), but row by row and
+     * directly fused into the gradient magnitude. Kernels of rank 1 (like the
+     * predefined ones) are applied as two 1D passes.
      */
     public void process() {
         startProgress();
 
         final int width = image.getWidth();
         final int height = image.getHeight();
-        final int kernelWidth = Math.round((float) Math.sqrt(kernel.length + 1.0f));
+        final int kernelWidth = getKernelWidth();
 
-        ByteProcessor imgX = new ByteProcessor(image.createImage());
-        ByteProcessor imgY = new ByteProcessor(image.createImage());
-
-        float[] kernelX = kernel;
-        float[] kernelY = new float[kernelWidth * kernelWidth];
-        float[][] kernelX2D = new float[kernelWidth][kernelWidth];
-        int i = 0;
-        for (int x = 0; x < kernelWidth; x++) {
-            for (int y = 0; y < kernelWidth; y++) {
-                kernelX2D[x][y] = kernelX[i++];
-            }
-        }
+        final float scale = Convolution.scale(kernel);
+        final Convolution.Kernel2D kernelX = new Convolution.Kernel2D(kernel, kernelWidth, kernelWidth);
+        final Convolution.Kernel2D kernelY = new Convolution.Kernel2D(
+                Convolution.rotateCW(kernel, kernelWidth), kernelWidth, kernelWidth);
 
-        float[][] kernelY2D = rotateFloatCW(kernelX2D);
-        i = 0;
-        for (int x = 0; x < kernelWidth; x++) {
-            for (int y = 0; y < kernelWidth; y++) {
-                kernelY[i++] = kernelY2D[x][y];
-            }
-            int progress = (int) Math.round(i * (100.0 / (double) (kernelWidth * kernelWidth)));
-            pcs.firePropertyChange(Progress.getName(), null, new Progress(progress, "Step " + i + " of " + kernelWidth * kernelWidth));
+        final byte[] pixels = (byte[]) image.getPixels();
+        final float[] src = ScratchPool.borrowFloats(width * height);
+        for (int i = 0; i < width * height; i++) {
+            src[i] = pixels[i] & 0xff;
         }
 
-        imgX.convolve(kernelX, kernelWidth, kernelWidth);
-        imgY.convolve(kernelY, kernelWidth, kernelWidth);
-        int[][] imgXa = imgX.getIntArray();
-        int[][] imgYa = imgY.getIntArray();
-        int[][] imgA = new int[width][height];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                imgA[x][y] = (int) Math.round(Math.sqrt(imgXa[x][y] * imgXa[x][y] + imgYa[x][y] * imgYa[x][y]));
-                if (imgA[x][y] > 255) {
-                    imgA[x][y] = 255;
-                } else if (imgA[x][y] < treshold) {
-                    imgA[x][y] = 0;
+        // the bands read src across their borders, so the magnitudes are
+        // written back only after all bands are done
+        final byte[] result = ScratchPool.borrowBytes(width * height);
+        final AtomicInteger rowsDone = new AtomicInteger();
+        try {
+            RowBands.run(height, parallelism, new RowBands.Band() {
+                @Override
+                public void process(int from, int to) {
+                    Convolution.Buffer buffer = new Convolution.Buffer();
+                    float[] responseX = new float[width];
+                    float[] responseY = new float[width];
+                    for (int y = from; y < to; y++) {
+                        kernelX.correlateRow(src, width, height, y, buffer, responseX);
+                        kernelY.correlateRow(src, width, height, y, buffer, responseY);
+                        final int offset = y * width;
+                        for (int x = 0; x < width; x++) {
+                            int gx = toByte(responseX[x] * scale);
+                            int gy = toByte(responseY[x] * scale);
+                            int magnitude = (int) Math.round(Math.sqrt(gx * gx + gy * gy));
+                            if (magnitude > 255) {
+                                magnitude = 255;
+                            } else if (magnitude < treshold) {
+                                magnitude = 0;
+                            }
+                            result[offset + x] = (byte) magnitude;
+                        }
+                        int done = rowsDone.incrementAndGet();
+                        if (from == 0) { // calling thread
+                            progress(done, height);
+                        }
+                    }
                 }
-            }
+            });
+            System.arraycopy(result, 0, pixels, 0, width * height);
+        } finally {
+            ScratchPool.release(src);
+            ScratchPool.release(result);
         }
 
-        image.setIntArray(imgA);
-
         endProgress();
     }
 
-    private float[][] rotateFloatCW(float[][] mat) {
-        final int M = mat.length;
-        final int N = mat[0].length;
-        float[][] ret = new float[N][M];
-        for (int r = 0; r < M; r++) {
-            for (int c = 0; c < N; c++) {
-                ret[c][M - 1 - r] = mat[r][c];
-            }
+    /**
+     * Converts a filter response like ImageJ's 8 bit conversion without
+     * scaling: clamps to 0..255 and rounds.
+     */
+    private static int toByte(float value) {
+        if (value <= 0) {
+            return 0;
+        }
+        if (value >= 255) {
+            return 255;
         }
-        return ret;
+        return (int) (value + 0.5f);
     }
 
     /**
@@ -276,8 +316,6 @@ public class Kernel extends AbstractDescriptor {
             ip = ip.convertToByte(true);
         }
         this.image = (ByteProcessor) ip;
-        pcs.firePropertyChange(Progress.getName(), null, Progress.START);
         process();
-        pcs.firePropertyChange(Progress.getName(), null, Progress.END);
     }
 }
@@ -26,6 +26,9 @@ package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor.Supports;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Convolution;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
@@ -37,6 +40,10 @@ import java.util.EnumSet;
  * The Marr Hildreth edge detector uses the Laplacian of the Gaussian function
  * to detect edges. Faster runtimes could by achieved by using Difference of
  * Gaussians instead.
+ *
+ * Large kernels (see {@link Convolution#useFFT(int, int)}) are applied in the
+ * frequency domain. Optionally, the zero crossings of the response are written
+ * instead of the response itself, see {@link #setZeroCrossings(boolean)}.
  */
 public class MarrHildreth implements Descriptor {
 
@@ -55,6 +62,15 @@ public class MarrHildreth implements Descriptor {
      * How many times to apply laplacian gaussian operation
      */
     private int times;
+    /**
+     * Write zero crossings instead of the LoG response
+     */
+    private boolean zeroCrossings = false;
+    /**
+     * Minimum slope of a zero crossing
+     */
+    private double threshold = 0;
+    private int parallelism = RowBands.defaultParallelism();
 
     /**
      * Creates Marr Hildreth edge detection with default parameters
@@ -103,14 +119,171 @@ public class MarrHildreth implements Descriptor {
         return data;
     }
 
+    /**
+     * Applies the LoG to each color channel. Every iteration but the last
+     * works on the 8 bit result of the previous one, like
+     * {@link ImageProcessor#convolve(float[], int, int)} would. The response
+     * of the last iteration is written to the image either as clamped 8 bit
+     * value or, if {@link #setZeroCrossings(boolean) enabled}, as zero
+     * crossing map. In the latter case the last iteration uses the LoG with
+     * zero mean and without normalization.
+     *
+     * Each channel is kept in a float work buffer that is reused by all
+     * iterations. Large kernels (see {@link Convolution#useFFT(int, int)})
+     * are applied in the frequency domain and in place, smaller ones
+     * alternate between the work buffer and a second one.
+     */
     public void process() {
         // laplacian gaussian operation
         kernel = createLoGOp();
-        for (int i = 0; i < times; i++) {
-            image.convolve(kernel, kernelSize, kernelSize);
-            int progress = (int) Math.round(i * (100.0 / (double) times));
-            pcs.firePropertyChange(Progress.getName(), null, new Progress(progress, "Step " + i + " of " + times));
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int size = width * height;
+        final int[] pixels = (int[]) image.getPixels();
+
+        // ImageJ normalizes the kernel by its sum
+        final float scale = Convolution.scale(kernel);
+        float[] scaled = new float[kernel.length];
+        for (int i = 0; i < kernel.length; i++) {
+            scaled[i] = kernel[i] * scale;
+        }
+        // the zero crossings are taken from the response to the LoG with zero
+        // mean, which is 0 in homogeneous areas
+        float[] zeroMean = null;
+        if (zeroCrossings) {
+            double mean = 0;
+            for (float k : kernel) {
+                mean += k;
+            }
+            mean /= kernel.length;
+            // rounded to a grid on which the products with 8 bit values and
+            // their sum are exact, the center takes the rounding error so that
+            // the response is exactly 0 and has no sign
+            double max = 0;
+            for (float k : kernel) {
+                max = Math.max(max, Math.abs(k - mean));
+            }
+            final double grid = Math.scalb(1.0, Math.getExponent(max) - 13);
+            zeroMean = new float[kernel.length];
+            double sum = 0;
+            for (int i = 0; i < kernel.length; i++) {
+                zeroMean[i] = (float) (Math.rint((kernel[i] - mean) / grid) * grid);
+                sum += zeroMean[i];
+            }
+            zeroMean[kernel.length / 2] -= (float) sum;
+        }
+        final boolean spectral = Convolution.useFFT(kernelSize, kernelSize);
+
+        Convolution.SpectralKernel spectralKernel = null;
+        float[][] work = new float[3][];
+        float[][] spare = new float[3][];
+        for (int c = 0; c < 3; c++) {
+            work[c] = ScratchPool.borrowFloats(size);
+            spare[c] = spectral ? null : ScratchPool.borrowFloats(size);
+        }
+        try {
+            for (int i = 0; i < size; i++) {
+                work[0][i] = (pixels[i] >> 16) & 0xff;
+                work[1][i] = (pixels[i] >> 8) & 0xff;
+                work[2][i] = pixels[i] & 0xff;
+            }
+
+            for (int i = 0; i < times; i++) {
+                float[] k = zeroCrossings && i == times - 1 ? zeroMean : scaled;
+                if (i > 0) {
+                    // each iteration works on the 8 bit result of the previous one
+                    for (float[] channel : work) {
+                        for (int p = 0; p < size; p++) {
+                            channel[p] = toByte(channel[p]);
+                        }
+                    }
+                }
+                if (spectral) {
+                    // the normalized spectrum is shared by all iterations, the
+                    // zero mean kernel is only used by the last one
+                    if (spectralKernel == null || k == zeroMean) {
+                        spectralKernel = new Convolution.SpectralKernel(k, kernelSize, kernelSize, width, height);
+                    }
+                    spectralKernel.correlate(work[0], work[1]);
+                    spectralKernel.correlate(work[2], null);
+                } else {
+                    Convolution.Kernel2D spatialKernel = new Convolution.Kernel2D(k, kernelSize, kernelSize);
+                    for (int c = 0; c < 3; c++) {
+                        spatialKernel.correlate(work[c], spare[c], width, height, parallelism);
+                    }
+                    float[][] t = work;
+                    work = spare;
+                    spare = t;
+                }
+                fireStep(i);
+            }
+
+            if (times > 0) {
+                writeResult(work, pixels, width, height);
+            }
+        } finally {
+            for (int c = 0; c < 3; c++) {
+                ScratchPool.release(work[c]);
+                if (spare[c] != null) {
+                    ScratchPool.release(spare[c]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the LoG responses of the channels into the pixels in a single
+     * pass: either the clamped and rounded response or 255 for pixels with a
+     * zero crossing to their right or lower neighbour whose slope exceeds the
+     * threshold and 0 otherwise.
+     */
+    private void writeResult(float[][] channels, int[] pixels, int width, int height) {
+        final float[] r = channels[0];
+        final float[] g = channels[1];
+        final float[] b = channels[2];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                int red, green, blue;
+                if (zeroCrossings) {
+                    boolean right = x < width - 1;
+                    boolean below = y < height - 1;
+                    red = isZeroCrossing(r, i, width, right, below) ? 255 : 0;
+                    green = isZeroCrossing(g, i, width, right, below) ? 255 : 0;
+                    blue = isZeroCrossing(b, i, width, right, below) ? 255 : 0;
+                } else {
+                    red = toByte(r[i]);
+                    green = toByte(g[i]);
+                    blue = toByte(b[i]);
+                }
+                pixels[i] = 0xff000000 | (red << 16) | (green << 8) | blue;
+            }
+        }
+    }
+
+    private boolean isZeroCrossing(float[] response, int i, int width, boolean right, boolean below) {
+        final float v = response[i];
+        if (right) {
+            final float n = response[i + 1];
+            if ((v < 0) != (n < 0) && Math.abs(v - n) > threshold) {
+                return true;
+            }
         }
+        if (below) {
+            final float n = response[i + width];
+            if ((v < 0) != (n < 0) && Math.abs(v - n) > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int toByte(float value) {
+        return value <= 0 ? 0 : value >= 255 ? 255 : (int) (value + 0.5f);
+    }
+
+    private void fireStep(int i) {
+        int progress = (int) Math.round(i * (100.0 / (double) times));
+        pcs.firePropertyChange(Progress.getName(), null, new Progress(progress, "Step " + i + " of " + times));
     }
 
     /**
@@ -194,5 +367,58 @@ public class MarrHildreth implements Descriptor {
     public void setIterations(int times) {
         this.times = times;
     }
+
+    /**
+     * @return true if zero crossings are written instead of the LoG response
+     */
+    public boolean isZeroCrossings() {
+        return zeroCrossings;
+    }
+
+    /**
+     * Enables the zero crossing output: each channel is 255 where its LoG
+     * response changes the sign towards the right or lower neighbour by more
+     * than the threshold and 0 otherwise. Default is false, which writes the
+     * clamped LoG response.
+     *
+     * @param zeroCrossings
+     */
+    public void setZeroCrossings(boolean zeroCrossings) {
+        this.zeroCrossings = zeroCrossings;
+    }
+
+    /**
+     * @return minimum slope of zero crossings
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the minimum difference of the responses on both sides of a zero
+     * crossing, default 0.
+     *
+     * @param threshold
+     */
+    public void setThreshold(double threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must be >= 0 but was " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
     //</editor-fold>
 }
@@ -23,29 +23,48 @@
  */
 package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 
-import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of the SUSAN (Smallest Univalue Segment Assimilating Nucleus) edge detector.
  *
  * See also the Wikipedia page: http://en.wikipedia.org/wiki/Corner_detection for more information.</p>
  *
+ * For each pixel (the nucleus) the USAN area, that is the amount of pixels in a
+ * circular mask around it with a brightness similar to the nucleus, is
+ * computed. Pixels whose USAN is smaller than 3/4 of the mask are edge pixels.
+ * Optionally, local minima of the USAN that are smaller than half of the mask
+ * are reported as corners in the same pass, see {@link #setCorners(boolean)}.
+ *
+ * The mask is precomputed as a list of pixel offsets and the similarity of two
+ * brightness values is looked up in a table, which holds either the hard
+ * threshold |a - b| &lt; threshold (default) or the smooth similarity
+ * exp(-((a - b) / threshold)^6) of the original paper, see
+ * {@link #setSmoothSimilarity(boolean)}. The image is processed row by row in
+ * parallel row bands.
+ *
+ * In the processed image edges are written black and all other pixels white.
+ *
  * @author Benedikt
  */
 public class Susan extends AbstractDescriptor {
 
-    private final int IS_EDGE = -1;
-    private final int NO_EDGE = -16777216;
+    private static final int WHITE = -1;
+    private static final int BLACK = -16777216;
 
     private int radius;
     private int threshold;
+    private boolean smoothSimilarity = false;
+    private boolean corners = false;
+    private int parallelism = RowBands.defaultParallelism();
     private ByteProcessor edgemask;
-    private int[][] picture;
+    private ByteProcessor cornermask;
 
     /**
      * Standart constructor with radius 2 and threshold 15
@@ -82,17 +101,30 @@ public class Susan extends AbstractDescriptor {
     public void run(ImageProcessor ip) {
         startProgress();
 
-        this.picture = ip.getIntArray();
-        if (ip.getClass().isAssignableFrom(ColorProcessor.class)) {
-            colorToGray();
-        }
-        this.edgemask = new ByteProcessor(ip.getWidth(), ip.getHeight());
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        int[] gray = toGray(ip);
+        this.edgemask = new ByteProcessor(width, height);
+        this.cornermask = corners ? new ByteProcessor(width, height) : null;
 
-        process();
+        process(gray, width, height);
 
         // write the result back into the image processor
-        for (int i = 0; i < edgemask.getPixelCount(); i++) {
-            ip.set(i, edgemask.get(i) != 0 ? IS_EDGE : NO_EDGE);
+        byte[] edges = (byte[]) edgemask.getPixels();
+        if (ip instanceof ColorProcessor) {
+            int[] pixels = (int[]) ip.getPixels();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = edges[i] != 0 ? BLACK : WHITE;
+            }
+        } else if (ip instanceof ByteProcessor) {
+            byte[] pixels = (byte[]) ip.getPixels();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = edges[i] != 0 ? (byte) 0 : (byte) 255;
+            }
+        } else {
+            for (int i = 0; i < edges.length; i++) {
+                ip.set(i, edges[i] != 0 ? BLACK : WHITE);
+            }
         }
 
         endProgress();
@@ -107,44 +139,157 @@ public class Susan extends AbstractDescriptor {
      * an edge strength image. Use moment calculations applied to the USAN to
      * find the edge direction. Apply non-maximum suppression, thinning and
      * sub-pixel estimation, if required.
+     *
+     * Only the edge strength is computed here. Pixels closer than radius to the
+     * border are ignored.
      */
-    private void process() {
-        int WIDTH = edgemask.getWidth();
-        int HEIGHT = edgemask.getHeight();
-
-        int[][] mask = new int[radius * 2 + 1][radius * 2 + 1];
-        //ignore borders
-        for (int x = radius; x < WIDTH - radius; x++) {
-            for (int y = radius; y < HEIGHT - radius; y++) {
-                for (int maskX = 0; maskX <= radius * 2; maskX++) {
-                    for (int maskY = 0; maskY <= radius * 2; maskY++) {
-                        mask[maskX][maskY] = picture[x - radius + maskX][y - radius + maskY];
-                    }
+    private void process(final int[] gray, final int width, final int height) {
+        final int[] offsets = maskOffsets(radius, width);
+        final float[] similarity = similarityTable();
+        final float edgeThreshold = 0.75f * offsets.length;
+        final float cornerThreshold = 0.5f * offsets.length;
+        final byte[] edges = (byte[]) edgemask.getPixels();
+        final byte[] cornerPixels = corners ? (byte[]) cornermask.getPixels() : null;
+        final int r = radius;
+        final int rows = Math.max(0, height - 2 * r);
+
+        final AtomicInteger rowsDone = new AtomicInteger();
+        RowBands.run(rows, parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                // USAN of the rows y - 1, y and y + 1 for the corner minima
+                float[] previous = corners ? new float[width] : null;
+                float[] current = corners ? new float[width] : null;
+                float[] next = new float[width];
+                if (corners) {
+                    usan(gray, width, r + from - 1, offsets, similarity, current);
+                    usan(gray, width, r + from, offsets, similarity, next);
                 }
-                {//horizontal edge
-                    boolean edge = true;
-                    for (int maskX = 0; maskX <= radius * 2; maskX++) {
-                        for (int maskY = 0; edge && maskY <= radius; maskY++) {
-                            edge &= Math.abs(mask[maskX][maskY] - mask[radius][radius]) < threshold;
+                for (int y = r + from; y < r + to; y++) {
+                    if (corners) {
+                        float[] t = previous;
+                        previous = current;
+                        current = next;
+                        next = t;
+                        usan(gray, width, y + 1, offsets, similarity, next);
+                    } else {
+                        usan(gray, width, y, offsets, similarity, next);
+                        current = next;
+                    }
+
+                    final int row = y * width;
+                    for (int x = r; x < width - r; x++) {
+                        if (current[x] < edgeThreshold) {
+                            edges[row + x] = (byte) 255;
                         }
-                        edgemask.set(x, y, edge ? 255 : 0);
                     }
-                }
-                {//vertical edge
-                    boolean edge = true;
-                    for (int maskX = 0; maskX <= radius; maskX++) {
-                        for (int maskY = 0; edge && maskY <= radius * 2; maskY++) {
-                            edge &= Math.abs(mask[maskX][maskY] - mask[radius][radius]) < threshold;
+                    if (corners && y > r && y < height - r - 1) {
+                        for (int x = r + 1; x < width - r - 1; x++) {
+                            final float n = current[x];
+                            // ties are broken in favour of the first pixel in scan order
+                            if (n < cornerThreshold
+                                    && n <= previous[x - 1] && n <= previous[x] && n <= previous[x + 1]
+                                    && n <= current[x - 1] && n < current[x + 1]
+                                    && n < next[x - 1] && n < next[x] && n < next[x + 1]) {
+                                cornerPixels[row + x] = (byte) 255;
+                            }
                         }
-                        edgemask.set(x, y, edge ? 255 : 0);
+                    }
+                    int done = rowsDone.incrementAndGet();
+                    if (from == 0) { // calling thread
+                        progress(done, rows);
                     }
                 }
             }
-            int progress = (int) 100d * x / WIDTH;
+        });
+    }
 
-            pcs.firePropertyChange(Progress.getName(), null, new Progress(progress));
+    /**
+     * Computes the USAN area of the pixels [radius, width - radius[ in row y.
+     * Rows outside the processed area (only needed as neighbours of corner
+     * candidates) are skipped.
+     */
+    private void usan(int[] gray, int width, int y, int[] offsets, float[] similarity, float[] out) {
+        final int height = gray.length / width;
+        if (y < radius || y >= height - radius) {
+            return;
         }
+        for (int x = radius, i = y * width + radius; x < width - radius; x++, i++) {
+            final int base = 255 - gray[i];
+            float n = 0;
+            for (int offset : offsets) {
+                n += similarity[gray[i + offset] + base];
+            }
+            out[x] = n;
+        }
+    }
 
+    /**
+     * Returns the index offsets of the pixels within the given radius
+     * (including the nucleus) in an image of the given width.
+     */
+    static int[] maskOffsets(int radius, int width) {
+        final double r2 = (radius + 0.5) * (radius + 0.5);
+        int count = 0;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if (dx * dx + dy * dy <= r2) {
+                    count++;
+                }
+            }
+        }
+        int[] offsets = new int[count];
+        count = 0;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                if (dx * dx + dy * dy <= r2) {
+                    offsets[count++] = dy * width + dx;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the similarity of two brightness values a and b at index
+     * a - b + 255.
+     */
+    private float[] similarityTable() {
+        float[] table = new float[511];
+        for (int d = -255; d <= 255; d++) {
+            if (d == 0) {
+                table[d + 255] = 1;
+            } else if (smoothSimilarity) {
+                table[d + 255] = (float) Math.exp(-Math.pow((double) d / threshold, 6));
+            } else {
+                table[d + 255] = Math.abs(d) < threshold ? 1 : 0;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns the brightness of the pixels in row major order. RGB pixels are
+     * converted by the NTSC weights, 8 bit images use the raw pixel values.
+     */
+    private int[] toGray(ImageProcessor ip) {
+        if (ip instanceof ColorProcessor) {
+            int[] pixels = (int[]) ip.getPixels();
+            int[] gray = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                gray[i] = ARGB_NTSC(pixels[i]);
+            }
+            return gray;
+        }
+        if (!(ip instanceof ByteProcessor)) {
+            ip = ip.convertToByte(true);
+        }
+        byte[] pixels = (byte[]) ip.getPixels();
+        int[] gray = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            gray[i] = pixels[i] & 0xff;
+        }
+        return gray;
     }
 
     /**
@@ -154,13 +299,13 @@ public class Susan extends AbstractDescriptor {
         return edgemask;
     }
 
-    private void colorToGray() {
-        // to Gray
-        for (int i = 0; i < picture.length; i++) {
-            for (int j = 0; j < picture[0].length; j++) {
-                picture[i][j] = ARGB_NTSC(picture[i][j]);
-            }
-        }
+    /**
+     * @return the corner mask with corners being marked with 255 or null if
+     * corner detection is disabled
+     * @see #setCorners(boolean)
+     */
+    public ByteProcessor getCornermask() {
+        return cornermask;
     }
 
     /**
@@ -210,5 +355,50 @@ public class Susan extends AbstractDescriptor {
         this.threshold = threshold;
     }
 
+    /**
+     * @return true if the smooth similarity exp(-(d / threshold)^6) is used
+     * instead of the hard threshold
+     */
+    public boolean isSmoothSimilarity() {
+        return smoothSimilarity;
+    }
+
+    /**
+     * @param smoothSimilarity true to use the smooth similarity
+     * exp(-(d / threshold)^6) instead of the hard threshold, default false
+     */
+    public void setSmoothSimilarity(boolean smoothSimilarity) {
+        this.smoothSimilarity = smoothSimilarity;
+    }
+
+    /**
+     * @return true if corners are detected as well
+     */
+    public boolean isCorners() {
+        return corners;
+    }
+
+    /**
+     * @param corners true to detect corners as well, default false
+     * @see #getCornermask()
+     */
+    public void setCorners(boolean corners) {
+        this.corners = corners;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
     //</editor-fold>
 }
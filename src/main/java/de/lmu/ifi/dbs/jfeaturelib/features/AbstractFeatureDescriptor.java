@@ -25,7 +25,12 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.Telemetry;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.MaskSpans;
+import de.lmu.ifi.dbs.jfeaturelib.utils.PixelView;
 import de.lmu.ifi.dbs.utilities.Arrays2;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -51,6 +56,15 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
      * Property change support that can be used by the implementing class to inform listeners about updates.
      */
     protected final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
+    /**
+     * Telemetry that is informed about progress and stage durations.
+     */
+    private Telemetry telemetry = Telemetry.NOOP;
+    /**
+     * Most recent progress value reported by {@link #progress(int, int)}. Used
+     * to throttle the reports to one per percent.
+     */
+    private volatile int lastProgress = -1;
     /**
      * The data arrays which hold the calculated features.
      *
@@ -64,6 +78,16 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
      * Pixels outside the mask have a value of zero.
      */
     private ImageProcessor mask = null;
+    /**
+     * Direct view on the pixels of {@link #mask} for fast lookups or NULL if
+     * there is no mask.
+     */
+    private PixelView.Bytes maskPixels = null;
+    /**
+     * Run length encoded {@link #mask}, compiled on demand by
+     * {@link #getMaskSpans()}.
+     */
+    private MaskSpans maskSpans = null;
 
     /**
      * Returns a reference to the data calculated by the according descriptor.
@@ -94,6 +118,21 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
         pcs.addPropertyChangeListener(listener);
     }
 
+    @Override
+    public void setTelemetry(Telemetry telemetry) {
+        if (telemetry == null) {
+            throw new NullPointerException("telemetry must not be null");
+        }
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return the current telemetry (never null)
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
     /**
      * Adds the double array to the list. Keep in mind that the array is NOT copied but directly put into the list.
      *
@@ -132,10 +171,61 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
      * @param event
      */
     protected void firePropertyChange(Progress event) {
-        pcs.firePropertyChange(Progress.getName(), previous, event);
+        lastProgress = event.getProgress();
+        telemetry.progress(this, lastProgress);
+        if (pcs.hasListeners(Progress.getName())) {
+            pcs.firePropertyChange(Progress.getName(), previous, event);
+        }
         previous = event;
     }
 
+    /**
+     * Reports the progress of a loop, for example after each processed row.
+     *
+     * The report is throttled: telemetry and listeners are only informed if the
+     * percentage changed. No objects are created if neither a telemetry nor a
+     * listener is registered, so this method is cheap enough for inner loops.
+     *
+     * Loops that are split into parallel row bands should count the finished
+     * rows of all bands (for example in an AtomicInteger) but only report from
+     * the band that runs in the calling thread (the one starting at row 0), so
+     * that listeners receive the events in order and in the thread that runs
+     * the descriptor. Concurrent calls are nevertheless safe.
+     *
+     * @param done amount of processed units
+     * @param total total amount of units
+     */
+    protected void progress(int done, int total) {
+        int p = total <= 0 ? 100 : (int) Math.min(100, 100L * done / total);
+        if (p != lastProgress) {
+            synchronized (this) {
+                if (p == lastProgress) {
+                    return;
+                }
+                lastProgress = p;
+                telemetry.progress(this, p);
+                if (pcs.hasListeners(Progress.getName())) {
+                    Progress event = new Progress(p);
+                    pcs.firePropertyChange(Progress.getName(), previous, event);
+                    previous = event;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the duration of a processing stage to the telemetry.
+     *
+     * @param stage name of the stage
+     * @param start start time of the stage as obtained by {@link System#nanoTime()}
+     * @return current time which can be used as start time for the next stage
+     */
+    protected long stage(String stage, long start) {
+        long now = System.nanoTime();
+        telemetry.stage(this, stage, now - start);
+        return now;
+    }
+
     @Override
     public void setProperties(LibProperties properties) throws IOException {
     }
@@ -146,10 +236,14 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
     }
 
     protected void startProgress() {
+        lastProgress = 0;
+        telemetry.progress(this, 0);
         pcs.firePropertyChange(Progress.getName(), null, Progress.START);
     }
 
     protected void endProgress() {
+        lastProgress = 100;
+        telemetry.progress(this, 100);
         pcs.firePropertyChange(Progress.getName(), null, Progress.END);
     }
 
@@ -163,6 +257,14 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
             throw new NullPointerException("passed imageprocessor must not be null");
         }
         this.mask = ip.getMask();
+        this.maskSpans = null;
+        if (mask == null) {
+            maskPixels = null;
+        } else if (mask instanceof ByteProcessor) {
+            maskPixels = PixelView.bytes(mask);
+        } else {
+            maskPixels = PixelView.bytes(mask.convertToByte(false));
+        }
     }
 
     /**
@@ -175,7 +277,42 @@ public abstract class AbstractFeatureDescriptor implements FeatureDescriptor {
      * @return true if the pixel is in the mask and should thus be processed.
      */
     protected boolean inMask(int x, int y) {
-        return mask == null || mask.get(x, y) != 0;
+        return maskPixels == null || maskPixels.pixels[maskPixels.index(x, y)] != 0;
+    }
+
+    /**
+     * Ensures that the label image matches the size of the image processor.
+     *
+     * @param ip the image
+     * @param labels the label image
+     * @throws NullPointerException if one of the arguments is null
+     * @throws IllegalArgumentException if the sizes differ
+     * @see RegionDescriptor
+     */
+    protected void checkLabels(ImageProcessor ip, LabelImage labels) {
+        if (ip == null || labels == null) {
+            throw new NullPointerException("image and labels must not be null");
+        }
+        if (ip.getWidth() != labels.getWidth() || ip.getHeight() != labels.getHeight()) {
+            throw new IllegalArgumentException("label image size " + labels.getWidth() + "x" + labels.getHeight()
+                    + " != image size " + ip.getWidth() + "x" + ip.getHeight());
+        }
+    }
+
+    /**
+     * Returns the spans of the current mask. Descriptors that iterate over
+     * all pixels in the mask should iterate over these spans instead of
+     * calling {@link #inMask(int, int)} for every pixel of the image.
+     *
+     * The spans are compiled once per mask.
+     *
+     * @return spans of the current mask or null if no mask is set
+     */
+    protected MaskSpans getMaskSpans() {
+        if (maskSpans == null && mask != null) {
+            maskSpans = MaskSpans.of(mask);
+        }
+        return maskSpans;
     }
 
     /**
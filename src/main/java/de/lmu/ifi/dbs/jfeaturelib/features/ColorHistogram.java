@@ -27,13 +27,17 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
-import java.awt.Color;
 import java.util.EnumSet;
 
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ColorQuantizer;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.MaskSpans;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Palette;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 
 /**
@@ -44,6 +48,12 @@ import de.lmu.ifi.dbs.utilities.Arrays2;
  *
  * In case of using the HSB color space, good results have been reported with 7x2x2 and 7x3x3 splits, for example.
  *
+ * The bins are looked up in a table that is shared by all instances with the same configuration, see
+ * {@link ColorQuantizer}. With {@link #setKeyBits(int)} the HSB table can be reduced to 15 or 18 bit keys.
+ *
+ * 8 bit images are not converted to RGB. Instead, the palette indices are counted and only the 256 colors of the
+ * palette are quantized.
+ *
  * This code is contributed to jFeatureLib from the ELKI data mining project at http://elki.dbs.ifi.lmu.de/
  *
  * Recommended distance functions for this feature:
@@ -57,7 +67,7 @@ import de.lmu.ifi.dbs.utilities.Arrays2;
  * @author Erich Schubert
  * @since 1.3.0
  */
-public class ColorHistogram extends AbstractFeatureDescriptor {
+public class ColorHistogram extends AbstractFeatureDescriptor implements RegionDescriptor {
 
     /**
      * Type defining which type of colorspace should be used
@@ -71,6 +81,10 @@ public class ColorHistogram extends AbstractFeatureDescriptor {
      * Bins per plane.
      */
     int binX, binY, binZ;
+    /**
+     * Bits per channel of the HSB table key.
+     */
+    int keyBits = 8;
 
     /**
      * Constructor for 7x3x3 = 63 bins.
@@ -101,13 +115,27 @@ public class ColorHistogram extends AbstractFeatureDescriptor {
         return this;
     }
 
+    /**
+     * Set the bits per channel of the key of the HSB lookup table. 8 bits
+     * (default) are exact, 5 or 6 bits quantize the colors before the HSB
+     * conversion and use a much smaller table.
+     *
+     * @param keyBits bits per channel in [5,8]
+     * @throws IllegalArgumentException if keyBits is not in [5,8]
+     */
+    public ColorHistogram setKeyBits(int keyBits) {
+        checkArgument(keyBits >= 5 && keyBits <= 8, "key bits must be in [5,8] but was " + keyBits);
+        this.keyBits = keyBits;
+        return this;
+    }
+
     @Override
     public void setProperties(LibProperties properties) {
         type = TYPE.valueOf(properties.getString(LibProperties.COLOR_HISTOGRAMS_TYPE));
         binX = properties.getInteger(LibProperties.COLOR_HISTOGRAMS_BINS_X);
         binY = properties.getInteger(LibProperties.COLOR_HISTOGRAMS_BINS_Y);
         binZ = properties.getInteger(LibProperties.COLOR_HISTOGRAMS_BINS_Z);
-
+        setKeyBits(properties.getInteger(LibProperties.COLOR_HISTOGRAMS_KEY_BITS, 8));
 
         checkNotNull(type, "type must not be null");
         checkArgument(binX > 0, "bin x must be >0 but was " + binX);
@@ -125,30 +153,88 @@ public class ColorHistogram extends AbstractFeatureDescriptor {
 
     @Override
     public void run(ImageProcessor ip) {
+        int[] palette = Palette.colors(ip);
+        if (palette == null && !ColorProcessor.class.isAssignableFrom(ip.getClass())) {
+            ip = ip.convertToRGB();
+        }
+        firePropertyChange(Progress.START);
+        if (palette != null) {
+            processPalette((ByteProcessor) ip, palette);
+        } else {
+            process((ColorProcessor) ip);
+        }
+        firePropertyChange(Progress.END);
+    }
+
+    /**
+     * Computes one normalized histogram per region of the label image.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkLabels(ip, labels);
+        int[] palette = Palette.colors(ip);
+        if (palette != null) {
+            firePropertyChange(Progress.START);
+            int[][] counts = Palette.count((byte[]) ip.getPixels(), labels);
+            for (int k = 0; k < counts.length; k++) {
+                double[] feature = new double[binX * binY * binZ];
+                addPaletteCounts(counts[k], palette, feature);
+                Arrays2.div(feature, labels.getArea(k));
+                addData(feature);
+            }
+            firePropertyChange(Progress.END);
+            return;
+        }
         if (!ColorProcessor.class.isAssignableFrom(ip.getClass())) {
             ip = ip.convertToRGB();
         }
         firePropertyChange(Progress.START);
-        process((ColorProcessor) ip);
+
+        final int[] region = labels.getRegionIndex();
+        final double[][] features = new double[labels.getRegionCount()][binX * binY * binZ];
+        final int[] pixels = (int[]) ip.getPixels();
+        final ColorQuantizer quantizer = getQuantizer();
+        for (int i = 0; i < region.length; i++) {
+            if (region[i] >= 0) {
+                features[region[i]][quantizer.getBin(pixels[i])]++;
+            }
+        }
+
+        for (int k = 0; k < features.length; k++) {
+            Arrays2.div(features[k], labels.getArea(k));
+            addData(features[k]);
+        }
         firePropertyChange(Progress.END);
     }
 
     private void process(ColorProcessor ip) {
         double[] feature = new double[binX * binY * binZ];
-        int processedPixels = 0;
-
-        ImageProcessor mask = ip.getMask();
-
-        int numpixels = ip.getPixelCount();
-        float[] hsbvals = new float[3]; // Conversion buffer
-        for (int i = 0; i < numpixels; i++) {
-            if (mask == null || mask.get(i) != 0) {
-                if (type == TYPE.HSB) {
-                    feature[getBinForHSB(ip.get(i), hsbvals)]++;
-                } else if (type == TYPE.RGB) {
-                    feature[getBinForRGB(ip.get(i))]++;
+        int processedPixels;
+
+        setMask(ip);
+        MaskSpans spans = getMaskSpans();
+
+        final int[] pixels = (int[]) ip.getPixels();
+        final ColorQuantizer quantizer = getQuantizer();
+        if (spans == null) {
+            processedPixels = ip.getPixelCount();
+            for (int i = 0; i < processedPixels; i++) {
+                feature[quantizer.getBin(pixels[i])]++;
+            }
+        } else {
+            // only visit the pixels inside the mask
+            processedPixels = spans.getArea();
+            final int width = ip.getWidth();
+            for (int y = 0; y < spans.getHeight(); y++) {
+                for (int s = spans.rowStart(y); s < spans.rowEnd(y); s++) {
+                    final int end = y * width + spans.spanEnd(s);
+                    for (int i = y * width + spans.spanStart(s); i < end; i++) {
+                        feature[quantizer.getBin(pixels[i])]++;
+                    }
                 }
-                processedPixels++;
             }
         }
 
@@ -156,23 +242,35 @@ public class ColorHistogram extends AbstractFeatureDescriptor {
         addData(feature);
     }
 
-    private int getBinForRGB(int rgb) {
-        int r = (rgb & 0xFF0000) >> 16, g = (rgb & 0x00FF00) >> 8, b = (rgb & 0x0000FF);
-        r = (int) Math.floor(binX * r / 256.);
-        g = (int) Math.floor(binY * g / 256.);
-        b = (int) Math.floor(binZ * b / 256.);
-        return r * binX * binY + g * binZ + b;
+    /**
+     * Counts the palette indices inside the mask and adds each count to the
+     * bin of the palette color.
+     */
+    private void processPalette(ByteProcessor ip, int[] palette) {
+        setMask(ip);
+        MaskSpans spans = getMaskSpans();
+        int[] counts = Palette.count((byte[]) ip.getPixels(), ip.getWidth(), spans);
+
+        double[] feature = new double[binX * binY * binZ];
+        addPaletteCounts(counts, palette, feature);
+        Arrays2.div(feature, spans == null ? ip.getPixelCount() : spans.getArea());
+        addData(feature);
     }
 
-    private int getBinForHSB(int rgb, float[] hsbvals) {
-        final int r = (rgb & 0xFF0000) >> 16, g = (rgb & 0x00FF00) >> 8, b = (rgb & 0x0000FF);
-        // TODO: AWT Color.RGBtoHSB can be sped up numerically
-        Color.RGBtoHSB(r, g, b, hsbvals);
-        // The values returned by RGBtoHSB are all in [0:1]
-        int h = Math.min((int) Math.floor(binX * hsbvals[0]), binX - 1);
-        int s = Math.min((int) Math.floor(binY * hsbvals[1]), binY - 1);
-        int v = Math.min((int) Math.floor(binZ * hsbvals[2]), binZ - 1);
-        return h * binY * binZ + s * binZ + v;
+    private void addPaletteCounts(int[] counts, int[] palette, double[] feature) {
+        final ColorQuantizer quantizer = getQuantizer();
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] != 0) {
+                feature[quantizer.getBin(palette[v])] += counts[v];
+            }
+        }
+    }
+
+    private ColorQuantizer getQuantizer() {
+        if (type == TYPE.HSB) {
+            return ColorQuantizer.get(ColorQuantizer.Space.HSB, binX, binY, binZ, keyBits);
+        }
+        return ColorQuantizer.rgb(binX, binY, binZ);
     }
 
     @Override
@@ -26,6 +26,8 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 import Jama.Matrix;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.ByteProcessor;
@@ -69,22 +71,45 @@ import java.util.EnumSet;
  * <li>Maximum Correlation Coefficient</li>
  * </ol>
  *
+ * The co-occurrence matrices of all configured distances are counted in a
+ * single scan over the image. For each distance the 14 features are computed
+ * from the sum of the 0, 45, 90 and 135 degree matrices and concatenated in
+ * the order of the distances. The normalize, statistics and features stages
+ * are reported to the telemetry once per distance.
+ *
+ * A subset of the features can be selected by
+ * {@link #setFeatureSelection(EnumSet)}. Statistics that are only needed by
+ * excluded features are not computed, in particular the eigen decomposition
+ * of the maximum correlation coefficient.
+ *
  * @author graf
  */
-public class Haralick extends AbstractFeatureDescriptor {
+public class Haralick extends AbstractFeatureDescriptor implements RegionDescriptor {
 
+    /**
+     * The number of haralick features
+     */
+    public static final int NUM_FEATURES = 14;
+    /**
+     * The minimum number of gray values for the textures
+     */
+    public static final int MIN_GRAY_VALUES = 8;
+    /**
+     * The maximum number of gray values for the textures
+     */
+    public static final int MAX_GRAY_VALUES = 256;
     /**
      * The number of gray values for the textures
      */
-    private final int NUM_GRAY_VALUES = 32;
+    private int numGrayValues = 32;
     /**
      * p_(x+y) statistics
      */
-    private final double[] p_x_plus_y = new double[2 * NUM_GRAY_VALUES - 1];
+    private double[] p_x_plus_y;
     /**
      * p_(x-y) statistics
      */
-    private final double[] p_x_minus_y = new double[NUM_GRAY_VALUES];
+    private double[] p_x_minus_y;
     /**
      * row mean value
      */
@@ -120,20 +145,54 @@ public class Haralick extends AbstractFeatureDescriptor {
     /**
      * p_x statistics
      */
-    private final double[] p_x = new double[NUM_GRAY_VALUES];
+    private double[] p_x;
     /**
      * p_y statistics
      */
-    private final double[] p_y = new double[NUM_GRAY_VALUES];
+    private double[] p_y;
     // -
-    private int haralickDist;
+    private int[] haralickDists;
+    /**
+     * the features that are computed, in the order of {@link Feature}
+     */
+    private EnumSet<Feature> selection = EnumSet.allOf(Feature.class);
+    /**
+     * selection flags indexed by {@link Feature#ordinal()}
+     */
+    private final boolean[] selected = new boolean[NUM_FEATURES];
     double[] features = null;
+    /**
+     * co-occurrence engine, reused as long as the configuration is unchanged
+     */
+    private Coocurrence coocurrence = null;
+
+    /**
+     * The haralick features in the order of the feature vector
+     */
+    public enum Feature {
+
+        ANGULAR_SECOND_MOMENT,
+        CONTRAST,
+        CORRELATION,
+        VARIANCE,
+        INVERSE_DIFFERENCE_MOMENT,
+        SUM_AVERAGE,
+        SUM_VARIANCE,
+        SUM_ENTROPY,
+        ENTROPY,
+        DIFFERENCE_VARIANCE,
+        DIFFERENCE_ENTROPY,
+        INFORMATION_MEASURE_OF_CORRELATION_1,
+        INFORMATION_MEASURE_OF_CORRELATION_2,
+        MAXIMUM_CORRELATION_COEFFICIENT
+    }
 
     /**
      * Constructs a haralick detector with default parameters.
      */
     public Haralick() {
-        this.haralickDist = 1;
+        this.haralickDists = new int[]{1};
+        Arrays.fill(selected, true);
     }
 
     /**
@@ -143,6 +202,20 @@ public class Haralick extends AbstractFeatureDescriptor {
      */
     public Haralick(int haralickDist) {
         setHaralickDist(haralickDist);
+        Arrays.fill(selected, true);
+    }
+
+    /**
+     * Constructs a haralick detector for several distances.
+     *
+     * @param haralickDists the distances (each >= 1)
+     * @param numGrayValues the number of gray values for the textures
+     * (between {@value #MIN_GRAY_VALUES} and {@value #MAX_GRAY_VALUES})
+     */
+    public Haralick(int[] haralickDists, int numGrayValues) {
+        setHaralickDists(haralickDists);
+        setNumGrayValues(numGrayValues);
+        Arrays.fill(selected, true);
     }
 
     /**
@@ -164,7 +237,25 @@ public class Haralick extends AbstractFeatureDescriptor {
 
     @Override
     public void setProperties(LibProperties properties) throws IOException {
-        setHaralickDist(properties.getInteger(LibProperties.HARALICK_DISTANCE, 1));
+        String dists = properties.getString(LibProperties.HARALICK_DISTANCE, "1").trim();
+        String[] tokens = dists.split(",");
+        int[] haralickDists = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            haralickDists[i] = Integer.parseInt(tokens[i].trim());
+        }
+        setHaralickDists(haralickDists);
+        setNumGrayValues(properties.getInteger(LibProperties.HARALICK_GRAY_VALUES, 32));
+
+        String names = properties.getString(LibProperties.HARALICK_FEATURES, "").trim();
+        if (names.isEmpty()) {
+            setFeatureSelection(EnumSet.allOf(Feature.class));
+        } else {
+            EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
+            for (String name : names.split(",")) {
+                features.add(Feature.valueOf(name.trim()));
+            }
+            setFeatureSelection(features);
+        }
     }
 
     /**
@@ -207,44 +298,200 @@ public class Haralick extends AbstractFeatureDescriptor {
         sb.append("Information Measures of Correlation, ");
         sb.append("Information Measures of Correlation, ");
         sb.append("Maximum Correlation COefficient");
+        sb.append(" (for each distance)");
         return sb.toString();
     }
 
-    private void process(ByteProcessor image) {
-        features = new double[14];
+    /**
+     * Computes the haralick features of each region of the label image. The
+     * co-occurrence matrices of all regions are built in a single pass. Only
+     * pixel pairs that lie in the same region are counted.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkLabels(ip, labels);
+        if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
+            ip = ip.convertToByte(true);
+        }
+        firePropertyChange(Progress.START);
+
+        final int regions = labels.getRegionCount();
+        final int[] region = labels.getRegionIndex();
+        final byte[] pixels = (byte[]) ip.getPixels();
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final int G = numGrayValues;
+        final int[] dists = haralickDists;
+
+        // quantized gray values, see Coocurrence
+        final double grayScale = 256d / G;
+        final int[] quantized = new int[256];
+        for (int gray = 0; gray < 256; gray++) {
+            quantized[gray] = (int) (gray / grayScale);
+        }
 
+        // one directional count matrix per region and distance, all angles summed
+        final int[][] counts = new int[regions * dists.length][G * G];
+        final double[] graySums = new double[regions];
+        for (int y = 0, pos = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, pos++) {
+                final int k = region[pos];
+                if (k < 0) {
+                    continue;
+                }
+                final int gray = pixels[pos] & 0xff;
+                final int row = quantized[gray] * G;
+                graySums[k] += gray;
+
+                for (int n = 0; n < dists.length; n++) {
+                    final int d = dists[n];
+                    final int yOffset = d * width;
+                    final int[] c = counts[k * dists.length + n];
+
+                    // 0, 45, 90 and 135 degree neighbors in the same region
+                    if (x - d >= 0 && region[pos - d] == k) {
+                        c[row + quantized[pixels[pos - d] & 0xff]]++;
+                    }
+                    if (y - d >= 0) {
+                        if (x + d < width && region[pos + d - yOffset] == k) {
+                            c[row + quantized[pixels[pos + d - yOffset] & 0xff]]++;
+                        }
+                        if (region[pos - yOffset] == k) {
+                            c[row + quantized[pixels[pos - yOffset] & 0xff]]++;
+                        }
+                        if (x - d >= 0 && region[pos - d - yOffset] == k) {
+                            c[row + quantized[pixels[pos - d - yOffset] & 0xff]]++;
+                        }
+                    }
+                }
+            }
+        }
+
+        final double[][] p = new double[G][G];
+        for (int k = 0; k < regions; k++) {
+            final int area = labels.getArea(k);
+            double meanGrayValue = Math.floor(graySums[k] / area / grayScale) * grayScale;
+            double[] regionFeatures = new double[selection.size() * dists.length];
+            for (int n = 0; n < dists.length; n++) {
+                clear(p);
+                addSymmetric(counts[k * dists.length + n], p);
+                normalize(p, area * 8d);
+                calculateStatistics(p);
+                copySelected(computeFeatures(p, meanGrayValue), regionFeatures, n * selection.size());
+            }
+            addData(regionFeatures);
+            progress(k + 1, regions);
+        }
+        firePropertyChange(Progress.END);
+    }
+
+    private void process(ByteProcessor image) {
         firePropertyChange(new Progress(1, "creating coocurrence matrix"));
-        Coocurrence coocurrence = new Coocurrence(image, NUM_GRAY_VALUES, this.haralickDist);
-        coocurrence.calculate();
-        double[][] cooccurrenceMatrix = coocurrence.getCooccurrenceMatrix();
+        long time = System.nanoTime();
+        if (coocurrence == null) {
+            coocurrence = new Coocurrence(numGrayValues, haralickDists);
+        }
+        coocurrence.calculate(image);
         double meanGrayValue = coocurrence.getMeanGrayValue();
+        time = stage("coocurrence", time);
+
+        firePropertyChange(new Progress(25, "computing features"));
+        features = new double[selection.size() * haralickDists.length];
+        for (int n = 0; n < haralickDists.length; n++) {
+            double[][] cooccurrenceMatrix = coocurrence.getCooccurrenceMatrix(n);
+            normalize(cooccurrenceMatrix, coocurrence.getCooccurenceSums());
+            time = stage("normalize", time);
+            calculateStatistics(cooccurrenceMatrix);
+            time = stage("statistics", time);
+            copySelected(computeFeatures(cooccurrenceMatrix, meanGrayValue), features, n * selection.size());
+            time = stage("features", time);
+        }
+    }
 
-        firePropertyChange(new Progress(25, "normalizing"));
-        normalize(cooccurrenceMatrix, coocurrence.getCooccurenceSums());
+    /**
+     * Computes the selected features of a normalized co-occurrence matrix
+     * and writes them to the target array.
+     *
+     * @param p normalized co-occurrence matrix
+     * @param meanGrayValue the mean gray value
+     * @param target the feature vector
+     * @param offset start index in the target
+     */
+    void computeSelected(double[][] p, double meanGrayValue, double[] target, int offset) {
+        calculateStatistics(p);
+        copySelected(computeFeatures(p, meanGrayValue), target, offset);
+    }
 
-        firePropertyChange(new Progress(50, "computing statistics"));
-        calculateStatistics(cooccurrenceMatrix);
+    /**
+     * Returns a new descriptor with the same configuration. Used by
+     * concurrent workers as the statistics are stored in the instance.
+     *
+     * @return a copy of the configuration
+     */
+    Haralick copy() {
+        Haralick copy = new Haralick(haralickDists, numGrayValues);
+        copy.setFeatureSelection(selection);
+        return copy;
+    }
+
+    /**
+     * Copies the selected features to the target array.
+     */
+    private void copySelected(double[] all, double[] target, int offset) {
+        for (Feature feature : selection) {
+            target[offset++] = all[feature.ordinal()];
+        }
+    }
 
-        firePropertyChange(new Progress(75, "computing features"));
+    /**
+     * Computes the selected features from the normalized co-occurrence matrix.
+     * Features that are not selected remain 0. Requires
+     * {@link #calculateStatistics(double[][])} to be called before.
+     */
+    private double[] computeFeatures(double[][] p, double meanGrayValue) {
+        final int G = p.length;
+        final boolean[] s = selected;
+        final boolean entropy = s[8] || s[11] || s[12];
+        final boolean maxCorrelation = s[13];
+        double[] features = new double[NUM_FEATURES];
+        double[][] Q = maxCorrelation ? new double[G][G] : null;
+
+        // mean of p_(x-y) and p_(x+y)
+        double sum_j_p_x_minus_y = 0;
+        for (int j = 0; j < G; j++) {
+            sum_j_p_x_minus_y += j * p_x_minus_y[j];
+        }
+        double sum_j_p_x_plus_y = 0;
+        for (int j = 0; j < 2 * G - 1; j++) {
+            sum_j_p_x_plus_y += j * p_x_plus_y[j];
+        }
 
-        double[][] p = cooccurrenceMatrix;
-        double[][] Q = new double[NUM_GRAY_VALUES][NUM_GRAY_VALUES];
-        for (int i = 0; i < NUM_GRAY_VALUES; i++) {
-            double sum_j_p_x_minus_y = 0;
-            for (int j = 0; j < NUM_GRAY_VALUES; j++) {
+        for (int i = 0; i < G; i++) {
+            for (int j = 0; j < G; j++) {
                 double p_ij = p[i][j];
 
-                sum_j_p_x_minus_y += j * p_x_minus_y[j];
-
-                features[0] += p_ij * p_ij;
-                features[2] += i * j * p_ij - mu_x * mu_y;
-                features[3] += (i - meanGrayValue) * (i - meanGrayValue) * p_ij;
-                features[4] += p_ij / (1 + (i - j) * (i - j));
-                features[8] += p_ij * log(p_ij);
+                if (s[0]) {
+                    features[0] += p_ij * p_ij;
+                }
+                if (s[2]) {
+                    features[2] += i * j * p_ij - mu_x * mu_y;
+                }
+                if (s[3]) {
+                    features[3] += (i - meanGrayValue) * (i - meanGrayValue) * p_ij;
+                }
+                if (s[4]) {
+                    features[4] += p_ij / (1 + (i - j) * (i - j));
+                }
+                if (entropy) {
+                    features[8] += p_ij * log(p_ij);
+                }
 
                 // feature 13
-                if (p_ij != 0 && p_x[i] != 0) { // would result in 0
-                    for (int k = 0; k < NUM_GRAY_VALUES; k++) {
+                if (maxCorrelation && p_ij != 0 && p_x[i] != 0) { // would result in 0
+                    for (int k = 0; k < G; k++) {
                         if (p_y[k] != 0 && p[j][k] != 0) { // would result in NaN
                             Q[i][j] += (p_ij * p[j][k]) / (p_x[i] * p_y[k]);
                         }
@@ -258,43 +505,61 @@ public class Haralick extends AbstractFeatureDescriptor {
         }
 
         // feature 13: Max Correlation Coefficient
-        double[] realEigenvaluesOfQ = new Matrix(Q).eig().getRealEigenvalues();
-        Arrays2.abs(realEigenvaluesOfQ);
-        Arrays.sort(realEigenvaluesOfQ);
-        features[13] = Math.sqrt(realEigenvaluesOfQ[realEigenvaluesOfQ.length - 2]);
+        if (maxCorrelation) {
+            double[] realEigenvaluesOfQ = new Matrix(Q).eig().getRealEigenvalues();
+            Arrays2.abs(realEigenvaluesOfQ);
+            Arrays.sort(realEigenvaluesOfQ);
+            features[13] = Math.sqrt(realEigenvaluesOfQ[realEigenvaluesOfQ.length - 2]);
+        }
 
         features[2] /= Math.sqrt(var_x * var_y);
         features[8] *= -1;
         features[10] *= -1;
-        double maxhxhy = Math.max(hx, hy);
-        if (Math.signum(maxhxhy) == 0) {
-            features[11] = 0;
-        } else {
-            features[11] = (features[8] - hxy1) / maxhxhy;
+        if (s[11]) {
+            double maxhxhy = Math.max(hx, hy);
+            if (Math.signum(maxhxhy) == 0) {
+                features[11] = 0;
+            } else {
+                features[11] = (features[8] - hxy1) / maxhxhy;
+            }
+        }
+        if (s[12]) {
+            features[12] = Math.sqrt(1 - Math.exp(-2 * (hxy2 - features[8])));
         }
-        features[12] = Math.sqrt(1 - Math.exp(-2 * (hxy2 - features[8])));
 
-        for (int i = 0; i < 2 * NUM_GRAY_VALUES - 1; i++) {
+        for (int i = 0; i < 2 * G - 1; i++) {
             features[5] += i * p_x_plus_y[i];
             features[7] += p_x_plus_y[i] * log(p_x_plus_y[i]);
-
-            double sum_j_p_x_plus_y = 0;
-            for (int j = 0; j < 2 * NUM_GRAY_VALUES - 1; j++) {
-                sum_j_p_x_plus_y += j * p_x_plus_y[j];
-            }
             features[6] += (i - sum_j_p_x_plus_y) * (i - sum_j_p_x_plus_y) * p_x_plus_y[i];
         }
 
         features[7] *= -1;
+        return features;
     }
 
     /**
-     * Calculates the statistical properties.
+     * Calculates the statistical properties. The entropies hx, hy, hxy1 and
+     * hxy2 are only calculated if an information measure of correlation is
+     * selected.
      */
     private void calculateStatistics(double[][] cooccurrenceMatrix) {
+        final int G = cooccurrenceMatrix.length;
+        if (p_x == null || p_x.length != G) {
+            p_x = new double[G];
+            p_y = new double[G];
+            p_x_plus_y = new double[2 * G - 1];
+            p_x_minus_y = new double[G];
+        } else {
+            Arrays.fill(p_x, 0);
+            Arrays.fill(p_y, 0);
+            Arrays.fill(p_x_plus_y, 0);
+            Arrays.fill(p_x_minus_y, 0);
+        }
+        hx = hy = hxy1 = hxy2 = 0;
+
         // p_x, p_y, p_x+y, p_x-y
-        for (int i = 0; i < NUM_GRAY_VALUES; i++) {
-            for (int j = 0; j < NUM_GRAY_VALUES; j++) {
+        for (int i = 0; i < G; i++) {
+            for (int j = 0; j < G; j++) {
                 double p_ij = cooccurrenceMatrix[i][j];
 
                 p_x[i] += p_ij;
@@ -314,13 +579,16 @@ public class Haralick extends AbstractFeatureDescriptor {
         mu_y = meanVar[0];
         var_y = meanVar[1];
 
-        for (int i = 0; i < NUM_GRAY_VALUES; i++) {
+        if (!selected[11] && !selected[12]) {
+            return;
+        }
+        for (int i = 0; i < G; i++) {
             // hx and hy
             hx += p_x[i] * log(p_x[i]);
             hy += p_y[i] * log(p_y[i]);
 
             // hxy1 and hxy2
-            for (int j = 0; j < NUM_GRAY_VALUES; j++) {
+            for (int j = 0; j < G; j++) {
                 double p_ij = cooccurrenceMatrix[i][j];
                 hxy1 += p_ij * log(p_x[i] * p_y[j]);
                 hxy2 += p_x[i] * p_y[j] * log(p_x[i] * p_y[j]);
@@ -342,12 +610,12 @@ public class Haralick extends AbstractFeatureDescriptor {
         // VAR(X) = E(X^2) - E(X)^2
         // two-pass is numerically stable.
         double ex = 0;
-        for (int i = 0; i < NUM_GRAY_VALUES; i++) {
+        for (int i = 0; i < a.length; i++) {
             ex += a[i];
         }
         ex /= a.length;
         double var = 0;
-        for (int i = 0; i < NUM_GRAY_VALUES; i++) {
+        for (int i = 0; i < a.length; i++) {
             var += (a[i] - ex) * (a[i] - ex);
         }
         var /= (a.length - 1);
@@ -378,20 +646,43 @@ public class Haralick extends AbstractFeatureDescriptor {
      * @param A
      * @param sum
      */
-    private void normalize(double[][] A, double sum) {
+    static void normalize(double[][] A, double sum) {
         for (double[] A1 : A) {
             Arrays2.div(A1, sum);
         }
     }
 
+    static void clear(double[][] A) {
+        for (double[] A1 : A) {
+            Arrays.fill(A1, 0);
+        }
+    }
+
+    /**
+     * Adds the directional counts and their transpose to the symmetric
+     * matrix m.
+     *
+     * @param counts row major directional counts (G x G)
+     * @param m the matrix to add to (G x G)
+     */
+    static void addSymmetric(int[] counts, double[][] m) {
+        final int G = m.length;
+        for (int i = 0; i < G; i++) {
+            final double[] row = m[i];
+            for (int j = 0, ij = i * G, ji = i; j < G; j++, ij++, ji += G) {
+                row[j] += counts[ij] + counts[ji];
+            }
+        }
+    }
+
     //<editor-fold defaultstate="collapsed" desc="getter/Setter">
     /**
      * Getter for haralick distributions
      *
-     * @return haralick distributions
+     * @return haralick distributions (the first one if several are set)
      */
     public int getHaralickDist() {
-        return haralickDist;
+        return haralickDists[0];
     }
 
     /**
@@ -400,19 +691,113 @@ public class Haralick extends AbstractFeatureDescriptor {
      * @param haralickDist int for haralick distributions (must be >= 1)
      */
     public void setHaralickDist(int haralickDist) {
-        if (haralickDist <= 0) {
-            throw new IllegalArgumentException("the distance for haralick must be >= 1 but was " + haralickDist);
+        setHaralickDists(haralickDist);
+    }
+
+    /**
+     * Getter for the haralick distances
+     *
+     * @return copy of the distances
+     */
+    public int[] getHaralickDists() {
+        return haralickDists.clone();
+    }
+
+    /**
+     * Setter for several haralick distances. The co-occurrence matrices of
+     * all distances are counted in the same scan and the features are
+     * concatenated in the given order.
+     *
+     * @param haralickDists the distances (each must be >= 1)
+     */
+    public void setHaralickDists(int... haralickDists) {
+        if (haralickDists == null) {
+            throw new NullPointerException("distances must not be null");
+        }
+        if (haralickDists.length == 0) {
+            throw new IllegalArgumentException("at least one distance is required");
+        }
+        for (int haralickDist : haralickDists) {
+            if (haralickDist <= 0) {
+                throw new IllegalArgumentException("the distance for haralick must be >= 1 but was " + haralickDist);
+            }
+        }
+        this.haralickDists = haralickDists.clone();
+        this.coocurrence = null;
+    }
+
+    /**
+     * Getter for the selected features
+     *
+     * @return copy of the selected features
+     */
+    public EnumSet<Feature> getFeatureSelection() {
+        return EnumSet.copyOf(selection);
+    }
+
+    /**
+     * Setter for the features that are computed. The feature vector contains
+     * the selected features in the order of {@link Feature} for each
+     * distance.
+     *
+     * @param selection non empty set of features
+     */
+    public void setFeatureSelection(EnumSet<Feature> selection) {
+        if (selection == null) {
+            throw new NullPointerException("selection must not be null");
+        }
+        if (selection.isEmpty()) {
+            throw new IllegalArgumentException("at least one feature must be selected");
+        }
+        this.selection = EnumSet.copyOf(selection);
+        for (Feature feature : Feature.values()) {
+            selected[feature.ordinal()] = selection.contains(feature);
+        }
+    }
+
+    /**
+     * Getter for the number of gray values
+     *
+     * @return number of gray values for the textures
+     */
+    public int getNumGrayValues() {
+        return numGrayValues;
+    }
+
+    /**
+     * Setter for the number of gray values the image is quantized to. Larger
+     * values resolve finer textures but increase the cost of the features
+     * quadratically.
+     *
+     * @param numGrayValues between {@value #MIN_GRAY_VALUES} and
+     * {@value #MAX_GRAY_VALUES}
+     */
+    public void setNumGrayValues(int numGrayValues) {
+        if (numGrayValues < MIN_GRAY_VALUES || numGrayValues > MAX_GRAY_VALUES) {
+            throw new IllegalArgumentException("the number of gray values must be in [" + MIN_GRAY_VALUES + ", "
+                    + MAX_GRAY_VALUES + "] but was " + numGrayValues);
         }
-        this.haralickDist = haralickDist;
+        this.numGrayValues = numGrayValues;
+        this.coocurrence = null;
     }
     //</editor-fold>
 
 //<editor-fold defaultstate="collapsed" desc="Coocurrence Matrix">
     /**
      * http://makseq.com/materials/lib/Articles-Books/Filters/Texture/Co-occurence/haralick73.pdf
+     *
+     * Counts the directional co-occurrences of all distances and the four
+     * angles 0, 45, 90 and 135 degree in integer matrices. Each image row is
+     * visited once and all distance/angle pairs are counted while it is in
+     * the cache. The count buffers are reused by subsequent calls of
+     * {@link #calculate(ByteProcessor)}.
      */
     static class Coocurrence {
 
+        /**
+         * The number of angles per distance (0, 45, 90 and 135 degree)
+         */
+        static final int ANGLES = 4;
         /**
          * The number of gray values for the textures
          */
@@ -425,118 +810,163 @@ public class Haralick extends AbstractFeatureDescriptor {
          * The scale for the gray values for conversion rgb to gray values.
          */
         double GRAY_SCALE;
-        /**
-         * gray histogram of the image.
-         */
-        double[] grayHistogram;
         /**
          * Quantized gray values of each pixel of the image.
          *
-         * Use int instead of byte as there is no unsigned byte in Java.
-         * Otherwise you'll have a hard time using white = 255. Alternative:
-         * replace with ImageJ ByteProcessor.
+         * Borrowed from the {@link ScratchPool} during {@link #calculate()}.
          */
-        private final int[] grayValue;
+        private int[] grayValue;
         /**
          * mean gray value
          */
         private double meanGrayValue = 0;
         /**
-         * The cooccurrence matrix
+         * Directional counts. Entry [d * ANGLES + a][g1 * NUM_GRAY_VALUES + g2]
+         * counts the pixels with gray value g1 whose neighbor at distance
+         * index d and angle a has gray value g2.
+         */
+        private final int[][] counts;
+        /**
+         * Symmetric matrix returned by the getters, reused between calls.
          */
-        private final double[][] cooccurrenceMatrices;
+        private final double[][] cooccurrenceMatrix;
         /**
-         * The value for one increment in the gray/color histograms.
+         * The distances
          */
-        private final int HARALICK_DIST;
-        private final ByteProcessor image;
+        private final int[] HARALICK_DISTS;
+        private ByteProcessor image;
 
         public Coocurrence(ByteProcessor b, int numGrayValues, int haralickDist) {
-            this.NUM_GRAY_VALUES = numGrayValues;
-            this.HARALICK_DIST = haralickDist;
-            this.cooccurrenceMatrices = new double[NUM_GRAY_VALUES][NUM_GRAY_VALUES];
+            this(numGrayValues, new int[]{haralickDist});
             this.image = b;
-            this.grayValue = new int[image.getPixelCount()];
+        }
+
+        Coocurrence(int numGrayValues, int[] haralickDists) {
+            this.NUM_GRAY_VALUES = numGrayValues;
+            this.HARALICK_DISTS = haralickDists.clone();
+            this.counts = new int[HARALICK_DISTS.length * ANGLES][NUM_GRAY_VALUES * NUM_GRAY_VALUES];
+            this.cooccurrenceMatrix = new double[NUM_GRAY_VALUES][NUM_GRAY_VALUES];
         }
 
         void calculate() {
-            this.GRAY_SCALE = (double) GRAY_RANGES / (double) NUM_GRAY_VALUES;
-            this.grayHistogram = new double[GRAY_RANGES];
+            if (image == null) {
+                throw new IllegalStateException("no image set");
+            }
+            calculate(image);
+        }
 
-            calculateGreyValues();
+        void calculate(ByteProcessor b) {
+            this.image = b;
+            this.GRAY_SCALE = (double) GRAY_RANGES / (double) NUM_GRAY_VALUES;
+            for (int[] c : counts) {
+                Arrays.fill(c, 0);
+            }
+            this.grayValue = ScratchPool.borrowInts(image.getPixelCount());
+            try {
+                calculateGreyValues();
+                calculateCooccurrence();
+            } finally {
+                ScratchPool.release(grayValue);
+                grayValue = null;
+            }
+        }
 
+        private void calculateCooccurrence() {
             final int imageWidth = image.getWidth();
             final int imageHeight = image.getHeight();
-            final int d = HARALICK_DIST;
-            final int yOffset = d * imageWidth;
-            int i, j, pos;
 
             // image is not empty per default
             for (int y = 0; y < imageHeight; y++) {
-                for (int x = 0; x < imageWidth; x++) {
-                    pos = imageWidth * y + x;
+                final int rowStart = y * imageWidth;
+                final int rowEnd = rowStart + imageWidth;
+                for (int n = 0; n < HARALICK_DISTS.length; n++) {
+                    final int d = HARALICK_DISTS[n];
+                    final int[][] c = counts;
+                    final int a = n * ANGLES;
 
                     // horizontal neighbor: 0 degrees
-                    i = x - d;
-                    if (i >= 0) {
-                        increment(grayValue[pos], grayValue[pos - d]);
-                    }
-
-                    // vertical neighbor: 90 degree
-                    j = y - d;
-                    if (j >= 0) {
-                        increment(grayValue[pos], grayValue[pos - yOffset]);
-                    }
-
-                    // 45 degree diagonal neigbor
-                    i = x + d;
-                    j = y - d;
-                    if (i < imageWidth && j >= 0) {
-                        increment(grayValue[pos], grayValue[pos + d - yOffset]);
-                    }
-
-                    // 135 vertical neighbor
-                    i = x - d;
-                    j = y - d;
-                    if (i >= 0 && j >= 0) {
-                        increment(grayValue[pos], grayValue[pos - d - yOffset]);
+                    count(c[a], rowStart + d, rowEnd, -d);
+                    if (y >= d) {
+                        final int yOffset = d * imageWidth;
+                        // 45 degree diagonal neigbor
+                        count(c[a + 1], rowStart, rowEnd - d, d - yOffset);
+                        // vertical neighbor: 90 degree
+                        count(c[a + 2], rowStart, rowEnd, -yOffset);
+                        // 135 vertical neighbor
+                        count(c[a + 3], rowStart + d, rowEnd, -d - yOffset);
                     }
                 }
             }
         }
 
+        /**
+         * Counts the pairs (pos, pos + offset) for all pos in [from, to).
+         */
+        private void count(int[] c, int from, int to, int offset) {
+            final int[] gray = grayValue;
+            final int G = NUM_GRAY_VALUES;
+            for (int pos = from; pos < to; pos++) {
+                c[gray[pos] * G + gray[pos + offset]]++;
+            }
+        }
+
         private void calculateGreyValues() {
-            final int size = grayValue.length;
-            double graySum = 0;
+            final int size = image.getPixelCount();
+            final int[] quantized = new int[256];
+            for (int gray = 0; gray < quantized.length; gray++) {
+                quantized[gray] = (int) (gray / GRAY_SCALE);  // quantized for texture analysis
+            }
+            final byte[] pixels = (byte[]) image.getPixels();
+            long graySum = 0;
             for (int pos = 0; pos < size; pos++) {
-                int gray = image.get(pos);
+                int gray = pixels[pos] & 0xff;
                 graySum += gray;
-                grayValue[pos] = (int) (gray / GRAY_SCALE);  // quantized for texture analysis
-                assert grayValue[pos] >= 0 : grayValue[pos] + " > 0 violated";
-                grayHistogram[gray]++;
+                grayValue[pos] = quantized[gray];
             }
-            Arrays2.div(grayHistogram, size);
-            meanGrayValue = Math.floor(graySum / size / GRAY_SCALE)*GRAY_SCALE;
+            meanGrayValue = Math.floor((double) graySum / size / GRAY_SCALE) * GRAY_SCALE;
+        }
+
+        public double getMeanGrayValue() {
+            return this.meanGrayValue;
         }
 
         /**
-         * Incremets the coocurrence matrix at the specified positions (g1,g2)
-         * and (g2,g1) if g1 and g2 are in range.
+         * Returns the symmetric co-occurrence matrix of the first distance,
+         * summed over all angles.
          *
-         * @param g1 the gray value of the first pixel
-         * @param g2 the gray value of the second pixel
+         * @return the matrix (reused by subsequent calls)
          */
-        private void increment(int g1, int g2) {
-            cooccurrenceMatrices[g1][g2]++;
-            cooccurrenceMatrices[g2][g1]++;
+        public double[][] getCooccurrenceMatrix() {
+            return getCooccurrenceMatrix(0);
         }
 
-        public double getMeanGrayValue() {
-            return this.meanGrayValue;
+        /**
+         * Returns the symmetric co-occurrence matrix of the given distance,
+         * summed over all angles.
+         *
+         * @param distance index of the distance
+         * @return the matrix (reused by subsequent calls)
+         */
+        public double[][] getCooccurrenceMatrix(int distance) {
+            clear(cooccurrenceMatrix);
+            for (int a = 0; a < ANGLES; a++) {
+                addSymmetric(counts[distance * ANGLES + a], cooccurrenceMatrix);
+            }
+            return cooccurrenceMatrix;
         }
 
-        public double[][] getCooccurrenceMatrix() {
-            return this.cooccurrenceMatrices;
+        /**
+         * Returns the symmetric co-occurrence matrix of the given distance and
+         * angle.
+         *
+         * @param distance index of the distance
+         * @param angle 0, 1, 2, 3 for 0, 45, 90 and 135 degree
+         * @return the matrix (reused by subsequent calls)
+         */
+        public double[][] getCooccurrenceMatrix(int distance, int angle) {
+            clear(cooccurrenceMatrix);
+            addSymmetric(counts[distance * ANGLES + angle], cooccurrenceMatrix);
+            return cooccurrenceMatrix;
         }
 
         public double getCooccurenceSums() {
@@ -0,0 +1,334 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.features;
+
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.util.Arrays;
+
+/**
+ * Dense haralick texture maps.
+ *
+ * The haralick features are computed in a square window around each pixel
+ * (or each pixel of a stride grid). The value at a pixel equals
+ * {@link Haralick#run(ImageProcessor)} on the window cropped to the image.
+ *
+ * The window slides along each row. Moving it by one pixel only removes the
+ * pixel pairs of the leaving column and adds the pairs of the entering
+ * column, so the co-occurrence update costs O(window size) instead of
+ * O(window size^2). The rows of the output are processed in parallel bands.
+ *
+ * Distances, gray values and the feature selection are taken from the given
+ * {@link Haralick} descriptor.
+ */
+public class HaralickTextureMaps {
+
+    private final Haralick haralick;
+    private int windowSize;
+    private int stride = 1;
+    private int parallelism = RowBands.defaultParallelism();
+
+    /**
+     * Constructs texture maps.
+     *
+     * @param haralick the descriptor that provides the configuration
+     * @param windowSize the odd edge length of the window (>= 3)
+     */
+    public HaralickTextureMaps(Haralick haralick, int windowSize) {
+        if (haralick == null) {
+            throw new NullPointerException("haralick must not be null");
+        }
+        this.haralick = haralick;
+        setWindowSize(windowSize);
+    }
+
+    /**
+     * Computes the texture maps of the image.
+     *
+     * The maps are returned in the order of the haralick feature vector:
+     * for each distance the selected features. Each map has the size
+     * ceil(width / stride) x ceil(height / stride).
+     *
+     * @param ip the image, converted to 8 bit if necessary
+     * @return one map per distance and selected feature
+     */
+    public FloatProcessor[] compute(ImageProcessor ip) {
+        if (ip == null) {
+            throw new NullPointerException("image must not be null");
+        }
+        if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
+            ip = ip.convertToByte(true);
+        }
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final int outWidth = (width + stride - 1) / stride;
+        final int outHeight = (height + stride - 1) / stride;
+        final int featureCount = haralick.getFeatureSelection().size();
+        final float[][] maps = new float[haralick.getHaralickDists().length * featureCount][outWidth * outHeight];
+        final byte[] pixels = (byte[]) ip.getPixels();
+
+        // quantized gray values, see Haralick.Coocurrence
+        final int numGrayValues = haralick.getNumGrayValues();
+        final double grayScale = 256d / numGrayValues;
+        final int[] quantized = new int[256];
+        for (int gray = 0; gray < 256; gray++) {
+            quantized[gray] = (int) (gray / grayScale);
+        }
+        final int[] grayValue = ScratchPool.borrowInts(width * height);
+        try {
+            for (int i = 0; i < width * height; i++) {
+                grayValue[i] = quantized[pixels[i] & 0xff];
+            }
+
+            RowBands.run(outHeight, parallelism, new RowBands.Band() {
+                @Override
+                public void process(int from, int to) {
+                    Window window = new Window(haralick.copy(), pixels, grayValue, width, height,
+                            windowSize / 2, grayScale);
+                    for (int oy = from; oy < to; oy++) {
+                        window.processRow(oy, stride, outWidth, featureCount, maps);
+                    }
+                }
+            });
+        } finally {
+            ScratchPool.release(grayValue);
+        }
+
+        FloatProcessor[] result = new FloatProcessor[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            result[i] = new FloatProcessor(outWidth, outHeight, maps[i], null);
+        }
+        return result;
+    }
+
+    /**
+     * Sliding window over one image row. Counts all pixel pairs (p, q) with
+     * both pixels inside the columns [left, right] and rows [top, bottom].
+     */
+    private static final class Window {
+
+        private final Haralick haralick;
+        private final byte[] pixels;
+        private final int[] gray;
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final double grayScale;
+        private final int G;
+        private final int[] dists;
+        /**
+         * directional counts per distance, all angles summed
+         */
+        private final int[][] counts;
+        private final double[][] p;
+        private final double[] vector;
+        private int left, right, top, bottom;
+        private long graySum;
+        private int area;
+
+        Window(Haralick haralick, byte[] pixels, int[] gray, int width, int height, int radius, double grayScale) {
+            this.haralick = haralick;
+            this.pixels = pixels;
+            this.gray = gray;
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            this.grayScale = grayScale;
+            this.G = haralick.getNumGrayValues();
+            this.dists = haralick.getHaralickDists();
+            this.counts = new int[dists.length][G * G];
+            this.p = new double[G][G];
+            this.vector = new double[dists.length * haralick.getFeatureSelection().size()];
+        }
+
+        void processRow(int oy, int stride, int outWidth, int featureCount, float[][] maps) {
+            final int y = oy * stride;
+            top = Math.max(0, y - radius);
+            bottom = Math.min(height - 1, y + radius);
+            left = 0;
+            right = -1;
+            graySum = 0;
+            area = 0;
+            for (int[] c : counts) {
+                Arrays.fill(c, 0);
+            }
+
+            for (int ox = 0; ox < outWidth; ox++) {
+                final int x = ox * stride;
+                final int newLeft = Math.max(0, x - radius);
+                final int newRight = Math.min(width - 1, x + radius);
+                while (right < newRight) {
+                    addColumn(right + 1);
+                }
+                while (left < newLeft) {
+                    removeColumn(left);
+                }
+
+                final double meanGrayValue = Math.floor((double) graySum / area / grayScale) * grayScale;
+                for (int n = 0; n < dists.length; n++) {
+                    Haralick.clear(p);
+                    Haralick.addSymmetric(counts[n], p);
+                    Haralick.normalize(p, area * 8d);
+                    haralick.computeSelected(p, meanGrayValue, vector, n * featureCount);
+                }
+                final int pos = oy * outWidth + ox;
+                for (int i = 0; i < vector.length; i++) {
+                    maps[i][pos] = (float) vector[i];
+                }
+            }
+        }
+
+        /**
+         * Adds column c = right + 1, i.e. all pairs with max(x) = c and
+         * min(x) >= left.
+         */
+        private void addColumn(int c) {
+            for (int y = top; y <= bottom; y++) {
+                graySum += pixels[y * width + c] & 0xff;
+            }
+            area += bottom - top + 1;
+            for (int n = 0; n < dists.length; n++) {
+                final int d = dists[n];
+                final int[] cnt = counts[n];
+                final boolean inside = c - d >= left;
+                // 0 degree: p = (c, y), q = (c - d, y)
+                if (inside) {
+                    update(cnt, c, top, 0, -d, 1);
+                }
+                // 45 degree: p = (c - d, y), q = (c, y - d)
+                if (inside) {
+                    update(cnt, c - d, top + d, -d, d, 1);
+                }
+                // 90 degree: p = (c, y), q = (c, y - d)
+                update(cnt, c, top + d, -d, 0, 1);
+                // 135 degree: p = (c, y), q = (c - d, y - d)
+                if (inside) {
+                    update(cnt, c, top + d, -d, -d, 1);
+                }
+            }
+            right = c;
+        }
+
+        /**
+         * Removes column c = left, i.e. all pairs with min(x) = c and
+         * max(x) <= right.
+         */
+        private void removeColumn(int c) {
+            for (int y = top; y <= bottom; y++) {
+                graySum -= pixels[y * width + c] & 0xff;
+            }
+            area -= bottom - top + 1;
+            for (int n = 0; n < dists.length; n++) {
+                final int d = dists[n];
+                final int[] cnt = counts[n];
+                final boolean inside = c + d <= right;
+                // 0 degree: p = (c + d, y), q = (c, y)
+                if (inside) {
+                    update(cnt, c + d, top, 0, -d, -1);
+                }
+                // 45 degree: p = (c, y), q = (c + d, y - d)
+                if (inside) {
+                    update(cnt, c, top + d, -d, d, -1);
+                }
+                // 90 degree: p = (c, y), q = (c, y - d)
+                update(cnt, c, top + d, -d, 0, -1);
+                // 135 degree: p = (c + d, y), q = (c, y - d)
+                if (inside) {
+                    update(cnt, c + d, top + d, -d, -d, -1);
+                }
+            }
+            left = c + 1;
+        }
+
+        /**
+         * Adds delta to the pairs p = (x, y), q = (x + dx, y + dy) for y in
+         * [fromY, bottom].
+         */
+        private void update(int[] cnt, int x, int fromY, int dy, int dx, int delta) {
+            final int offset = dy * width + dx;
+            for (int y = fromY, pos = fromY * width + x; y <= bottom; y++, pos += width) {
+                cnt[gray[pos] * G + gray[pos + offset]] += delta;
+            }
+        }
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="getter/Setter">
+    /**
+     * @return the edge length of the window
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @param windowSize the odd edge length of the window (>= 3)
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 3 || windowSize % 2 == 0) {
+            throw new IllegalArgumentException("window size must be odd and >= 3 but was " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the distance between two computed pixels
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Sets the distance between two computed pixels in x and y direction.
+     * The features are computed for the pixels (i * stride, j * stride).
+     *
+     * @param stride the stride (>= 1)
+     */
+    public void setStride(int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("stride must be >= 1 but was " + stride);
+        }
+        this.stride = stride;
+    }
+
+    /**
+     * @return the maximum number of parallel row bands
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of parallel row bands (>= 1)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    //</editor-fold>
+}
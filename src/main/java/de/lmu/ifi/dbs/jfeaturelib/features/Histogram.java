@@ -26,28 +26,52 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 import com.google.common.base.Preconditions;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ColorQuantizer;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.MaskSpans;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Palette;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Rectangle;
-import java.awt.image.ColorModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 
 /**
  * Class that generates several types of histograms.
  *
  * This class replaces RGBHistogram and GrayHistogram in previous versions.
  *
+ * Several types can be computed at once with {@link #setTypes(TYPE...)}. All histograms of such a bundle are filled
+ * during a single traversal of the (masked) pixels, each pixel is unpacked and converted to HSB only once. The
+ * histogram of each type is scaled to the number of bins separately and equals the histogram of a single run of this
+ * type. The histograms are concatenated in the given order or, with {@link #setSeparateVectors(boolean)}, added as
+ * separate feature vectors.
+ *
+ * The HSB histograms of 8 bit images are computed from the counts of the palette indices, the image is not converted
+ * to RGB.
+ *
  * @author graf
  */
-public class Histogram extends AbstractFeatureDescriptor {
+public class Histogram extends AbstractFeatureDescriptor implements RegionDescriptor {
 
     public static enum TYPE {
 
         RGB, Red, Green, Blue, HSB, Hue, Saturation, Brightness, Gray
     };
     TYPE type;
+    /**
+     * Types of the bundle, null if a single type is computed
+     */
+    TYPE[] types;
+    /**
+     * Add one feature vector per type of the bundle instead of a concatenated one
+     */
+    boolean separateVectors;
     int bins;
 
     public Histogram() {
@@ -55,8 +79,79 @@ public class Histogram extends AbstractFeatureDescriptor {
 
     @Override
     public void setProperties(LibProperties properties) {
-        type = TYPE.valueOf(properties.getString(LibProperties.HISTOGRAMS_TYPE));
+        String[] names = properties.getString(LibProperties.HISTOGRAMS_TYPE).split(",");
+        TYPE[] parsed = new TYPE[names.length];
+        for (int i = 0; i < names.length; i++) {
+            parsed[i] = TYPE.valueOf(names[i].trim());
+        }
+        setTypes(parsed);
         bins = properties.getInteger(LibProperties.HISTOGRAMS_BINS);
+        checkBins();
+        separateVectors = properties.getBoolean(LibProperties.HISTOGRAMS_SEPARATE, false);
+    }
+
+    /**
+     * @throws IllegalArgumentException if less than one bin is configured
+     */
+    private void checkBins() {
+        Preconditions.checkArgument(bins >= 1, "bins must be >= 1 but was " + bins);
+    }
+
+    /**
+     * Compute a single histogram of the given type.
+     *
+     * @param type the histogram type
+     */
+    public void setType(TYPE type) {
+        Preconditions.checkNotNull(type, "type must not be null");
+        this.type = type;
+        this.types = null;
+    }
+
+    /**
+     * Compute the histograms of all given types in a single pass.
+     *
+     * @param types one or more distinct types
+     * @throws NullPointerException if a type is null
+     * @throws IllegalArgumentException if no type is given or a type is given twice
+     */
+    public void setTypes(TYPE... types) {
+        Preconditions.checkArgument(types.length > 0, "at least one type is required");
+        EnumSet<TYPE> distinct = EnumSet.noneOf(TYPE.class);
+        for (TYPE t : types) {
+            Preconditions.checkNotNull(t, "types must not contain null");
+            Preconditions.checkArgument(distinct.add(t), "duplicate type: " + t);
+        }
+        if (types.length == 1) {
+            setType(types[0]);
+        } else {
+            this.type = types[0];
+            this.types = types.clone();
+        }
+    }
+
+    /**
+     * @return the types that are computed
+     */
+    public List<TYPE> getTypes() {
+        if (types == null) {
+            return Collections.singletonList(type);
+        }
+        return Collections.unmodifiableList(Arrays.asList(types.clone()));
+    }
+
+    /**
+     * Add one feature vector per type instead of concatenating the histograms
+     * of a bundle.
+     *
+     * @param separateVectors true for separate vectors
+     */
+    public void setSeparateVectors(boolean separateVectors) {
+        this.separateVectors = separateVectors;
+    }
+
+    public boolean isSeparateVectors() {
+        return separateVectors;
     }
 
     /**
@@ -66,7 +161,13 @@ public class Histogram extends AbstractFeatureDescriptor {
      */
     @Override
     public void run(ImageProcessor ip) {
+        checkBins();
         firePropertyChange(Progress.START);
+        if (types != null) {
+            addHistograms(runBundle(ip));
+            firePropertyChange(Progress.END);
+            return;
+        }
 
         InnerHistogram histogram = null;
         if (type == TYPE.Gray) {
@@ -96,6 +197,282 @@ public class Histogram extends AbstractFeatureDescriptor {
         firePropertyChange(Progress.END);
     }
 
+    /**
+     * Adds the scaled histograms of a bundle either concatenated or as
+     * separate vectors.
+     */
+    private void addHistograms(List<double[]> histograms) {
+        if (separateVectors) {
+            addData(histograms);
+            return;
+        }
+        int length = 0;
+        for (double[] hist : histograms) {
+            length += hist.length;
+        }
+        double[] features = new double[length];
+        int offset = 0;
+        for (double[] hist : histograms) {
+            System.arraycopy(hist, 0, features, offset, hist.length);
+            offset += hist.length;
+        }
+        addData(features);
+    }
+
+    /**
+     * Fills the histograms of all types of the bundle during one traversal
+     * of the masked pixels.
+     *
+     * @return the scaled histogram of each type
+     */
+    private List<double[]> runBundle(ImageProcessor ip) {
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final int size = width * height;
+
+        BundleCounts counts = new BundleCounts();
+        for (TYPE t : types) {
+            if (t == TYPE.Gray && counts.gray == null) {
+                ImageProcessor bp = ip instanceof ByteProcessor ? ip : ip.convertToByte(true);
+                counts.gray = (byte[]) bp.getPixels();
+            } else if ((t == TYPE.RGB || t == TYPE.Red || t == TYPE.Green || t == TYPE.Blue)
+                    && counts.packed == null) {
+                if (ip instanceof ColorProcessor) {
+                    counts.packed = (int[]) ip.getPixels();
+                } else {
+                    // same values as getHistogram(ImageProcessor, double, double, double)
+                    counts.packed = new int[size];
+                    for (int i = 0; i < size; i++) {
+                        counts.packed[i] = ip.get(i);
+                    }
+                }
+            } else if ((t == TYPE.HSB || t == TYPE.Hue || t == TYPE.Saturation || t == TYPE.Brightness)
+                    && counts.rgb == null && counts.palette == null) {
+                counts.palette = Palette.colors(ip);
+                if (counts.palette != null) {
+                    counts.indices = (byte[]) ip.getPixels();
+                } else {
+                    ImageProcessor cp = ip instanceof ColorProcessor ? ip : ip.convertToRGB();
+                    counts.rgb = (int[]) cp.getPixels();
+                }
+            }
+        }
+
+        setMask(ip);
+        MaskSpans spans = getMaskSpans();
+        for (int y = 0; y < height; y++) {
+            if (spans == null) {
+                counts.count(y * width, (y + 1) * width);
+            } else {
+                for (int s = spans.rowStart(y); s < spans.rowEnd(y); s++) {
+                    counts.count(y * width + spans.spanStart(s), y * width + spans.spanEnd(s));
+                }
+            }
+            progress(y + 1, height);
+        }
+
+        counts.addPaletteCounts();
+        List<double[]> histograms = new ArrayList<>(types.length);
+        for (TYPE t : types) {
+            histograms.add(scale(Arrays2.convertToDouble(counts.get(t)), bins));
+        }
+        return histograms;
+    }
+
+    /**
+     * Histograms of the channels of a bundle.
+     */
+    private static final class BundleCounts {
+
+        /**
+         * Sources, null if not needed: packed values for the RGB histograms,
+         * RGB colors or palette indices for the HSB histograms and gray values.
+         */
+        int[] packed, rgb, palette;
+        byte[] gray, indices;
+        final int[] indexCounts = new int[256];
+        final int[] red = new int[256], green = new int[256], blue = new int[256];
+        final int[] hue = new int[256], saturation = new int[256], brightness = new int[256];
+        final int[] grayCounts = new int[256];
+
+        void count(int from, int to) {
+            if (packed != null) {
+                for (int i = from; i < to; i++) {
+                    final int c = packed[i];
+                    red[(c & 0xff0000) >> 16]++;
+                    green[(c & 0xff00) >> 8]++;
+                    blue[c & 0xff]++;
+                }
+            }
+            if (rgb != null) {
+                for (int i = from; i < to; i++) {
+                    final int hsb = ColorQuantizer.toHSB(rgb[i]);
+                    hue[hsb >> 16]++;
+                    saturation[(hsb >> 8) & 0xff]++;
+                    brightness[hsb & 0xff]++;
+                }
+            }
+            if (indices != null) {
+                for (int i = from; i < to; i++) {
+                    indexCounts[indices[i] & 0xff]++;
+                }
+            }
+            if (gray != null) {
+                for (int i = from; i < to; i++) {
+                    grayCounts[gray[i] & 0xff]++;
+                }
+            }
+        }
+
+        /**
+         * Adds the counted palette indices to the HSB histograms.
+         */
+        void addPaletteCounts() {
+            if (palette != null) {
+                addHSB(palette, indexCounts, hue, saturation, brightness);
+            }
+        }
+
+        int[] get(TYPE type) {
+            switch (type) {
+                case Gray:
+                    return grayCounts;
+                case RGB:
+                    return concat(red, green, blue);
+                case Red:
+                    return red;
+                case Green:
+                    return green;
+                case Blue:
+                    return blue;
+                case HSB:
+                    return concat(hue, saturation, brightness);
+                case Hue:
+                    return hue;
+                case Saturation:
+                    return saturation;
+                case Brightness:
+                    return brightness;
+                default:
+                    throw new IllegalStateException("no valid histogram type selected: " + type);
+            }
+        }
+
+        private static int[] concat(int[] a, int[] b, int[] c) {
+            int[] result = new int[a.length + b.length + c.length];
+            System.arraycopy(a, 0, result, 0, a.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            System.arraycopy(c, 0, result, a.length + b.length, c.length);
+            return result;
+        }
+    }
+
+    /**
+     * Computes one histogram per region of the label image in a single pass.
+     *
+     * In bundle mode, the histograms of all types of a region are concatenated
+     * or, with separate vectors, added type by type for each region.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkBins();
+        checkLabels(ip, labels);
+        firePropertyChange(Progress.START);
+
+        final List<TYPE> computed = getTypes();
+        final int[] region = labels.getRegionIndex();
+        final double[][][] features = new double[labels.getRegionCount()][computed.size()][];
+        for (int t = 0; t < computed.size(); t++) {
+            byte[][] planes = getPlanes(ip, computed.get(t));
+            final int[][] hists = new int[features.length][256 * planes.length];
+            for (int p = 0; p < planes.length; p++) {
+                final byte[] plane = planes[p];
+                final int offset = p * 256;
+                for (int i = 0; i < region.length; i++) {
+                    if (region[i] >= 0) {
+                        hists[region[i]][offset + (plane[i] & 0xff)]++;
+                    }
+                }
+            }
+            for (int k = 0; k < features.length; k++) {
+                features[k][t] = scale(Arrays2.convertToDouble(hists[k]), bins);
+            }
+        }
+
+        for (double[][] regionFeatures : features) {
+            addHistograms(Arrays.asList(regionFeatures));
+        }
+        firePropertyChange(Progress.END);
+    }
+
+    /**
+     * Returns the 8 bit channels that are histogrammed for the given type.
+     * The planes correspond to the parts of the histogram computed by
+     * {@link #run(ij.process.ImageProcessor)}.
+     */
+    private byte[][] getPlanes(ImageProcessor ip, TYPE type) {
+        if (type == TYPE.Gray) {
+            if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
+                ip = ip.convertToByte(true);
+            }
+            return new byte[][]{(byte[]) ip.getPixels()};
+        } else if (type == TYPE.RGB) {
+            return new byte[][]{
+                getWeightedPlane(ip, 1, 0, 0),
+                getWeightedPlane(ip, 0, 1, 0),
+                getWeightedPlane(ip, 0, 0, 1)};
+        } else if (type == TYPE.Red) {
+            return new byte[][]{getWeightedPlane(ip, 1, 0, 0)};
+        } else if (type == TYPE.Green) {
+            return new byte[][]{getWeightedPlane(ip, 0, 1, 0)};
+        } else if (type == TYPE.Blue) {
+            return new byte[][]{getWeightedPlane(ip, 0, 0, 1)};
+        } else if (type == TYPE.HSB || type == TYPE.Hue || type == TYPE.Saturation || type == TYPE.Brightness) {
+            ColorProcessor cp;
+            if (ip instanceof ColorProcessor) {
+                cp = (ColorProcessor) ip;
+            } else {
+                cp = (ColorProcessor) ip.convertToRGB();
+            }
+            int size = ip.getWidth() * ip.getHeight();
+            byte[] H = type == TYPE.HSB || type == TYPE.Hue ? new byte[size] : null;
+            byte[] S = type == TYPE.HSB || type == TYPE.Saturation ? new byte[size] : null;
+            byte[] B = type == TYPE.HSB || type == TYPE.Brightness ? new byte[size] : null;
+            ColorQuantizer.getHSB((int[]) cp.getPixels(), H, S, B);
+            if (type == TYPE.Hue) {
+                return new byte[][]{H};
+            } else if (type == TYPE.Saturation) {
+                return new byte[][]{S};
+            } else if (type == TYPE.Brightness) {
+                return new byte[][]{B};
+            }
+            return new byte[][]{H, S, B};
+        }
+        throw new IllegalStateException("no valid histogram type selected: " + type);
+    }
+
+    /**
+     * Computes the weighted sum of the RGB channels for each pixel like
+     * {@link #getHistogram(ImageProcessor, double, double, double)}.
+     */
+    private byte[] getWeightedPlane(ImageProcessor ip, double rWeight, double gWeight, double bWeight) {
+        final int size = ip.getWidth() * ip.getHeight();
+        final int[] pixels = ip instanceof ColorProcessor ? (int[]) ip.getPixels() : null;
+        byte[] plane = new byte[size];
+        int c, r, g, b;
+        for (int i = 0; i < size; i++) {
+            c = pixels != null ? pixels[i] : ip.get(i);
+            r = (c & 0xff0000) >> 16;
+            g = (c & 0xff00) >> 8;
+            b = c & 0xff;
+            plane[i] = (byte) (int) (r * rWeight + g * gWeight + b * bWeight + 0.5);
+        }
+        return plane;
+    }
+
     @Override
     public EnumSet<Supports> supports() {
         EnumSet set = EnumSet.of(
@@ -215,6 +592,33 @@ public class Histogram extends AbstractFeatureDescriptor {
         return histogram;
     }
 
+    /**
+     * Adds the counts of the palette indices to the histograms of the HSB
+     * bytes of the palette colors.
+     */
+    private static void addHSB(int[] palette, int[] counts, int[] hue, int[] saturation, int[] brightness) {
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] != 0) {
+                final int hsb = ColorQuantizer.toHSB(palette[v]);
+                hue[hsb >> 16] += counts[v];
+                saturation[(hsb >> 8) & 0xff] += counts[v];
+                brightness[hsb & 0xff] += counts[v];
+            }
+        }
+    }
+
+    /**
+     * Computes the hue, saturation and brightness histograms of the masked
+     * pixels of an 8 bit image from the counts of its palette indices.
+     */
+    private int[][] getPaletteHSB(ImageProcessor ip, int[] palette) {
+        setMask(ip);
+        int[] counts = Palette.count((byte[]) ip.getPixels(), ip.getWidth(), getMaskSpans());
+        int[][] hsb = new int[3][256];
+        addHSB(palette, counts, hsb[0], hsb[1], hsb[2]);
+        return hsb;
+    }
+
     private interface InnerHistogram {
 
         public int[] run(ImageProcessor ip);
@@ -225,7 +629,10 @@ public class Histogram extends AbstractFeatureDescriptor {
         @Override
         public int[] run(ImageProcessor ip) {
             if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
+                // the converted image has no mask
+                ImageProcessor mask = ip.getMask();
                 ip = ip.convertToByte(true);
+                ip.setMask(mask);
             }
             return ((ByteProcessor) ip).getHistogram();
         }
@@ -270,6 +677,16 @@ public class Histogram extends AbstractFeatureDescriptor {
 
         @Override
         public int[] run(ImageProcessor ip) {
+            int[] palette = Palette.colors(ip);
+            if (palette != null) {
+                int[][] hsb = getPaletteHSB(ip, palette);
+                int[] features = new int[256 * 3];
+                for (int c = 0; c < 3; c++) {
+                    System.arraycopy(hsb[c], 0, features, c * 256, 256);
+                }
+                return features;
+            }
+
             ColorProcessor cp;
             if (ip instanceof ColorProcessor) {
                 cp = (ColorProcessor) ip;
@@ -282,7 +699,7 @@ public class Histogram extends AbstractFeatureDescriptor {
             byte[] H = new byte[width * height];
             byte[] S = new byte[width * height];
             byte[] B = new byte[width * height];
-            cp.getHSB(H, S, B);
+            ColorQuantizer.getHSB((int[]) cp.getPixels(), H, S, B);
 
             int[] features = new int[256 * 3];
             ByteProcessor channel = new ByteProcessor(width, height, H, cp.getDefaultColorModel());
@@ -313,6 +730,19 @@ public class Histogram extends AbstractFeatureDescriptor {
 
         @Override
         public int[] run(ImageProcessor ip) {
+            int[] palette = Palette.colors(ip);
+            if (palette != null) {
+                int[][] hsb = getPaletteHSB(ip, palette);
+                if (type == TYPE.Hue) {
+                    return hsb[0];
+                } else if (type == TYPE.Saturation) {
+                    return hsb[1];
+                } else if (type == TYPE.Brightness) {
+                    return hsb[2];
+                }
+                throw new IllegalArgumentException("type must be H,S or B");
+            }
+
             ColorProcessor cp;
             if (ip instanceof ColorProcessor) {
                 cp = (ColorProcessor) ip;
@@ -322,24 +752,21 @@ public class Histogram extends AbstractFeatureDescriptor {
 
             int width = ip.getWidth();
             int height = ip.getHeight();
-            byte[] H = new byte[width * height];
-            byte[] S = new byte[width * height];
-            byte[] B = new byte[width * height];
-            cp.getHSB(H, S, B);
-
-            ByteProcessor channel;
-            ColorModel colorModel = cp.getDefaultColorModel();
+            byte[] plane = new byte[width * height];
+            int[] pixels = (int[]) cp.getPixels();
             if (type == TYPE.Hue) {
-                channel = new ByteProcessor(width, height, H, colorModel);
+                ColorQuantizer.getHSB(pixels, plane, null, null);
             } else if (type == TYPE.Saturation) {
-                channel = new ByteProcessor(width, height, S, colorModel);
+                ColorQuantizer.getHSB(pixels, null, plane, null);
             } else if (type == TYPE.Brightness) {
-                channel = new ByteProcessor(width, height, B, colorModel);
+                ColorQuantizer.getHSB(pixels, null, null, plane);
             } else {
                 throw new IllegalArgumentException("type must be H,S or B");
             }
+            ByteProcessor channel = new ByteProcessor(width, height, plane, cp.getDefaultColorModel());
+            channel.setMask(ip.getMask());
 
-            return channel.getHistogram(ip.getMask());
+            return channel.getHistogram();
         }
     }
 
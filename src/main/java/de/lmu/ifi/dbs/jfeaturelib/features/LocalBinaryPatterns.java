@@ -23,13 +23,20 @@
  */
 package de.lmu.ifi.dbs.jfeaturelib.features;
 
+import de.lmu.ifi.dbs.jfeaturelib.ImagePoint;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
-import de.lmu.ifi.dbs.jfeaturelib.utils.Histogram;
+import de.lmu.ifi.dbs.jfeaturelib.utils.PixelView;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Constructs a histogram of local binary patterns (LBP) for each pixel.
@@ -45,6 +52,25 @@ import java.util.EnumSet;
  * remaining features the histogram of local binary patterns
  * (see {@link #setNumberOfHistogramBins(int)}).
  * 
+ * Instead of every pixel, only the pixels of a grid ({@link #setStride(int)})
+ * or a list of points, e.g. from a
+ * {@link de.lmu.ifi.dbs.jfeaturelib.pointDetector.PointDetector}
+ * ({@link #setSamplePoints(List)}) can be described. Only the patterns in
+ * the neighborhoods of these pixels are computed. Alternatively the patterns
+ * of the whole image are pooled into a spatial pyramid of histograms that
+ * forms a single feature vector ({@link #setPyramidLevels(int)}).
+ * 
+ * Optionally the patterns are mapped to uniform, rotation invariant or
+ * rotation invariant uniform patterns ({@link #setMapping(Mapping)}). The
+ * histogram then has one bin per mapped pattern, e.g. 59 bins for uniform
+ * and 10 bins for rotation invariant uniform patterns of 8 points.
+ * 
+ * The binary pattern of each pixel is computed only once. The sample
+ * positions and interpolation weights are precomputed per row and column.
+ * The histograms are then updated incrementally while the neighborhood
+ * slides along a row. Rows are processed in parallel bands
+ * ({@link #setParallelism(int)}).
+ * 
  * In comparison to {@link MeanIntensityLocalBinaryPatterns}, this class computes
  * one histogram of each pixel and computes local binary patterns from neighbors
  * lying on a circle around the central pixel.
@@ -67,17 +93,70 @@ import java.util.EnumSet;
  */
 public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
 
+    /**
+     * Mappings of the binary patterns.
+     *
+     * <pre>
+     * &#64;article{Ojala2002,
+     *   author = {Ojala, Timo and Pietikäinen, Matti and Mäenpää, Topi},
+     *   title = {Multiresolution gray-scale and rotation invariant texture classification with local binary patterns},
+     *   journal = {IEEE Transactions on Pattern Analysis and Machine Intelligence},
+     *   number = {7},
+     *   volume = {24},
+     *   year = {2002},
+     *   pages = {971--987}
+     * }
+     * </pre>
+     */
+    public enum Mapping {
+
+        /**
+         * raw patterns, binned into {@link #setNumberOfHistogramBins(int)} bins
+         */
+        NONE,
+        /**
+         * uniform patterns (u2): patterns with at most two circular 0/1
+         * transitions get an own bin, all others share one bin. P(P-1)+3 bins.
+         */
+        UNIFORM,
+        /**
+         * rotation invariant patterns (ri): all rotations of a pattern share a
+         * bin. Requires at most {@value LocalBinaryPatterns#MAX_TABLE_POINTS}
+         * points.
+         */
+        ROTATION_INVARIANT,
+        /**
+         * rotation invariant uniform patterns (riu2): the number of ones of
+         * uniform patterns, all others share one bin. P+2 bins.
+         */
+        ROTATION_INVARIANT_UNIFORM
+    }
+    /**
+     * The maximum number of points for which mapping tables are precomputed.
+     */
+    static final int MAX_TABLE_POINTS = 16;
+
     private double m_radius;
     private int m_numPoints;
     private int m_neighborhoodSize;
     private double m_constant;
     private int m_histogramSize;
+    private int m_parallelism = RowBands.defaultParallelism();
+    private Mapping m_mapping = Mapping.NONE;
+    private int m_stride = 1;
+    private List<ImagePoint> m_samplePoints = null;
+    private int m_pyramidLevels = 0;
+    /* Mapping table of m_mapping for m_tablePoints points, null if not computed */
+    private int[] m_table;
+    private int m_tablePoints;
 
     /* The angle between adjacent neighbors */
     protected double m_angle;
     /* Offset in x and y direction of all neighbors */
     protected double[] m_offsets;
     protected ImageProcessor m_ip;
+    /* Direct view on the pixels of m_ip */
+    protected PixelView.Bytes m_pixels;
 
     public LocalBinaryPatterns() {
     }
@@ -104,39 +183,302 @@ public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
         setNeighborhoodSize(properties.getInteger(LibProperties.LBP_NEIGHBORHOOD_SIZE));
         setConstant(properties.getDouble(LibProperties.LBP_CONSTANT));
         setNumberOfHistogramBins(properties.getInteger(LibProperties.LBP_HISTOGRAM_SIZE));
+        setMapping(Mapping.valueOf(properties.getString(LibProperties.LBP_MAPPING, Mapping.NONE.name()).trim()));
+        setStride(properties.getInteger(LibProperties.LBP_STRIDE, 1));
+        setPyramidLevels(properties.getInteger(LibProperties.LBP_PYRAMID_LEVELS, 0));
     }
 
     @Override
     public void run(ImageProcessor ip) {
         firePropertyChange(Progress.START);
 
-        final int width = ip.getWidth();
-        final int height = ip.getHeight();
-
         setImageProcessor(ip);
 
-        byte[] mask = m_ip.getMaskArray();
-        int  k = 0;
-        for (int y = 0; y < height ; y++) {
-            for (int x = 0; x < width; x++) {
-                if (mask == null || mask[k++] != 0)
-                    addData(processPixel(x, y));
+        final int width = m_pixels.width;
+        final int height = m_pixels.height;
+        final byte[] mask = m_ip.getMaskArray();
+        final int[] bins = ScratchPool.borrowInts(width * height);
+        try {
+            if (m_pyramidLevels > 0) {
+                computeBins(bins, null);
+                addData(poolPyramid(bins, mask, width, height, getNumberOfBins(), m_pyramidLevels));
+            } else if (m_samplePoints != null || m_stride > 1) {
+                processSamples(bins, mask);
+            } else {
+                processDense(bins, mask);
             }
-            int p = (int) (y / (double) height * 100);
-            firePropertyChange(new Progress(p));
+        } finally {
+            ScratchPool.release(bins);
         }
 
         // free memory
         m_ip = null;
+        m_pixels = null;
         m_offsets = null;
 
         firePropertyChange(Progress.END);
     }
 
+    /**
+     * Computes the histograms of all unmasked pixels.
+     */
+    private void processDense(final int[] bins, final byte[] mask) {
+        final int height = m_pixels.height;
+        final double[][][] rows = new double[height][][];
+
+        long time = System.nanoTime();
+        computeBins(bins, null);
+        time = stage("patterns", time);
+
+        final AtomicInteger rowsDone = new AtomicInteger();
+        RowBands.run(height, m_parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                int[] hist = new int[getNumberOfBins()];
+                for (int y = from; y < to; y++) {
+                    rows[y] = processRow(bins, mask, y, hist);
+                    int done = rowsDone.incrementAndGet();
+                    if (from == 0) { // calling thread
+                        progress(done, height);
+                    }
+                }
+            }
+        });
+        stage("histograms", time);
+
+        for (double[][] row : rows) {
+            for (double[] data : row) {
+                addData(data);
+            }
+        }
+    }
+
+    /**
+     * Computes the histograms of the grid pixels or sample points. Only the
+     * patterns in their neighborhoods are computed.
+     */
+    private void processSamples(final int[] bins, final byte[] mask) {
+        final int width = m_pixels.width;
+        final int height = m_pixels.height;
+        final int n = m_neighborhoodSize;
+
+        // collect the unmasked sample pixels
+        final List<int[]> samples = new ArrayList<>();
+        if (m_samplePoints != null) {
+            for (ImagePoint point : m_samplePoints) {
+                int x = (int) Math.round(point.x);
+                int y = (int) Math.round(point.y);
+                if (x >= 0 && x < width && y >= 0 && y < height
+                        && (mask == null || mask[y * width + x] != 0)) {
+                    samples.add(new int[]{x, y});
+                }
+            }
+        } else {
+            for (int y = 0; y < height; y += m_stride) {
+                for (int x = 0; x < width; x += m_stride) {
+                    if (mask == null || mask[y * width + x] != 0) {
+                        samples.add(new int[]{x, y});
+                    }
+                }
+            }
+        }
+
+        // mark the neighborhoods
+        final byte[] needed = ScratchPool.borrowBytes(width * height);
+        try {
+            for (int[] sample : samples) {
+                final int xStart = Math.max(sample[0] - n, 0);
+                final int xEnd = Math.min(sample[0] + n + 1, width);
+                for (int yi = Math.max(sample[1] - n, 0); yi < Math.min(sample[1] + n + 1, height); yi++) {
+                    Arrays.fill(needed, yi * width + xStart, yi * width + xEnd, (byte) 1);
+                }
+            }
+
+            long time = System.nanoTime();
+            computeBins(bins, needed);
+            time = stage("patterns", time);
+        } finally {
+            ScratchPool.release(needed);
+        }
+
+        final double[][] result = new double[samples.size()][];
+        RowBands.run(samples.size(), m_parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                final int numBins = getNumberOfBins();
+                for (int i = from; i < to; i++) {
+                    final int x = samples.get(i)[0];
+                    final int y = samples.get(i)[1];
+                    final double[] data = new double[numBins + 2];
+                    data[0] = x;
+                    data[1] = y;
+                    final int xStart = Math.max(x - n, 0);
+                    final int xEnd = Math.min(x + n + 1, width);
+                    for (int yi = Math.max(y - n, 0); yi < Math.min(y + n + 1, height); yi++) {
+                        for (int k = yi * width + xStart; k < yi * width + xEnd; k++) {
+                            data[bins[k] + 2]++;
+                        }
+                    }
+                    result[i] = data;
+                }
+            }
+        });
+
+        for (double[] data : result) {
+            addData(data);
+        }
+    }
+
+    /**
+     * Pools the bins of all unmasked pixels into a spatial pyramid. Level l
+     * divides the image into 2^l x 2^l cells. The histograms of all cells
+     * are concatenated level by level, the cells of a level in row major
+     * order.
+     *
+     * @param bins the bin of each pixel, negative values are ignored
+     * @param mask the mask or null
+     * @param width width of the image
+     * @param height height of the image
+     * @param numBins number of bins per histogram
+     * @param levels the number of pyramid levels (>= 1)
+     * @return the concatenated histograms
+     */
+    static double[] poolPyramid(int[] bins, byte[] mask, int width, int height, int numBins, int levels) {
+        final int[] levelOffset = new int[levels];
+        int length = 0;
+        for (int l = 0; l < levels; l++) {
+            levelOffset[l] = length;
+            length += (1 << (2 * l)) * numBins;
+        }
+        final double[] pyramid = new double[length];
+        for (int y = 0, k = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, k++) {
+                if (bins[k] < 0 || (mask != null && mask[k] == 0)) {
+                    continue;
+                }
+                for (int l = 0; l < levels; l++) {
+                    final int cells = 1 << l;
+                    final int cell = (int) ((long) y * cells / height) * cells + (int) ((long) x * cells / width);
+                    pyramid[levelOffset[l] + cell * numBins + bins[k]]++;
+                }
+            }
+        }
+        return pyramid;
+    }
+
     protected int getMaxBinaryPattern() {
         return (int) Math.pow(2, m_numPoints);
     }
 
+    /**
+     * Returns the number of histogram bins. This is the number of mapped
+     * patterns or {@link #getNumberOfHistogramBins()} without mapping.
+     *
+     * @return number of bins
+     */
+    public int getNumberOfBins() {
+        final int p = m_numPoints;
+        switch (m_mapping) {
+            case UNIFORM:
+                return p * (p - 1) + 3;
+            case ROTATION_INVARIANT:
+                return mappingTable()[1 << p];
+            case ROTATION_INVARIANT_UNIFORM:
+                return p + 2;
+            default:
+                return m_histogramSize;
+        }
+    }
+
+    /**
+     * Returns the mapping table of the current mapping, computing it if
+     * needed. The entry after the last pattern holds the number of bins.
+     *
+     * @return the table or null if no mapping is set or there are too many
+     * points for a table
+     * @throws IllegalStateException if a rotation invariant mapping is
+     * requested for more than {@value #MAX_TABLE_POINTS} points
+     */
+    private int[] mappingTable() {
+        if (m_mapping == Mapping.NONE) {
+            return null;
+        }
+        if (m_numPoints > MAX_TABLE_POINTS) {
+            if (m_mapping == Mapping.ROTATION_INVARIANT) {
+                throw new IllegalStateException("rotation invariant patterns require at most "
+                        + MAX_TABLE_POINTS + " points, but numPoints is " + m_numPoints);
+            }
+            return null;
+        }
+        if (m_table == null || m_tablePoints != m_numPoints) {
+            m_table = createTable(m_mapping, m_numPoints);
+            m_tablePoints = m_numPoints;
+        }
+        return m_table;
+    }
+
+    /**
+     * Creates the mapping table for all patterns of p points.
+     */
+    static int[] createTable(Mapping mapping, int p) {
+        final int patterns = 1 << p;
+        final int[] table = new int[patterns + 1];
+        if (mapping == Mapping.ROTATION_INVARIANT) {
+            // minimal rotations are visited before all their other rotations
+            int bins = 0;
+            for (int pattern = 0; pattern < patterns; pattern++) {
+                int min = minRotation(pattern, p);
+                table[pattern] = min == pattern ? bins++ : table[min];
+            }
+            table[patterns] = bins;
+        } else {
+            for (int pattern = 0; pattern < patterns; pattern++) {
+                table[pattern] = map(mapping, pattern, p);
+            }
+            table[patterns] = mapping == Mapping.UNIFORM ? p * (p - 1) + 3 : p + 2;
+        }
+        return table;
+    }
+
+    /**
+     * Computes the uniform and rotation invariant uniform mappings.
+     *
+     * Uniform patterns are numbered 0 (no ones), 1 (all ones) and
+     * 2 + (k - 1) * p + s for a run of k ones starting at bit s.
+     */
+    static int map(Mapping mapping, int pattern, int p) {
+        final int all = (int) ((1L << p) - 1);
+        final int rotated = ((pattern << 1) | (pattern >>> (p - 1))) & all;
+        final boolean uniform = Integer.bitCount(pattern ^ rotated) <= 2;
+        switch (mapping) {
+            case UNIFORM:
+                if (!uniform) {
+                    return p * (p - 1) + 2;
+                } else if (pattern == 0) {
+                    return 0;
+                } else if (pattern == all) {
+                    return 1;
+                }
+                int start = Integer.numberOfTrailingZeros(pattern & ~rotated);
+                return 2 + (Integer.bitCount(pattern) - 1) * p + start;
+            case ROTATION_INVARIANT_UNIFORM:
+                return uniform ? Integer.bitCount(pattern) : p + 1;
+            default:
+                throw new IllegalArgumentException("no closed form for " + mapping);
+        }
+    }
+
+    private static int minRotation(int pattern, int p) {
+        final int all = (1 << p) - 1;
+        int min = pattern;
+        int rotated = pattern;
+        for (int i = 1; i < p; i++) {
+            rotated = ((rotated >>> 1) | (rotated << (p - 1))) & all;
+            min = Math.min(min, rotated);
+        }
+        return min;
+    }
+
     protected void setImageProcessor(ImageProcessor ip) {
         if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
             ImageProcessor mask = ip.getMask();
@@ -144,6 +486,7 @@ public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
             ip.setMask(mask);
         }
         m_ip = ip;
+        m_pixels = PixelView.bytes(ip);
 
         calculateOffsets();
     }
@@ -162,40 +505,180 @@ public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
         }
     }
 
-    protected double[] processPixel(final int x, final int y) {
-        int xStart = Math.max(x - m_neighborhoodSize, 0);
-        int xEnd = Math.min(x + m_neighborhoodSize + 1, m_ip.getWidth());
-        int yStart = Math.max(y - m_neighborhoodSize, 0);
-        int yEnd = Math.min(y + m_neighborhoodSize + 1, m_ip.getHeight());
-
-        Histogram hist = new Histogram(m_histogramSize, getMaxBinaryPattern());
+    /**
+     * Computes the histogram bin of the binary pattern of each pixel.
+     *
+     * Produces the same patterns as {@link #getBinaryPattern(int, int)}: the
+     * sample coordinates, the clamping and the interpolation fractions are
+     * computed exactly as in {@link PixelView.Bytes#interpolate(double, double)},
+     * but only once per column and row instead of once per pixel.
+     *
+     * @param bins receives the bin of each pixel (row major)
+     * @param needed the pixels whose bins are required, null for all
+     */
+    protected void computeBins(final int[] bins, final byte[] needed) {
+        final PixelView.Bytes pixels = m_pixels;
+        final int width = pixels.width;
+        final int height = pixels.height;
+        final int numPoints = m_numPoints;
+
+        // per column and row: base index and fraction of each sample point
+        final int[] xBase = new int[width * numPoints];
+        final double[] xFraction = new double[width * numPoints];
+        final boolean[] xValid = new boolean[width];
+        final int[] yBase = new int[height * numPoints];
+        final double[] yFraction = new double[height * numPoints];
+        final boolean[] yValid = new boolean[height];
+        sampleTable(width, 0, 1, xBase, xFraction, xValid);
+        sampleTable(height, 1, pixels.stride, yBase, yFraction, yValid);
+
+        // same binning as utils.Histogram with the range [0, max pattern[
+        final double binWidth = (double) getMaxBinaryPattern() / m_histogramSize;
+        final Mapping mapping = m_mapping;
+        final int[] table = mappingTable();
+
+        RowBands.run(height, m_parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                final byte[] p = pixels.pixels;
+                for (int y = from; y < to; y++) {
+                    final int row = pixels.offset + y * pixels.stride;
+                    for (int x = 0, k = y * width; x < width; x++, k++) {
+                        if (needed != null && needed[k] == 0) {
+                            continue;
+                        }
+                        int pattern = 0;
+                        if (xValid[x] && yValid[y]) {
+                            final double center = (p[row + x] & 0xff) + m_constant;
+                            for (int i = 0, xi = x * numPoints, yi = y * numPoints; i < numPoints; i++, xi++, yi++) {
+                                final int pos = pixels.offset + yBase[yi] + xBase[xi];
+                                final int lowerLeft = p[pos] & 0xff;
+                                final int lowerRight = p[pos + 1] & 0xff;
+                                final int upperLeft = p[pos + pixels.stride] & 0xff;
+                                final int upperRight = p[pos + pixels.stride + 1] & 0xff;
+                                final double upperAverage = upperLeft + xFraction[xi] * (upperRight - upperLeft);
+                                final double lowerAverage = lowerLeft + xFraction[xi] * (lowerRight - lowerLeft);
+                                final double val = lowerAverage + yFraction[yi] * (upperAverage - lowerAverage);
+                                if (val > center) {
+                                    pattern |= 1 << i;
+                                }
+                            }
+                        }
+                        if (mapping == Mapping.NONE) {
+                            bins[k] = (int) (pattern / binWidth);
+                        } else if (table != null) {
+                            bins[k] = table[pattern];
+                        } else {
+                            bins[k] = map(mapping, pattern, numPoints);
+                        }
+                    }
+                }
+            }
+        });
+    }
 
-        // iterate over neighborhood
-        for (int yi = yStart; yi < yEnd; yi++) {
-            for (int xi = xStart; xi < xEnd; xi++) {
-                hist.add(getBinaryPattern(xi, yi));
+    /**
+     * Precomputes the sample coordinates of one axis.
+     *
+     * @param size width or height of the image
+     * @param axis 0 for x, 1 for y
+     * @param scale multiplier of the base coordinate (1 or the row stride)
+     * @param base receives the scaled integer coordinate of each position and point
+     * @param fraction receives the interpolation fraction of each position and point
+     * @param valid receives whether all points of a position lie inside the image
+     */
+    private void sampleTable(int size, int axis, int scale, int[] base, double[] fraction, boolean[] valid) {
+        for (int c = 0, k = 0; c < size; c++) {
+            valid[c] = true;
+            for (int i = 0; i < m_numPoints; i++, k++) {
+                double v = c + m_offsets[i * 2 + axis];
+                if (v < 0 || v >= size) {
+                    valid[c] = false;
+                }
+                // clamping of PixelView.Bytes#interpolate
+                if (v < 0.0) {
+                    v = 0.0;
+                }
+                if (v >= size - 1.0) {
+                    v = size - 1.001;
+                }
+                final int b = (int) v;
+                base[k] = b * scale;
+                fraction[k] = v - b;
             }
         }
+    }
 
-        double[] histarr = hist.getHistogramm();
-        double[] data = new double[histarr.length + 2];
-        data[0] = x;
-        data[1] = y;
-        System.arraycopy(histarr, 0, data, 2, histarr.length);
+    /**
+     * Computes the histograms of all pixels of one row. The histogram is
+     * updated incrementally while the neighborhood slides along the row.
+     *
+     * @param bins the bin of each pixel
+     * @param mask the mask or null
+     * @param y the row
+     * @param hist histogram buffer
+     * @return the feature vectors of the unmasked pixels of the row
+     */
+    private double[][] processRow(int[] bins, byte[] mask, int y, int[] hist) {
+        final int width = m_pixels.width;
+        final int n = m_neighborhoodSize;
+        final int yStart = Math.max(y - n, 0);
+        final int yEnd = Math.min(y + n + 1, m_pixels.height);
+
+        int count = width;
+        if (mask != null) {
+            count = 0;
+            for (int x = 0, k = y * width; x < width; x++, k++) {
+                if (mask[k] != 0) {
+                    count++;
+                }
+            }
+        }
+        final double[][] row = new double[count][];
+
+        Arrays.fill(hist, 0);
+        int left = 0;
+        int right = 0;
+        for (int x = 0, i = 0; x < width; x++) {
+            // window columns [left, right)
+            final int xEnd = Math.min(x + n + 1, width);
+            for (; right < xEnd; right++) {
+                for (int yi = yStart, k = yStart * width + right; yi < yEnd; yi++, k += width) {
+                    hist[bins[k]]++;
+                }
+            }
+            final int xStart = Math.max(x - n, 0);
+            for (; left < xStart; left++) {
+                for (int yi = yStart, k = yStart * width + left; yi < yEnd; yi++, k += width) {
+                    hist[bins[k]]--;
+                }
+            }
 
-        return data;
+            if (mask == null || mask[y * width + x] != 0) {
+                double[] data = new double[hist.length + 2];
+                data[0] = x;
+                data[1] = y;
+                for (int b = 0; b < hist.length; b++) {
+                    data[b + 2] = hist[b];
+                }
+                row[i++] = data;
+            }
+        }
+        return row;
     }
 
     protected int getBinaryPattern(final int x, final int y) {
-        final float centerPixel = m_ip.getf(x, y);
+        final PixelView.Bytes pixels = m_pixels;
+        final double[] offsets = m_offsets;
+        final float centerPixel = pixels.get(x, y);
         int pattern = 0;
         for (int i = 0; i < m_numPoints; i++) {
-            double xi = x + m_offsets[i * 2];
-            double yi = y + m_offsets[i * 2 + 1];
-            if (xi < 0 || xi >= m_ip.getWidth() || yi < 0 || yi >= m_ip.getHeight())
+            double xi = x + offsets[i * 2];
+            double yi = y + offsets[i * 2 + 1];
+            if (xi < 0 || xi >= pixels.width || yi < 0 || yi >= pixels.height)
                 return 0;
 
-            double val = m_ip.getInterpolatedPixel(xi, yi);
+            double val = pixels.interpolate(xi, yi);
             if (val > centerPixel + m_constant) {
                 pattern |= 1 << i;
             }
@@ -257,7 +740,8 @@ public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
     }
 
     /**
-     * Set the number of bins of the LBP histogram of each pixel.
+     * Set the number of bins of the LBP histogram of each pixel. Only used
+     * without mapping, see {@link #setMapping(Mapping)}.
      *
      * @param numBins a positive number
      */
@@ -284,4 +768,89 @@ public class LocalBinaryPatterns extends AbstractFeatureDescriptor {
         return m_histogramSize;
     }
 
+    /**
+     * Set the maximum number of row bands that are processed in parallel.
+     *
+     * @param parallelism a positive number
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException(
+                    "parallelism must be bigger than zero, but is " + parallelism);
+        m_parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return m_parallelism;
+    }
+
+    /**
+     * Only describe the pixels (i * stride, j * stride). Ignored if sample
+     * points or pyramid levels are set.
+     *
+     * @param stride a positive number, 1 describes every pixel
+     */
+    public void setStride(int stride) {
+        if (stride <= 0)
+            throw new IllegalArgumentException(
+                    "stride must be bigger than zero, but is " + stride);
+        m_stride = stride;
+    }
+
+    public int getStride() {
+        return m_stride;
+    }
+
+    /**
+     * Only describe the given points, e.g. the result of a
+     * {@link de.lmu.ifi.dbs.jfeaturelib.pointDetector.PointDetector}. The
+     * coordinates are rounded, points outside the image or the mask are
+     * skipped. The feature vectors are returned in the order of the points.
+     * Ignored if pyramid levels are set.
+     *
+     * @param points the points or null to describe the whole image
+     */
+    public void setSamplePoints(List<ImagePoint> points) {
+        m_samplePoints = points == null ? null : new ArrayList<>(points);
+    }
+
+    public List<ImagePoint> getSamplePoints() {
+        return m_samplePoints;
+    }
+
+    /**
+     * Pool the patterns of the whole image into a spatial pyramid with the
+     * given number of levels. The result is a single feature vector of
+     * (4^levels - 1) / 3 concatenated histograms without coordinates.
+     *
+     * @param levels the number of levels, 0 disables pooling
+     */
+    public void setPyramidLevels(int levels) {
+        if (levels < 0 || levels > 8)
+            throw new IllegalArgumentException(
+                    "levels must be in [0,8], but is " + levels);
+        m_pyramidLevels = levels;
+    }
+
+    public int getPyramidLevels() {
+        return m_pyramidLevels;
+    }
+
+    /**
+     * Set the mapping of the binary patterns. With a mapping the histogram
+     * has one bin per mapped pattern ({@link #getNumberOfBins()}).
+     *
+     * @param mapping the mapping
+     */
+    public void setMapping(Mapping mapping) {
+        if (mapping == null)
+            throw new NullPointerException("mapping must not be null");
+        m_mapping = mapping;
+        m_table = null;
+    }
+
+    public Mapping getMapping() {
+        return m_mapping;
+    }
+
 }
@@ -24,9 +24,12 @@
 package de.lmu.ifi.dbs.jfeaturelib.features;
 
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Patch-based local binary patterns.
@@ -60,6 +63,18 @@ import java.util.EnumSet;
  * 8-neighborhoods of these pixels.
  * </p>
  * <p>
+ * The patterns can be sampled on a grid ({@link #setStride(int)}) and pooled
+ * into a spatial pyramid of histograms ({@link #setPyramidLevels(int)}).
+ * </p>
+ * <p>
+ * Multi-scale patterns are computed with {@link #setSizes(int...)}: for size
+ * s the means of patches with edge length 2s+1 are compared to the mean of
+ * the patches at distance s, the margin grows to 2s accordingly. The
+ * histograms of all sizes are concatenated. The mean image of each size is
+ * computed once from the integral image, the rows are processed in parallel
+ * bands ({@link #setParallelism(int)}).
+ * </p>
+ * <p>
  * References:
  * <pre>
  * &#64;inproceedings{
@@ -82,8 +97,17 @@ public class MeanIntensityLocalBinaryPatterns extends AbstractFeatureDescriptor
     protected double m_histMin;
     protected double m_histMax;
 
+    protected int m_stride = 1;
+    protected int m_pyramidLevels = 0;
+    protected int[] m_sizes = {1};
+
+    private int m_parallelism = RowBands.defaultParallelism();
+
     protected MeanPatchIntensityHistogram m_meanDescriptor;
 
+    private static final int[] NEIGHBOR_X = {-1, 0, 1, 1, 1, 0, -1, -1};
+    private static final int[] NEIGHBOR_Y = {-1, -1, -1, 0, 1, 1, 1, 0};
+
     public MeanIntensityLocalBinaryPatterns() {
     }
 
@@ -107,42 +131,102 @@ public class MeanIntensityLocalBinaryPatterns extends AbstractFeatureDescriptor
         firePropertyChange(Progress.START);
         createPatchDescriptor(ip);
 
-        final int yEnd = ip.getHeight() - 2;
-        final int xEnd = ip.getWidth() - 2;
-        final int width = xEnd - 2;
-        final int height = yEnd - 2;
-
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
         final byte[] mask = ip.getMaskArray();
-        byte[] data = new byte[width * height];
-        byte[] histMask = new byte[width * height];
-        // do not process pixels at border, which don't have a complete 8-neighborhood
-        int k = 0;
-        for (int y=2; y < yEnd; y++) {
-            for (int x=2; x < xEnd; x++) {
-                if (mask == null || mask[k] != 0) {
-                    data[k] = getBinaryPattern(x, y);
-                    histMask[k] = -1; // -1 = 0xFF
+        final int binsPerSize = m_pyramidLevels > 0
+                ? (((1 << (2 * m_pyramidLevels)) - 1) / 3) * 256
+                : 256;
+        final double[] features = new double[m_sizes.length * binsPerSize];
+
+        final float[] means = ScratchPool.borrowFloats(width * height);
+        final int[] bins = ScratchPool.borrowInts(width * height);
+        try {
+            for (int s = 0; s < m_sizes.length; s++) {
+                final int size = m_sizes[s];
+                // do not process pixels at border, which don't have a complete 8-neighborhood
+                final int w = width - 4 * size;
+                final int h = height - 4 * size;
+                if (w <= 0 || h <= 0) {
+                    continue;
                 }
-                k++;
-            }
-        }
+                m_meanDescriptor.m_integralImage.computePatchMeans(size, means, m_parallelism);
 
-        ByteProcessor lbpImage = new ByteProcessor(width, height, data);
-        lbpImage.setHistogramSize(256);
-        lbpImage.setHistogramRange(0, 256);
-        int[] hist;
-        if (mask == null) {
-            hist = lbpImage.getHistogram();
-        } else {
-            ByteProcessor maskIp = new ByteProcessor(width, height, histMask);
-            hist = lbpImage.getHistogram(maskIp);
+                final int[] hist = new int[256];
+                computePatterns(means, mask, width, size, w, h, bins, hist, s, m_sizes.length);
+                if (m_pyramidLevels > 0) {
+                    double[] pyramid = LocalBinaryPatterns.poolPyramid(bins, null, w, h, 256, m_pyramidLevels);
+                    System.arraycopy(pyramid, 0, features, s * binsPerSize, binsPerSize);
+                } else {
+                    for (int b = 0; b < 256; b++) {
+                        features[s * binsPerSize + b] = hist[b];
+                    }
+                }
+            }
+        } finally {
+            ScratchPool.release(means);
+            ScratchPool.release(bins);
         }
-        addData(hist);
+        addData(features);
 
+        m_meanDescriptor.releaseIntegralImage();
         m_meanDescriptor = null;
         firePropertyChange(Progress.END);
     }
 
+    /**
+     * Computes the patterns of the w x h inner pixels from the patch means of
+     * the given size. The pattern of each sampled pixel is written to
+     * <tt>bins</tt> (-1 for pixels that are skipped) and counted in
+     * <tt>hist</tt>.
+     */
+    private void computePatterns(final float[] means, final byte[] mask, final int width, final int size,
+            final int w, final int h, final int[] bins, final int[] hist, final int level, final int levels) {
+        final int margin = 2 * size;
+        // offsets of the 8-neighborhood clockwise starting from (x-s, y-s)
+        final int up = -size * width;
+        final int down = size * width;
+        final int stride = m_stride;
+        final AtomicInteger rowsDone = new AtomicInteger();
+
+        RowBands.run(h, m_parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                int[] counts = new int[256];
+                for (int j = from; j < to; j++) {
+                    final int y = j + margin;
+                    for (int x = margin, k = j * w, i = y * width + margin; x < margin + w; x++, k++, i++) {
+                        if ((mask != null && mask[i] == 0) || x % stride != 0 || y % stride != 0) {
+                            bins[k] = -1;
+                            continue;
+                        }
+                        final float c = means[i];
+                        int pattern = 0;
+                        if (means[i + up - size] >= c) pattern |= 1;
+                        if (means[i + up] >= c) pattern |= 2;
+                        if (means[i + up + size] >= c) pattern |= 4;
+                        if (means[i + size] >= c) pattern |= 8;
+                        if (means[i + down + size] >= c) pattern |= 16;
+                        if (means[i + down] >= c) pattern |= 32;
+                        if (means[i + down - size] >= c) pattern |= 64;
+                        if (means[i - size] >= c) pattern |= 128;
+                        bins[k] = pattern;
+                        counts[pattern]++;
+                    }
+                    int done = rowsDone.incrementAndGet();
+                    if (from == 0) { // calling thread
+                        progress(level * h + done, levels * h);
+                    }
+                }
+                synchronized (hist) {
+                    for (int b = 0; b < counts.length; b++) {
+                        hist[b] += counts[b];
+                    }
+                }
+            }
+        });
+    }
+
     protected void createPatchDescriptor(ImageProcessor ip) {
         if (!ByteProcessor.class.isAssignableFrom(ip.getClass())) {
             ImageProcessor mask = ip.getMask();
@@ -158,19 +242,13 @@ public class MeanIntensityLocalBinaryPatterns extends AbstractFeatureDescriptor
     protected byte getBinaryPattern(final int x, final int y) {
         final double meanCenter = m_meanDescriptor.getMeanIntensity(x, y);
 
-        // define 8-neighborhood clockwise starting from (x-1, y-1)
-        final int[] yp = new int[] {y-1, y-1, y-1, y, y+1, y+1, y+1, y};
-        final int[] xp = new int[] {x-1, x, x+1, x+1, x+1, x, x-1, x-1};
-
-        byte bit = 0;
         byte result = 0;
-        // iterate over 8-neighborhood of pixel at (x, y)
-        for (int i=0; i<xp.length; i++) {
-            double meanPixel = m_meanDescriptor.getMeanIntensity(xp[i], yp[i]);
+        // iterate over 8-neighborhood of pixel at (x, y) clockwise starting from (x-1, y-1)
+        for (int bit = 0; bit < NEIGHBOR_X.length; bit++) {
+            double meanPixel = m_meanDescriptor.getMeanIntensity(x + NEIGHBOR_X[bit], y + NEIGHBOR_Y[bit]);
             if (meanPixel >= meanCenter) {
                 result |= (1 << bit);
             }
-            bit++;
         }
         return result;
     }
@@ -179,6 +257,77 @@ public class MeanIntensityLocalBinaryPatterns extends AbstractFeatureDescriptor
         return m_bins;
     }
 
+    /**
+     * Only compute the patterns of the pixels (i * stride, j * stride).
+     *
+     * @param stride a positive number, 1 uses every pixel
+     * @throws IllegalArgumentException if <code>stride <= 0</code>
+     */
+    public void setStride(int stride) {
+        if (stride <= 0)
+            throw new IllegalArgumentException("stride must be greater zero, but got " + stride);
+        m_stride = stride;
+    }
+
+    public int getStride() {
+        return m_stride;
+    }
+
+    /**
+     * Pool the patterns into a spatial pyramid with the given number of
+     * levels instead of a single histogram. Level l divides the image into
+     * 2^l x 2^l cells, the 256 bin histograms of all cells are concatenated.
+     *
+     * @param levels number of levels, 0 disables pooling
+     * @throws IllegalArgumentException if levels is not in [0,8]
+     */
+    public void setPyramidLevels(int levels) {
+        if (levels < 0 || levels > 8)
+            throw new IllegalArgumentException("levels must be in [0,8], but got " + levels);
+        m_pyramidLevels = levels;
+    }
+
+    public int getPyramidLevels() {
+        return m_pyramidLevels;
+    }
+
+    /**
+     * Set the patch sizes of the multi-scale patterns. One histogram (or
+     * pyramid) is computed per size and all of them are concatenated in the
+     * given order. The default is a single size of 1.
+     *
+     * @param sizes one or more sizes
+     * @throws IllegalArgumentException if no size is given or a size is <= 0
+     */
+    public void setSizes(int... sizes) {
+        if (sizes.length == 0)
+            throw new IllegalArgumentException("at least one size is required");
+        for (int size : sizes) {
+            if (size <= 0)
+                throw new IllegalArgumentException("size must be greater zero, but got " + size);
+        }
+        m_sizes = sizes.clone();
+    }
+
+    public int[] getSizes() {
+        return m_sizes.clone();
+    }
+
+    /**
+     * Set the maximum number of row bands that are processed in parallel.
+     *
+     * @param parallelism a positive number
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be greater zero, but got " + parallelism);
+        m_parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return m_parallelism;
+    }
+
     /**
      * Set the number of bins of the histogram.
      *
@@ -27,13 +27,16 @@ import de.lmu.ifi.dbs.jfeaturelib.utils.Histogram;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
 import de.lmu.ifi.dbs.jfeaturelib.utils.IntegralImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import de.lmu.ifi.dbs.jfeaturelib.utils.RowBands;
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import ij.measure.Measurements;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
-import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This descriptor calculates a histogram of mean intensities of specified neighborhood size.
@@ -44,13 +47,19 @@ import java.util.EnumSet;
  * histogram.
  * </p><p>
  * Mean intensities are computed efficiently by using {@link IntegralImage}.
+ * The image of patch means is computed once per patch size in parallel row
+ * bands ({@link #setParallelism(int)}).
+ * </p><p>
+ * Several patch sizes can be set with {@link #setSizes(int...)}, the histograms
+ * of all sizes are concatenated in the given order.
  * </p>
  *
  * @author sebp
  */
-public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
+public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor implements RegionDescriptor {
 
     protected int m_size;
+    protected int[] m_sizes = {0};
     protected int m_bins;
     protected double m_histMin;
     protected double m_histMax;
@@ -59,6 +68,8 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
     protected int m_patchArea;
     protected IntegralImage m_integralImage;
 
+    private int m_parallelism = RowBands.defaultParallelism();
+
     public MeanPatchIntensityHistogram() {
     }
 
@@ -76,7 +87,13 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
 
     @Override
     public void setProperties(LibProperties properties) throws IOException {
-        setSize(properties.getInteger(LibProperties.MEAN_PATCH_INTENSITIES_PATCH_SIZE));
+        String sizes = properties.getString(LibProperties.MEAN_PATCH_INTENSITIES_PATCH_SIZE, "1").trim();
+        String[] tokens = sizes.split(",");
+        int[] patchSizes = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            patchSizes[i] = Integer.parseInt(tokens[i].trim());
+        }
+        setSizes(patchSizes);
         setNumberOfBins(properties.getInteger(LibProperties.MEAN_PATCH_INTENSITIES_BINS));
         setHistogramRange(
                 properties.getDouble(LibProperties.MEAN_PATCH_INTENSITIES_HIST_MIN),
@@ -89,11 +106,86 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
 
         createIntegralImage((ByteProcessor) ip);
 
-        int yStart, xStart, yEnd, xEnd;
-        yStart = m_size;
-        xStart = m_size;
-        yEnd = ip.getHeight() - m_size;
-        xEnd = ip.getWidth() - m_size;
+        if (m_histMin == 0 && m_histMax == 0) {
+            retrieveMinAndMaxFromImage(ip);
+            // Histogram class excludes the maximum value,
+            // therefore increase it by 1
+            m_histMax++;
+        }
+
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final double[] features = new double[m_sizes.length * m_bins];
+        final float[] means = ScratchPool.borrowFloats(width * height);
+        try {
+            int total = 0;
+            for (int size : m_sizes) {
+                total += Math.max(0, height - 2 * size);
+            }
+            final AtomicInteger rowsDone = new AtomicInteger();
+            for (int s = 0; s < m_sizes.length; s++) {
+                m_integralImage.computePatchMeans(m_sizes[s], means, m_parallelism);
+                addHistogram(means, width, height, m_sizes[s], features, s * m_bins, rowsDone, total);
+            }
+        } finally {
+            ScratchPool.release(means);
+        }
+        addData(features);
+
+        releaseIntegralImage();
+        firePropertyChange(Progress.END);
+    }
+
+    /**
+     * Adds the histogram of the patch means of the given size to the target.
+     * The rows are counted in parallel bands, each band merges its own
+     * histogram into the target.
+     */
+    private void addHistogram(final float[] means, final int width, final int height, final int size,
+            final double[] target, final int offset, final AtomicInteger rowsDone, final int total) {
+        final int xEnd = width - size;
+        RowBands.run(Math.max(0, height - 2 * size), m_parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                Histogram hist = new Histogram(m_bins, m_histMin, m_histMax);
+                for (int y = from + size; y < to + size; y++) {
+                    for (int i = y * width + size, end = y * width + xEnd; i < end; i++) {
+                        hist.add(means[i]);
+                    }
+                    int done = rowsDone.incrementAndGet();
+                    if (from == 0) { // calling thread
+                        progress(done, total);
+                    }
+                }
+                double[] counts = hist.getHistogramm();
+                synchronized (target) {
+                    for (int b = 0; b < counts.length; b++) {
+                        target[offset + b] += counts[b];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes one histogram per region of the label image. A patch belongs to
+     * the region of its center pixel.
+     *
+     * Images that are not 8 bit gray are converted to 8 bit first.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkLabels(ip, labels);
+        firePropertyChange(Progress.START);
+
+        ip = ip instanceof ByteProcessor ? ip : ip.convertToByte(true);
+        createIntegralImage((ByteProcessor) ip);
+
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
 
         if (m_histMin == 0 && m_histMax == 0) {
             retrieveMinAndMaxFromImage(ip);
@@ -102,25 +194,54 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
             m_histMax++;
         }
 
-        Histogram hist = new Histogram(m_bins, m_histMin, m_histMax);
+        double[][] features = new double[labels.getRegionCount()][m_sizes.length * m_bins];
+        final int[] region = labels.getRegionIndex();
+        final float[] means = ScratchPool.borrowFloats(width * height);
+        try {
+            for (int s = 0; s < m_sizes.length; s++) {
+                final int size = m_sizes[s];
+                m_integralImage.computePatchMeans(size, means, m_parallelism);
 
-        for (int y = yStart; y < yEnd; y++) {
-            for (int x = xStart; x < xEnd; x++) {
-                hist.add(getMeanIntensity(x, y));
+                Histogram[] hists = new Histogram[features.length];
+                for (int k = 0; k < hists.length; k++) {
+                    hists[k] = new Histogram(m_bins, m_histMin, m_histMax);
+                }
+                final int yEnd = height - size;
+                final int xEnd = width - size;
+                for (int y = size; y < yEnd; y++) {
+                    for (int i = y * width + size, end = y * width + xEnd; i < end; i++) {
+                        if (region[i] >= 0) {
+                            hists[region[i]].add(means[i]);
+                        }
+                    }
+                    progress(s * height + y, m_sizes.length * height);
+                }
+                for (int k = 0; k < hists.length; k++) {
+                    System.arraycopy(hists[k].getHistogramm(), 0, features[k], s * m_bins, m_bins);
+                }
             }
-            int p = (int) (y / (double) yEnd * 100);
-            firePropertyChange(new Progress(p));
+        } finally {
+            ScratchPool.release(means);
         }
 
-        addData(hist.getHistogramm());
+        for (double[] hist : features) {
+            addData(hist);
+        }
 
-        m_integralImage = null;
+        releaseIntegralImage();
         firePropertyChange(Progress.END);
     }
 
     protected void createIntegralImage(ByteProcessor ip) {
         m_integralImage = new IntegralImage();
-        m_integralImage.compute(ip);
+        m_integralImage.computePooled(ip);
+    }
+
+    protected void releaseIntegralImage() {
+        if (m_integralImage != null) {
+            m_integralImage.release();
+            m_integralImage = null;
+        }
     }
 
     protected void retrieveMinAndMaxFromImage(ImageProcessor ip) {
@@ -130,8 +251,7 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
     }
 
     protected float getMeanIntensity(final int x, final int y) {
-        Rectangle rect = new Rectangle(x - m_size, y - m_size, m_patchSize, m_patchSize);
-        return m_integralImage.get(rect) / (float) m_patchArea;
+        return m_integralImage.get(x - m_size, y - m_size, m_patchSize, m_patchSize) / (float) m_patchArea;
     }
 
     public int getSize() {
@@ -148,14 +268,58 @@ public class MeanPatchIntensityHistogram extends AbstractFeatureDescriptor {
      * @throws IllegalArgumentException if <code>size <= 0</code>
      */
     public void setSize(int size) {
-        if (size <= 0) {
-            throw new IllegalArgumentException("size must be greater zero, but got " + size);
+        setSizes(size);
+    }
+
+    /**
+     * Returns the sizes of the neighborhoods.
+     *
+     * @return copy of the sizes
+     */
+    public int[] getSizes() {
+        return m_sizes.clone();
+    }
+
+    /**
+     * Set several neighborhood sizes. One histogram is computed per size and
+     * the histograms are concatenated in the given order. The first size is
+     * used by {@link #getMeanIntensity(int, int)}.
+     *
+     * @param sizes one or more sizes
+     * @throws IllegalArgumentException if no size is given or a size is <= 0
+     * @see #setSize(int)
+     */
+    public void setSizes(int... sizes) {
+        if (sizes.length == 0) {
+            throw new IllegalArgumentException("at least one size is required");
         }
-        m_size = size;
-        m_patchSize = 1 + 2 * size;
+        for (int size : sizes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("size must be greater zero, but got " + size);
+            }
+        }
+        m_sizes = sizes.clone();
+        m_size = sizes[0];
+        m_patchSize = 1 + 2 * m_size;
         m_patchArea = m_patchSize * m_patchSize;
     }
 
+    /**
+     * Set the maximum number of row bands that are processed in parallel.
+     *
+     * @param parallelism a positive number
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater zero, but got " + parallelism);
+        }
+        m_parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return m_parallelism;
+    }
+
     public int getNumberOfBins() {
         return m_bins;
     }
@@ -29,13 +29,14 @@ import de.lmu.ifi.dbs.jfeaturelib.edgeDetector.Canny;
 import de.lmu.ifi.dbs.jfeaturelib.utils.GradientImage;
 import de.lmu.ifi.dbs.jfeaturelib.utils.GradientSource;
 import de.lmu.ifi.dbs.jfeaturelib.utils.Interpolated1DHistogram;
-import de.lmu.ifi.dbs.utilities.Arrays2;
+import de.lmu.ifi.dbs.jfeaturelib.utils.MaskSpans;
 import de.lmu.ifi.dbs.utilities.Math2;
 import de.lmu.ifi.dbs.utilities.Vectors;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.EnumSet;
 import org.apache.log4j.Logger;
 
@@ -55,6 +56,9 @@ import org.apache.log4j.Logger;
  * If another edge detection operator should be used, simple set the canny parameter to false and call
  * {@link #run(ij.process.ImageProcessor)} with an pre processed image.
  *
+ * The gradients are binned in a single pass into the cells of the finest pyramid level, the coarser levels are the
+ * sums of their sub cells. So the cost of the pixel pass does not depend on the amount of recursions.
+ *
  * @author graf
  * @since 11/4/2011
  */
@@ -69,10 +73,6 @@ public class PHOG extends AbstractFeatureDescriptor {
      * Amount of recursions for this descriptor. 0 means only the root level.
      */
     private int recursions = 1;
-    /**
-     * dynamic array holding the feature
-     */
-    private double[] feature = new double[0];
     /**
      * the wrapper class to extract the gradient information from
      */
@@ -104,10 +104,10 @@ public class PHOG extends AbstractFeatureDescriptor {
         gradientSource.setIp(ip);
 
         histogram = new Interpolated1DHistogram(0, Math.PI, bins);
-        buildHistogramRecursively(ip.getRoi(), 0);
+        double[][] levels = buildPyramid(ip.getRoi());
 
-        // release memory
-        gradientSource = null;
+        double[] feature = new double[bins * (((1 << 2 * (recursions + 1)) - 1) / 3)];
+        appendRecursively(levels, 0, 0, 0, feature, 0);
         Vectors.normalize(feature);
 
         addData(feature);
@@ -126,38 +126,119 @@ public class PHOG extends AbstractFeatureDescriptor {
         return ip;
     }
 
-    private void buildHistogramRecursively(Rectangle r, int recursion) {
-        histogram.clear();
+    /**
+     * Builds the histograms of all pyramid levels. The gradients are binned
+     * into the cells of the finest level in one row major pass over the
+     * (masked) pixels of the roi. Each coarser level is then the sum of its
+     * four child cells.
+     *
+     * The cell borders of the finest level are
+     * <code>r.x + i * r.width / cells</code> (resp. y), so that the cells of
+     * every level exactly partition the roi.
+     *
+     * @param r the roi
+     * @return for each level l the histograms of its 2^l x 2^l cells in row
+     * major order, each cell consisting of bins values
+     */
+    private double[][] buildPyramid(final Rectangle r) {
+        final int cells = 1 << recursions;
+        final double[][] levels = new double[recursions + 1][];
+
+        // cell column of each roi column and cell row of each roi row
+        final int[] cellX = cellIndices(r.width, cells);
+        final int[] cellY = cellIndices(r.height, cells);
+
+        final double[] finest = new double[cells * cells * bins];
+        levels[recursions] = finest;
 
-        final int borderRight = r.x + r.width;
-        final int borderBottom = r.y + r.height;
-        for (int x = r.x; x < borderRight; x++) {
+        MaskSpans spans = getMaskSpans();
+        if (spans == null) {
+            final int borderRight = r.x + r.width;
+            final int borderBottom = r.y + r.height;
             for (int y = r.y; y < borderBottom; y++) {
-                double length = gradientSource.getLength(x, y);
-                if (inMask(x, y) && length != 0) {
-                    histogram.add(gradientSource.getTheta(x, y), length);
-                }
+                addToCells(finest, cellX, cellY, r, y, r.x, borderRight);
             }
+        } else {
+            // only visit the pixels inside the mask
+            spans.forEach(r, new MaskSpans.SpanVisitor() {
+                @Override
+                public void visit(int y, int x0, int x1) {
+                    addToCells(finest, cellX, cellY, r, y, x0, x1);
+                }
+            });
         }
-        feature = Arrays2.append(feature, histogram.getData());
 
-        // descend into next recursion
-        if (recursion++ < recursions) {
-            final int w2 = r.width / 2;
-            final int h2 = r.height / 2;
+        // sum up the children into the parent cells
+        for (int level = recursions - 1; level >= 0; level--) {
+            final double[] children = levels[level + 1];
+            final int n = 1 << level;
+            final double[] parents = new double[n * n * bins];
+            for (int cy = 0; cy < n; cy++) {
+                for (int cx = 0; cx < n; cx++) {
+                    final int parent = (cy * n + cx) * bins;
+                    final int topLeft = (2 * cy * 2 * n + 2 * cx) * bins;
+                    final int bottomLeft = topLeft + 2 * n * bins;
+                    for (int b = 0; b < bins; b++) {
+                        parents[parent + b] = children[topLeft + b] + children[topLeft + bins + b]
+                                + children[bottomLeft + b] + children[bottomLeft + bins + b];
+                    }
+                }
+            }
+            levels[level] = parents;
+        }
+        return levels;
+    }
 
-            Rectangle tl = new Rectangle(r.x, r.y, w2, h2);
-            buildHistogramRecursively(tl, recursion);
+    /**
+     * Returns the cell index of each of the length positions if the length is
+     * split into the given amount of cells.
+     */
+    private static int[] cellIndices(int length, int cells) {
+        int[] indices = new int[length];
+        for (int cell = 0; cell < cells; cell++) {
+            final int from = (int) ((long) cell * length / cells);
+            final int to = (int) ((long) (cell + 1) * length / cells);
+            Arrays.fill(indices, from, to, cell);
+        }
+        return indices;
+    }
 
-            Rectangle tr = new Rectangle(w2, r.y, w2, h2);
-            buildHistogramRecursively(tr, recursion);
+    /**
+     * Adds the gradients of the pixels [x0, x1[ in row y to the histograms of
+     * the finest cells.
+     */
+    private void addToCells(double[] finest, int[] cellX, int[] cellY, Rectangle r, int y, int x0, int x1) {
+        final int cells = 1 << recursions;
+        final int rowOffset = cellY[y - r.y] * cells;
+        for (int x = x0; x < x1; x++) {
+            double length = gradientSource.getLength(x, y);
+            if (length != 0) {
+                int offset = (rowOffset + cellX[x - r.x]) * bins;
+                histogram.add(gradientSource.getTheta(x, y), length, finest, offset);
+            }
+        }
+    }
 
-            Rectangle bl = new Rectangle(r.x, h2, w2, h2);
-            buildHistogramRecursively(bl, recursion);
+    /**
+     * Copies the histogram of the given cell and of all its descendants into
+     * the feature vector in depth first order (the cell itself followed by its
+     * top left, top right, bottom left and bottom right quadrant).
+     *
+     * @return the position in the feature vector behind the copied histograms
+     */
+    private int appendRecursively(double[][] levels, int level, int cx, int cy, double[] feature, int pos) {
+        final int n = 1 << level;
+        System.arraycopy(levels[level], (cy * n + cx) * bins, feature, pos, bins);
+        pos += bins;
 
-            Rectangle br = new Rectangle(w2, h2, w2, h2);
-            buildHistogramRecursively(br, recursion);
+        // descend into next recursion
+        if (level < recursions) {
+            pos = appendRecursively(levels, level + 1, 2 * cx, 2 * cy, feature, pos);
+            pos = appendRecursively(levels, level + 1, 2 * cx + 1, 2 * cy, feature, pos);
+            pos = appendRecursively(levels, level + 1, 2 * cx, 2 * cy + 1, feature, pos);
+            pos = appendRecursively(levels, level + 1, 2 * cx + 1, 2 * cy + 1, feature, pos);
         }
+        return pos;
     }
 
     @Override
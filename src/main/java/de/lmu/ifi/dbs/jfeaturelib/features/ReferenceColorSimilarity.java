@@ -26,13 +26,17 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.Color;
+import java.util.Arrays;
 import java.util.EnumSet;
 
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.MaskSpans;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Palette;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 
 /**
@@ -55,6 +59,10 @@ import de.lmu.ifi.dbs.utilities.Arrays2;
  *
  * This code is contributed to jFeatureLib from the ELKI data mining project at http://elki.dbs.ifi.lmu.de/
  *
+ * The similarities are computed once per distinct color of the image and weighted by the number of pixels of that
+ * color, so the costs depend on the number of colors rather than on the number of pixels. 8 bit images are not
+ * converted to RGB, the similarities are computed for the palette colors of the counted indices.
+ *
  * Recommended distance functions for this feature:
  * <ul>
  * <li>{@code minkowski.ManhattanDistanceFunction}, since the histograms are normalized</li>
@@ -70,9 +78,9 @@ public class ReferenceColorSimilarity extends AbstractFeatureDescriptor {
      */
     private static double TWOPI = Math.PI * 2;
     /**
-     * Reference colors: hue, saturation, brightness, cos(hue), sin(hue)
+     * Reference colors: saturation * cos(hue), saturation * sin(hue) and brightness
      */
-    float[][] refcols;
+    float[] refSatCos, refSatSin, refBright;
 
     /**
      * Constructor for 18*2*2 + 5 = 77 colors.
@@ -124,41 +132,45 @@ public class ReferenceColorSimilarity extends AbstractFeatureDescriptor {
     private void initByBins(int numhbins, int numsbins, int numbbins, int numbbinsG) {
         float hflt = numhbins, sflt = numsbins, bflt = numbbins, bfltG = numbbinsG - 1;
         int total = numhbins * numsbins * numbbins + numbbinsG;
-        refcols = new float[total][5];
+        allocate(total);
         // Colors:
         for (int b = 0; b < numbbins; b++) {
             for (int s = 0; s < numsbins; s++) {
                 for (int h = 0; h < numhbins; h++) {
                     int i = h + numhbins * s + (numhbins * numsbins) * b;
-                    refcols[i][0] = h / hflt;
-                    refcols[i][1] = 1.0f - (s / sflt);
-                    refcols[i][2] = 1.0f - (b / bflt);
-                    refcols[i][3] = (float) Math.cos(refcols[i][0] * TWOPI);
-                    refcols[i][4] = (float) Math.sin(refcols[i][0] * TWOPI);
+                    setReference(i, h / hflt, 1.0f - (s / sflt), 1.0f - (b / bflt));
                 }
             }
         }
         // Grey values
         for (int b = 0; b < numbbinsG; b++) {
             int i = numhbins * numsbins * numbbins + b;
-            refcols[i][0] = 0.0f;
-            refcols[i][1] = 0.0f;
-            refcols[i][2] = b / bfltG;
-            refcols[i][3] = 1.0f;
-            refcols[i][4] = 0.0f;
+            setReference(i, 0.0f, 0.0f, b / bfltG);
         }
     }
 
     private void initByColors(int[] colors) {
-        refcols = new float[colors.length][5];
+        allocate(colors.length);
+        float[] hsb = new float[3];
         for (int i = 0; i < colors.length; i++) {
             int r = (colors[i] & 0xFF0000) >> 16, g = (colors[i] & 0x00FF00) >> 8, b = (colors[i] & 0x0000FF);
-            Color.RGBtoHSB(r, g, b, refcols[i]);
-            refcols[i][3] = (float) Math.cos(refcols[i][0] * TWOPI);
-            refcols[i][4] = (float) Math.sin(refcols[i][0] * TWOPI);
+            Color.RGBtoHSB(r, g, b, hsb);
+            setReference(i, hsb[0], hsb[1], hsb[2]);
         }
     }
 
+    private void allocate(int colors) {
+        refSatCos = new float[colors];
+        refSatSin = new float[colors];
+        refBright = new float[colors];
+    }
+
+    private void setReference(int i, float hue, float saturation, float brightness) {
+        refSatCos[i] = (float) Math.cos(hue * TWOPI) * saturation;
+        refSatSin[i] = (float) Math.sin(hue * TWOPI) * saturation;
+        refBright[i] = brightness;
+    }
+
     @Override
     public void setProperties(LibProperties properties) {
         String init = properties.getString(LibProperties.REFERENCE_COLOR_SIMILARITY_INIT, "bins");
@@ -210,51 +222,160 @@ public class ReferenceColorSimilarity extends AbstractFeatureDescriptor {
 
     @Override
     public void run(ImageProcessor ip) {
-        if (!ColorProcessor.class.isAssignableFrom(ip.getClass())) {
+        int[] palette = Palette.colors(ip);
+        if (palette == null && !ColorProcessor.class.isAssignableFrom(ip.getClass())) {
             ip = ip.convertToRGB();
         }
         firePropertyChange(Progress.START);
-        process((ColorProcessor) ip);
+        if (palette != null) {
+            processPalette((ByteProcessor) ip, palette);
+        } else {
+            process((ColorProcessor) ip);
+        }
         firePropertyChange(Progress.END);
     }
 
+    private void processPalette(ByteProcessor ip, int[] palette) {
+        setMask(ip);
+        int[] counts = Palette.count((byte[]) ip.getPixels(), ip.getWidth(), getMaskSpans());
+
+        final double[] features = new double[refBright.length];
+        float[] hsbvals = new float[3]; // Buffer
+        int total = 0;
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] != 0) {
+                addSimilarities(palette[v], counts[v], features, hsbvals);
+                total += counts[v];
+            }
+        }
+        normalize(features, total);
+    }
+
     private void process(ColorProcessor ip) {
-        double[] features = new double[refcols.length];
-        int realpixels = 0;
-
-        ImageProcessor mask = ip.getMask();
-
-        int numpixels = ip.getPixelCount();
-        float[] hsbvals = new float[5]; // Buffer
-        for (int i = 0; i < numpixels; i++) {
-            if (mask == null || mask.get(i) == 0) {
-                int rgb = ip.get(i);
-                int r = (rgb & 0xFF0000) >> 16, g = (rgb & 0x00FF00) >> 8, b = (rgb & 0x0000FF);
-                Color.RGBtoHSB(r, g, b, hsbvals);
-                hsbvals[3] = (float) Math.cos(hsbvals[0] * TWOPI);
-                hsbvals[4] = (float) Math.sin(hsbvals[0] * TWOPI);
-                // Compare to reference colors:
-                for (int j = 0; j < refcols.length; j++) {
-                    double cos = refcols[j][3] * refcols[j][1]
-                            - hsbvals[3] * hsbvals[1];
-                    double sin = refcols[j][4] * refcols[j][1]
-                            - hsbvals[4] * hsbvals[1];
-                    double db = refcols[j][2] - hsbvals[2];
-                    double val = 1. - Math
-                            .sqrt((db * db + sin * sin + cos * cos) / 5);
-                    features[j] += val;
+        setMask(ip);
+        MaskSpans spans = getMaskSpans();
+
+        final int[] pixels = (int[]) ip.getPixels();
+        ColorCounts counts = new ColorCounts();
+        if (spans == null) {
+            for (int i = 0; i < pixels.length; i++) {
+                counts.add(pixels[i]);
+            }
+        } else {
+            final int width = ip.getWidth();
+            for (int y = 0; y < spans.getHeight(); y++) {
+                for (int s = spans.rowStart(y); s < spans.rowEnd(y); s++) {
+                    final int end = y * width + spans.spanEnd(s);
+                    for (int i = y * width + spans.spanStart(s); i < end; i++) {
+                        counts.add(pixels[i]);
+                    }
                 }
-                realpixels++;
             }
         }
 
-        // Normalize by number of pixels processed.
+        final double[] features = new double[refBright.length];
+        float[] hsbvals = new float[3]; // Buffer
+        for (int k = 0; k < counts.keys.length; k++) {
+            if (counts.counts[k] != 0) {
+                addSimilarities(counts.keys[k], counts.counts[k], features, hsbvals);
+            }
+        }
+        normalize(features, counts.total);
+    }
+
+    /**
+     * Adds the similarities of the color to all reference colors, weighted by
+     * the number of pixels of this color.
+     */
+    private void addSimilarities(int rgb, int count, double[] features, float[] hsbvals) {
+        final float[] satCos = refSatCos, satSin = refSatSin, bright = refBright;
+        int r = (rgb & 0xFF0000) >> 16, g = (rgb & 0x00FF00) >> 8, b = (rgb & 0x0000FF);
+        Color.RGBtoHSB(r, g, b, hsbvals);
+        final float pixelCos = (float) Math.cos(hsbvals[0] * TWOPI) * hsbvals[1];
+        final float pixelSin = (float) Math.sin(hsbvals[0] * TWOPI) * hsbvals[1];
+        final float pixelBright = hsbvals[2];
+        // Compare to reference colors:
+        for (int j = 0; j < features.length; j++) {
+            double cos = satCos[j] - pixelCos;
+            double sin = satSin[j] - pixelSin;
+            double db = bright[j] - pixelBright;
+            double val = 1. - Math.sqrt((db * db + sin * sin + cos * cos) / 5);
+            features[j] += count * val;
+        }
+    }
+
+    /**
+     * Normalizes by the number of pixels processed and adds the features.
+     */
+    private void normalize(double[] features, int pixels) {
         for (int i = 0; i < features.length; i++) {
-            features[i] /= (double) realpixels;
+            features[i] /= (double) pixels;
         }
         addData(features);
     }
 
+    /**
+     * Counts the pixels per color in an open addressing hash table.
+     */
+    private static final class ColorCounts {
+
+        private static final int EMPTY = -1;
+        int[] keys = newKeys(1 << 10);
+        int[] counts = new int[1 << 10];
+        int size;
+        int total;
+
+        private static int[] newKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        /**
+         * Fibonacci hashing to spread similar colors over the table.
+         */
+        private static int slot(int rgb, int capacity) {
+            return (rgb * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(capacity - 1);
+        }
+
+        void add(int rgb) {
+            total++;
+            rgb &= 0xffffff;
+            final int mask = keys.length - 1;
+            int i = slot(rgb, keys.length);
+            while (keys[i] != rgb) {
+                if (keys[i] == EMPTY) {
+                    keys[i] = rgb;
+                    if (++size > keys.length >> 1) {
+                        counts[i] = 1;
+                        grow();
+                        return;
+                    }
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            counts[i]++;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys, oldCounts = counts;
+            keys = newKeys(oldKeys.length << 1);
+            counts = new int[keys.length];
+            final int mask = keys.length - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] != EMPTY) {
+                    int i = slot(oldKeys[k], keys.length);
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[k];
+                    counts[i] = oldCounts[k];
+                }
+            }
+        }
+    }
+
     @Override
     public String getDescription() {
         return "ReferenceColorSimilarity";
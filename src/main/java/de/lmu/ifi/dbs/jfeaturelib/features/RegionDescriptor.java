@@ -0,0 +1,49 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.features;
+
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
+import ij.process.ImageProcessor;
+
+/**
+ * Interface for descriptors that can describe all regions of a label image
+ * at once.
+ *
+ * Instead of running the descriptor once per region with a mask, all regions
+ * are accumulated in a single pass over the image. Afterwards
+ * {@link #getFeatures()} contains exactly one feature vector per region in
+ * the order of the region numbers of the label image. So the vector at index
+ * i belongs to the region with the label {@code labels.getLabel(i)}.
+ */
+public interface RegionDescriptor extends FeatureDescriptor {
+
+    /**
+     * Computes one feature vector for each region of the label image.
+     *
+     * @param ip the image
+     * @param labels label image of the same size as ip
+     * @throws IllegalArgumentException if the sizes of image and labels differ
+     */
+    void run(ImageProcessor ip, LabelImage labels);
+}
@@ -23,6 +23,7 @@
  */
 package de.lmu.ifi.dbs.jfeaturelib.features.surf;
 
+import de.lmu.ifi.dbs.jfeaturelib.utils.FastMath;
 import static java.lang.Math.*;
 
 public class Descriptor {
@@ -50,6 +51,19 @@ public class Descriptor {
         {0.000354525, 0.000338616, 0.000295044, 0.000234524, 0.000170062, 0.000112498, 6.78899E-05, 3.73753E-05, 1.87708E-05, 8.60008E-06, 3.59452E-06},
         {0.000148179, 0.000141529, 0.000123318, 9.80224E-05, 7.10796E-05, 4.70202E-05, 2.83755E-05, 1.56215E-05, 7.84553E-06, 3.59452E-06, 1.50238E-06}
     };
+    /**
+     * Weights of the 4x4 subregions, gaussian(cx - 2, cy - 2, 1.5f) for the
+     * subregion centers cx, cy in {0.5, 1.5, 2.5, 3.5}.
+     */
+    final static float[][] gaussSubregions = new float[4][4];
+
+    static {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                gaussSubregions[i][j] = gaussian(i + 0.5f - 2, j + 0.5f - 2, 1.5f);
+            }
+        }
+    }
 
     /**
      * Returns the descriptor of the interest point as an array of 64 float
@@ -79,6 +93,12 @@ public class Descriptor {
         int x = round(ipt.x);
         int y = round(ipt.y);
 
+        // the sample offsets are integers, so the gaussian weights of the
+        // samples can be taken from a table
+        final float sig = 2.5f * scale;
+        final float norm = 1 / (2 * pi * sig * sig);
+        final FastMath.GaussianTable gaussTable = new FastMath.GaussianTable(sig);
+
         int i = -8, j = 0; // <-- ?!
         float cx = -0.5f, cy = 0.f; // Subregion centers for the 4x4 gaussian
         // weighting
@@ -107,7 +127,7 @@ public class Descriptor {
                         sample_y = round(y + scale * (l * co + k * si));
 
                         // Get the gaussian weighted x and y responses
-                        gauss_s1 = gaussian(xs - sample_x, ys - sample_y, 2.5f * scale);
+                        gauss_s1 = (float) (norm * gaussTable.get(xs - sample_x, ys - sample_y));
                         rx = haarX(intImg, sample_x, sample_y, doubledScale);
                         ry = haarY(intImg, sample_x, sample_y, doubledScale);
 
@@ -124,7 +144,7 @@ public class Descriptor {
                 }
 
                 // Add the values to the descriptor vector
-                gauss_s2 = gaussian(cx - 2, cy - 2, 1.5f);
+                gauss_s2 = gaussSubregions[(int) cx][(int) cy];
 
                 desc[count++] = dx * gauss_s2;
                 desc[count++] = dy * gauss_s2;
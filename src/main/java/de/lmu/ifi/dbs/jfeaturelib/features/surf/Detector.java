@@ -23,6 +23,7 @@
  */
 package de.lmu.ifi.dbs.jfeaturelib.features.surf;
 
+import de.lmu.ifi.dbs.jfeaturelib.utils.ScratchPool;
 import static java.lang.Math.abs;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,11 +31,13 @@ import java.util.List;
 public class Detector {
 
     public static List<InterestPoint> fastHessian(IntegralImage img, Params p) {
+        final int pixels = img.getWidth() * img.getHeight();
 
         /**
-         * Determinant of hessian responses
+         * Determinant of hessian responses, one row major layer of
+         * width*height values per filter.
          */
-        float[][][] det = new float[p.getLayers()][img.getWidth()][img.getHeight()];
+        float[][] det = new float[p.getLayers()][];
 
         /**
          * Trace of the determinant of hessian responses. The sign of trace (the
@@ -42,8 +45,24 @@ public class Detector {
          * light blobs on dark background, positive -- vice versa. (Signs will
          * be computed in constructor of interest point)
          */
-        float[][][] trace = new float[p.getLayers()][img.getWidth()][img.getHeight()];
+        float[][] trace = new float[p.getLayers()][];
 
+        try {
+            for (int layer = 0; layer < p.getLayers(); layer++) {
+                det[layer] = ScratchPool.borrowFloats(pixels);
+                trace[layer] = ScratchPool.borrowFloats(pixels);
+            }
+            return fastHessian(img, p, det, trace);
+        } finally {
+            for (int layer = 0; layer < p.getLayers(); layer++) {
+                ScratchPool.release(det[layer]);
+                ScratchPool.release(trace[layer]);
+            }
+        }
+    }
+
+    private static List<InterestPoint> fastHessian(IntegralImage img, Params p, float[][] det, float[][] trace) {
+        final int width = img.getWidth();
         List<InterestPoint> res = new ArrayList<InterestPoint>(2000);
 
         for (int octave = 0, step = p.getInitStep(); octave < p.getOctaves(); octave++, step *= p.getStepIncFactor()) {
@@ -81,8 +100,8 @@ public class Detector {
                         Dyy /= filterArea;
                         Dxy /= filterArea;
 
-                        det[layer][x][y] = Dxx * Dyy - 0.81f * Dxy * Dxy;
-                        trace[layer][x][y] = Dxx + Dyy;
+                        det[layer][y * width + x] = Dxx * Dyy - 0.81f * Dxy * Dxy;
+                        trace[layer][y * width + x] = Dxx + Dyy;
 
                     }
                 }
@@ -115,20 +134,20 @@ public class Detector {
                     for (int x = margin; x < xBound; x += step) { // column
                         countIPCandidates++;
 
-                        v = det[layer][x][y];
+                        v = det[layer][y * width + x];
                         if (v < p.getThreshold()) {
                             countThresholded++;
                             continue;
                         }
 
 
-                        if (!isLocalMaximum(v, det, layer, x, y, step)) {
+                        if (!isLocalMaximum(v, det, width, layer, x, y, step)) {
                             countSuppressed++;
                             continue;
                         }
 
                         // Interpolate maxima location within the 3x3x3 neighborhood
-                        float[] X = interpolatePoint(det, layer, x, y, step);
+                        float[] X = interpolatePoint(det, width, layer, x, y, step);
                         if (X == null) {
                             countInterpolationNotSucceed++;
                             continue;
@@ -143,7 +162,7 @@ public class Detector {
                             // ^^ should be OK instead of "if (abs(xi) < 0.5f && abs(xr) < 0.5f && abs(xc) < 0.5f)"	(OpenSURF).
                             // The OpenCV-2.0.0 version leaves ~ 25% more IPs
                             countIP++;
-                            res.add(new InterestPoint(xInterp, yInterp, det[layer][x][y], trace[layer][x][y], scale));
+                            res.add(new InterestPoint(xInterp, yInterp, v, trace[layer][y * width + x], scale));
                         } else {
                             countBadInterpolationResult++;
                         }
@@ -172,53 +191,53 @@ public class Detector {
      * <code>x</code>,
      * <code>y</code>) (exclusive).
      */
-    private static boolean isLocalMaximum(float v, float[][][] det, int s, int x, int y, int step) {
-        float[][] l = det[s - 1], m = det[s], u = det[s + 1]; // lower, middle and upper layers
-        int px = x - step, nx = x + step, py = y - step, ny = y + step; // px: "previos x", nx: "next x", ...
-
-        return (v >= l[px][py] && v >= l[px][y] && v >= l[px][ny]
-                && v >= l[x][py] && v >= l[x][y] && v >= l[x][ny]
-                && v >= l[nx][py] && v >= l[nx][y] && v >= l[nx][ny]
-                && v >= m[px][py] && v >= m[px][y] && v >= m[px][ny]
-                && v >= m[x][py] && /*
-                 * v is here
-                 */ v >= m[x][ny] && // <-- v is at m[x][x]
-                v >= m[nx][py] && v >= m[nx][y] && v >= m[nx][ny]
-                && v >= u[px][py] && v >= u[px][y] && v >= u[px][ny]
-                && v >= u[x][py] && v >= u[x][y] && v >= u[x][ny]
-                && v >= u[nx][py] && v >= u[nx][y] && v >= u[nx][ny]);
+    private static boolean isLocalMaximum(float v, float[][] det, int width, int s, int x, int y, int step) {
+        float[] l = det[s - 1], m = det[s], u = det[s + 1]; // lower, middle and upper layers
+        int c = y * width + x; // v is at m[c]
+        int rowStep = step * width;
+
+        for (int row = c - rowStep; row <= c + rowStep; row += rowStep) {
+            for (int i = row - step; i <= row + step; i += step) {
+                if (!(v >= l[i] && v >= u[i] && (i == c || v >= m[i]))) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
      * Interpolating function. Adapted from Lowe's SIFT implementation by
      * Christopher Evans (OpenSURF).
      */
-    static float[] interpolatePoint(float[][][] det, int i, int x, int y, int step) {
+    static float[] interpolatePoint(float[][] det, int width, int i, int x, int y, int step) {
 
-        float[][] l = det[i - 1], m = det[i], u = det[i + 1]; // lower, middle and upper layers
-        int px = x - step, nx = x + step, py = y - step, ny = y + step; // "previos" x, "next" x, "previos" y, "next" y
+        float[] l = det[i - 1], m = det[i], u = det[i + 1]; // lower, middle and upper layers
+        int c = y * width + x; // center
+        int px = c - step, nx = c + step, py = c - step * width, ny = c + step * width; // "previos" x, "next" x, "previos" y, "next" y
+        int pxpy = py - step, nxpy = py + step, pxny = ny - step, nxny = ny + step;
 
         // Compute the partial derivatives in x, y and scale of a pixel
-        float dx = -(m[nx][y] - m[px][y]) / 2;
-        float dy = -(m[x][ny] - m[x][py]) / 2;
-        float ds = -(u[x][y] - l[x][y]) / 2;
+        float dx = -(m[nx] - m[px]) / 2;
+        float dy = -(m[ny] - m[py]) / 2;
+        float ds = -(u[c] - l[c]) / 2;
         float[] b = {dx, dy, ds};
 
 
         // Compute the 3D Hessian matrix for a pixel
-        float v = m[x][y];
+        float v = m[c];
 
-        float dxx = (m[px][y] - 2 * v + m[nx][y]);
-        float dxy = (m[nx][ny] - m[px][ny] - m[nx][py] + m[px][py]) / 4;
-        float dxs = (u[nx][y] - u[px][y] - l[nx][y] + l[px][y]) / 4;
+        float dxx = (m[px] - 2 * v + m[nx]);
+        float dxy = (m[nxny] - m[pxny] - m[nxpy] + m[pxpy]) / 4;
+        float dxs = (u[nx] - u[px] - l[nx] + l[px]) / 4;
 
         float dyx = dxy;
-        float dyy = (m[x][py] - 2 * v + m[x][ny]);
-        float dys = (u[x][ny] - u[x][py] - l[x][ny] + l[x][py]) / 4;
+        float dyy = (m[py] - 2 * v + m[ny]);
+        float dys = (u[ny] - u[py] - l[ny] + l[py]) / 4;
 
         float dsx = dxs;
         float dsy = dys;
-        float dss = (l[x][y] - 2 * v + u[x][y]);
+        float dss = (l[c] - 2 * v + u[c]);
 
         float[][] A = {{dxx, dxy, dxs}, {dyx, dyy, dys}, {dsx, dsy, dss}};
 
@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.jfeaturelib.pointDetector;
 
 import de.lmu.ifi.dbs.jfeaturelib.ImagePoint;
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import de.lmu.ifi.dbs.jfeaturelib.utils.PixelView;
 import ij.plugin.filter.Convolver;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
@@ -59,6 +60,10 @@ public class Harris implements PointDetector {
     private GradientVector gradient = new GradientVector();
     // corners
     int matriceCorner[][];
+    // weights of the gaussian window, row by row
+    private double[] gaussianWindow;
+    // reused result buffer of the gradient vector
+    private final double[] gradientBuffer = new double[2];
 
     /**
      * Creates Harris Corner detection with default parameters
@@ -144,19 +149,13 @@ public class Harris implements PointDetector {
 
         int width = c.getWidth();
         int height = c.getHeight();
-
-        // darkens the image
-        ByteProcessor c2 = new ByteProcessor(width, height);
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                c2.set(x, y, (int) (c.get(x, y) * 0.80));
-            }
-        }
+        PixelView.Bytes pixels = PixelView.bytes(c);
+        initGaussianWindow();
 
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 // harris response(-1 if the pixel is not a local )
-                int h = (int) spatialMaximaofHarrisMeasure(c, x, y);
+                int h = (int) spatialMaximaofHarrisMeasure(pixels, x, y);
 
                 // adds the corner to the list if it's above the threshold
                 if (h >= minMeasure) {
@@ -204,7 +203,7 @@ public class Harris implements PointDetector {
      * @param y y-coordinate
      * @return the harris response if the pixel is a local maximum, -1 otherwise
      */
-    private double spatialMaximaofHarrisMeasure(ByteProcessor c, int x, int y) {
+    private double spatialMaximaofHarrisMeasure(PixelView.Bytes c, int x, int y) {
         int n = 8;
         int[] dx = new int[]{-1, 0, 1, 1, 1, 0, -1, -1};
         int[] dy = new int[]{-1, -1, -1, 0, 1, 1, 1, 0};
@@ -224,6 +223,20 @@ public class Harris implements PointDetector {
         return w;
     }
 
+    /**
+     * Precomputes the weights of the gaussian window used in
+     * {@link #harrisMeasure(PixelView.Bytes, int, int)}.
+     */
+    private void initGaussianWindow() {
+        int size = 2 * halfwindow + 1;
+        gaussianWindow = new double[size * size];
+        for (int dy = -halfwindow, i = 0; dy <= halfwindow; dy++) {
+            for (int dx = -halfwindow; dx <= halfwindow; dx++, i++) {
+                gaussianWindow[i] = gaussian(dx, dy, gaussiansigma);
+            }
+        }
+    }
+
     /**
      * computa harris corner response
      *
@@ -232,30 +245,32 @@ public class Harris implements PointDetector {
      * @param y y-coordinate
      * @return harris corner response
      */
-    private double harrisMeasure(ByteProcessor c, int x, int y) {
+    private double harrisMeasure(PixelView.Bytes c, int x, int y) {
         double m00 = 0, m01 = 0, m10 = 0, m11 = 0;
+        final double[] g = gradientBuffer;
+        final double[] window = gaussianWindow;
 
         // k = det(A) - lambda * trace(A)^2
         // A is the second moment matrix
         // lambda is generally between 0.04 and 0.06. we chose 0.06
-        for (int dy = -halfwindow; dy <= halfwindow; dy++) {
-            for (int dx = -halfwindow; dx <= halfwindow; dx++) {
+        for (int dy = -halfwindow, i = 0; dy <= halfwindow; dy++) {
+            for (int dx = -halfwindow; dx <= halfwindow; dx++, i++) {
                 int xk = x + dx;
                 int yk = y + dy;
-                if (xk < 0 || xk >= c.getWidth()) {
+                if (xk < 0 || xk >= c.width) {
                     continue;
                 }
-                if (yk < 0 || yk >= c.getHeight()) {
+                if (yk < 0 || yk >= c.height) {
                     continue;
                 }
 
                 // gradient of c in the point (xk,yk)
-                double[] g = gradient.getVector(c, xk, yk);
+                gradient.getVector(c, xk, yk, g);
                 double gx = g[0];
                 double gy = g[1];
 
                 // we calculate the weight of the gaussian window on dx,dy
-                double gw = gaussian(dx, dy, gaussiansigma);
+                double gw = window[i];
 
                 // matrix elements
                 m00 += gx * gx * gw;
@@ -365,24 +380,39 @@ public class Harris implements PointDetector {
          * Function that puts in a vector the value of the gradient of all the points within a window (returns the
          * Gradient value in the pixel (x,y))
          *
+         * Pixels outside the image are treated as 0.
+         *
+         * @param c image
          * @param x x-coordinate
          * @param y y-coordinate
-         * @param c image
-         * @return value of the x and y gradient in all the points of the window
+         * @param gradientVector array of length 2 that receives the x and y
+         * gradient
+         * @return gradientVector
          */
-        public double[] getVector(ByteProcessor c, int x, int y) {
+        public double[] getVector(PixelView.Bytes c, int x, int y, double[] gradientVector) {
+            final byte[] pixels = c.pixels;
             double gx = 0, gy = 0;
             for (int dy = -halfwindow; dy <= halfwindow; dy++) {
+                int yk = y + dy;
+                if (yk < 0 || yk >= c.height) {
+                    continue;
+                }
+                int row = c.index(0, yk);
+                double[] rowGx = kernelGx[halfwindow - dy];
+                double[] rowGy = kernelGy[halfwindow - dy];
                 for (int dx = -halfwindow; dx <= halfwindow; dx++) {
                     int xk = x + dx;
-                    int yk = y + dy;
-                    double vk = c.getPixel(xk, yk); // <-- value of the pixel
-                    gx += kernelGx[halfwindow - dy][halfwindow - dx] * vk;
-                    gy += kernelGy[halfwindow - dy][halfwindow - dx] * vk;
+                    if (xk < 0 || xk >= c.width) {
+                        continue;
+                    }
+                    double vk = pixels[row + xk] & 0xff; // <-- value of the pixel
+                    gx += rowGx[halfwindow - dx] * vk;
+                    gy += rowGy[halfwindow - dx] * vk;
                 }
             }
 
-            double[] gradientVector = new double[]{gx, gy};
+            gradientVector[0] = gx;
+            gradientVector[1] = gy;
             return gradientVector;
         }
     }
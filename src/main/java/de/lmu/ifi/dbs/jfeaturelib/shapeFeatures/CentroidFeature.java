@@ -25,6 +25,8 @@ package de.lmu.ifi.dbs.jfeaturelib.shapeFeatures;
 
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
 import de.lmu.ifi.dbs.jfeaturelib.features.AbstractFeatureDescriptor;
+import de.lmu.ifi.dbs.jfeaturelib.features.RegionDescriptor;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
@@ -36,7 +38,7 @@ import ij.process.ImageProcessor;
  * @author Johannes Stadler
  * @since 09/29/2012
  */
-public class CentroidFeature extends AbstractFeatureDescriptor {
+public class CentroidFeature extends AbstractFeatureDescriptor implements RegionDescriptor {
 
     private double x = 0, y = 0;
     private int k;
@@ -69,6 +71,45 @@ public class CentroidFeature extends AbstractFeatureDescriptor {
         pcs.firePropertyChange(Progress.getName(), null, Progress.END);
     }
 
+    /**
+     * Computes the centroid of each region of the label image. The image
+     * itself is not needed as the regions define the shapes.
+     *
+     * {@link #getX()} and {@link #getY()} return the centroid of the last
+     * region.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkLabels(ip, labels);
+        startProgress();
+
+        final int regions = labels.getRegionCount();
+        final int[] region = labels.getRegionIndex();
+        final int width = labels.getWidth();
+        final int height = labels.getHeight();
+        final double[] sumX = new double[regions];
+        final double[] sumY = new double[regions];
+        for (int i = 0, py = 0; py < height; py++) {
+            for (int px = 0; px < width; px++, i++) {
+                final int r = region[i];
+                if (r >= 0) {
+                    sumX[r] += px;
+                    sumY[r] += py;
+                }
+            }
+        }
+
+        for (int r = 0; r < regions; r++) {
+            x = sumX[r] / labels.getArea(r);
+            y = sumY[r] / labels.getArea(r);
+            addData(new double[]{x, y});
+        }
+        endProgress();
+    }
+
     public double getX() {
         return x;
     }
@@ -25,6 +25,8 @@ package de.lmu.ifi.dbs.jfeaturelib.shapeFeatures;
 
 import de.lmu.ifi.dbs.jfeaturelib.Progress;
 import de.lmu.ifi.dbs.jfeaturelib.features.AbstractFeatureDescriptor;
+import de.lmu.ifi.dbs.jfeaturelib.features.RegionDescriptor;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
@@ -36,7 +38,7 @@ import ij.process.ImageProcessor;
  * @author Johannes Stadler
  * @since 09/29/2012
  */
-public class Compactness extends AbstractFeatureDescriptor {
+public class Compactness extends AbstractFeatureDescriptor implements RegionDescriptor {
 
     private int area;
     private int perimeter;
@@ -85,6 +87,64 @@ public class Compactness extends AbstractFeatureDescriptor {
         pcs.firePropertyChange(Progress.getName(), null, Progress.END);
     }
 
+    /**
+     * Computes area, perimeter and compactness of each region of the label
+     * image. A pixel belongs to the perimeter if one of its 8 neighbors is
+     * not part of the same region. The image itself is not needed as the
+     * regions define the shapes.
+     *
+     * The getters return the values of the last region.
+     *
+     * @param ip the image
+     * @param labels the label image
+     */
+    @Override
+    public void run(ImageProcessor ip, LabelImage labels) {
+        checkLabels(ip, labels);
+        startProgress();
+
+        final int regions = labels.getRegionCount();
+        final int[] region = labels.getRegionIndex();
+        final int width = labels.getWidth();
+        final int height = labels.getHeight();
+        final int[] perimeters = new int[regions];
+        for (int i = 0, y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                final int r = region[i];
+                if (r >= 0 && isBoundary(region, width, height, x, y, r)) {
+                    perimeters[r]++;
+                }
+            }
+        }
+
+        for (int r = 0; r < regions; r++) {
+            area = labels.getArea(r);
+            perimeter = perimeters[r];
+            addData(new double[]{getArea(), getPerimeter(), getCompactness()});
+        }
+        endProgress();
+    }
+
+    /**
+     * Checks if one of the 8 neighbors of (x,y) is not in the region r.
+     * Pixels outside the image are not in the region.
+     */
+    private boolean isBoundary(int[] region, int width, int height, int x, int y, int r) {
+        for (int dy = -1; dy <= 1; dy++) {
+            final int ny = y + dy;
+            if (ny < 0 || ny >= height) {
+                return true;
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                final int nx = x + dx;
+                if (nx < 0 || nx >= width || region[ny * width + nx] != r) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public String getDescription() {
         return "compactnes features: area, perimeter, compactness (=area/perimeter)";
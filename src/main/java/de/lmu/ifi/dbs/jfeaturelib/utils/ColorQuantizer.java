@@ -0,0 +1,352 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.awt.Color;
+
+/**
+ * Maps packed RGB values to the bins of a quantized RGB or HSB color space.
+ *
+ * HSB bins are looked up in a table indexed by the color. The table is
+ * filled lazily: the first occurrence of a color is converted with
+ * {@link Color#RGBtoHSB(int, int, int, float[])}, every further occurrence
+ * costs one array access. By default the key is the full 24 bit color, so the
+ * bins are exactly the same as with the direct conversion. A reduced key of
+ * 5 or 6 bits per channel (15 or 18 bit keys) yields a much smaller table
+ * that fits into the cache, at the price of quantizing the colors before the
+ * conversion.
+ *
+ * RGB bins are separable and are computed from three tables of 256 entries.
+ *
+ * Instances are cached per configuration and are safe to be shared across
+ * threads. Concurrent fills of the same table entry write the same value.
+ */
+public final class ColorQuantizer {
+
+    /**
+     * The color space that is quantized.
+     */
+    public static enum Space {
+
+        RGB, HSB
+    }
+    /**
+     * No table is built for more bins than this, the bins are computed
+     * directly instead.
+     */
+    static final int MAX_TABLE_BINS = 1 << 16;
+    private static final LoadingCache<String, ColorQuantizer> CACHE = CacheBuilder.newBuilder()
+            .softValues()
+            .build(new CacheLoader<String, ColorQuantizer>() {
+                @Override
+                public ColorQuantizer load(String key) {
+                    String[] t = key.split(":");
+                    return new ColorQuantizer(Mode.valueOf(t[0]), Integer.parseInt(t[1]),
+                            Integer.parseInt(t[2]), Integer.parseInt(t[3]), Integer.parseInt(t[4]));
+                }
+            });
+    /**
+     * Saturation byte of {@link #getHSB} indexed by <tt>max &lt;&lt; 8 | min</tt>.
+     */
+    private static final byte[] SATURATION = new byte[1 << 16];
+    /**
+     * Brightness byte of {@link #getHSB} indexed by the maximum channel.
+     */
+    private static final byte[] BRIGHTNESS = new byte[256];
+
+    static {
+        float[] hsb = new float[3];
+        for (int max = 0; max < 256; max++) {
+            for (int min = 0; min <= max; min++) {
+                Color.RGBtoHSB(max, min, min, hsb);
+                SATURATION[max << 8 | min] = (byte) ((int) (hsb[1] * 255.0));
+            }
+            BRIGHTNESS[max] = (byte) ((int) (hsb[2] * 255.0));
+        }
+    }
+
+    private static enum Mode {
+
+        RGB, HSB, HUE_BYTE
+    }
+
+    /**
+     * Hue table of {@link #getHSB}, created on first use.
+     */
+    private static final class HueHolder {
+
+        static final ColorQuantizer HUE = new ColorQuantizer(Mode.HUE_BYTE, 256, 1, 1, 8);
+    }
+    private final Mode mode;
+    private final int binX, binY, binZ;
+    private final int keyBits;
+    // RGB: contribution of each channel value to the bin
+    private final int[] redPart, greenPart, bluePart;
+    // HSB: bin + 1 for each key, 0 = not yet computed. The highest bin of a
+    // full table wraps to 0 and is therefore always computed.
+    private final byte[] byteTable;
+    private final char[] charTable;
+
+    private ColorQuantizer(Mode mode, int binX, int binY, int binZ, int keyBits) {
+        this.mode = mode;
+        this.binX = binX;
+        this.binY = binY;
+        this.binZ = binZ;
+        this.keyBits = keyBits;
+
+        if (mode == Mode.RGB) {
+            redPart = new int[256];
+            greenPart = new int[256];
+            bluePart = new int[256];
+            for (int v = 0; v < 256; v++) {
+                redPart[v] = (int) Math.floor(binX * v / 256.) * binY * binZ;
+                greenPart[v] = (int) Math.floor(binY * v / 256.) * binZ;
+                bluePart[v] = (int) Math.floor(binZ * v / 256.);
+            }
+            byteTable = null;
+            charTable = null;
+        } else {
+            redPart = greenPart = bluePart = null;
+            int bins = getBinCount();
+            int size = 1 << (3 * keyBits);
+            byteTable = bins <= 256 ? new byte[size] : null;
+            charTable = bins > 256 && bins <= MAX_TABLE_BINS ? new char[size] : null;
+        }
+    }
+
+    /**
+     * Returns the quantizer of the RGB space with the given number of bins
+     * per channel.
+     *
+     * @param binsRed bins of the red channel
+     * @param binsGreen bins of the green channel
+     * @param binsBlue bins of the blue channel
+     * @return shared quantizer
+     * @throws IllegalArgumentException if a number of bins is &lt;= 0
+     */
+    public static ColorQuantizer rgb(int binsRed, int binsGreen, int binsBlue) {
+        return get(Space.RGB, binsRed, binsGreen, binsBlue, 8);
+    }
+
+    /**
+     * Returns the exact quantizer of the HSB space with the given number of
+     * bins per channel.
+     *
+     * @param binsHue bins of the hue
+     * @param binsSaturation bins of the saturation
+     * @param binsBrightness bins of the brightness
+     * @return shared quantizer
+     * @throws IllegalArgumentException if a number of bins is &lt;= 0
+     */
+    public static ColorQuantizer hsb(int binsHue, int binsSaturation, int binsBrightness) {
+        return get(Space.HSB, binsHue, binsSaturation, binsBrightness, 8);
+    }
+
+    /**
+     * Returns the quantizer of the given color space.
+     *
+     * @param space the color space
+     * @param binX bins of the red or hue channel
+     * @param binY bins of the green or saturation channel
+     * @param binZ bins of the blue or brightness channel
+     * @param keyBits bits per channel of the table key (5 - 8). Less than 8
+     * bits quantize the colors before the HSB conversion. Ignored for RGB.
+     * @return shared quantizer
+     * @throws NullPointerException if space is null
+     * @throws IllegalArgumentException if a number of bins is &lt;= 0 or
+     * keyBits is not in [5,8]
+     */
+    public static ColorQuantizer get(Space space, int binX, int binY, int binZ, int keyBits) {
+        if (space == null) {
+            throw new NullPointerException("space must not be null");
+        }
+        checkBins(binX);
+        checkBins(binY);
+        checkBins(binZ);
+        if (keyBits < 5 || keyBits > 8) {
+            throw new IllegalArgumentException("keyBits must be in [5,8] but was " + keyBits);
+        }
+        if (space == Space.RGB) {
+            keyBits = 8;
+        }
+        return get(Mode.valueOf(space.name()), binX, binY, binZ, keyBits);
+    }
+
+    private static ColorQuantizer get(Mode mode, int binX, int binY, int binZ, int keyBits) {
+        return CACHE.getUnchecked(mode + ":" + binX + ":" + binY + ":" + binZ + ":" + keyBits);
+    }
+
+    private static void checkBins(int bins) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("bins must be > 0 but was " + bins);
+        }
+    }
+
+    /**
+     * Converts the packed RGB pixels to the HSB bytes of
+     * {@link ij.process.ColorProcessor#getHSB(byte[], byte[], byte[])}. The
+     * results are exactly the same, but the hue is looked up in a shared
+     * table and saturation and brightness are looked up in small tables.
+     *
+     * @param pixels packed RGB values
+     * @param h receives the hue or null if not needed
+     * @param s receives the saturation or null if not needed
+     * @param b receives the brightness or null if not needed
+     */
+    public static void getHSB(int[] pixels, byte[] h, byte[] s, byte[] b) {
+        if (h != null) {
+            final ColorQuantizer hue = HueHolder.HUE;
+            for (int i = 0; i < pixels.length; i++) {
+                h[i] = (byte) hue.getBin(pixels[i]);
+            }
+        }
+        if (s == null && b == null) {
+            return;
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            final int c = pixels[i];
+            final int red = (c >> 16) & 0xff, green = (c >> 8) & 0xff, blue = c & 0xff;
+            int max = red > green ? red : green;
+            if (blue > max) {
+                max = blue;
+            }
+            if (s != null) {
+                int min = red < green ? red : green;
+                if (blue < min) {
+                    min = blue;
+                }
+                s[i] = SATURATION[max << 8 | min];
+            }
+            if (b != null) {
+                b[i] = BRIGHTNESS[max];
+            }
+        }
+    }
+
+    /**
+     * Converts a single packed RGB value to the HSB bytes of
+     * {@link #getHSB(int[], byte[], byte[], byte[])}.
+     *
+     * @param rgb packed RGB value, the alpha channel is ignored
+     * @return the bytes packed as <tt>hue &lt;&lt; 16 | saturation &lt;&lt; 8 | brightness</tt>
+     */
+    public static int toHSB(int rgb) {
+        final int red = (rgb >> 16) & 0xff, green = (rgb >> 8) & 0xff, blue = rgb & 0xff;
+        int max = red > green ? red : green;
+        int min = red < green ? red : green;
+        if (blue > max) {
+            max = blue;
+        }
+        if (blue < min) {
+            min = blue;
+        }
+        return HueHolder.HUE.getBin(rgb) << 16
+                | (SATURATION[max << 8 | min] & 0xff) << 8
+                | (BRIGHTNESS[max] & 0xff);
+    }
+
+    /**
+     * Returns the bin of the packed RGB value.
+     *
+     * @param rgb packed RGB value, the alpha channel is ignored
+     * @return bin in [0, {@link #getBinCount()})
+     */
+    public int getBin(int rgb) {
+        if (redPart != null) {
+            return redPart[(rgb >> 16) & 0xff] + greenPart[(rgb >> 8) & 0xff] + bluePart[rgb & 0xff];
+        }
+        final int key = key(rgb);
+        if (byteTable != null) {
+            final int bin = byteTable[key] & 0xff;
+            if (bin != 0) {
+                return bin - 1;
+            }
+            final int computed = compute(key);
+            byteTable[key] = (byte) (computed + 1);
+            return computed;
+        } else if (charTable != null) {
+            final int bin = charTable[key];
+            if (bin != 0) {
+                return bin - 1;
+            }
+            final int computed = compute(key);
+            charTable[key] = (char) (computed + 1);
+            return computed;
+        }
+        return compute(key);
+    }
+
+    /**
+     * Returns the number of bins.
+     *
+     * @return binX * binY * binZ
+     */
+    public int getBinCount() {
+        return binX * binY * binZ;
+    }
+
+    private int key(int rgb) {
+        if (keyBits == 8) {
+            return rgb & 0xffffff;
+        }
+        final int shift = 8 - keyBits;
+        return ((rgb >> 16 & 0xff) >> shift) << (2 * keyBits)
+                | ((rgb >> 8 & 0xff) >> shift) << keyBits
+                | (rgb & 0xff) >> shift;
+    }
+
+    /**
+     * Returns the channel value that represents the key value k with the
+     * given number of bits. The bits are replicated, so 0 and the maximum key
+     * map to 0 and 255.
+     */
+    private int expand(int k) {
+        int v = k << (8 - keyBits);
+        return v | v >> keyBits;
+    }
+
+    private int compute(int key) {
+        final int mask = (1 << keyBits) - 1;
+        int r = key >> (2 * keyBits) & mask;
+        int g = key >> keyBits & mask;
+        int b = key & mask;
+        if (keyBits != 8) {
+            r = expand(r);
+            g = expand(g);
+            b = expand(b);
+        }
+        float[] hsbvals = Color.RGBtoHSB(r, g, b, null);
+        if (mode == Mode.HUE_BYTE) {
+            return (int) (hsbvals[0] * 255.0);
+        }
+        // The values returned by RGBtoHSB are all in [0:1]
+        int h = Math.min((int) Math.floor(binX * hsbvals[0]), binX - 1);
+        int s = Math.min((int) Math.floor(binY * hsbvals[1]), binY - 1);
+        int v = Math.min((int) Math.floor(binZ * hsbvals[2]), binZ - 1);
+        return h * binY * binZ + s * binZ + v;
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Arrays;
+
+/**
+ * Row wise 2D correlation of float images with small kernels.
+ *
+ * Like ImageJ's <code>Convolver</code>, the kernel is applied without
+ * mirroring (kernel element (0,0) weights the top left pixel of the window)
+ * and pixels outside the image are replaced by the nearest edge pixel. Unlike
+ * the Convolver, the results are computed one row at a time into a caller
+ * supplied buffer, so callers can combine several responses of a row before
+ * the next row is computed and process row bands in parallel.
+ *
+ * Kernels of rank 1 (for example Sobel, Scharr and Prewitt) are the outer
+ * product of a column and a row vector. {@link #separate(float[], int, int)}
+ * detects them, and a {@link Kernel2D} created from such a kernel is applied
+ * as a vertical and a horizontal 1D pass, which costs kw + kh instead of
+ * kw * kh multiplications per pixel.
+ */
+public final class Convolution {
+
+    /**
+     * Relative tolerance for the detection of rank 1 kernels.
+     */
+    static final float SEPARABLE_TOLERANCE = 1e-6f;
+    /**
+     * Kernels with at least this width or height are applied via FFT.
+     */
+    public static final int FFT_KERNEL_SIZE = 21;
+
+    private Convolution() {
+    }
+
+    /**
+     * Splits a kernel of rank 1 into a column vector c and a row vector r so
+     * that <code>kernel[y * width + x] == c[y] * r[x]</code> (up to
+     * {@link #SEPARABLE_TOLERANCE} relative to the largest kernel element).
+     *
+     * @param kernel kernel in row major order
+     * @param width kernel width
+     * @param height kernel height
+     * @return {column, row} or null if the kernel has not rank 1
+     */
+    public static float[][] separate(float[] kernel, int width, int height) {
+        if (kernel.length != width * height) {
+            throw new IllegalArgumentException("kernel length must be " + width * height + " but was " + kernel.length);
+        }
+        // the largest element yields the most accurate factors
+        int pivot = 0;
+        for (int i = 1; i < kernel.length; i++) {
+            if (Math.abs(kernel[i]) > Math.abs(kernel[pivot])) {
+                pivot = i;
+            }
+        }
+        final float max = Math.abs(kernel[pivot]);
+        if (max == 0) {
+            return null;
+        }
+        final int py = pivot / width;
+        final int px = pivot % width;
+
+        float[] row = new float[width];
+        System.arraycopy(kernel, py * width, row, 0, width);
+        float[] column = new float[height];
+        for (int y = 0; y < height; y++) {
+            column[y] = kernel[y * width + px] / kernel[pivot];
+        }
+
+        final float tolerance = SEPARABLE_TOLERANCE * max;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (Math.abs(column[y] * row[x] - kernel[y * width + x]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        return new float[][]{column, row};
+    }
+
+    /**
+     * Returns the scale factor that ImageJ applies to normalized kernels.
+     *
+     * @param kernel
+     * @return 1 / sum of the kernel or 1 if the sum is 0
+     */
+    public static float scale(float[] kernel) {
+        double sum = 0;
+        for (float k : kernel) {
+            sum += k;
+        }
+        return sum == 0 ? 1f : (float) (1 / sum);
+    }
+
+    /**
+     * Returns true if a kernel of the given size should rather be applied by
+     * a {@link SpectralKernel} than spatially.
+     *
+     * @param width kernel width
+     * @param height kernel height
+     * @return true if width or height is at least {@link #FFT_KERNEL_SIZE}
+     */
+    public static boolean useFFT(int width, int height) {
+        return Math.max(width, height) >= FFT_KERNEL_SIZE;
+    }
+
+    /**
+     * Rotates a square kernel by 90 degrees clockwise.
+     *
+     * @param kernel kernel in row major order
+     * @param size width and height of the kernel
+     * @return the rotated kernel
+     */
+    public static float[] rotateCW(float[] kernel, int size) {
+        float[] rotated = new float[kernel.length];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                rotated[x * size + size - 1 - y] = kernel[y * size + x];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * A kernel prepared for row wise correlation.
+     *
+     * Instances are immutable and can be shared by several threads. The
+     * buffers needed while correlating are held by a {@link Buffer}, which
+     * must not be shared.
+     */
+    public static final class Kernel2D {
+
+        private final float[] kernel;
+        private final int width;
+        private final int height;
+        private final float[] column;
+        private final float[] row;
+
+        /**
+         * @param kernel kernel in row major order
+         * @param width kernel width (odd)
+         * @param height kernel height (odd)
+         */
+        public Kernel2D(float[] kernel, int width, int height) {
+            if (width % 2 == 0 || height % 2 == 0) {
+                throw new IllegalArgumentException("kernel size must be odd but was " + width + "x" + height);
+            }
+            this.kernel = kernel.clone();
+            this.width = width;
+            this.height = height;
+            float[][] factors = separate(kernel, width, height);
+            this.column = factors == null ? null : factors[0];
+            this.row = factors == null ? null : factors[1];
+        }
+
+        /**
+         * @return true if the kernel is applied as two 1D passes
+         */
+        public boolean isSeparable() {
+            return column != null;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Correlates a whole image in parallel row bands.
+         *
+         * @param src image pixels in row major order
+         * @param dst receives the result, must not be src
+         * @param imageWidth image width
+         * @param imageHeight image height
+         * @param parallelism the maximum number of parallel row bands
+         */
+        public void correlate(final float[] src, final float[] dst, final int imageWidth, final int imageHeight,
+                int parallelism) {
+            if (src == dst) {
+                throw new IllegalArgumentException("src and dst must be different arrays");
+            }
+            RowBands.run(imageHeight, parallelism, new RowBands.Band() {
+                @Override
+                public void process(int from, int to) {
+                    Buffer buffer = new Buffer();
+                    float[] row = new float[imageWidth];
+                    for (int y = from; y < to; y++) {
+                        correlateRow(src, imageWidth, imageHeight, y, buffer, row);
+                        System.arraycopy(row, 0, dst, y * imageWidth, imageWidth);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Correlates the image row y with the kernel.
+         *
+         * @param src image pixels in row major order
+         * @param imageWidth image width
+         * @param imageHeight image height
+         * @param y the row
+         * @param buffer scratch buffer of the calling thread
+         * @param out receives the imageWidth results
+         */
+        public void correlateRow(float[] src, int imageWidth, int imageHeight, int y, Buffer buffer, float[] out) {
+            final int rx = width / 2;
+            final int ry = height / 2;
+            final double[] padded = buffer.padded(imageWidth + 2 * rx);
+            // like the Convolver, float products are accumulated in double
+            final double[] sum = buffer.row(imageWidth);
+            Arrays.fill(sum, 0, imageWidth, 0);
+
+            if (column != null) {
+                // vertical pass into the padded row, then horizontal pass
+                for (int ky = 0; ky < height; ky++) {
+                    final float c = column[ky];
+                    if (c == 0) {
+                        continue;
+                    }
+                    final int offset = clamp(y + ky - ry, imageHeight) * imageWidth;
+                    for (int x = 0; x < imageWidth; x++) {
+                        sum[x] += c * src[offset + x];
+                    }
+                }
+                pad(sum, imageWidth, rx, padded);
+                Arrays.fill(sum, 0, imageWidth, 0);
+                correlate1D(padded, row, 0, width, imageWidth, sum);
+            } else {
+                for (int ky = 0; ky < height; ky++) {
+                    final int offset = clamp(y + ky - ry, imageHeight) * imageWidth;
+                    pad(src, offset, imageWidth, rx, padded);
+                    correlate1D(padded, kernel, ky * width, width, imageWidth, sum);
+                }
+            }
+            for (int x = 0; x < imageWidth; x++) {
+                out[x] = (float) sum[x];
+            }
+        }
+    }
+
+    /**
+     * A kernel prepared for the correlation of images of a fixed size in the
+     * frequency domain.
+     *
+     * The image is padded with its replicated border pixels to the next power
+     * of 2 that is at least image size + kernel size - 1, so the cyclic
+     * convolution of the FFT yields the same result as the spatial
+     * correlation with replicated borders. The spectrum of the kernel is
+     * computed once and reused for every image that is correlated.
+     *
+     * As the kernel is real, two images are correlated at the cost of one
+     * by transforming them as real and imaginary part of one complex image.
+     */
+    public static final class SpectralKernel {
+
+        private final int imageWidth;
+        private final int imageHeight;
+        private final int width;
+        private final int height;
+        private final double[] kernelRe;
+        private final double[] kernelIm;
+        /**
+         * image column of each padded column (resp. row)
+         */
+        private final int[] columns;
+        private final int[] rows;
+
+        /**
+         * @param kernel kernel in row major order
+         * @param kernelWidth kernel width (odd)
+         * @param kernelHeight kernel height (odd)
+         * @param imageWidth width of the images to correlate
+         * @param imageHeight height of the images to correlate
+         */
+        public SpectralKernel(float[] kernel, int kernelWidth, int kernelHeight, int imageWidth, int imageHeight) {
+            if (kernelWidth % 2 == 0 || kernelHeight % 2 == 0) {
+                throw new IllegalArgumentException("kernel size must be odd but was " + kernelWidth + "x" + kernelHeight);
+            }
+            if (kernel.length != kernelWidth * kernelHeight) {
+                throw new IllegalArgumentException("kernel length must be " + kernelWidth * kernelHeight
+                        + " but was " + kernel.length);
+            }
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            width = FFT.nextPowerOfTwo(imageWidth + kernelWidth - 1);
+            height = FFT.nextPowerOfTwo(imageHeight + kernelHeight - 1);
+            columns = padding(imageWidth, kernelWidth / 2, width);
+            rows = padding(imageHeight, kernelHeight / 2, height);
+
+            // correlation is the convolution with the mirrored kernel, the
+            // kernel center is placed at the origin
+            kernelRe = new double[width * height];
+            kernelIm = new double[width * height];
+            final int rx = kernelWidth / 2;
+            final int ry = kernelHeight / 2;
+            for (int ky = 0; ky < kernelHeight; ky++) {
+                final int y = (ry - ky + height) % height;
+                for (int kx = 0; kx < kernelWidth; kx++) {
+                    final int x = (rx - kx + width) % width;
+                    kernelRe[y * width + x] = kernel[ky * kernelWidth + kx];
+                }
+            }
+            FFT.transform2D(kernelRe, kernelIm, width, height, false);
+        }
+
+        /**
+         * Maps each padded position to the image position whose value it
+         * holds: [0, length) to itself, the next r positions to the last and
+         * the remaining ones (the last r of which are read cyclically by the
+         * first image positions) to the first image position.
+         */
+        private static int[] padding(int length, int r, int padded) {
+            int[] map = new int[padded];
+            for (int i = 0; i < padded; i++) {
+                map[i] = i < length ? i : i < length + r ? length - 1 : 0;
+            }
+            return map;
+        }
+
+        /**
+         * Correlates one or two images in place.
+         *
+         * @param a image pixels in row major order
+         * @param b second image or null
+         */
+        public void correlate(float[] a, float[] b) {
+            final int n = width * height;
+            final double[] re = new double[n];
+            final double[] im = new double[n];
+            for (int y = 0, i = 0; y < height; y++) {
+                final int row = rows[y] * imageWidth;
+                for (int x = 0; x < width; x++, i++) {
+                    re[i] = a[row + columns[x]];
+                    if (b != null) {
+                        im[i] = b[row + columns[x]];
+                    }
+                }
+            }
+
+            FFT.transform2D(re, im, width, height, false);
+            for (int i = 0; i < n; i++) {
+                final double r = re[i] * kernelRe[i] - im[i] * kernelIm[i];
+                im[i] = re[i] * kernelIm[i] + im[i] * kernelRe[i];
+                re[i] = r;
+            }
+            FFT.transform2D(re, im, width, height, true);
+
+            final double scale = 1.0 / n;
+            for (int y = 0; y < imageHeight; y++) {
+                for (int x = 0, i = y * width, j = y * imageWidth; x < imageWidth; x++, i++, j++) {
+                    a[j] = (float) (re[i] * scale);
+                    if (b != null) {
+                        b[j] = (float) (im[i] * scale);
+                    }
+                }
+            }
+        }
+
+        public int getImageWidth() {
+            return imageWidth;
+        }
+
+        public int getImageHeight() {
+            return imageHeight;
+        }
+    }
+
+    /**
+     * Scratch buffers of one thread.
+     */
+    public static final class Buffer {
+
+        private double[] padded = new double[0];
+        private double[] row = new double[0];
+
+        double[] padded(int length) {
+            if (padded.length < length) {
+                padded = new double[length];
+            }
+            return padded;
+        }
+
+        double[] row(int length) {
+            if (row.length < length) {
+                row = new double[length];
+            }
+            return row;
+        }
+    }
+
+    private static int clamp(int i, int length) {
+        return i < 0 ? 0 : i >= length ? length - 1 : i;
+    }
+
+    /**
+     * Copies src[offset, offset + length[ to padded[r, r + length[ and
+     * replicates the first and last value r times.
+     */
+    private static void pad(float[] src, int offset, int length, int r, double[] padded) {
+        for (int i = 0; i < length; i++) {
+            padded[r + i] = src[offset + i];
+        }
+        replicate(r, length, padded);
+    }
+
+    /**
+     * Copies src[0, length[ to padded[r, r + length[ and replicates the first
+     * and last value r times.
+     */
+    private static void pad(double[] src, int length, int r, double[] padded) {
+        System.arraycopy(src, 0, padded, r, length);
+        replicate(r, length, padded);
+    }
+
+    private static void replicate(int r, int length, double[] padded) {
+        final double first = padded[r];
+        final double last = padded[r + length - 1];
+        for (int i = 0; i < r; i++) {
+            padded[i] = first;
+            padded[r + length + i] = last;
+        }
+    }
+
+    /**
+     * Correlates the padded row with k[offset, offset + kw[ and adds the
+     * result to out.
+     */
+    private static void correlate1D(double[] padded, float[] k, int offset, int kw, int length, double[] out) {
+        for (int x = 0; x < length; x++) {
+            double sum = 0;
+            for (int i = 0; i < kw; i++) {
+                sum += k[offset + i] * (float) padded[x + i];
+            }
+            out[x] += sum;
+        }
+    }
+}
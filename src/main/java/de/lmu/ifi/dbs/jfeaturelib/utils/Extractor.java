@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.jfeaturelib.utils;
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor.Supports;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.features.FeatureDescriptor;
+import de.lmu.ifi.dbs.jfeaturelib.features.RegionDescriptor;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.ImagePlus;
 import ij.io.Opener;
@@ -41,6 +42,7 @@ import java.io.Writer;
 import java.net.URISyntaxException;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -101,6 +103,10 @@ public class Extractor {
     @Option(name = "-m", aliases = {"--masks-dir"}, usage = "directory containing masks")
     File maskDirectory = null;
     //
+    @Option(name = "--labels", usage = "the files in the masks directory are label images (8 or 16 bit, one region "
+            + "per gray value, 0 = background). One line is written per region.")
+    boolean labels = false;
+    //
     @Option(name = "--append", usage = "append to output file (default: false = overwrite)")
     private boolean append;
     //
@@ -145,7 +151,7 @@ public class Extractor {
     // file exists and has a length > 0
     private boolean fileExists;
     // the descriptor to use
-    private Class descriptorClazz;
+    private Class<?> descriptorClazz;
     private Writer writer;
     private ExecutorService pool;
 
@@ -355,7 +361,14 @@ public class Extractor {
             // check if masking is required and supported
             FeatureDescriptor fd = (FeatureDescriptor) descriptorClazz.newInstance();
             boolean supportsMasking = fd.supports().contains(Supports.Masking);
-            if (maskDirectory != null && !supportsMasking) {
+            if (labels) {
+                if (maskDirectory == null) {
+                    throw new IllegalArgumentException("label images require a masks directory");
+                }
+                if (!(fd instanceof RegionDescriptor) && !supportsMasking) {
+                    throw new IllegalArgumentException("the descriptor supports neither label images nor masking");
+                }
+            } else if (maskDirectory != null && !supportsMasking) {
                 log.warn("A masking directory is set but the chosen descriptor does NOT support masking. Masking will be ignored!");
                 maskDirectory = null;
             }
@@ -488,9 +501,14 @@ public class Extractor {
      *
      * @param file
      * @param features
+     * @param regions the region label of each feature or null if no label images are used
      * @throws IOException
      */
-    private synchronized void writeOutput(File file, List<double[]> features) throws IOException {
+    private synchronized void writeOutput(File file, List<double[]> features, int[] regions) throws IOException {
+        if (features.isEmpty()) {
+            log.debug("no features extracted from " + file.getName());
+            return;
+        }
         // we are appending to an existing file. so start with a new line
         if (lineCounter == 0 && fileExists) {
             writer.append(NL);
@@ -503,6 +521,9 @@ public class Extractor {
                 writer.append("class" + separator);
             }
             writer.append("filename");
+            if (regions != null) {
+                writer.append(separator + "region");
+            }
             for (int i = 0; i < features.get(0).length; i++) {
                 writer.append(separator + i);
             }
@@ -510,7 +531,8 @@ public class Extractor {
         }
 
         // write one line for each feature
-        for (double[] feature : features) {
+        for (int row = 0; row < features.size(); row++) {
+            double[] feature = features.get(row);
             // a second line is being written. Thus prepend a new line
             if (lineCounter++ > 0) {
                 writer.append(NL);
@@ -526,6 +548,11 @@ public class Extractor {
                 .append('"')
                 .append(separator);
 
+            // write region label
+            if (regions != null) {
+                writer.append(Integer.toString(regions[row])).append(separator);
+            }
+
             // serialize the feature values
             writer.append(Arrays2.join(feature, separator));
         }
@@ -625,13 +652,21 @@ public class Extractor {
                 // read image and mask (if set)
                 ImageProcessor processor = getProcessor(image);
                 ImageProcessor maskProcessor = getProcessor(mask);
-                processor.setMask(maskProcessor);
 
                 // extraction
-                FeatureDescriptor fd = (FeatureDescriptor) descriptorClazz.newInstance();
-                fd.setProperties(properties);
-                fd.run(processor);
-                List<double[]> features = fd.getFeatures();
+                List<double[]> features;
+                int[] regions = null;
+                if (labels && maskProcessor != null) {
+                    LabelImage labelImage = new LabelImage(maskProcessor);
+                    features = new ArrayList<>(labelImage.getRegionCount());
+                    regions = extractRegions(processor, labelImage, features);
+                } else {
+                    processor.setMask(maskProcessor);
+                    FeatureDescriptor fd = (FeatureDescriptor) descriptorClazz.getDeclaredConstructor().newInstance();
+                    fd.setProperties(properties);
+                    fd.run(processor);
+                    features = fd.getFeatures();
+                }
 
                 // log some stats
                 if (log.isDebugEnabled()) {
@@ -640,14 +675,54 @@ public class Extractor {
                 }
 
                 // synchronously write to file
-                writeOutput(image, features);
-            } catch (IOException | InstantiationException | IllegalAccessException ex) {
+                writeOutput(image, features, regions);
+            } catch (IOException | ReflectiveOperationException ex) {
                 log.warn(ex.getMessage(), ex);
             } catch (Throwable ex) {
                 log.error(ex.getMessage(), ex);
             }
         }
 
+        /**
+         * Extracts the features of all regions of the label image.
+         *
+         * Descriptors that implement {@link RegionDescriptor} process all regions at once. Other descriptors are run
+         * once per region with the region as mask.
+         *
+         * @param processor the image
+         * @param labelImage the regions
+         * @param features list that receives the features
+         * @return the region label of each feature
+         */
+        private int[] extractRegions(ImageProcessor processor, LabelImage labelImage, List<double[]> features)
+                throws IOException, ReflectiveOperationException {
+            FeatureDescriptor fd = (FeatureDescriptor) descriptorClazz.getDeclaredConstructor().newInstance();
+            if (fd instanceof RegionDescriptor) {
+                fd.setProperties(properties);
+                ((RegionDescriptor) fd).run(processor, labelImage);
+                features.addAll(fd.getFeatures());
+                return labelImage.getLabels();
+            }
+
+            List<Integer> regions = new ArrayList<>();
+            for (int k = 0; k < labelImage.getRegionCount(); k++) {
+                ImageProcessor regionProcessor = processor.duplicate();
+                regionProcessor.setMask(labelImage.getMask(k));
+                fd = (FeatureDescriptor) descriptorClazz.getDeclaredConstructor().newInstance();
+                fd.setProperties(properties);
+                fd.run(regionProcessor);
+                for (double[] feature : fd.getFeatures()) {
+                    features.add(feature);
+                    regions.add(labelImage.getLabel(k));
+                }
+            }
+            int[] result = new int[regions.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = regions.get(i);
+            }
+            return result;
+        }
+
         /**
          * Null safe image reader.
          *
@@ -0,0 +1,198 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Iterative radix 2 fast fourier transform of complex data.
+ *
+ * A plan holds the twiddle factors and the bit reversal permutation of one
+ * transform size. Plans are immutable and cached by size, see
+ * {@link #forSize(int)}, so repeated transforms of the same size (for example
+ * the rows of several images of the same width) do not recompute them.
+ */
+public final class FFT {
+
+    private static final ConcurrentMap<Integer, FFT> plans = new ConcurrentHashMap<>();
+    private final int size;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    private FFT(int size) {
+        this.size = size;
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+        reversed = new int[size];
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Returns the (cached) plan for the given size.
+     *
+     * @param size transform size, a power of 2
+     * @return plan
+     */
+    public static FFT forSize(int size) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of 2 but was " + size);
+        }
+        FFT plan = plans.get(size);
+        if (plan == null) {
+            plan = new FFT(size);
+            FFT existing = plans.putIfAbsent(size, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @param n
+     * @return the smallest power of 2 that is &gt;= n
+     */
+    public static int nextPowerOfTwo(int n) {
+        if (n < 1 || n > 1 << 30) {
+            throw new IllegalArgumentException("n must be in [1, 2^30] but was " + n);
+        }
+        return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Transforms size complex values in place. The inverse transform is not
+     * scaled by 1 / size.
+     *
+     * @param re real parts
+     * @param im imaginary parts
+     * @param offset index of the first value
+     * @param inverse true for the inverse transform
+     */
+    public void transform(double[] re, double[] im, int offset, boolean inverse) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = t;
+                t = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = t;
+            }
+        }
+        final double sign = inverse ? -1 : 1;
+        for (int half = 1; half < size; half <<= 1) {
+            final int step = size / (2 * half);
+            for (int start = offset; start < offset + size; start += 2 * half) {
+                for (int k = 0; k < half; k++) {
+                    final double wr = cos[k * step];
+                    final double wi = sign * sin[k * step];
+                    final int a = start + k;
+                    final int b = a + half;
+                    final double tr = wr * re[b] - wi * im[b];
+                    final double ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms a width x height array of complex values (row major) in
+     * place. The inverse transform is not scaled by 1 / (width * height).
+     *
+     * @param re real parts
+     * @param im imaginary parts
+     * @param width a power of 2
+     * @param height a power of 2
+     * @param inverse true for the inverse transform
+     */
+    public static void transform2D(double[] re, double[] im, int width, int height, boolean inverse) {
+        FFT rows = forSize(width);
+        for (int y = 0; y < height; y++) {
+            rows.transform(re, im, y * width, inverse);
+        }
+
+        forSize(height).transformColumns(re, im, width, inverse);
+    }
+
+    /**
+     * Transforms all columns of a size x width array in place. The butterflies
+     * combine whole rows, so the data is traversed row by row.
+     */
+    private void transformColumns(double[] re, double[] im, int width, boolean inverse) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                swapRows(re, i, j, width);
+                swapRows(im, i, j, width);
+            }
+        }
+        final double sign = inverse ? -1 : 1;
+        for (int half = 1; half < size; half <<= 1) {
+            final int step = size / (2 * half);
+            for (int start = 0; start < size; start += 2 * half) {
+                for (int k = 0; k < half; k++) {
+                    final double wr = cos[k * step];
+                    final double wi = sign * sin[k * step];
+                    final int a = (start + k) * width;
+                    final int b = a + half * width;
+                    for (int x = 0; x < width; x++) {
+                        final double tr = wr * re[b + x] - wi * im[b + x];
+                        final double ti = wr * im[b + x] + wi * re[b + x];
+                        re[b + x] = re[a + x] - tr;
+                        im[b + x] = im[a + x] - ti;
+                        re[a + x] += tr;
+                        im[a + x] += ti;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void swapRows(double[] data, int i, int j, int width) {
+        for (int x = 0, a = i * width, b = j * width; x < width; x++, a++, b++) {
+            double t = data[a];
+            data[a] = data[b];
+            data[b] = t;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fast approximations of transcendental functions for per pixel loops.
+ *
+ * The methods trade a small, bounded error for speed. Descriptors that use
+ * them offer a switch (usually <code>setFastMath(boolean)</code>) and keep
+ * the exact <code>java.lang.Math</code> functions as default.
+ */
+public final class FastMath {
+
+    /**
+     * Maximum absolute error of {@link #atan2(double, double)} in radians.
+     */
+    public static final double ATAN2_MAX_ERROR = 1.2e-5;
+    /**
+     * Coefficients of the minimax polynomial for atan(z) with z in [-1, 1]
+     * (Abramowitz and Stegun, 4.4.49).
+     */
+    private static final double A1 = 0.9998660;
+    private static final double A3 = -0.3302995;
+    private static final double A5 = 0.1801410;
+    private static final double A7 = -0.0851330;
+    private static final double A9 = 0.0208351;
+    private static final double HALF_PI = Math.PI / 2;
+
+    private FastMath() {
+    }
+
+    /**
+     * Approximates {@link Math#atan2(double, double)} with a polynomial. The
+     * absolute error is below {@link #ATAN2_MAX_ERROR} and the result is
+     * always in [-PI, PI].
+     *
+     * @param y ordinate
+     * @param x abscissa
+     * @return the angle of (x, y) in radians, 0 for (0, 0)
+     */
+    public static double atan2(double y, double x) {
+        final double ax = Math.abs(x);
+        final double ay = Math.abs(y);
+        final double max = Math.max(ax, ay);
+        if (max == 0) {
+            return 0;
+        }
+
+        // reduce to z in [0, 1] and use the symmetries of atan. The
+        // conditional expressions avoid unpredictable branches.
+        double angle = atan01(Math.min(ax, ay) / max);
+        angle = ay > ax ? HALF_PI - angle : angle;
+        angle = x < 0 ? Math.PI - angle : angle;
+        return y < 0 ? -angle : angle;
+    }
+
+    /**
+     * atan(z) for z in [0, 1]
+     */
+    private static double atan01(double z) {
+        final double z2 = z * z;
+        return z * (A1 + z2 * (A3 + z2 * (A5 + z2 * (A7 + z2 * A9))));
+    }
+
+    /**
+     * Returns sqrt(x^2 + y^2) without the overflow and underflow handling of
+     * {@link Math#hypot(double, double)}, which is not required for gradient
+     * magnitudes. The result differs from <code>(float) Math.hypot(x, y)</code>
+     * by at most one ulp.
+     *
+     * If only lengths are compared, compare the squared lengths instead.
+     *
+     * @param x
+     * @param y
+     * @return the length of (x, y)
+     */
+    public static float hypot(float x, float y) {
+        return (float) Math.sqrt((double) x * x + (double) y * y);
+    }
+
+    /**
+     * Tabulated values of the (unnormalized) gaussian
+     * <code>exp(-d^2 / (2 sigma^2))</code> for integer distances d.
+     *
+     * The table grows on demand, so each distance is evaluated only once.
+     * Two dimensional values are the products of two one dimensional values,
+     * which equals <code>exp(-(dx^2 + dy^2) / (2 sigma^2))</code> up to
+     * rounding.
+     *
+     * Instances are not thread safe.
+     */
+    public static final class GaussianTable {
+
+        private final double sigma;
+        private final double factor;
+        private double[] values;
+        private int size;
+
+        /**
+         * @param sigma standard deviation, must be &gt; 0
+         */
+        public GaussianTable(double sigma) {
+            if (!(sigma > 0)) {
+                throw new IllegalArgumentException("sigma must be > 0 but was " + sigma);
+            }
+            this.sigma = sigma;
+            this.factor = -1 / (2 * sigma * sigma);
+            this.values = new double[16];
+        }
+
+        /**
+         * @param d distance
+         * @return exp(-d^2 / (2 sigma^2))
+         */
+        public double get(int d) {
+            if (d < 0) {
+                d = -d;
+            }
+            if (d >= size) {
+                grow(d + 1);
+            }
+            return values[d];
+        }
+
+        /**
+         * @param dx distance in x
+         * @param dy distance in y
+         * @return exp(-(dx^2 + dy^2) / (2 sigma^2))
+         */
+        public double get(int dx, int dy) {
+            return get(dx) * get(dy);
+        }
+
+        public double getSigma() {
+            return sigma;
+        }
+
+        private void grow(int newSize) {
+            if (newSize > values.length) {
+                values = Arrays.copyOf(values, Math.max(newSize, 2 * values.length));
+            }
+            for (int d = size; d < newSize; d++) {
+                values[d] = Math.exp(factor * d * d);
+            }
+            size = newSize;
+        }
+    }
+}
@@ -57,41 +57,92 @@ public class GradientImage implements GradientSource {
      * The processor describing the orientation of the gradients in [0, Pi[.
      */
     private FloatProcessor theta = null;
+    /**
+     * Use {@link FastMath#atan2(double, double)} for the orientation.
+     */
+    private boolean fastMath = false;
 
     @Override
     public void setIp(ImageProcessor ip) {
         ip = ip.convertToFloat();
+        final int width = ip.getWidth();
+        final int height = ip.getHeight();
+        final float[] pixels = (float[]) ip.getPixels();
+
+        length = new FloatProcessor(width, height);
+        theta = new FloatProcessor(width, height);
+        final float[] lengthPixels = (float[]) length.getPixels();
+        final float[] thetaPixels = (float[]) theta.getPixels();
 
         /*
-         * ipX and ipY are temporary processors for the derivations. This of
-         * course consumes quite some memory. A more optimal yet less
-         * transparent solution would be to use the length and theta processors
-         * for derivation AND for the final result at once.
+         * The derivations are computed on the fly for each pixel instead of
+         * convolving two temporary copies of the image. Like in
+         * ImageProcessor.convolve3x3, edge pixels are replicated and the
+         * result is divided by the kernel sum (if it's not 0).
          */
-        FloatProcessor ipX = (FloatProcessor) ip.duplicate();
-        FloatProcessor ipY = (FloatProcessor) ip.duplicate();
-        ipX.convolve3x3(kernelX);
-        ipY.convolve3x3(kernelY);
-
-        length = new FloatProcessor(ip.getWidth(), ip.getHeight());
-        theta = new FloatProcessor(ip.getWidth(), ip.getHeight());
-
-        final int max = ip.getWidth() * ip.getHeight();
+        final int[] kx = kernelX;
+        final int[] ky = kernelY;
+        final float scaleX = scale(kx);
+        final float scaleY = scale(ky);
         float dx, dy;
+        float p1, p2, p3, p4, p5, p6, p7, p8, p9;
+        final boolean fast = fastMath;
         float thetaValue;
-        for (int i = 0; i < max; i++) {
-            dx = ipX.getf(i);
-            dy = ipY.getf(i);
-
-            if (dx != 0 || dy != 0) {
-                length.setf(i, (float) Math.sqrt(dx * dx + dy * dy));
-                thetaValue = (float) (Math.atan2(dy, dx) + Math.PI);
-                thetaValue %= Math.PI;
-                theta.setf(i, thetaValue);
+        for (int y = 0; y < height; y++) {
+            final int above = Math.max(y - 1, 0) * width;
+            final int row = y * width;
+            final int below = Math.min(y + 1, height - 1) * width;
+            for (int x = 0; x < width; x++) {
+                final int left = Math.max(x - 1, 0);
+                final int right = Math.min(x + 1, width - 1);
+                p1 = pixels[above + left];
+                p2 = pixels[above + x];
+                p3 = pixels[above + right];
+                p4 = pixels[row + left];
+                p5 = pixels[row + x];
+                p6 = pixels[row + right];
+                p7 = pixels[below + left];
+                p8 = pixels[below + x];
+                p9 = pixels[below + right];
+
+                dx = (kx[0] * p1 + kx[1] * p2 + kx[2] * p3
+                        + kx[3] * p4 + kx[4] * p5 + kx[5] * p6
+                        + kx[6] * p7 + kx[7] * p8 + kx[8] * p9) / scaleX;
+                dy = (ky[0] * p1 + ky[1] * p2 + ky[2] * p3
+                        + ky[3] * p4 + ky[4] * p5 + ky[5] * p6
+                        + ky[6] * p7 + ky[7] * p8 + ky[8] * p9) / scaleY;
+
+                if (dx != 0 || dy != 0) {
+                    lengthPixels[row + x] = (float) Math.sqrt(dx * dx + dy * dy);
+                    if (fast) {
+                        // fold into [0, PI[ without the slow floating point
+                        // remainder
+                        double angle = FastMath.atan2(dy, dx);
+                        thetaValue = (float) (angle < 0 ? angle + Math.PI : angle);
+                        if (thetaValue >= Math.PI) {
+                            thetaValue = 0;
+                        }
+                    } else {
+                        thetaValue = (float) (Math.atan2(dy, dx) + Math.PI);
+                        thetaValue %= Math.PI;
+                    }
+                    thetaPixels[row + x] = thetaValue;
+                }
             }
         }
     }
 
+    /**
+     * Returns the sum of the kernel or 1 if the sum is 0.
+     */
+    private static float scale(int[] kernel) {
+        int sum = 0;
+        for (int k : kernel) {
+            sum += k;
+        }
+        return sum == 0 ? 1 : sum;
+    }
+
     /**
      * Returns the angle of the gradient in the area [0, PI[.
      *
@@ -132,5 +183,20 @@ public class GradientImage implements GradientSource {
     public void setKernelY(int[] kernelY) {
         this.kernelY = kernelY;
     }
+
+    public boolean isFastMath() {
+        return fastMath;
+    }
+
+    /**
+     * Sets whether the orientation is approximated by
+     * {@link FastMath#atan2(double, double)} (absolute error below
+     * {@link FastMath#ATAN2_MAX_ERROR}) instead of computed exactly.
+     *
+     * @param fastMath true for the approximation, default is false
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
     //</editor-fold>
 }
@@ -36,17 +36,45 @@ public class IntegralImage {
     private int m_height;
     private int m_width;
     private long[] m_values;
+    /**
+     * true if m_values is borrowed from the ScratchPool
+     */
+    private boolean m_pooled;
 
     /**
      * Constructs the integral image.
      *
+     * The values are stored in a new array that is owned by this instance.
+     *
      * @param ip ImageProcessor to use
      */
     public void compute(final ByteProcessor ip) {
+        compute(ip, false);
+    }
+
+    /**
+     * Constructs the integral image like {@link #compute(ByteProcessor)}, but
+     * stores the values in an array borrowed from the {@link ScratchPool} of
+     * the calling thread.
+     *
+     * The integral image may be queried by several threads, but
+     * {@link #release()} must be called by the thread that called this
+     * method, as soon as the integral image is not needed anymore. It must
+     * not be queried afterwards.
+     *
+     * @param ip ImageProcessor to use
+     */
+    public void computePooled(final ByteProcessor ip) {
+        compute(ip, true);
+    }
+
+    private void compute(final ByteProcessor ip, boolean pooled) {
+        release();
         m_height = ip.getHeight();
         m_width = ip.getWidth();
 
-        m_values = new long[ip.getPixelCount()];
+        m_values = pooled ? ScratchPool.borrowLongs(ip.getPixelCount()) : new long[ip.getPixelCount()];
+        m_pooled = pooled;
         // initialize north-west corner
         m_values[0] = ip.get(0);
         // initialize first row
@@ -71,6 +99,20 @@ public class IntegralImage {
         }
     }
 
+    /**
+     * Releases the values. An array borrowed by
+     * {@link #computePooled(ByteProcessor)} is returned to the
+     * {@link ScratchPool}. The integral image must not be queried afterwards
+     * unless it is computed again.
+     */
+    public void release() {
+        if (m_pooled) {
+            ScratchPool.release(m_values);
+        }
+        m_values = null;
+        m_pooled = false;
+    }
+
     /**
      * Get value of integral image at specified position.
      *
@@ -100,10 +142,78 @@ public class IntegralImage {
      * @return sum of intensities in specified region
      */
     public long get(final Rectangle region) {
-        int x2 = Math.min(region.x + region.width, m_width);
-        int y2 = Math.min(region.y + region.height, m_height);
-        return get(x2, y2) - get(region.x, y2)
-                - get(x2, region.y) + get(region.x, region.y);
+        return get(region.x, region.y, region.width, region.height);
+    }
+
+    /**
+     * Returns the sum of intensities in the specified rectangle.
+     *
+     * Parts that lie outside of the image are treated as having zero intensity.
+     *
+     * @param x left edge of the rectangle
+     * @param y top edge of the rectangle
+     * @param width width of the rectangle
+     * @param height height of the rectangle
+     * @return sum of intensities in specified region
+     */
+    public long get(final int x, final int y, final int width, final int height) {
+        int x2 = Math.min(x + width, m_width);
+        int y2 = Math.min(y + height, m_height);
+        return get(x2, y2) - get(x, y2)
+                - get(x2, y) + get(x, y);
+    }
+
+    /**
+     * Computes the mean intensity of the patch with edge length
+     * <tt>2 * size + 1</tt> around each pixel whose patch lies completely
+     * inside the image. Pixels closer than <tt>size</tt> to the border are
+     * not written.
+     *
+     * The means equal <tt>get(patch) / (float) patchArea</tt>.
+     *
+     * @param size the radius of the patch (>= 0)
+     * @param means receives the means in row major order (length >= width * height)
+     * @param parallelism the maximum number of parallel row bands
+     */
+    public void computePatchMeans(final int size, final float[] means, int parallelism) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be >= 0 but was " + size);
+        }
+        final int width = m_width;
+        final int patch = 2 * size + 1;
+        final float area = patch * patch;
+        final long[] values = m_values;
+        final int xEnd = width - size;
+        if (xEnd <= size || m_height <= 2 * size) {
+            return;
+        }
+
+        RowBands.run(m_height - 2 * size, parallelism, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                for (int y = from + size; y < to + size; y++) {
+                    // value indices left of the patch in the rows above and at its bottom
+                    final int top = (y - size - 1) * width - size - 1;
+                    final int bottom = (y + size) * width - size - 1;
+                    final int row = y * width;
+                    // the first patch of each row touches the left border,
+                    // the patches of the first row touch the top border
+                    int x = size;
+                    if (y == size) {
+                        means[row + x] = values[bottom + x + patch] / area;
+                        for (x++; x < xEnd; x++) {
+                            means[row + x] = (values[bottom + x + patch] - values[bottom + x]) / area;
+                        }
+                    } else {
+                        means[row + x] = (values[bottom + x + patch] - values[top + x + patch]) / area;
+                        for (x++; x < xEnd; x++) {
+                            means[row + x] = (values[bottom + x + patch] - values[bottom + x]
+                                    - values[top + x + patch] + values[top + x]) / area;
+                        }
+                    }
+                }
+            }
+        });
     }
 
     /**
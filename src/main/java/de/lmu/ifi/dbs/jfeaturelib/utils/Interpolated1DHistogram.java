@@ -108,6 +108,21 @@ public class Interpolated1DHistogram {
      * @param value
      */
     public void add(double pos, double value) {
+        add(pos, value, bins, 0);
+    }
+
+    /**
+     * Adds <code>value</code> at the specified key position to an external
+     * histogram instead of the own data array. The external histogram is the
+     * range <code>data[offset, offset + binCount[</code>, this way several
+     * histograms with equal ranges can share one binning object and one array.
+     *
+     * @param pos in the range of [min, max[
+     * @param value
+     * @param data the array holding the external histogram
+     * @param offset index of the first bin of the external histogram in data
+     */
+    public void add(double pos, double value, double[] data, int offset) {
         if (pos < min || pos >= max || Double.isNaN(pos)) {
             throw new IllegalArgumentException("value must be in [" + min + ", " + max + "[ but was: " + pos);
         }
@@ -117,25 +132,25 @@ public class Interpolated1DHistogram {
 
         // direct hit (unlikely with doubles)
         if (pos - mid == 0) {
-            bins[index] += value;
+            data[offset + index] += value;
 
         } // right of mid, interpolate to following bin
         else if (pos > mid) {
             double weight = (pos - mid) / binWidth;
-            bins[index] += (1 - weight) * value;
+            data[offset + index] += (1 - weight) * value;
 
             // interpolate to right bin
             if (index + 1 < bins.length) {
-                bins[index + 1] += weight * value;
+                data[offset + index + 1] += weight * value;
             }
         } // value left of mid, interpolate to previous bin
         else if (pos < mid) {
             double weight = (mid - pos) / binWidth;
-            bins[index] += (1 - weight) * value;
+            data[offset + index] += (1 - weight) * value;
 
             // interpolate to left bin
             if (index - 1 >= 0) {
-                bins[index - 1] += weight * value;
+                data[offset + index - 1] += weight * value;
             }
         }
     }
@@ -173,12 +188,21 @@ public class Interpolated1DHistogram {
     int getBinFor(double pos) {
         assert (pos <= max) : "pos > max: " + pos + " > " + max;
 
-        int index = Arrays.binarySearch(lowerKey, pos);
-        if (index >= 0) {
-            return index;
-        } else {
-            return -index - 2;
+        // the bins are equally wide, so the index can be computed directly.
+        // Rounding may put it off by one near a border, the lower keys decide.
+        int index = (int) ((pos - min) / binWidth);
+        if (index >= lowerKey.length) {
+            index = lowerKey.length - 1;
+        } else if (index < 0) {
+            index = 0;
+        }
+        while (index > 0 && lowerKey[index] > pos) {
+            index--;
+        }
+        while (index + 1 < lowerKey.length && lowerKey[index + 1] <= pos) {
+            index++;
         }
+        return index;
     }
 
     /**
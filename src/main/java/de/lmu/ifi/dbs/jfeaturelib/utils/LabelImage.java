@@ -0,0 +1,244 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * An image in which each pixel value is the ID (label) of the region the
+ * pixel belongs to.
+ *
+ * Label images are typically the output of a segmentation. Label 0 is the
+ * background and does not form a region. Label images are 8 or 16 bit images,
+ * so there can be up to 255 or 65535 regions.
+ *
+ * The regions are numbered densely from 0 to {@link #getRegionCount()}-1 in
+ * ascending order of their labels. {@link #getRegionIndex()} maps each pixel
+ * to its region number which allows descriptors to accumulate the statistics
+ * of all regions in a single pass over the image.
+ */
+public class LabelImage {
+
+    private final int width;
+    private final int height;
+    /**
+     * region number of each pixel, -1 for background
+     */
+    private final int[] regionIndex;
+    /**
+     * label of each region
+     */
+    private final int[] labels;
+    /**
+     * amount of pixels of each region
+     */
+    private final int[] areas;
+    /**
+     * bounding box of each region
+     */
+    private final Rectangle[] bounds;
+
+    /**
+     * Creates the label image from an 8 or 16 bit processor.
+     *
+     * @param ip the label image
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if ip is neither a ByteProcessor nor a
+     * ShortProcessor
+     */
+    public LabelImage(ImageProcessor ip) {
+        if (ip == null) {
+            throw new NullPointerException("label image must not be null");
+        }
+        width = ip.getWidth();
+        height = ip.getHeight();
+        final int size = width * height;
+
+        // read the labels
+        final int[] pixelLabels = new int[size];
+        final int maxLabels;
+        if (ip instanceof ByteProcessor) {
+            byte[] pixels = (byte[]) ip.getPixels();
+            for (int i = 0; i < size; i++) {
+                pixelLabels[i] = pixels[i] & 0xff;
+            }
+            maxLabels = 256;
+        } else if (ip instanceof ShortProcessor) {
+            short[] pixels = (short[]) ip.getPixels();
+            for (int i = 0; i < size; i++) {
+                pixelLabels[i] = pixels[i] & 0xffff;
+            }
+            maxLabels = 65536;
+        } else {
+            throw new IllegalArgumentException("label images must be 8 or 16 bit but got "
+                    + ip.getClass().getName());
+        }
+
+        // count the pixels per label and map the used labels to dense region numbers
+        final int[] counts = new int[maxLabels];
+        for (int i = 0; i < size; i++) {
+            counts[pixelLabels[i]]++;
+        }
+        int regions = 0;
+        final int[] lut = new int[maxLabels];
+        lut[0] = -1;
+        for (int label = 1; label < maxLabels; label++) {
+            lut[label] = counts[label] > 0 ? regions++ : -1;
+        }
+
+        labels = new int[regions];
+        areas = new int[regions];
+        for (int label = 1; label < maxLabels; label++) {
+            if (lut[label] >= 0) {
+                labels[lut[label]] = label;
+                areas[lut[label]] = counts[label];
+            }
+        }
+
+        // region index and bounding boxes
+        final int[] minX = new int[regions];
+        final int[] minY = new int[regions];
+        final int[] maxX = new int[regions];
+        final int[] maxY = new int[regions];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+        regionIndex = pixelLabels; // reuse the array
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                int k = lut[pixelLabels[i]];
+                regionIndex[i] = k;
+                if (k >= 0) {
+                    if (x < minX[k]) {
+                        minX[k] = x;
+                    }
+                    if (x > maxX[k]) {
+                        maxX[k] = x;
+                    }
+                    if (y < minY[k]) {
+                        minY[k] = y;
+                    }
+                    maxY[k] = y;
+                }
+            }
+        }
+        bounds = new Rectangle[regions];
+        for (int k = 0; k < regions; k++) {
+            bounds[k] = new Rectangle(minX[k], minY[k], maxX[k] - minX[k] + 1, maxY[k] - minY[k] + 1);
+        }
+    }
+
+    /**
+     * @return width of the label image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the label image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return amount of regions (without background)
+     */
+    public int getRegionCount() {
+        return labels.length;
+    }
+
+    /**
+     * @param region region number in [0, regionCount[
+     * @return the label (pixel value) of the region
+     */
+    public int getLabel(int region) {
+        return labels[region];
+    }
+
+    /**
+     * @return the labels of all regions in ascending order
+     */
+    public int[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * @param region region number in [0, regionCount[
+     * @return amount of pixels in the region
+     */
+    public int getArea(int region) {
+        return areas[region];
+    }
+
+    /**
+     * @param region region number in [0, regionCount[
+     * @return bounding box of the region
+     */
+    public Rectangle getBounds(int region) {
+        return new Rectangle(bounds[region]);
+    }
+
+    /**
+     * Returns the region number of each pixel (row major) or -1 for background
+     * pixels.
+     *
+     * The returned array is shared and must not be modified.
+     *
+     * @return region numbers
+     */
+    public int[] getRegionIndex() {
+        return regionIndex;
+    }
+
+    /**
+     * Creates a binary mask (255 inside, 0 outside) of the size of the image
+     * for the given region. This can be used to process a region with
+     * descriptors that do not support label images but masking.
+     *
+     * @param region region number in [0, regionCount[
+     * @return mask of the region
+     */
+    public ByteProcessor getMask(int region) {
+        if (region < 0 || region >= labels.length) {
+            throw new IllegalArgumentException("region must be in [0," + labels.length + "[ but was " + region);
+        }
+        byte[] mask = new byte[regionIndex.length];
+        Rectangle r = bounds[region];
+        for (int y = r.y; y < r.y + r.height; y++) {
+            for (int i = y * width + r.x, end = i + r.width; i < end; i++) {
+                if (regionIndex[i] == region) {
+                    mask[i] = (byte) 255;
+                }
+            }
+        }
+        return new ByteProcessor(width, height, mask, null);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Run length encoded representation of a binary mask.
+ *
+ * Each row of the mask is stored as a sorted list of horizontal spans
+ * {@code [start, end[} of pixels that are inside the mask. Descriptors that
+ * iterate over the spans instead of testing every pixel of the image with
+ * {@code inMask(x,y)} only touch the pixels inside the mask.
+ *
+ * The spans can be visited with a {@link SpanVisitor} or, in hot loops,
+ * directly through the index accessors:
+ *
+ * <pre>
+ * for (int y = 0; y &lt; spans.getHeight(); y++) {
+ *     for (int s = spans.rowStart(y); s &lt; spans.rowEnd(y); s++) {
+ *         for (int x = spans.spanStart(s); x &lt; spans.spanEnd(s); x++) {
+ *             // (x,y) is inside the mask
+ *         }
+ *     }
+ * }
+ * </pre>
+ *
+ * Instances are immutable.
+ */
+public final class MaskSpans {
+
+    private final int width;
+    private final int height;
+    /**
+     * span index of the first span in each row, length height+1
+     */
+    private final int[] rows;
+    /**
+     * start (inclusive) and end (exclusive) x-coordinates of all spans
+     */
+    private final int[] starts;
+    private final int[] ends;
+    /**
+     * number of pixels inside the mask
+     */
+    private final int area;
+
+    private MaskSpans(int width, int height, int[] rows, int[] starts, int[] ends, int area) {
+        this.width = width;
+        this.height = height;
+        this.rows = rows;
+        this.starts = starts;
+        this.ends = ends;
+        this.area = area;
+    }
+
+    /**
+     * Compiles the mask into spans. Pixels with a value != 0 are inside the
+     * mask.
+     *
+     * @param mask the mask
+     * @return spans of the mask
+     * @throws NullPointerException if mask is null
+     */
+    public static MaskSpans of(ImageProcessor mask) {
+        if (mask == null) {
+            throw new NullPointerException("mask must not be null");
+        }
+        if (!(mask instanceof ByteProcessor)) {
+            mask = mask.convertToByte(false);
+        }
+        final int width = mask.getWidth();
+        final int height = mask.getHeight();
+        final byte[] pixels = (byte[]) mask.getPixels();
+
+        int[] rows = new int[height + 1];
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count = 0;
+        int area = 0;
+        for (int y = 0; y < height; y++) {
+            rows[y] = count;
+            final int offset = y * width;
+            int x = 0;
+            while (x < width) {
+                while (x < width && pixels[offset + x] == 0) {
+                    x++;
+                }
+                if (x == width) {
+                    break;
+                }
+                int start = x;
+                while (x < width && pixels[offset + x] != 0) {
+                    x++;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = start;
+                ends[count] = x;
+                count++;
+                area += x - start;
+            }
+        }
+        rows[height] = count;
+        return new MaskSpans(width, height, rows,
+                Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), area);
+    }
+
+    /**
+     * @return width of the mask
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the mask
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of pixels inside the mask
+     */
+    public int getArea() {
+        return area;
+    }
+
+    /**
+     * @return total number of spans
+     */
+    public int getSpanCount() {
+        return starts.length;
+    }
+
+    /**
+     * @param y row
+     * @return index of the first span in row y
+     */
+    public int rowStart(int y) {
+        return rows[y];
+    }
+
+    /**
+     * @param y row
+     * @return index after the last span in row y
+     */
+    public int rowEnd(int y) {
+        return rows[y + 1];
+    }
+
+    /**
+     * @param span span index
+     * @return first x-coordinate of the span
+     */
+    public int spanStart(int span) {
+        return starts[span];
+    }
+
+    /**
+     * @param span span index
+     * @return x-coordinate after the last pixel of the span
+     */
+    public int spanEnd(int span) {
+        return ends[span];
+    }
+
+    /**
+     * Checks if a pixel is inside the mask. This performs a binary search in
+     * the row - prefer iterating over the spans if possible.
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return true if (x,y) is inside the mask
+     */
+    public boolean contains(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return false;
+        }
+        int lo = rows[y];
+        int hi = rows[y + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x < starts[mid]) {
+                hi = mid - 1;
+            } else if (x >= ends[mid]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits all spans of the mask.
+     *
+     * @param visitor the visitor
+     */
+    public void forEach(SpanVisitor visitor) {
+        forEach(new Rectangle(0, 0, width, height), visitor);
+    }
+
+    /**
+     * Visits all spans of the mask clipped to the given rectangle. Spans
+     * that do not intersect the rectangle are skipped.
+     *
+     * @param clip the rectangle to clip the spans to
+     * @param visitor the visitor
+     */
+    public void forEach(Rectangle clip, SpanVisitor visitor) {
+        final int xMin = Math.max(clip.x, 0);
+        final int xMax = Math.min(clip.x + clip.width, width);
+        final int yMax = Math.min(clip.y + clip.height, height);
+        for (int y = Math.max(clip.y, 0); y < yMax; y++) {
+            for (int s = rows[y], end = rows[y + 1]; s < end; s++) {
+                int x0 = Math.max(starts[s], xMin);
+                int x1 = Math.min(ends[s], xMax);
+                if (x0 < x1) {
+                    visitor.visit(y, x0, x1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback for {@link MaskSpans#forEach(SpanVisitor)}.
+     */
+    public interface SpanVisitor {
+
+        /**
+         * Called for each span of the mask.
+         *
+         * @param y row of the span
+         * @param x0 first x-coordinate of the span
+         * @param x1 x-coordinate after the last pixel of the span
+         */
+        void visit(int y, int x0, int x1);
+    }
+}
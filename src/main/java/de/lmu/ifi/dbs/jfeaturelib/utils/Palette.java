@@ -0,0 +1,109 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Helpers for 8 bit images with an indexed color model.
+ *
+ * An 8 bit image has at most 256 distinct colors. Color descriptors can
+ * therefore count the palette indices of the pixels and convert only the 256
+ * palette entries to their color space, instead of converting the image to
+ * RGB and every pixel's color.
+ */
+public final class Palette {
+
+    private Palette() {
+    }
+
+    /**
+     * Returns the colors that {@link ImageProcessor#convertToRGB()} assigns
+     * to the 256 pixel values of an 8 bit image.
+     *
+     * @param ip the image
+     * @return 256 packed RGB colors or null if ip is not an 8 bit image with
+     * an index color model of 256 entries
+     */
+    public static int[] colors(ImageProcessor ip) {
+        if (!(ip instanceof ByteProcessor)) {
+            return null;
+        }
+        ColorModel cm = ip.getCurrentColorModel();
+        if (!(cm instanceof IndexColorModel) || ((IndexColorModel) cm).getMapSize() != 256) {
+            return null;
+        }
+        int[] colors = new int[256];
+        ((IndexColorModel) cm).getRGBs(colors);
+        return colors;
+    }
+
+    /**
+     * Counts the pixel values of an 8 bit image inside the mask.
+     *
+     * @param pixels the pixels of the image
+     * @param width the width of the image
+     * @param spans the mask spans or null to count all pixels
+     * @return 256 counts
+     */
+    public static int[] count(byte[] pixels, int width, MaskSpans spans) {
+        final int[] counts = new int[256];
+        if (spans == null) {
+            for (int i = 0; i < pixels.length; i++) {
+                counts[pixels[i] & 0xff]++;
+            }
+        } else {
+            for (int y = 0; y < spans.getHeight(); y++) {
+                for (int s = spans.rowStart(y); s < spans.rowEnd(y); s++) {
+                    final int end = y * width + spans.spanEnd(s);
+                    for (int i = y * width + spans.spanStart(s); i < end; i++) {
+                        counts[pixels[i] & 0xff]++;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the pixel values of an 8 bit image per region of a label image.
+     *
+     * @param pixels the pixels of the image
+     * @param labels the label image
+     * @return 256 counts per region
+     */
+    public static int[][] count(byte[] pixels, LabelImage labels) {
+        final int[] region = labels.getRegionIndex();
+        final int[][] counts = new int[labels.getRegionCount()][256];
+        for (int i = 0; i < region.length; i++) {
+            if (region[i] >= 0) {
+                counts[region[i]][pixels[i] & 0xff]++;
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+
+/**
+ * Direct view on the pixel arrays of an ImageProcessor.
+ *
+ * Accessing pixels through {@code ImageProcessor.get(x,y)} or
+ * {@code getPixel(x,y)} in hot loops costs a virtual call (and sometimes a
+ * bounds check) per pixel. The concrete views in this class expose the
+ * underlying primitive arrays together with the geometry, so that loops can
+ * access the arrays directly:
+ *
+ * <pre>
+ * PixelView.Bytes view = PixelView.bytes(ip);
+ * for (int y = 0; y &lt; view.height; y++) {
+ *     int i = view.index(0, y);
+ *     for (int x = 0; x &lt; view.width; x++, i++) {
+ *         int value = view.pixels[i] &amp; 0xff;
+ *     }
+ * }
+ * </pre>
+ *
+ * A view can be restricted to a region of interest. In this case
+ * {@link #width} and {@link #height} describe the region, {@link #offset} is
+ * the array index of the top left pixel of the region and {@link #stride} the
+ * number of array elements per image row. Coordinates passed to the methods
+ * of a view are relative to the region.
+ *
+ * Byte, short and float views share the array of the processor, so changes
+ * are visible in both. The RGB view splits the packed pixels into three
+ * planes and is therefore a copy.
+ */
+public abstract class PixelView {
+
+    /**
+     * width of the view
+     */
+    public final int width;
+    /**
+     * height of the view
+     */
+    public final int height;
+    /**
+     * array index of the pixel (0,0) of the view
+     */
+    public final int offset;
+    /**
+     * number of array elements between two vertically adjacent pixels
+     */
+    public final int stride;
+
+    PixelView(int width, int height, int offset, int stride) {
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+    /**
+     * Returns the array index of the pixel at (x,y) of the view. No bounds
+     * checks are performed.
+     *
+     * @param x x-coordinate relative to the view
+     * @param y y-coordinate relative to the view
+     * @return array index
+     */
+    public final int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    /**
+     * Returns the value of the pixel at (x,y) as float. This is a convenience
+     * method for code that doesn't care about the type - hot loops should
+     * access the arrays of the concrete views directly.
+     *
+     * @param x x-coordinate relative to the view
+     * @param y y-coordinate relative to the view
+     * @return pixel value (unweighted mean of the three channels for RGB views)
+     */
+    public abstract float getf(int x, int y);
+
+    /**
+     * Creates a view on the whole image of the processor.
+     *
+     * @param ip the image processor
+     * @return typed view according to the processor type
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if the processor type is not supported
+     */
+    public static PixelView of(ImageProcessor ip) {
+        return of(ip, null);
+    }
+
+    /**
+     * Creates a view on the given region of the processor's image.
+     *
+     * @param ip the image processor
+     * @param roi region of interest or null for the whole image
+     * @return typed view according to the processor type
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if the processor type is not supported
+     * or the region is not inside the image
+     */
+    public static PixelView of(ImageProcessor ip, Rectangle roi) {
+        if (ip == null) {
+            throw new NullPointerException("ip must not be null");
+        }
+        if (ip instanceof ByteProcessor) {
+            return bytes(ip, roi);
+        } else if (ip instanceof ShortProcessor) {
+            return new Shorts((short[]) ip.getPixels(), ip.getWidth(), check(ip, roi));
+        } else if (ip instanceof FloatProcessor) {
+            return new Floats((float[]) ip.getPixels(), ip.getWidth(), check(ip, roi));
+        } else if (ip instanceof ColorProcessor) {
+            return rgb((ColorProcessor) ip, roi);
+        }
+        throw new IllegalArgumentException("unsupported processor: " + ip.getClass().getName());
+    }
+
+    /**
+     * Creates a byte view on the whole image of the processor.
+     *
+     * @param ip a ByteProcessor
+     * @return the byte view
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if ip is not a ByteProcessor
+     */
+    public static Bytes bytes(ImageProcessor ip) {
+        return bytes(ip, null);
+    }
+
+    /**
+     * Creates a byte view on the given region of the processor's image.
+     *
+     * @param ip a ByteProcessor
+     * @param roi region of interest or null for the whole image
+     * @return the byte view
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if ip is not a ByteProcessor or the
+     * region is not inside the image
+     */
+    public static Bytes bytes(ImageProcessor ip, Rectangle roi) {
+        if (ip == null) {
+            throw new NullPointerException("ip must not be null");
+        }
+        if (!(ip instanceof ByteProcessor)) {
+            throw new IllegalArgumentException("ByteProcessor required but got " + ip.getClass().getName());
+        }
+        return new Bytes((byte[]) ip.getPixels(), ip.getWidth(), check(ip, roi));
+    }
+
+    /**
+     * Creates a planar RGB view on the whole image of the processor.
+     *
+     * @param ip the color processor
+     * @return RGB view with separate planes
+     * @throws NullPointerException if ip is null
+     */
+    public static Rgb rgb(ColorProcessor ip) {
+        return rgb(ip, null);
+    }
+
+    /**
+     * Creates a planar RGB view on the given region of the processor's
+     * image.
+     *
+     * @param ip the color processor
+     * @param roi region of interest or null for the whole image
+     * @return RGB view with separate planes
+     * @throws NullPointerException if ip is null
+     * @throws IllegalArgumentException if the region is not inside the image
+     */
+    public static Rgb rgb(ColorProcessor ip, Rectangle roi) {
+        if (ip == null) {
+            throw new NullPointerException("ip must not be null");
+        }
+        Rectangle r = check(ip, roi);
+        int size = ip.getPixelCount();
+        byte[] red = new byte[size];
+        byte[] green = new byte[size];
+        byte[] blue = new byte[size];
+        ip.getRGB(red, green, blue);
+        return new Rgb(red, green, blue, ip.getWidth(), r);
+    }
+
+    private static Rectangle check(ImageProcessor ip, Rectangle roi) {
+        Rectangle image = new Rectangle(0, 0, ip.getWidth(), ip.getHeight());
+        if (roi == null) {
+            return image;
+        }
+        if (!image.contains(roi)) {
+            throw new IllegalArgumentException("roi " + roi + " is not inside the image " + image);
+        }
+        return roi;
+    }
+
+    /**
+     * View on an 8 bit image. Values have to be masked with 0xff.
+     */
+    public static final class Bytes extends PixelView {
+
+        public final byte[] pixels;
+
+        Bytes(byte[] pixels, int imageWidth, Rectangle roi) {
+            super(roi.width, roi.height, roi.y * imageWidth + roi.x, imageWidth);
+            this.pixels = pixels;
+        }
+
+        /**
+         * @param x x-coordinate relative to the view
+         * @param y y-coordinate relative to the view
+         * @return the unsigned value at (x,y)
+         */
+        public int get(int x, int y) {
+            return pixels[offset + y * stride + x] & 0xff;
+        }
+
+        @Override
+        public float getf(int x, int y) {
+            return pixels[offset + y * stride + x] & 0xff;
+        }
+
+        /**
+         * Bilinear interpolation at (x,y).
+         *
+         * Coordinates are clamped to the view like
+         * {@code ByteProcessor.getInterpolatedPixel} does.
+         *
+         * @param x x-coordinate relative to the view
+         * @param y y-coordinate relative to the view
+         * @return interpolated value
+         */
+        public double interpolate(double x, double y) {
+            if (x < 0.0) {
+                x = 0.0;
+            }
+            if (x >= width - 1.0) {
+                x = width - 1.001;
+            }
+            if (y < 0.0) {
+                y = 0.0;
+            }
+            if (y >= height - 1.0) {
+                y = height - 1.001;
+            }
+            final int xBase = (int) x;
+            final int yBase = (int) y;
+            final double xFraction = x - xBase;
+            final double yFraction = y - yBase;
+            final int i = offset + yBase * stride + xBase;
+            final int lowerLeft = pixels[i] & 0xff;
+            final int lowerRight = pixels[i + 1] & 0xff;
+            final int upperLeft = pixels[i + stride] & 0xff;
+            final int upperRight = pixels[i + stride + 1] & 0xff;
+            final double upperAverage = upperLeft + xFraction * (upperRight - upperLeft);
+            final double lowerAverage = lowerLeft + xFraction * (lowerRight - lowerLeft);
+            return lowerAverage + yFraction * (upperAverage - lowerAverage);
+        }
+    }
+
+    /**
+     * View on a 16 bit image. Values have to be masked with 0xffff.
+     */
+    public static final class Shorts extends PixelView {
+
+        public final short[] pixels;
+
+        Shorts(short[] pixels, int imageWidth, Rectangle roi) {
+            super(roi.width, roi.height, roi.y * imageWidth + roi.x, imageWidth);
+            this.pixels = pixels;
+        }
+
+        /**
+         * @param x x-coordinate relative to the view
+         * @param y y-coordinate relative to the view
+         * @return the unsigned value at (x,y)
+         */
+        public int get(int x, int y) {
+            return pixels[offset + y * stride + x] & 0xffff;
+        }
+
+        @Override
+        public float getf(int x, int y) {
+            return pixels[offset + y * stride + x] & 0xffff;
+        }
+    }
+
+    /**
+     * View on a 32 bit float image.
+     */
+    public static final class Floats extends PixelView {
+
+        public final float[] pixels;
+
+        Floats(float[] pixels, int imageWidth, Rectangle roi) {
+            super(roi.width, roi.height, roi.y * imageWidth + roi.x, imageWidth);
+            this.pixels = pixels;
+        }
+
+        @Override
+        public float getf(int x, int y) {
+            return pixels[offset + y * stride + x];
+        }
+    }
+
+    /**
+     * Planar view on an RGB image. Each plane holds unsigned 8 bit values.
+     */
+    public static final class Rgb extends PixelView {
+
+        public final byte[] red;
+        public final byte[] green;
+        public final byte[] blue;
+
+        Rgb(byte[] red, byte[] green, byte[] blue, int imageWidth, Rectangle roi) {
+            super(roi.width, roi.height, roi.y * imageWidth + roi.x, imageWidth);
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+        }
+
+        /**
+         * Returns the unweighted mean of the three channels at (x,y).
+         */
+        @Override
+        public float getf(int x, int y) {
+            int i = offset + y * stride + x;
+            return ((red[i] & 0xff) + (green[i] & 0xff) + (blue[i] & 0xff)) / 3f;
+        }
+    }
+}
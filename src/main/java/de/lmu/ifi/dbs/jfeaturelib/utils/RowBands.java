@@ -0,0 +1,120 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits a range of image rows into contiguous bands and processes them in
+ * parallel on the common fork join pool. The first band runs in the calling
+ * thread.
+ *
+ * Bands must only write to disjoint parts of shared output arrays. Scratch
+ * buffers should be allocated per band.
+ */
+public final class RowBands {
+
+    /**
+     * Processes the rows [from, to).
+     */
+    public interface Band {
+
+        void process(int from, int to);
+    }
+
+    private RowBands() {
+    }
+
+    /**
+     * @return the number of available processors
+     */
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Processes the rows [0, rows) in at most parallelism bands and waits
+     * until all bands are done. Exceptions thrown by a band are rethrown
+     * after all bands have finished, the first one with the others
+     * suppressed.
+     *
+     * @param rows the number of rows
+     * @param parallelism the maximum number of bands (>= 1)
+     * @param band the row processor
+     */
+    public static void run(int rows, int parallelism, final Band band) {
+        if (band == null) {
+            throw new NullPointerException("band must not be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        final int bands = Math.min(parallelism, rows);
+        if (bands <= 1) {
+            if (rows > 0) {
+                band.process(0, rows);
+            }
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(bands - 1);
+        for (int b = 1; b < bands; b++) {
+            final int from = (int) ((long) rows * b / bands);
+            final int to = (int) ((long) rows * (b + 1) / bands);
+            tasks.add(ForkJoinPool.commonPool().submit(new Runnable() {
+                @Override
+                public void run() {
+                    band.process(from, to);
+                }
+            }));
+        }
+        // all bands must be done before the caller may release its buffers,
+        // even if one of them failed
+        Throwable failure = null;
+        try {
+            band.process(0, rows / bands);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (RuntimeException | Error e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+}
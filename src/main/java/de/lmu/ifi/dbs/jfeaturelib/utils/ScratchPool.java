@@ -0,0 +1,367 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ * 
+ * You are kindly asked to refer to the papers of the according authors which 
+ * should be mentioned in the Javadocs of the respective classes as well as the 
+ * JFeatureLib project itself.
+ * 
+ * Hints how to cite the projects can be found at 
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Arrays;
+
+/**
+ * Thread local pool of primitive scratch arrays.
+ *
+ * Descriptors allocate large temporary arrays (gradients, gray values,
+ * integral images, ...) for every image they process. When many images are
+ * processed in a row, these short lived arrays put quite some pressure onto
+ * the garbage collector. This pool keeps released arrays per thread so that
+ * the next image processed by the same thread can reuse them.
+ *
+ * Array lengths are rounded up to size classes (powers of two and 3/4 of
+ * them), so an array borrowed from the pool may be longer than requested.
+ * Callers must therefore never rely on {@code array.length} but on the
+ * length they requested. The first {@code length} elements of a borrowed
+ * array are always zero.
+ *
+ * Each thread retains at most {@link #MAX_PER_CLASS} arrays per type and size
+ * class and at most {@link #MAX_RETAINED_BYTES} in total, so that also the
+ * workers of the common fork join pool keep only a bounded amount of memory.
+ * Arrays larger than {@link #MAX_POOLED_LENGTH} are allocated directly and
+ * never pooled.
+ *
+ * Typical usage:
+ * <pre>
+ * float[] tmp = ScratchPool.borrowFloats(width * height);
+ * try {
+ *     // work with tmp[0 .. width*height-1]
+ * } finally {
+ *     ScratchPool.release(tmp);
+ * }
+ * </pre>
+ *
+ * An array must not be used anymore after it has been released.
+ */
+public final class ScratchPool {
+
+    /**
+     * The smallest size class. Smaller requests are served with arrays of
+     * this length.
+     */
+    static final int MIN_LENGTH = 64;
+    /**
+     * Longer arrays are allocated directly and not retained.
+     */
+    public static final int MAX_POOLED_LENGTH = 1 << 23;
+    /**
+     * Number of arrays retained per type and size class in each thread.
+     */
+    public static final int MAX_PER_CLASS = 4;
+    /**
+     * Maximum number of bytes retained by the arrays of each thread.
+     */
+    public static final long MAX_RETAINED_BYTES = 64L << 20;
+    /**
+     * 2 classes per power of two up to 2^23
+     */
+    private static final int NUM_CLASSES = 46;
+    private static final ThreadLocal<ScratchPool> LOCAL = new ThreadLocal<ScratchPool>() {
+        @Override
+        protected ScratchPool initialValue() {
+            return new ScratchPool();
+        }
+    };
+    private final Bucket[] ints = new Bucket[NUM_CLASSES];
+    private final Bucket[] floats = new Bucket[NUM_CLASSES];
+    private final Bucket[] doubles = new Bucket[NUM_CLASSES];
+    private final Bucket[] longs = new Bucket[NUM_CLASSES];
+    private final Bucket[] bytes = new Bucket[NUM_CLASSES];
+    /**
+     * bytes held by the arrays in the buckets
+     */
+    private long retained = 0;
+
+    private ScratchPool() {
+    }
+
+    /**
+     * Returns an int array with at least the given length. The first
+     * {@code length} elements are set to 0.
+     *
+     * @param length minimum length
+     * @return array with {@code array.length >= length}
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    public static int[] borrowInts(int length) {
+        int size = classSize(length);
+        ScratchPool pool = LOCAL.get();
+        int[] array = (int[]) pool.take(pool.ints, size, 4);
+        if (array == null) {
+            return new int[size];
+        }
+        Arrays.fill(array, 0, length, 0);
+        return array;
+    }
+
+    /**
+     * Returns a float array with at least the given length. The first
+     * {@code length} elements are set to 0.
+     *
+     * @param length minimum length
+     * @return array with {@code array.length >= length}
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    public static float[] borrowFloats(int length) {
+        int size = classSize(length);
+        ScratchPool pool = LOCAL.get();
+        float[] array = (float[]) pool.take(pool.floats, size, 4);
+        if (array == null) {
+            return new float[size];
+        }
+        Arrays.fill(array, 0, length, 0f);
+        return array;
+    }
+
+    /**
+     * Returns a double array with at least the given length. The first
+     * {@code length} elements are set to 0.
+     *
+     * @param length minimum length
+     * @return array with {@code array.length >= length}
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    public static double[] borrowDoubles(int length) {
+        int size = classSize(length);
+        ScratchPool pool = LOCAL.get();
+        double[] array = (double[]) pool.take(pool.doubles, size, 8);
+        if (array == null) {
+            return new double[size];
+        }
+        Arrays.fill(array, 0, length, 0d);
+        return array;
+    }
+
+    /**
+     * Returns a long array with at least the given length. The first
+     * {@code length} elements are set to 0.
+     *
+     * @param length minimum length
+     * @return array with {@code array.length >= length}
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    public static long[] borrowLongs(int length) {
+        int size = classSize(length);
+        ScratchPool pool = LOCAL.get();
+        long[] array = (long[]) pool.take(pool.longs, size, 8);
+        if (array == null) {
+            return new long[size];
+        }
+        Arrays.fill(array, 0, length, 0L);
+        return array;
+    }
+
+    /**
+     * Returns a byte array with at least the given length. The first
+     * {@code length} elements are set to 0.
+     *
+     * @param length minimum length
+     * @return array with {@code array.length >= length}
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    public static byte[] borrowBytes(int length) {
+        int size = classSize(length);
+        ScratchPool pool = LOCAL.get();
+        byte[] array = (byte[]) pool.take(pool.bytes, size, 1);
+        if (array == null) {
+            return new byte[size];
+        }
+        Arrays.fill(array, 0, length, (byte) 0);
+        return array;
+    }
+
+    /**
+     * Returns the array to the pool of the current thread. Null arrays and
+     * arrays that have not been created by this pool are ignored.
+     *
+     * @param array the array to release
+     */
+    public static void release(int[] array) {
+        if (array != null) {
+            ScratchPool pool = LOCAL.get();
+            pool.put(pool.ints, array, array.length, 4);
+        }
+    }
+
+    /**
+     * @param array the array to release
+     * @see #release(int[])
+     */
+    public static void release(float[] array) {
+        if (array != null) {
+            ScratchPool pool = LOCAL.get();
+            pool.put(pool.floats, array, array.length, 4);
+        }
+    }
+
+    /**
+     * @param array the array to release
+     * @see #release(int[])
+     */
+    public static void release(double[] array) {
+        if (array != null) {
+            ScratchPool pool = LOCAL.get();
+            pool.put(pool.doubles, array, array.length, 8);
+        }
+    }
+
+    /**
+     * @param array the array to release
+     * @see #release(int[])
+     */
+    public static void release(long[] array) {
+        if (array != null) {
+            ScratchPool pool = LOCAL.get();
+            pool.put(pool.longs, array, array.length, 8);
+        }
+    }
+
+    /**
+     * @param array the array to release
+     * @see #release(int[])
+     */
+    public static void release(byte[] array) {
+        if (array != null) {
+            ScratchPool pool = LOCAL.get();
+            pool.put(pool.bytes, array, array.length, 1);
+        }
+    }
+
+    /**
+     * Drops all arrays retained by the current thread.
+     *
+     * Long living threads that are done with feature extraction can call
+     * this method to give the memory back to the garbage collector.
+     */
+    public static void clear() {
+        LOCAL.remove();
+    }
+
+    /**
+     * Returns the length of the arrays that are handed out for a request of
+     * the given length.
+     *
+     * @param length requested length
+     * @return size class for the length
+     * @throws IllegalArgumentException if length &lt; 0
+     */
+    static int classSize(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must be >= 0 but was " + length);
+        }
+        if (length <= MIN_LENGTH) {
+            return MIN_LENGTH;
+        }
+        if (length > MAX_POOLED_LENGTH) {
+            return length;
+        }
+        int pow2 = Integer.highestOneBit(length - 1) << 1;
+        int threeQuarters = (pow2 >> 2) * 3;
+        return length <= threeQuarters ? threeQuarters : pow2;
+    }
+
+    /**
+     * Returns the bucket index for an array length or -1 if the length is not
+     * a size class.
+     */
+    private static int classIndex(int size) {
+        if (size < MIN_LENGTH || size > MAX_POOLED_LENGTH) {
+            return -1;
+        }
+        if (Integer.bitCount(size) == 1) {
+            return 2 * Integer.numberOfTrailingZeros(size) - 1;
+        }
+        // 3 * 2^(k-2) has exactly two adjacent bits set
+        int low = Integer.lowestOneBit(size);
+        if (size == 3 * low) {
+            return 2 * Integer.numberOfTrailingZeros(low << 2) - 2;
+        }
+        return -1;
+    }
+
+    private Object take(Bucket[] buckets, int size, int elementBytes) {
+        int index = classIndex(size);
+        if (index < 0 || buckets[index] == null) {
+            return null;
+        }
+        Object array = buckets[index].pop();
+        if (array != null) {
+            retained -= (long) size * elementBytes;
+        }
+        return array;
+    }
+
+    private void put(Bucket[] buckets, Object array, int size, int elementBytes) {
+        int index = classIndex(size);
+        long bytes = (long) size * elementBytes;
+        if (index < 0 || retained + bytes > MAX_RETAINED_BYTES) {
+            return;
+        }
+        if (buckets[index] == null) {
+            buckets[index] = new Bucket();
+        }
+        if (buckets[index].push(array)) {
+            retained += bytes;
+        }
+    }
+
+    /**
+     * Small bounded stack of free arrays of one size class.
+     */
+    private static final class Bucket {
+
+        private final Object[] free = new Object[MAX_PER_CLASS];
+        private int count = 0;
+
+        Object pop() {
+            if (count == 0) {
+                return null;
+            }
+            Object array = free[--count];
+            free[count] = null;
+            return array;
+        }
+
+        /**
+         * @return true if the array has been retained
+         */
+        boolean push(Object array) {
+            if (count == MAX_PER_CLASS) {
+                return false;
+            }
+            // releasing the same array twice must not hand it out twice
+            for (int i = 0; i < count; i++) {
+                if (free[i] == array) {
+                    return false;
+                }
+            }
+            free[count++] = array;
+            return true;
+        }
+    }
+}
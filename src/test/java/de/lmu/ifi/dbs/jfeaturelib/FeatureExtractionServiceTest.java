@@ -0,0 +1,69 @@
+package de.lmu.ifi.dbs.jfeaturelib;
+
+import de.lmu.ifi.dbs.jfeaturelib.features.Histogram;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FeatureExtractionServiceTest {
+
+    private LibProperties properties;
+
+    @Before
+    public void setUp() {
+        properties = new LibProperties();
+        properties.setProperty(LibProperties.HISTOGRAMS_TYPE, "Gray");
+        properties.setProperty(LibProperties.HISTOGRAMS_BINS, 256);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInFlight() {
+        ExecutorService executor = FeatureExtractionService.newDefaultExecutor(1);
+        try {
+            new FeatureExtractionService(Histogram.class, properties, executor, 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmit() throws InterruptedException, ExecutionException {
+        try (FeatureExtractionService service = new FeatureExtractionService(Histogram.class, properties)) {
+            FeatureMatrix m = service.submit(image(7)).get();
+            assertEquals(1, m.getRowCount());
+            assertEquals(256, m.getDimension());
+            assertEquals(100, m.getRow(0)[7], 0);
+        }
+    }
+
+    @Test
+    public void testSubmitAllKeepsOrder() throws InterruptedException, ExecutionException {
+        ExecutorService executor = FeatureExtractionService.newVirtualThreadExecutor();
+        try (FeatureExtractionService service = new FeatureExtractionService(Histogram.class, properties, executor, 2)) {
+            List<ImageProcessor> images = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                images.add(image(i));
+            }
+            List<FeatureMatrix> result = service.submitAll(images).get();
+            assertEquals(images.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                assertEquals(100, result.get(i).getRow(0)[i], 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ImageProcessor image(int value) {
+        ByteProcessor ip = new ByteProcessor(10, 10);
+        ip.setColor(value);
+        ip.fill();
+        return ip;
+    }
+}
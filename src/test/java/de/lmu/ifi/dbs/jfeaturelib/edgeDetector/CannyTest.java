@@ -0,0 +1,123 @@
+package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CannyTest {
+
+    /**
+     * bright square [20, 40[ x [15, 35[ on dark background
+     */
+    private ByteProcessor createSquare() {
+        ByteProcessor ip = new ByteProcessor(60, 50);
+        for (int y = 15; y < 35; y++) {
+            for (int x = 20; x < 40; x++) {
+                ip.set(x, y, 200);
+            }
+        }
+        return ip;
+    }
+
+    @Test
+    public void testSquare() {
+        ByteProcessor ip = createSquare();
+        ByteProcessor edges = new Canny().findEdges(ip);
+
+        assertEquals(200, ip.get(20, 15));
+        int edgePixels = 0;
+        for (int y = 0; y < edges.getHeight(); y++) {
+            for (int x = 0; x < edges.getWidth(); x++) {
+                int v = edges.get(x, y);
+                assertTrue(v == 0 || v == 255);
+                if (v != 0) {
+                    // at most 2 pixels away from the border of the square
+                    boolean inside = x >= 23 && x < 37 && y >= 18 && y < 32;
+                    boolean outside = x < 17 || x >= 43 || y < 12 || y >= 38;
+                    assertFalse(x + "," + y, inside || outside);
+                    edgePixels++;
+                }
+            }
+        }
+        assertTrue(edgePixels > 0);
+    }
+
+    @Test
+    public void testRunWritesResult() {
+        ByteProcessor ip = createSquare();
+        ByteProcessor edges = new Canny().findEdges(ip);
+        new Canny().run(ip);
+        assertArrayEquals((byte[]) edges.getPixels(), (byte[]) ip.getPixels());
+
+        ColorProcessor cp = new ColorProcessor(60, 50);
+        for (int i = 0; i < cp.getPixelCount(); i++) {
+            cp.set(i, createSquare().get(i) * 0x010101);
+        }
+        new Canny().run(cp);
+        for (int i = 0; i < cp.getPixelCount(); i++) {
+            assertEquals(edges.get(i) != 0 ? 0xffffff : 0, cp.get(i) & 0xffffff);
+        }
+    }
+
+    @Test
+    public void testParallelism() {
+        ImageProcessor ip = new ByteProcessor(97, 83);
+        Random random = new Random(1);
+        for (int y = 0; y < ip.getHeight(); y++) {
+            for (int x = 0; x < ip.getWidth(); x++) {
+                ip.set(x, y, (int) (100 + 80 * Math.sin(x / 7.0) * Math.cos(y / 5.0)) + random.nextInt(20));
+            }
+        }
+        Canny canny = new Canny();
+        canny.setParallelism(1);
+        ByteProcessor expected = canny.findEdges(ip);
+        canny.setParallelism(4);
+        ByteProcessor actual = canny.findEdges(ip);
+        assertArrayEquals((byte[]) expected.getPixels(), (byte[]) actual.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelismInvalid() {
+        new Canny().setParallelism(0);
+    }
+
+    @Test
+    public void testLongEdge() {
+        // a meandering double line, its edges form chains of several
+        // hundred thousand pixels
+        int n = 1200;
+        ByteProcessor ip = new ByteProcessor(n, n);
+        for (int y = 10; y < n - 10; y += 8) {
+            for (int x = 10; x < n - 10; x++) {
+                ip.set(x, y, 255);
+                ip.set(x, y + 1, 255);
+            }
+            int cx = (y / 8) % 2 == 0 ? n - 12 : 10;
+            for (int k = 0; k < 8; k++) {
+                ip.set(cx, y + k, 255);
+                ip.set(cx + 1, y + k, 255);
+            }
+        }
+        ByteProcessor edges = new Canny().findEdges(ip);
+
+        int edgePixels = 0;
+        for (int i = 0; i < edges.getPixelCount(); i++) {
+            edgePixels += edges.get(i) != 0 ? 1 : 0;
+        }
+        assertTrue(edgePixels > n * n / 10);
+    }
+
+    @Test
+    public void testZeroThresholds() {
+        Canny canny = new Canny();
+        canny.setLowThreshold(0);
+        canny.setHighThreshold(0);
+        ByteProcessor edges = canny.findEdges(createSquare());
+        // pixels without gradient are never edges
+        assertEquals(0, edges.get(5, 5));
+        assertEquals(0, edges.get(30, 25));
+    }
+}
@@ -0,0 +1,79 @@
+package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DroGTest {
+
+    @Test
+    public void testEdge() {
+        // the default DroGX kernel differentiates in y direction
+        ByteProcessor ip = step();
+        new DroG().run(ip);
+        for (int x = 0; x < ip.getWidth(); x++) {
+            assertEquals(255, ip.get(x, 19) | ip.get(x, 20));
+            assertEquals(0, ip.get(x, 5));
+            assertEquals(0, ip.get(x, 35));
+        }
+
+        // both polarities are found
+        ip = step();
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, 255 - ip.get(i));
+        }
+        new DroG().run(ip);
+        assertEquals(255, ip.get(10, 19) | ip.get(10, 20));
+    }
+
+    @Test
+    public void testColor() {
+        ByteProcessor bp = step();
+        ColorProcessor cp = (ColorProcessor) bp.convertToRGB();
+        new DroG().run(bp);
+        new DroG().run(cp);
+        for (int i = 0; i < bp.getPixelCount(); i++) {
+            assertEquals(bp.get(i) == 255 ? 0xffffff : 0, cp.get(i) & 0xffffff);
+        }
+    }
+
+    @Test
+    public void testLargeKernel() {
+        ByteProcessor ip = step();
+        new DroG(0, (short) 21, 3f, 20).run(ip);
+        assertEquals(255, ip.get(10, 19) | ip.get(10, 20));
+        assertEquals(0, ip.get(10, 0));
+    }
+
+    @Test
+    public void testParallelism() {
+        ByteProcessor ip1 = step();
+        ByteProcessor ip2 = step();
+        DroG d1 = new DroG();
+        d1.setParallelism(1);
+        d1.run(ip1);
+        DroG d2 = new DroG();
+        d2.setParallelism(3);
+        d2.run(ip2);
+        assertArrayEquals((byte[]) ip1.getPixels(), (byte[]) ip2.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelismInvalid() {
+        new DroG().setParallelism(0);
+    }
+
+    /**
+     * @return 20x40 image, dark upper half and bright lower half
+     */
+    private ByteProcessor step() {
+        ByteProcessor ip = new ByteProcessor(20, 40);
+        for (int y = 20; y < 40; y++) {
+            for (int x = 0; x < 20; x++) {
+                ip.set(x, y, 200);
+            }
+        }
+        return ip;
+    }
+}
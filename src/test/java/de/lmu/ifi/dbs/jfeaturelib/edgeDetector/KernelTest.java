@@ -1,9 +1,15 @@
 package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
 
 import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
+import de.lmu.ifi.dbs.jfeaturelib.Progress;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.EnumSet;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -70,4 +76,138 @@ public class KernelTest {
         assertEquals(254, k.getTreshold());
     }
 
+    @Test
+    public void testSobel() {
+        assertProcess(Kernel.SOBEL, 0);
+        assertProcess(Kernel.SOBEL, 40);
+    }
+
+    @Test
+    public void testPredefined() {
+        assertProcess(Kernel.SCHARR, 0);
+        assertProcess(Kernel.PREWITT, 0);
+    }
+
+    @Test
+    public void testNotSeparable() {
+        assertProcess(new float[]{
+            1, 2, 0,
+            -1, 0, 1,
+            0, -2, -1}, 0);
+        assertProcess(new float[]{
+            0, 0, 1, 0, 0,
+            0, 1, 2, 1, 0,
+            1, 2, -16, 2, 1,
+            0, 1, 2, 1, 0,
+            0, 0, 1, 0, 0}, 10);
+    }
+
+    @Test
+    public void testParallelism() {
+        ByteProcessor serial = randomImage(61, 47);
+        ByteProcessor parallel = (ByteProcessor) serial.duplicate();
+
+        Kernel k = new Kernel();
+        k.setParallelism(1);
+        k.run(serial);
+        k.setParallelism(4);
+        k.run(parallel);
+        assertArrayEquals((byte[]) serial.getPixels(), (byte[]) parallel.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelismInvalid() {
+        new Kernel().setParallelism(0);
+    }
+
+    @Test
+    public void testProgress() {
+        final List<Progress> events = new ArrayList<>();
+        final Thread caller = Thread.currentThread();
+        Kernel k = new Kernel();
+        k.setParallelism(4);
+        k.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                assertSame(caller, Thread.currentThread());
+                events.add((Progress) evt.getNewValue());
+            }
+        });
+        k.run(randomImage(50, 200));
+
+        assertSame(Progress.START, events.get(0));
+        assertSame(Progress.END, events.get(events.size() - 1));
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i - 1).getProgress() <= events.get(i).getProgress());
+        }
+    }
+
+    /**
+     * Compares the result of the kernel with a straight forward
+     * implementation of the ImageJ convolution.
+     */
+    private void assertProcess(float[] kernel, int treshold) {
+        ByteProcessor ip = randomImage(29, 17);
+        int[] expected = reference(ip, kernel, treshold);
+
+        Kernel k = new Kernel(kernel);
+        k.setTreshold(treshold);
+        k.run(ip);
+
+        byte[] pixels = (byte[]) ip.getPixels();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("pixel " + i, expected[i], pixels[i] & 0xff);
+        }
+    }
+
+    private ByteProcessor randomImage(int width, int height) {
+        Random random = new Random(width * height);
+        byte[] pixels = new byte[width * height];
+        random.nextBytes(pixels);
+        return new ByteProcessor(width, height, pixels, null);
+    }
+
+    private int[] reference(ByteProcessor ip, float[] kernel, int treshold) {
+        int size = (int) Math.sqrt(kernel.length);
+        float[] rotated = new float[kernel.length];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                rotated[c * size + size - 1 - r] = kernel[r * size + c];
+            }
+        }
+        int[] gx = convolve(ip, kernel, size);
+        int[] gy = convolve(ip, rotated, size);
+        int[] result = new int[gx.length];
+        for (int i = 0; i < result.length; i++) {
+            int m = (int) Math.round(Math.sqrt(gx[i] * gx[i] + gy[i] * gy[i]));
+            result[i] = m > 255 ? 255 : m < treshold ? 0 : m;
+        }
+        return result;
+    }
+
+    private int[] convolve(ByteProcessor ip, float[] kernel, int size) {
+        int w = ip.getWidth();
+        int h = ip.getHeight();
+        double sum = 0;
+        for (float f : kernel) {
+            sum += f;
+        }
+        double scale = sum == 0 ? 1 : 1 / sum;
+        int[] result = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double v = 0;
+                for (int ky = 0; ky < size; ky++) {
+                    for (int kx = 0; kx < size; kx++) {
+                        int px = Math.min(w - 1, Math.max(0, x + kx - size / 2));
+                        int py = Math.min(h - 1, Math.max(0, y + ky - size / 2));
+                        v += ip.get(px, py) * kernel[ky * size + kx];
+                    }
+                }
+                v *= scale;
+                result[y * w + x] = v < 0 ? 0 : v > 255 ? 255 : (int) (v + 0.5);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,70 @@
+package de.lmu.ifi.dbs.jfeaturelib.edgeDetector;
+
+import ij.process.ColorProcessor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MarrHildrethTest {
+
+    @Test
+    public void testZeroCrossings() {
+        for (int size : new int[]{7, 25}) {
+            ColorProcessor cp = step();
+            MarrHildreth mh = new MarrHildreth(1.5, size, 1);
+            mh.setZeroCrossings(true);
+            mh.setThreshold(1);
+            mh.run(cp);
+
+            for (int y = 0; y < cp.getHeight(); y++) {
+                int edges = 0;
+                for (int x = 0; x < cp.getWidth(); x++) {
+                    if ((cp.get(x, y) & 0xffffff) == 0xffffff) {
+                        assertTrue("size " + size + " edge at " + x, Math.abs(x - 20) <= 2);
+                        edges++;
+                    } else {
+                        assertEquals(0, cp.get(x, y) & 0xffffff);
+                    }
+                }
+                assertTrue(edges > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testNoIterations() {
+        ColorProcessor cp = step();
+        int[] expected = ((int[]) cp.getPixels()).clone();
+        new MarrHildreth(0.6, 7, 0).run(cp);
+        assertArrayEquals(expected, (int[]) cp.getPixels());
+    }
+
+    @Test
+    public void testParallelism() {
+        ColorProcessor cp1 = step();
+        ColorProcessor cp2 = step();
+        MarrHildreth mh1 = new MarrHildreth(1, 7, 2);
+        mh1.setParallelism(1);
+        mh1.run(cp1);
+        MarrHildreth mh2 = new MarrHildreth(1, 7, 2);
+        mh2.setParallelism(4);
+        mh2.run(cp2);
+        assertArrayEquals((int[]) cp1.getPixels(), (int[]) cp2.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThresholdInvalid() {
+        new MarrHildreth().setThreshold(-1);
+    }
+
+    /**
+     * @return 40x20 image, dark left half and bright right half
+     */
+    private ColorProcessor step() {
+        ColorProcessor cp = new ColorProcessor(40, 20);
+        int[] pixels = (int[]) cp.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 40 < 20 ? 0xff202020 : 0xffc0c0c0;
+        }
+        return cp;
+    }
+}
@@ -73,4 +73,88 @@ public class SusanTest {
         // ImageIO.write(cp.getBufferedImage(), "PNG", out);
     }
 
+    @Test
+    public void testMaskOffsets() {
+        // the classic 37 pixel mask
+        assertEquals(37, Susan.maskOffsets(3, 100).length);
+        assertArrayEquals(new int[]{-101, -100, -99, -1, 0, 1, 99, 100, 101}, Susan.maskOffsets(1, 100));
+        assertEquals(21, Susan.maskOffsets(2, 100).length);
+    }
+
+    @Test
+    public void testEdgesAndCorners() {
+        ByteProcessor ip = square();
+        Susan s = new Susan();
+        s.setCorners(true);
+        s.run(ip);
+
+        ByteProcessor edges = s.getEdgemask();
+        // on the border of the square, not inside or outside of it
+        assertEquals(255, edges.get(30, 10));
+        assertEquals(255, edges.get(10, 30));
+        assertEquals(0, edges.get(30, 30));
+        assertEquals(0, edges.get(3, 3));
+        // edges are written back black
+        assertEquals(0, ip.get(30, 10));
+        assertEquals(255, ip.get(30, 30));
+
+        ByteProcessor corners = s.getCornermask();
+        int count = 0;
+        for (int y = 0; y < corners.getHeight(); y++) {
+            for (int x = 0; x < corners.getWidth(); x++) {
+                if (corners.get(x, y) != 0) {
+                    count++;
+                    boolean nearX = Math.abs(x - 10) <= 2 || Math.abs(x - 49) <= 2;
+                    boolean nearY = Math.abs(y - 10) <= 2 || Math.abs(y - 49) <= 2;
+                    assertTrue("corner at " + x + "," + y, nearX && nearY);
+                }
+            }
+        }
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void testNoCorners() {
+        Susan s = new Susan();
+        s.run(square());
+        assertNull(s.getCornermask());
+    }
+
+    @Test
+    public void testParallelism() {
+        ByteProcessor ip1 = square();
+        ByteProcessor ip2 = square();
+        Susan s1 = new Susan();
+        s1.setCorners(true);
+        s1.setSmoothSimilarity(true);
+        s1.setParallelism(1);
+        s1.run(ip1);
+        Susan s2 = new Susan();
+        s2.setCorners(true);
+        s2.setSmoothSimilarity(true);
+        s2.setParallelism(7);
+        s2.run(ip2);
+
+        assertArrayEquals((byte[]) s1.getEdgemask().getPixels(), (byte[]) s2.getEdgemask().getPixels());
+        assertArrayEquals((byte[]) s1.getCornermask().getPixels(), (byte[]) s2.getCornermask().getPixels());
+        assertArrayEquals((byte[]) ip1.getPixels(), (byte[]) ip2.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelismInvalid() {
+        new Susan().setParallelism(0);
+    }
+
+    /**
+     * @return a bright square [10, 50[ on a dark 60x60 image
+     */
+    private ByteProcessor square() {
+        ByteProcessor ip = new ByteProcessor(60, 60);
+        for (int y = 10; y < 50; y++) {
+            for (int x = 10; x < 50; x++) {
+                ip.set(x, y, 200);
+            }
+        }
+        return ip;
+    }
 }
@@ -1,5 +1,7 @@
 package de.lmu.ifi.dbs.jfeaturelib.features;
 
+import de.lmu.ifi.dbs.jfeaturelib.Descriptor;
+import de.lmu.ifi.dbs.jfeaturelib.Telemetry;
 import ij.gui.Roi;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
@@ -78,6 +80,37 @@ public class AbstractFeatureDescriptorTest {
         afd.setMask(null);
     }
 
+    @Test
+    public void testProgressThrottled() {
+        final int[] calls = new int[1];
+        final String[] stages = new String[1];
+        AbstractFeatureDescriptor afd = new AbstractFeatureDescriptorImpl();
+        afd.setTelemetry(new Telemetry() {
+            @Override
+            public void progress(Descriptor source, int progress) {
+                calls[0]++;
+            }
+
+            @Override
+            public void stage(Descriptor source, String stage, long nanos) {
+                stages[0] = stage;
+            }
+        });
+
+        for (int i = 0; i < 10000; i++) {
+            afd.progress(i, 10000);
+        }
+        assertEquals(100, calls[0]);
+
+        afd.stage("test", System.nanoTime());
+        assertEquals("test", stages[0]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testTelemetryNull() {
+        new AbstractFeatureDescriptorImpl().setTelemetry(null);
+    }
+
     public class AbstractFeatureDescriptorImpl extends AbstractFeatureDescriptor {
 
         @Override
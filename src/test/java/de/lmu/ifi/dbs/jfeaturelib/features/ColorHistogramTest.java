@@ -11,6 +11,9 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import ij.process.ByteProcessor;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -87,4 +90,31 @@ public class ColorHistogramTest {
         assertEquals(1, features.get(0)[4], 0.001);
         assertEquals(1, Arrays2.sum(features.get(0)), 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPalette() {
+        Random random = new Random(3);
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        random.nextBytes(r);
+        random.nextBytes(g);
+        random.nextBytes(b);
+        ByteProcessor indexed = new ByteProcessor(9, 7);
+        indexed.setColorModel(new IndexColorModel(8, 256, r, g, b));
+        ColorProcessor rgb = new ColorProcessor(9, 7);
+        for (int i = 0; i < indexed.getPixelCount(); i++) {
+            int index = random.nextInt(256);
+            indexed.set(i, index);
+            rgb.set(i, (r[index] & 0xff) << 16 | (g[index] & 0xff) << 8 | (b[index] & 0xff));
+        }
+
+        for (TYPE type : TYPE.values()) {
+            ColorHistogram expected = new ColorHistogram();
+            expected.setType(type);
+            expected.run(rgb);
+            ColorHistogram actual = new ColorHistogram();
+            actual.setType(type);
+            actual.run(indexed);
+            assertArrayEquals(type.toString(), expected.getFeatures().get(0), actual.getFeatures().get(0), 1e-12);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import ij.gui.Roi;
 import ij.process.ByteProcessor;
 import java.awt.Color;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -113,6 +115,101 @@ public class HaralickTest {
         }
     }
 
+    @Test
+    public void testMatrixAngles() {
+        ByteProcessor ip = new ByteProcessor(3, 2, new byte[]{
+            0, 1, 2, //
+            1, 2, 0});
+
+        Haralick.Coocurrence cm = new Haralick.Coocurrence(ip, 3, 1);
+        cm.GRAY_RANGES = 3;
+        cm.calculate();
+
+        // 0 degree: (1,0) (2,1) (2,1) (0,2)
+        double[][] m = cm.getCooccurrenceMatrix(0, 0);
+        assertEquals(1, m[0][1], 0.00001);
+        assertEquals(1, m[1][0], 0.00001);
+        assertEquals(2, m[1][2], 0.00001);
+        assertEquals(1, m[0][2], 0.00001);
+        assertEquals(0, m[0][0], 0.00001);
+
+        // 90 degree: (1,0) (2,1) (0,2)
+        m = cm.getCooccurrenceMatrix(0, 2);
+        assertEquals(1, m[1][0], 0.00001);
+        assertEquals(1, m[2][1], 0.00001);
+        assertEquals(1, m[2][0], 0.00001);
+        assertEquals(0, m[1][1], 0.00001);
+    }
+
+    @Test
+    public void testMultipleDistances() {
+        ByteProcessor ip = new ByteProcessor(16, 16);
+        for (int i = 0; i < 16 * 16; i++) {
+            ip.set(i, (i * 37) & 0xff);
+        }
+        Haralick single1 = new Haralick(1);
+        single1.run(ip);
+        Haralick single3 = new Haralick(3);
+        single3.run(ip);
+        Haralick multi = new Haralick(new int[]{1, 3}, 32);
+        multi.run(ip);
+
+        double[] features = multi.getFeatures().get(0);
+        assertEquals(2 * Haralick.NUM_FEATURES, features.length);
+        assertArrayEquals(single1.getFeatures().get(0), Arrays.copyOfRange(features, 0, Haralick.NUM_FEATURES), 0);
+        assertArrayEquals(single3.getFeatures().get(0),
+                Arrays.copyOfRange(features, Haralick.NUM_FEATURES, 2 * Haralick.NUM_FEATURES), 0);
+    }
+
+    @Test
+    public void testConfig4() throws IOException {
+        // own instance, the singleton is shared with the other tests
+        LibProperties prop = new LibProperties();
+        prop.setProperty(LibProperties.HARALICK_DISTANCE, "1, 2,4");
+        prop.setProperty(LibProperties.HARALICK_GRAY_VALUES, 64);
+
+        Haralick haralick = new Haralick();
+        haralick.setProperties(prop);
+        assertArrayEquals(new int[]{1, 2, 4}, haralick.getHaralickDists());
+        assertEquals(64, haralick.getNumGrayValues());
+    }
+
+    @Test
+    public void testFeatureSelection() {
+        ByteProcessor ip = new ByteProcessor(16, 16);
+        for (int i = 0; i < 16 * 16; i++) {
+            ip.set(i, (i * 37) & 0xff);
+        }
+        Haralick all = new Haralick(new int[]{1, 2}, 32);
+        all.run(ip);
+        double[] expected = all.getFeatures().get(0);
+
+        Haralick subset = new Haralick(new int[]{1, 2}, 32);
+        subset.setFeatureSelection(EnumSet.of(Haralick.Feature.CONTRAST,
+                Haralick.Feature.ENTROPY,
+                Haralick.Feature.INFORMATION_MEASURE_OF_CORRELATION_2));
+        subset.run(ip);
+        double[] features = subset.getFeatures().get(0);
+
+        assertEquals(6, features.length);
+        assertEquals(expected[1], features[0], 0);
+        assertEquals(expected[8], features[1], 0);
+        assertEquals(expected[12], features[2], 0);
+        assertEquals(expected[Haralick.NUM_FEATURES + 1], features[3], 0);
+        assertEquals(expected[Haralick.NUM_FEATURES + 8], features[4], 0);
+        assertEquals(expected[Haralick.NUM_FEATURES + 12], features[5], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySelection() {
+        new Haralick().setFeatureSelection(EnumSet.noneOf(Haralick.Feature.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfig5() {
+        new Haralick().setNumGrayValues(4);
+    }
+
     // travisCI just does not like this test
 //    @Test
 //    public void haralick() throws IOException, URISyntaxException {
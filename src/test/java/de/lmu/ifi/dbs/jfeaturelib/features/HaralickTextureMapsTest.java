@@ -0,0 +1,103 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.features;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import java.util.EnumSet;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HaralickTextureMapsTest {
+
+    private ByteProcessor createImage(int width, int height) {
+        Random random = new Random(7);
+        ByteProcessor ip = new ByteProcessor(width, height);
+        for (int i = 0; i < width * height; i++) {
+            ip.set(i, ((i % width) * 9 + random.nextInt(80)) & 0xff);
+        }
+        return ip;
+    }
+
+    /**
+     * Each map value must equal the haralick features of the cropped window.
+     */
+    @Test
+    public void testEqualsCroppedWindows() {
+        ByteProcessor ip = createImage(13, 11);
+        Haralick haralick = new Haralick(new int[]{1, 2}, 16);
+        haralick.setFeatureSelection(EnumSet.of(Haralick.Feature.CONTRAST,
+                Haralick.Feature.ENTROPY,
+                Haralick.Feature.SUM_VARIANCE));
+
+        HaralickTextureMaps textureMaps = new HaralickTextureMaps(haralick, 5);
+        textureMaps.setParallelism(3);
+        FloatProcessor[] maps = textureMaps.compute(ip);
+        assertEquals(6, maps.length);
+
+        for (int y = 0; y < ip.getHeight(); y++) {
+            for (int x = 0; x < ip.getWidth(); x++) {
+                int left = Math.max(0, x - 2);
+                int top = Math.max(0, y - 2);
+                int right = Math.min(ip.getWidth() - 1, x + 2);
+                int bottom = Math.min(ip.getHeight() - 1, y + 2);
+                ip.setRoi(left, top, right - left + 1, bottom - top + 1);
+                Haralick expected = new Haralick(new int[]{1, 2}, 16);
+                expected.setFeatureSelection(haralick.getFeatureSelection());
+                expected.run(ip.crop());
+
+                double[] features = expected.getFeatures().get(0);
+                for (int i = 0; i < maps.length; i++) {
+                    assertEquals(x + "," + y + " map " + i, (float) features[i], maps[i].getf(x, y), 1E-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStride() {
+        ByteProcessor ip = createImage(20, 15);
+        Haralick haralick = new Haralick();
+        haralick.setFeatureSelection(EnumSet.of(Haralick.Feature.ANGULAR_SECOND_MOMENT));
+
+        HaralickTextureMaps textureMaps = new HaralickTextureMaps(haralick, 7);
+        FloatProcessor dense = textureMaps.compute(ip)[0];
+        textureMaps.setStride(4);
+        FloatProcessor sparse = textureMaps.compute(ip)[0];
+
+        assertEquals(5, sparse.getWidth());
+        assertEquals(4, sparse.getHeight());
+        for (int y = 0; y < sparse.getHeight(); y++) {
+            for (int x = 0; x < sparse.getWidth(); x++) {
+                assertEquals(dense.getf(4 * x, 4 * y), sparse.getf(x, y), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvenWindow() {
+        new HaralickTextureMaps(new Haralick(), 4);
+    }
+}
@@ -12,10 +12,13 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import java.awt.image.IndexColorModel;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -223,4 +226,136 @@ public class HistogramTest {
         exp = new double[]{7d};
         assertArrayEquals(exp, h.scale(in, 1), 0.0001);
     }
+
+    @Test
+    public void testBundle() {
+        ColorProcessor cp = new ColorProcessor(20, 10);
+        Random random = new Random(7);
+        for (int i = 0; i < cp.getPixelCount(); i++) {
+            cp.set(i, random.nextInt(1 << 24));
+        }
+        Histogram.TYPE[] types = Histogram.TYPE.values();
+
+        Histogram bundle = new Histogram();
+        bundle.setTypes(types);
+        bundle.bins = 64;
+        bundle.run(cp);
+        List<double[]> features = bundle.getFeatures();
+        assertEquals(1, features.size());
+
+        bundle = new Histogram();
+        bundle.setTypes(types);
+        bundle.setSeparateVectors(true);
+        bundle.bins = 64;
+        bundle.run(cp);
+        List<double[]> separate = bundle.getFeatures();
+        assertEquals(types.length, separate.size());
+
+        int offset = 0;
+        for (int t = 0; t < types.length; t++) {
+            Histogram single = new Histogram();
+            single.setType(types[t]);
+            single.bins = 64;
+            single.run(cp);
+            double[] expected = single.getFeatures().get(0);
+            assertArrayEquals(types[t].toString(), expected, separate.get(t), 0);
+            assertArrayEquals(types[t].toString(), expected,
+                    Arrays.copyOfRange(features.get(0), offset, offset + expected.length), 0);
+            offset += expected.length;
+        }
+        assertEquals(offset, features.get(0).length);
+    }
+
+    @Test
+    public void testBundleWithMask() {
+        ColorProcessor cp = new ColorProcessor(10, 10);
+        ByteProcessor mask = new ByteProcessor(10, 10);
+        for (int i = 0; i < 10; i++) {
+            cp.set(i, 0, 0xff0000);
+            mask.set(0, i, 255);
+        }
+        cp.setMask(mask);
+
+        Histogram histogram = new Histogram();
+        histogram.setTypes(Histogram.TYPE.Red, Histogram.TYPE.Brightness);
+        histogram.bins = 2;
+        histogram.run(cp);
+        assertArrayEquals(new double[]{9, 1, 9, 1}, histogram.getFeatures().get(0), 0);
+    }
+
+    @Test
+    public void testGrayWithMask() {
+        ColorProcessor cp = new ColorProcessor(10, 10);
+        ByteProcessor mask = new ByteProcessor(10, 10);
+        for (int i = 0; i < 10; i++) {
+            cp.set(i, 0, 0xffffff);
+            mask.set(0, i, 255);
+        }
+        cp.setMask(mask);
+
+        Histogram bundle = new Histogram();
+        bundle.setTypes(Histogram.TYPE.Gray, Histogram.TYPE.Red);
+        bundle.setSeparateVectors(true);
+        bundle.bins = 2;
+        bundle.run(cp);
+
+        Histogram single = new Histogram();
+        single.setType(Histogram.TYPE.Gray);
+        single.bins = 2;
+        single.run(cp);
+
+        assertArrayEquals(new double[]{9, 1}, single.getFeatures().get(0), 0);
+        assertArrayEquals(single.getFeatures().get(0), bundle.getFeatures().get(0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBundleDuplicateType() {
+        new Histogram().setTypes(Histogram.TYPE.Red, Histogram.TYPE.Red);
+    }
+
+    @Test
+    public void testPalette() {
+        Random random = new Random(5);
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        random.nextBytes(r);
+        random.nextBytes(g);
+        random.nextBytes(b);
+        ByteProcessor indexed = new ByteProcessor(12, 8);
+        indexed.setColorModel(new IndexColorModel(8, 256, r, g, b));
+        ColorProcessor rgb = new ColorProcessor(12, 8);
+        for (int i = 0; i < indexed.getPixelCount(); i++) {
+            int index = random.nextInt(256);
+            indexed.set(i, index);
+            rgb.set(i, (r[index] & 0xff) << 16 | (g[index] & 0xff) << 8 | (b[index] & 0xff));
+        }
+        Histogram.TYPE[] types = {Histogram.TYPE.HSB, Histogram.TYPE.Hue,
+            Histogram.TYPE.Saturation, Histogram.TYPE.Brightness};
+
+        for (Histogram.TYPE type : types) {
+            Histogram expected = new Histogram();
+            expected.bins = 256;
+            expected.setType(type);
+            expected.run(rgb);
+            Histogram actual = new Histogram();
+            actual.bins = 256;
+            actual.setType(type);
+            actual.run(indexed);
+            assertArrayEquals(type.toString(), expected.getFeatures().get(0), actual.getFeatures().get(0), 0);
+        }
+
+        Histogram expected = new Histogram();
+        expected.bins = 256;
+        expected.setTypes(types);
+        expected.run(rgb);
+        Histogram actual = new Histogram();
+        actual.bins = 256;
+        actual.setTypes(types);
+        actual.run(indexed);
+        assertArrayEquals(expected.getFeatures().get(0), actual.getFeatures().get(0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoBins() {
+        new Histogram().run(new ByteProcessor(2, 2));
+    }
 }
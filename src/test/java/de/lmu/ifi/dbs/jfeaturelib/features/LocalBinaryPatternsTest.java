@@ -23,10 +23,15 @@
  */
 package de.lmu.ifi.dbs.jfeaturelib.features;
 
+import de.lmu.ifi.dbs.jfeaturelib.ImagePoint;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
+import de.lmu.ifi.dbs.jfeaturelib.utils.Histogram;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import javax.imageio.ImageIO;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -72,6 +77,199 @@ public class LocalBinaryPatternsTest {
         assertNotNull(lbp.getFeatures());
     }
 
+    /**
+     * The sliding window histograms must equal the histograms of the
+     * patterns of each neighborhood.
+     */
+    @Test
+    public void testHistogramsMatchPatterns() {
+        Random random = new Random(11);
+        ByteProcessor ip = new ByteProcessor(17, 13);
+        for (int i = 0; i < 17 * 13; i++) {
+            ip.set(i, random.nextInt(4) * 50);
+        }
+        m_lbp.setNumPoints(8);
+        m_lbp.setRadius(1.5);
+        m_lbp.setNeighborhoodSize(2);
+        m_lbp.setConstant(0);
+        m_lbp.setNumberOfHistogramBins(16);
+        m_lbp.setParallelism(3);
+        m_lbp.run(ip);
+        List<double[]> features = m_lbp.getFeatures();
+        assertEquals(17 * 13, features.size());
+
+        LocalBinaryPatterns reference = new LocalBinaryPatterns();
+        reference.setNumPoints(8);
+        reference.setRadius(1.5);
+        reference.setImageProcessor(ip);
+        for (double[] feature : features) {
+            int x = (int) feature[0];
+            int y = (int) feature[1];
+            Histogram hist = new Histogram(16, 256);
+            for (int yi = Math.max(0, y - 2); yi < Math.min(13, y + 3); yi++) {
+                for (int xi = Math.max(0, x - 2); xi < Math.min(17, x + 3); xi++) {
+                    hist.add(reference.getBinaryPattern(xi, yi));
+                }
+            }
+            assertArrayEquals(x + "," + y, hist.getHistogramm(), Arrays.copyOfRange(feature, 2, feature.length), 0);
+        }
+    }
+
+    @Test
+    public void testMappingTables() {
+        int[] uniform = LocalBinaryPatterns.createTable(LocalBinaryPatterns.Mapping.UNIFORM, 8);
+        int[] ri = LocalBinaryPatterns.createTable(LocalBinaryPatterns.Mapping.ROTATION_INVARIANT, 8);
+        int[] riu2 = LocalBinaryPatterns.createTable(LocalBinaryPatterns.Mapping.ROTATION_INVARIANT_UNIFORM, 8);
+        assertEquals(59, uniform[256]);
+        assertEquals(36, ri[256]);
+        assertEquals(10, riu2[256]);
+
+        boolean[] used = new boolean[59];
+        for (int pattern = 0; pattern < 256; pattern++) {
+            int rotated = ((pattern >>> 1) | (pattern << 7)) & 0xff;
+            assertEquals(ri[pattern], ri[rotated]);
+            assertEquals(riu2[pattern], riu2[rotated]);
+
+            int transitions = Integer.bitCount(pattern ^ rotated);
+            if (transitions <= 2) {
+                assertFalse("bin used twice: " + pattern, used[uniform[pattern]]);
+                used[uniform[pattern]] = true;
+                assertEquals(Integer.bitCount(pattern), riu2[pattern]);
+            } else {
+                assertEquals(58, uniform[pattern]);
+                assertEquals(9, riu2[pattern]);
+            }
+        }
+        assertEquals(0, uniform[0]);
+        assertEquals(1, uniform[255]);
+    }
+
+    @Test
+    public void testMappedHistograms() {
+        Random random = new Random(13);
+        ByteProcessor ip = new ByteProcessor(12, 9);
+        for (int i = 0; i < 12 * 9; i++) {
+            ip.set(i, random.nextInt(256));
+        }
+        m_lbp.setNumPoints(8);
+        m_lbp.setRadius(1);
+        m_lbp.setNeighborhoodSize(1);
+        m_lbp.setConstant(0);
+        m_lbp.setNumberOfHistogramBins(64);
+        m_lbp.setMapping(LocalBinaryPatterns.Mapping.ROTATION_INVARIANT_UNIFORM);
+        m_lbp.run(ip);
+
+        int[] table = LocalBinaryPatterns.createTable(LocalBinaryPatterns.Mapping.ROTATION_INVARIANT_UNIFORM, 8);
+        LocalBinaryPatterns reference = new LocalBinaryPatterns();
+        reference.setNumPoints(8);
+        reference.setRadius(1);
+        reference.setImageProcessor(ip);
+        for (double[] feature : m_lbp.getFeatures()) {
+            assertEquals(2 + 10, feature.length);
+            int x = (int) feature[0];
+            int y = (int) feature[1];
+            double[] expected = new double[10];
+            for (int yi = Math.max(0, y - 1); yi < Math.min(9, y + 2); yi++) {
+                for (int xi = Math.max(0, x - 1); xi < Math.min(12, x + 2); xi++) {
+                    expected[table[reference.getBinaryPattern(xi, yi)]]++;
+                }
+            }
+            assertArrayEquals(x + "," + y, expected, Arrays.copyOfRange(feature, 2, feature.length), 0);
+        }
+    }
+
+    @Test
+    public void testUniformWithoutTable() {
+        m_lbp.setNumPoints(24);
+        m_lbp.setMapping(LocalBinaryPatterns.Mapping.UNIFORM);
+        assertEquals(24 * 23 + 3, m_lbp.getNumberOfBins());
+        assertEquals(0, LocalBinaryPatterns.map(LocalBinaryPatterns.Mapping.UNIFORM, 0, 24));
+        assertEquals(1, LocalBinaryPatterns.map(LocalBinaryPatterns.Mapping.UNIFORM, (1 << 24) - 1, 24));
+        assertEquals(24 * 23 + 2, LocalBinaryPatterns.map(LocalBinaryPatterns.Mapping.UNIFORM, 0b101, 24));
+        assertEquals(2 + 24 + 5, LocalBinaryPatterns.map(LocalBinaryPatterns.Mapping.UNIFORM, 0b1100000, 24));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRotationInvariantTooManyPoints() {
+        m_lbp.setNumPoints(20);
+        m_lbp.setMapping(LocalBinaryPatterns.Mapping.ROTATION_INVARIANT);
+        m_lbp.getNumberOfBins();
+    }
+
+    private ByteProcessor randomImage(int width, int height) {
+        Random random = new Random(17);
+        ByteProcessor ip = new ByteProcessor(width, height);
+        for (int i = 0; i < width * height; i++) {
+            ip.set(i, random.nextInt(256));
+        }
+        return ip;
+    }
+
+    private LocalBinaryPatterns configure(LocalBinaryPatterns lbp) {
+        lbp.setNumPoints(8);
+        lbp.setRadius(1);
+        lbp.setNeighborhoodSize(2);
+        lbp.setConstant(0);
+        lbp.setNumberOfHistogramBins(32);
+        return lbp;
+    }
+
+    @Test
+    public void testGridAndPoints() {
+        ByteProcessor ip = randomImage(15, 11);
+        LocalBinaryPatterns dense = configure(new LocalBinaryPatterns());
+        dense.run(ip);
+        List<double[]> all = dense.getFeatures();
+
+        LocalBinaryPatterns grid = configure(new LocalBinaryPatterns());
+        grid.setStride(4);
+        grid.run(ip);
+        List<double[]> sampled = grid.getFeatures();
+        assertEquals(4 * 3, sampled.size());
+        for (double[] feature : sampled) {
+            int x = (int) feature[0];
+            int y = (int) feature[1];
+            assertEquals(0, x % 4);
+            assertEquals(0, y % 4);
+            assertArrayEquals(all.get(y * 15 + x), feature, 0);
+        }
+
+        LocalBinaryPatterns points = configure(new LocalBinaryPatterns());
+        points.setSamplePoints(Arrays.asList(new ImagePoint(3.2, 7.9), new ImagePoint(14, 0), new ImagePoint(20, 3)));
+        points.run(ip);
+        sampled = points.getFeatures();
+        assertEquals(2, sampled.size());
+        assertArrayEquals(all.get(8 * 15 + 3), sampled.get(0), 0);
+        assertArrayEquals(all.get(14), sampled.get(1), 0);
+    }
+
+    @Test
+    public void testPyramid() {
+        ByteProcessor ip = randomImage(15, 11);
+        LocalBinaryPatterns lbp = configure(new LocalBinaryPatterns());
+        lbp.setMapping(LocalBinaryPatterns.Mapping.UNIFORM);
+        lbp.setPyramidLevels(3);
+        lbp.run(ip);
+        assertEquals(1, lbp.getFeatures().size());
+        double[] pyramid = lbp.getFeatures().get(0);
+        assertEquals((1 + 4 + 16) * 59, pyramid.length);
+
+        // every level counts every pixel once, the cells of level 1 sum up to level 0
+        double[] level0 = Arrays.copyOfRange(pyramid, 0, 59);
+        double[] level1 = new double[59];
+        for (int cell = 0; cell < 4; cell++) {
+            for (int b = 0; b < 59; b++) {
+                level1[b] += pyramid[59 + cell * 59 + b];
+            }
+        }
+        assertArrayEquals(level0, level1, 0);
+        double sum = 0;
+        for (double v : level0) {
+            sum += v;
+        }
+        assertEquals(15 * 11, sum, 0);
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void smallRadiuslargeNeighboursTooLarge() throws Exception {
         new LocalBinaryPatterns().setNumPoints(31);
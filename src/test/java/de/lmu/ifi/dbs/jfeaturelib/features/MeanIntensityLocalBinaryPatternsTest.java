@@ -26,7 +26,9 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 import de.lmu.ifi.dbs.jfeaturelib.features.MeanIntensityLocalBinaryPatterns;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.process.ByteProcessor;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -108,4 +110,77 @@ public class MeanIntensityLocalBinaryPatternsTest {
         assertEquals(6.0, Arrays2.sum(hist), 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPyramid() {
+        m_lbp.setPyramidLevels(2);
+        m_lbp.run(
+            new ByteProcessor(MeanPatchIntensityHistogramTest.WIDTH_3,
+                MeanPatchIntensityHistogramTest.HEIGHT_3,
+                MeanPatchIntensityHistogramTest.IMAGE_3));
+        double[] pyramid = m_lbp.getFeatures().get(0);
+
+        assertEquals(5 * 256, pyramid.length);
+        assertEquals(2.0, pyramid[128], 0);
+        assertEquals(12.0, Arrays2.sum(pyramid), 0);
+        double[] level1 = new double[256];
+        for (int i = 256; i < pyramid.length; i++) {
+            level1[i % 256] += pyramid[i];
+        }
+        assertEquals(1.0, level1[54], 0);
+        assertEquals(2.0, level1[128], 0);
+    }
+
+    @Test
+    public void testStride() {
+        m_lbp.setStride(2);
+        m_lbp.run(
+            new ByteProcessor(MeanPatchIntensityHistogramTest.WIDTH_3,
+                MeanPatchIntensityHistogramTest.HEIGHT_3,
+                MeanPatchIntensityHistogramTest.IMAGE_3));
+        double[] hist = m_lbp.getFeatures().get(0);
+
+        // only (2,2) and (4,2)
+        assertEquals(1.0, hist[54], 0);
+        assertEquals(1.0, hist[97], 0);
+        assertEquals(2.0, Arrays2.sum(hist), 0);
+    }
+
+    @Test
+    public void testMask() {
+        ByteProcessor ip = new ByteProcessor(MeanPatchIntensityHistogramTest.WIDTH_3,
+                MeanPatchIntensityHistogramTest.HEIGHT_3,
+                MeanPatchIntensityHistogramTest.IMAGE_3);
+        m_lbp.createPatchDescriptor(ip);
+        int expected = m_lbp.getBinaryPattern(3, 3) & 0xFF;
+
+        ByteProcessor mask = new ByteProcessor(ip.getWidth(), ip.getHeight());
+        mask.set(3, 3, 255);
+        ip.setMask(mask);
+        m_lbp.run(ip);
+        double[] hist = m_lbp.getFeatures().get(0);
+
+        assertEquals(1.0, hist[expected], 0);
+        assertEquals(1.0, Arrays2.sum(hist), 0);
+    }
+
+    @Test
+    public void testMultipleSizes() {
+        ByteProcessor ip = new ByteProcessor(20, 15);
+        Random random = new Random(3);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, random.nextInt(256));
+        }
+        m_lbp.run(ip);
+        double[] single = m_lbp.getFeatures().get(0);
+
+        MeanIntensityLocalBinaryPatterns multi = new MeanIntensityLocalBinaryPatterns();
+        multi.setSizes(1, 2);
+        multi.setParallelism(3);
+        multi.run(ip);
+        double[] hist = multi.getFeatures().get(0);
+
+        assertEquals(512, hist.length);
+        assertArrayEquals(single, Arrays.copyOf(hist, 256), 0);
+        assertEquals(12 * 7, Arrays2.sum(Arrays.copyOfRange(hist, 256, 512)), 0);
+    }
+}
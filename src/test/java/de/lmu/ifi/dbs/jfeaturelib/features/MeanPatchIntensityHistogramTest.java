@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.jfeaturelib.features.MeanPatchIntensityHistogram;
+import de.lmu.ifi.dbs.jfeaturelib.utils.LabelImage;
 import de.lmu.ifi.dbs.utilities.Arrays2;
 import ij.ImagePlus;
 import ij.io.Opener;
@@ -238,6 +239,34 @@ public class MeanPatchIntensityHistogramTest {
         assertEquals(1.0, Arrays2.sum(hist), 0);
     }
 
+    @Test
+    public void testLabelsColorImage() {
+        ByteProcessor gray = new ByteProcessor(WIDTH_3, HEIGHT_3, IMAGE_3);
+        ColorProcessor color = new ColorProcessor(WIDTH_3, HEIGHT_3);
+        ByteProcessor labels = new ByteProcessor(WIDTH_3, HEIGHT_3);
+        for (int i = 0; i < WIDTH_3 * HEIGHT_3; i++) {
+            int v = IMAGE_3[i] & 0xff;
+            color.set(i, (v << 16) | (v << 8) | v);
+            labels.set(i, i % WIDTH_3 < 3 ? 1 : 2);
+        }
+        m_descriptor.setSize(1);
+        m_descriptor.run(gray, new LabelImage(labels));
+        List<double[]> expected = m_descriptor.getFeatures();
+
+        MeanPatchIntensityHistogram descriptor = new MeanPatchIntensityHistogram();
+        descriptor.setNumberOfBins(256);
+        descriptor.setHistogramRange(0, 256);
+        descriptor.setSize(1);
+        descriptor.run(color, new LabelImage(labels));
+        List<double[]> features = descriptor.getFeatures();
+
+        assertEquals(2, expected.size());
+        assertEquals(2, features.size());
+        for (int k = 0; k < 2; k++) {
+            assertArrayEquals(expected.get(k), features.get(k), 0);
+        }
+    }
+
     @Test
     public void testFeatures4() {
         // default values
@@ -258,4 +287,19 @@ public class MeanPatchIntensityHistogramTest {
         assertEquals(10, m_descriptor.m_histMin, 0);
         assertEquals(249, m_descriptor.m_histMax, 0);
     }
+
+    @Test
+    public void testMultipleSizes() {
+        m_descriptor.setSizes(1, 2);
+        m_descriptor.setParallelism(2);
+        m_descriptor.run(new ByteProcessor(WIDTH_2, HEIGHT_2, IMAGE_2));
+        double[] hist = m_descriptor.getFeatures().get(0);
+
+        assertEquals(512, hist.length);
+        assertEquals(1.0, hist[91], 0);
+        assertEquals(1.0, hist[138], 0);
+        assertEquals(1.0, hist[256 + 100], 0);
+        assertEquals(10.0, Arrays2.sum(hist), 0);
+        assertEquals(1, m_descriptor.getSize());
+    }
 }
@@ -2,6 +2,7 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 
 import de.lmu.ifi.dbs.jfeaturelib.features.PHOG;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Color;
@@ -9,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Random;
 import javax.imageio.ImageIO;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -81,4 +83,56 @@ public class PhogTest {
         assertFalse(0 == src.get(0));
         assertFalse(ip.get(0) == src.get(0));
     }
+
+    @Test
+    public void testPyramid() {
+        ByteProcessor ip = new ByteProcessor(37, 29);
+        Random random = new Random(1);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, random.nextInt(256));
+        }
+        PHOG phog = new PHOG();
+        phog.useCanny = false;
+        phog.setBins(4);
+        phog.setRecursions(2);
+        phog.run(ip);
+        double[] feature = phog.getFeatures().get(0);
+
+        // 1 + 4 + 16 histograms, each quadrant followed by its sub quadrants
+        assertEquals(4 * 21, feature.length);
+        for (int parent : new int[]{0, 4, 24, 44, 64}) {
+            int child = parent == 0 ? 4 : parent + 4;
+            int stride = parent == 0 ? 20 : 4;
+            for (int b = 0; b < 4; b++) {
+                double sum = feature[child + b] + feature[child + stride + b]
+                        + feature[child + 2 * stride + b] + feature[child + 3 * stride + b];
+                assertEquals(feature[parent + b], sum, 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testQuadrants() {
+        // only the bottom right quadrant contains gradients
+        ByteProcessor ip = new ByteProcessor(40, 40);
+        for (int y = 25; y < 35; y++) {
+            for (int x = 25; x < 35; x++) {
+                ip.set(x, y, 255);
+            }
+        }
+        PHOG phog = new PHOG();
+        phog.useCanny = false;
+        phog.setBins(4);
+        phog.setRecursions(1);
+        phog.run(ip);
+        double[] feature = phog.getFeatures().get(0);
+
+        assertEquals(20, feature.length);
+        for (int i = 4; i < 16; i++) {
+            assertEquals(0, feature[i], 0);
+        }
+        for (int b = 0; b < 4; b++) {
+            assertEquals(feature[b], feature[16 + b], 1e-9);
+        }
+    }
 }
@@ -3,10 +3,14 @@ package de.lmu.ifi.dbs.jfeaturelib.features;
 import com.google.common.base.Preconditions;
 import de.lmu.ifi.dbs.jfeaturelib.LibProperties;
 import de.lmu.ifi.dbs.utilities.Arrays2;
+import java.awt.Color;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import java.io.IOException;
 import java.util.List;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -114,4 +118,84 @@ public class ReferenceColorSimilarityTest {
         assertFalse(features.isEmpty());
         assertEquals("NaN found in Descriptor", -1, Arrays2.findNaN(features.get(0)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReferenceColor() {
+        ImageProcessor ip = new ColorProcessor(4, 3);
+        ip.setColor(Color.red);
+        ip.fill();
+        ReferenceColorSimilarity instance = new ReferenceColorSimilarity(new int[]{0xff0000, 0x0000ff});
+        instance.run(ip);
+        double[] features = instance.getFeatures().get(0);
+
+        assertEquals(1, features[0], 1e-7);
+        assertTrue(features[1] < 1);
+    }
+
+    @Test
+    public void testMixedColors() {
+        int[] colors = {0xff0000, 0x0000ff};
+        ImageProcessor red = new ColorProcessor(4, 3);
+        red.setColor(Color.red);
+        red.fill();
+        ReferenceColorSimilarity instance = new ReferenceColorSimilarity(colors);
+        instance.run(red);
+        // similarity of red and blue
+        double similarity = instance.getFeatures().get(0)[1];
+
+        ImageProcessor ip = new ColorProcessor(4, 3);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, i < 3 ? 0xff0000 : 0x0000ff);
+        }
+        instance = new ReferenceColorSimilarity(colors);
+        instance.run(ip);
+        double[] features = instance.getFeatures().get(0);
+
+        assertEquals((3 + 9 * similarity) / 12, features[0], 1e-7);
+        assertEquals((3 * similarity + 9) / 12, features[1], 1e-7);
+    }
+
+    @Test
+    public void testMask() {
+        ImageProcessor ip = new ColorProcessor(4, 3);
+        ByteProcessor mask = new ByteProcessor(4, 3);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, i % 2 == 0 ? 0xff0000 : 0x00ff00);
+            mask.set(i, i % 2 == 0 ? 255 : 0);
+        }
+        ip.setMask(mask);
+        ReferenceColorSimilarity instance = new ReferenceColorSimilarity(new int[]{0xff0000, 0x00ff00});
+        instance.run(ip);
+        double[] features = instance.getFeatures().get(0);
+
+        assertEquals(1, features[0], 1e-7);
+        assertTrue(features[1] < 1);
+    }
+
+    @Test
+    public void testPalette() {
+        Random random = new Random(11);
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        random.nextBytes(r);
+        random.nextBytes(g);
+        random.nextBytes(b);
+        ByteProcessor indexed = new ByteProcessor(6, 5);
+        indexed.setColorModel(new IndexColorModel(8, 256, r, g, b));
+        ColorProcessor rgb = new ColorProcessor(6, 5);
+        ByteProcessor mask = new ByteProcessor(6, 5);
+        for (int i = 0; i < indexed.getPixelCount(); i++) {
+            int index = random.nextInt(256);
+            indexed.set(i, index);
+            rgb.set(i, (r[index] & 0xff) << 16 | (g[index] & 0xff) << 8 | (b[index] & 0xff));
+            mask.set(i, i % 3 == 0 ? 0 : 255);
+        }
+        indexed.setMask(mask);
+        rgb.setMask(mask);
+
+        ReferenceColorSimilarity expected = new ReferenceColorSimilarity();
+        expected.run(rgb);
+        ReferenceColorSimilarity actual = new ReferenceColorSimilarity();
+        actual.run(indexed);
+        assertArrayEquals(expected.getFeatures().get(0), actual.getFeatures().get(0), 1e-12);
+    }
+}
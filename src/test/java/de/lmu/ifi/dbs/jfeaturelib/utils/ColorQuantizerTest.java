@@ -0,0 +1,130 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.awt.Color;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ColorQuantizerTest {
+
+    @Test
+    public void testHsbEqualsConversion() {
+        int[][] bins = {{7, 3, 3}, {16, 4, 4}, {256, 2, 2}, {1, 1, 1}};
+        float[] hsb = new float[3];
+        for (int[] b : bins) {
+            ColorQuantizer quantizer = ColorQuantizer.hsb(b[0], b[1], b[2]);
+            assertEquals(b[0] * b[1] * b[2], quantizer.getBinCount());
+            // every color twice to hit the filled table
+            for (int pass = 0; pass < 2; pass++) {
+                for (int rgb = 0; rgb < 1 << 24; rgb += 97) {
+                    Color.RGBtoHSB(rgb >> 16 & 0xff, rgb >> 8 & 0xff, rgb & 0xff, hsb);
+                    int h = Math.min((int) Math.floor(b[0] * hsb[0]), b[0] - 1);
+                    int s = Math.min((int) Math.floor(b[1] * hsb[1]), b[1] - 1);
+                    int v = Math.min((int) Math.floor(b[2] * hsb[2]), b[2] - 1);
+                    assertEquals(h * b[1] * b[2] + s * b[2] + v, quantizer.getBin(rgb | 0xff000000));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRgb() {
+        ColorQuantizer quantizer = ColorQuantizer.rgb(4, 2, 3);
+        assertEquals(24, quantizer.getBinCount());
+        assertEquals(0, quantizer.getBin(0x000000));
+        assertEquals(23, quantizer.getBin(0xffffff));
+        assertEquals(3 * 6, quantizer.getBin(0xff0000));
+        assertEquals(3, quantizer.getBin(0x00ff00));
+        assertEquals(2, quantizer.getBin(0x0000ff));
+    }
+
+    @Test
+    public void testReducedKey() {
+        ColorQuantizer exact = ColorQuantizer.hsb(7, 3, 3);
+        for (int bits = 5; bits <= 6; bits++) {
+            ColorQuantizer reduced = ColorQuantizer.get(ColorQuantizer.Space.HSB, 7, 3, 3, bits);
+            assertNotSame(exact, reduced);
+            // colors with replicated bits are represented exactly
+            int max = (1 << bits) - 1;
+            for (int k = 0; k <= max; k++) {
+                int rgb = expand(k, bits) << 16 | expand(max - k, bits) << 8 | expand(k / 2, bits);
+                assertEquals(exact.getBin(rgb), reduced.getBin(rgb));
+            }
+            Random random = new Random(1);
+            for (int i = 0; i < 10000; i++) {
+                int bin = reduced.getBin(random.nextInt());
+                assertTrue(bin >= 0 && bin < 63);
+            }
+        }
+    }
+
+    private static int expand(int k, int bits) {
+        return k << (8 - bits) | k >> (2 * bits - 8);
+    }
+
+    @Test
+    public void testGetHSB() {
+        Random random = new Random(2);
+        int[] pixels = new int[20000];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        pixels[0] = 0xffffff;
+        pixels[1] = 0;
+        byte[] h = new byte[pixels.length];
+        byte[] s = new byte[pixels.length];
+        byte[] b = new byte[pixels.length];
+        ColorQuantizer.getHSB(pixels, h, s, b);
+        byte[] hue = new byte[pixels.length];
+        ColorQuantizer.getHSB(pixels, hue, null, null);
+
+        float[] hsb = new float[3];
+        for (int i = 0; i < pixels.length; i++) {
+            int c = pixels[i];
+            Color.RGBtoHSB(c >> 16 & 0xff, c >> 8 & 0xff, c & 0xff, hsb);
+            assertEquals((byte) ((int) (hsb[0] * 255.0)), h[i]);
+            assertEquals((byte) ((int) (hsb[1] * 255.0)), s[i]);
+            assertEquals((byte) ((int) (hsb[2] * 255.0)), b[i]);
+            assertEquals(h[i], hue[i]);
+        }
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(ColorQuantizer.hsb(7, 3, 3), ColorQuantizer.hsb(7, 3, 3));
+        assertSame(ColorQuantizer.rgb(4, 4, 4), ColorQuantizer.get(ColorQuantizer.Space.RGB, 4, 4, 4, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKeyBits() {
+        ColorQuantizer.get(ColorQuantizer.Space.HSB, 7, 3, 3, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBins() {
+        ColorQuantizer.rgb(0, 3, 3);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConvolutionTest {
+
+    @Test
+    public void testSeparate() {
+        float[] sobel = new float[]{
+            1, 0, -1,
+            2, 0, -2,
+            1, 0, -1};
+        float[][] factors = Convolution.separate(sobel, 3, 3);
+        assertNotNull(factors);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                assertEquals(sobel[y * 3 + x], factors[0][y] * factors[1][x], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testSeparateNotSeparable() {
+        assertNull(Convolution.separate(new float[]{
+            0, 1, 0,
+            1, -4, 1,
+            0, 1, 0}, 3, 3));
+        assertNull(Convolution.separate(new float[9], 3, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeparateInvalid() {
+        Convolution.separate(new float[8], 3, 3);
+    }
+
+    @Test
+    public void testRotateCW() {
+        float[] rotated = Convolution.rotateCW(new float[]{
+            1, 2, 3,
+            4, 5, 6,
+            7, 8, 9}, 3);
+        assertArrayEquals(new float[]{
+            7, 4, 1,
+            8, 5, 2,
+            9, 6, 3}, rotated, 0f);
+    }
+
+    @Test
+    public void testCorrelateRow() {
+        // 3x2 image, replicated borders
+        float[] src = new float[]{
+            1, 2, 3,
+            4, 5, 6};
+        float[] out = new float[3];
+        Convolution.Buffer buffer = new Convolution.Buffer();
+
+        Convolution.Kernel2D separable = new Convolution.Kernel2D(new float[]{
+            0, 0, 0,
+            0, 0, 1,
+            0, 0, 1}, 3, 3);
+        assertTrue(separable.isSeparable());
+        separable.correlateRow(src, 3, 2, 0, buffer, out);
+        assertArrayEquals(new float[]{2 + 5, 3 + 6, 3 + 6}, out, 0f);
+
+        Convolution.Kernel2D direct = new Convolution.Kernel2D(new float[]{
+            1, 0, 0,
+            0, 0, 0,
+            0, 0, 1}, 3, 3);
+        assertFalse(direct.isSeparable());
+        direct.correlateRow(src, 3, 2, 1, buffer, out);
+        assertArrayEquals(new float[]{1 + 5, 1 + 6, 2 + 6}, out, 0f);
+    }
+
+    @Test
+    public void testCorrelateRowAccumulatesInDouble() {
+        final int width = 16;
+        final int height = 8;
+        Random random = new Random(3);
+        float[] src = new float[width * height];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = random.nextInt(256);
+        }
+        float[] kernel = new float[25];
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] = random.nextFloat() - 0.5f;
+        }
+        Convolution.Kernel2D k = new Convolution.Kernel2D(kernel, 5, 5);
+        assertFalse(k.isSeparable());
+
+        float[] out = new float[width];
+        Convolution.Buffer buffer = new Convolution.Buffer();
+        for (int y = 0; y < height; y++) {
+            k.correlateRow(src, width, height, y, buffer, out);
+            for (int x = 0; x < width; x++) {
+                // straight forward correlation like ImageJ's Convolver
+                double sum = 0;
+                for (int ky = 0; ky < 5; ky++) {
+                    for (int kx = 0; kx < 5; kx++) {
+                        int sx = Math.min(width - 1, Math.max(0, x + kx - 2));
+                        int sy = Math.min(height - 1, Math.max(0, y + ky - 2));
+                        sum += src[sy * width + sx] * kernel[ky * 5 + kx];
+                    }
+                }
+                assertEquals((float) sum, out[x], 0f);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvenKernel() {
+        new Convolution.Kernel2D(new float[4], 2, 2);
+    }
+
+    @Test
+    public void testSpectralKernel() {
+        Random random = new Random(5);
+        int w = 37, h = 23, k = 21;
+        float[] kernel = new float[k * k];
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] = random.nextFloat() - 0.5f;
+        }
+        float[] a = new float[w * h];
+        float[] b = new float[w * h];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = random.nextInt(256);
+            b[i] = random.nextInt(256);
+        }
+
+        float[] expectedA = correlate(a, w, h, kernel, k);
+        float[] expectedB = correlate(b, w, h, kernel, k);
+        new Convolution.SpectralKernel(kernel, k, k, w, h).correlate(a, b);
+        assertArrayEquals(expectedA, a, 1e-2f);
+        assertArrayEquals(expectedB, b, 1e-2f);
+    }
+
+    @Test
+    public void testUseFFT() {
+        assertFalse(Convolution.useFFT(3, 3));
+        assertTrue(Convolution.useFFT(Convolution.FFT_KERNEL_SIZE, 1));
+    }
+
+    private float[] correlate(float[] src, int w, int h, float[] kernel, int k) {
+        Convolution.Kernel2D spatial = new Convolution.Kernel2D(kernel, k, k);
+        Convolution.Buffer buffer = new Convolution.Buffer();
+        float[] result = new float[w * h];
+        float[] row = new float[w];
+        for (int y = 0; y < h; y++) {
+            spatial.correlateRow(src, w, h, y, buffer, row);
+            System.arraycopy(row, 0, result, y * w, w);
+        }
+        return result;
+    }
+}
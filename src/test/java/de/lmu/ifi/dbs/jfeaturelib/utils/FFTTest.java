@@ -0,0 +1,96 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFTTest {
+
+    @Test
+    public void testTransform() {
+        Random random = new Random(8);
+        int n = 16;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextDouble();
+            im[i] = random.nextDouble();
+        }
+        double[] re2 = re.clone();
+        double[] im2 = im.clone();
+        FFT.forSize(n).transform(re2, im2, 0, false);
+
+        // naive DFT
+        for (int k = 0; k < n; k++) {
+            double sr = 0, si = 0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2 * Math.PI * k * t / n;
+                sr += re[t] * Math.cos(angle) - im[t] * Math.sin(angle);
+                si += re[t] * Math.sin(angle) + im[t] * Math.cos(angle);
+            }
+            assertEquals(sr, re2[k], 1e-9);
+            assertEquals(si, im2[k], 1e-9);
+        }
+    }
+
+    @Test
+    public void testInverse2D() {
+        Random random = new Random(9);
+        int w = 8, h = 4;
+        double[] re = new double[w * h];
+        double[] im = new double[w * h];
+        for (int i = 0; i < re.length; i++) {
+            re[i] = random.nextDouble();
+        }
+        double[] original = re.clone();
+        FFT.transform2D(re, im, w, h, false);
+        FFT.transform2D(re, im, w, h, true);
+        for (int i = 0; i < re.length; i++) {
+            assertEquals(original[i], re[i] / (w * h), 1e-12);
+            assertEquals(0, im[i] / (w * h), 1e-12);
+        }
+    }
+
+    @Test
+    public void testForSize() {
+        assertSame(FFT.forSize(64), FFT.forSize(64));
+        assertEquals(1, FFT.forSize(1).getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForSizeInvalid() {
+        FFT.forSize(12);
+    }
+
+    @Test
+    public void testNextPowerOfTwo() {
+        assertEquals(1, FFT.nextPowerOfTwo(1));
+        assertEquals(2, FFT.nextPowerOfTwo(2));
+        assertEquals(4, FFT.nextPowerOfTwo(3));
+        assertEquals(64, FFT.nextPowerOfTwo(64));
+        assertEquals(128, FFT.nextPowerOfTwo(65));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FastMathTest {
+
+    @Test
+    public void testAtan2Grid() {
+        double maxError = 0;
+        for (int y = -200; y <= 200; y++) {
+            for (int x = -200; x <= 200; x++) {
+                double expected = Math.atan2(y, x);
+                double actual = FastMath.atan2(y, x);
+                if (x == 0 && y == 0) {
+                    assertEquals(0, actual, 0);
+                    continue;
+                }
+                assertTrue(actual >= -Math.PI && actual <= Math.PI);
+                maxError = Math.max(maxError, Math.abs(expected - actual));
+            }
+        }
+        assertTrue("error " + maxError, maxError <= FastMath.ATAN2_MAX_ERROR);
+    }
+
+    @Test
+    public void testAtan2Random() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double y = random.nextGaussian() * 1000;
+            double x = random.nextGaussian() * 1000;
+            assertEquals(Math.atan2(y, x), FastMath.atan2(y, x), FastMath.ATAN2_MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void testAtan2Axes() {
+        assertEquals(0, FastMath.atan2(0, 5), 0);
+        assertEquals(Math.PI / 2, FastMath.atan2(5, 0), 0);
+        assertEquals(Math.PI, FastMath.atan2(0, -5), 0);
+        assertEquals(-Math.PI / 2, FastMath.atan2(-5, 0), 0);
+        assertEquals(Math.PI / 4, FastMath.atan2(3, 3), FastMath.ATAN2_MAX_ERROR);
+    }
+
+    @Test
+    public void testHypot() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            float x = (float) random.nextGaussian() * 1000;
+            float y = (float) random.nextGaussian() * 1000;
+            float expected = (float) Math.hypot(x, y);
+            assertEquals(expected, FastMath.hypot(x, y), Math.ulp(expected));
+        }
+        assertEquals(5f, FastMath.hypot(3, -4), 0);
+        assertEquals(0f, FastMath.hypot(0, 0), 0);
+    }
+
+    @Test
+    public void testGaussianTable() {
+        FastMath.GaussianTable table = new FastMath.GaussianTable(2.5);
+        assertEquals(1, table.get(0), 0);
+        for (int dy = -40; dy <= 40; dy++) {
+            for (int dx = -40; dx <= 40; dx++) {
+                double expected = Math.exp(-(dx * dx + dy * dy) / (2 * 2.5 * 2.5));
+                assertEquals(expected, table.get(dx, dy), 1e-15);
+            }
+        }
+        assertEquals(table.get(-3), table.get(3), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGaussianTableSigma() {
+        new FastMath.GaussianTable(0);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class GradientImageTest {
+
+    @Test
+    public void testFastMath() {
+        ByteProcessor ip = new ByteProcessor(60, 40);
+        Random random = new Random(1);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, random.nextInt(256));
+        }
+        GradientImage exact = new GradientImage();
+        exact.setIp(ip);
+        GradientImage fast = new GradientImage();
+        fast.setFastMath(true);
+        fast.setIp(ip);
+
+        for (int y = 0; y < ip.getHeight(); y++) {
+            for (int x = 0; x < ip.getWidth(); x++) {
+                assertEquals(exact.getLength(x, y), fast.getLength(x, y), 0);
+
+                double theta = fast.getTheta(x, y);
+                assertTrue(theta >= 0 && theta < Math.PI);
+                // orientations are periodic in PI
+                double error = Math.abs(exact.getTheta(x, y) - theta);
+                error = Math.min(error, Math.PI - error);
+                assertEquals(0, error, FastMath.ATAN2_MAX_ERROR + 1e-6);
+            }
+        }
+    }
+}
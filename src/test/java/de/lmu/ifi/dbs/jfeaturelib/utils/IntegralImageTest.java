@@ -194,4 +194,38 @@ public class IntegralImageTest {
         Rectangle rect = new Rectangle(3, 2, 20, 20);
         assertEquals(4L, m_img.get(rect));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testComputePooled() {
+        IntegralImage pooled = new IntegralImage();
+        pooled.computePooled(new ByteProcessor(WIDTH, HEIGHT, m_image));
+        for (int y = 0; y <= HEIGHT; y++) {
+            for (int x = 0; x <= WIDTH; x++) {
+                assertEquals(m_img.get(x, y), pooled.get(x, y));
+            }
+        }
+        pooled.release();
+    }
+
+    @Test
+    public void testComputePatchMeans() {
+        for (int size = 0; size <= 1; size++) {
+            int patch = 2 * size + 1;
+            float[] means = new float[WIDTH * HEIGHT];
+            m_img.computePatchMeans(size, means, 2);
+            for (int y = size; y < HEIGHT - size; y++) {
+                for (int x = size; x < WIDTH - size; x++) {
+                    Rectangle rect = new Rectangle(x - size, y - size, patch, patch);
+                    assertEquals(m_img.get(rect) / (float) (patch * patch), means[y * WIDTH + x], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testComputePatchMeansTooLarge() {
+        float[] means = new float[WIDTH * HEIGHT];
+        m_img.computePatchMeans(2, means, 1);
+        assertEquals(0, means[WIDTH + 1], 0);
+    }
+}
@@ -1,6 +1,7 @@
 package de.lmu.ifi.dbs.jfeaturelib.utils;
 
 import de.lmu.ifi.dbs.jfeaturelib.utils.Interpolated1DHistogram;
+import de.lmu.ifi.dbs.utilities.Arrays2;
 import static org.junit.Assert.assertEquals;
 import org.junit.Before;
 import org.junit.Test;
@@ -110,4 +111,29 @@ public class Interpolated1DHistogramTest {
         ih.add(0.75, 10);
         assertEquals(10, ih.getData()[7], 0.001);
     }
+
+    @Test
+    public void getBinForBordersTest() {
+        ih = new Interpolated1DHistogram(0, Math.PI, 7);
+        for (int i = 0; i < 7; i++) {
+            double lower = ih.lowerKey[i];
+            assertEquals(i, ih.getBinFor(lower));
+            if (i > 0) {
+                assertEquals(i - 1, ih.getBinFor(Math.nextAfter(lower, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testAddExternal() {
+        double[] data = new double[25];
+        ih.add(1, 10, data, 5);
+        ih.add(7, 10, data, 15);
+
+        assertEquals(6, data[5], 0.001);
+        assertEquals(8, data[15], 0.001);
+        assertEquals(2, data[16], 0.001);
+        assertEquals(16, Arrays2.sum(data), 0.001);
+        assertEquals(0, Arrays2.sum(ih.getData()), 0);
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import de.lmu.ifi.dbs.jfeaturelib.features.ColorHistogram;
+import de.lmu.ifi.dbs.jfeaturelib.features.Haralick;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LabelImageTest {
+
+    private static final int WIDTH = 5;
+    private static final int HEIGHT = 3;
+    private static final byte[] LABELS = new byte[]{
+        0, 7, 7, 0, 2,
+        0, 7, 0, 0, 2,
+        -1, -1, 0, 0, 2
+    };
+    private LabelImage labels;
+
+    @Before
+    public void setUp() {
+        labels = new LabelImage(new ByteProcessor(WIDTH, HEIGHT, LABELS));
+    }
+
+    @Test
+    public void testRegions() {
+        assertEquals(WIDTH, labels.getWidth());
+        assertEquals(HEIGHT, labels.getHeight());
+        assertEquals(3, labels.getRegionCount());
+        assertArrayEquals(new int[]{2, 7, 255}, labels.getLabels());
+
+        assertEquals(3, labels.getArea(0));
+        assertEquals(3, labels.getArea(1));
+        assertEquals(2, labels.getArea(2));
+
+        assertEquals(new Rectangle(4, 0, 1, 3), labels.getBounds(0));
+        assertEquals(new Rectangle(1, 0, 2, 2), labels.getBounds(1));
+        assertEquals(new Rectangle(0, 2, 2, 1), labels.getBounds(2));
+    }
+
+    @Test
+    public void testRegionIndex() {
+        int[] index = labels.getRegionIndex();
+        assertEquals(-1, index[0]);
+        assertEquals(1, index[1]);
+        assertEquals(0, index[4]);
+        assertEquals(2, index[2 * WIDTH]);
+    }
+
+    @Test
+    public void testMask() {
+        ByteProcessor mask = labels.getMask(1);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = (LABELS[y * WIDTH + x] & 0xff) == 7;
+                assertEquals(x + "," + y, inside ? 255 : 0, mask.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testShortLabels() {
+        ShortProcessor sp = new ShortProcessor(2, 1);
+        sp.set(0, 0, 1000);
+        LabelImage shortLabels = new LabelImage(sp);
+        assertEquals(1, shortLabels.getRegionCount());
+        assertEquals(1000, shortLabels.getLabel(0));
+        assertEquals(1, shortLabels.getArea(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFloatLabels() {
+        new LabelImage(new FloatProcessor(2, 2));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNull() {
+        new LabelImage(null);
+    }
+
+    /**
+     * A single region covering the whole image must yield the same features as the plain run.
+     */
+    @Test
+    public void testFullImageRegion() {
+        ColorProcessor cp = new ColorProcessor(16, 12);
+        ByteProcessor bp = new ByteProcessor(16, 12);
+        for (int i = 0; i < 16 * 12; i++) {
+            cp.set(i, (i * 7919) & 0xffffff);
+            bp.set(i, (i * 31) & 0xff);
+        }
+        ByteProcessor full = new ByteProcessor(16, 12);
+        full.setValue(1);
+        full.fill();
+        LabelImage single = new LabelImage(full);
+
+        ColorHistogram expected = new ColorHistogram();
+        expected.run(cp);
+        ColorHistogram actual = new ColorHistogram();
+        actual.run(cp, single);
+        assertEquals(1, actual.getFeatures().size());
+        assertArrayEquals(expected.getFeatures().get(0), actual.getFeatures().get(0), 1E-9);
+
+        Haralick expectedHaralick = new Haralick();
+        expectedHaralick.run(bp);
+        Haralick actualHaralick = new Haralick();
+        actualHaralick.run(bp, single);
+        assertEquals(1, actualHaralick.getFeatures().size());
+        assertArrayEquals(expectedHaralick.getFeatures().get(0), actualHaralick.getFeatures().get(0), 1E-9);
+    }
+}
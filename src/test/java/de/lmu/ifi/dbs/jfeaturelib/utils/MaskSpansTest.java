@@ -0,0 +1,95 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaskSpansTest {
+
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 3;
+    private static final byte[] MASK = new byte[]{
+        0, 1, 1, 0, 1, 0,
+        0, 0, 0, 0, 0, 0,
+        -1, -1, -1, -1, -1, -1
+    };
+    private MaskSpans spans;
+
+    @Before
+    public void setUp() {
+        spans = MaskSpans.of(new ByteProcessor(WIDTH, HEIGHT, MASK));
+    }
+
+    @Test
+    public void testStructure() {
+        assertEquals(WIDTH, spans.getWidth());
+        assertEquals(HEIGHT, spans.getHeight());
+        assertEquals(9, spans.getArea());
+        assertEquals(3, spans.getSpanCount());
+
+        assertEquals(2, spans.rowEnd(0) - spans.rowStart(0));
+        assertEquals(1, spans.spanStart(spans.rowStart(0)));
+        assertEquals(3, spans.spanEnd(spans.rowStart(0)));
+        assertEquals(spans.rowStart(1), spans.rowEnd(1));
+        assertEquals(0, spans.spanStart(spans.rowStart(2)));
+        assertEquals(WIDTH, spans.spanEnd(spans.rowStart(2)));
+    }
+
+    @Test
+    public void testContains() {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(x + "," + y, MASK[y * WIDTH + x] != 0, spans.contains(x, y));
+            }
+        }
+        assertFalse(spans.contains(-1, 2));
+        assertFalse(spans.contains(WIDTH, 2));
+    }
+
+    @Test
+    public void testForEachClipped() {
+        final List<int[]> visited = new ArrayList<>();
+        spans.forEach(new Rectangle(2, 0, 3, 3), new MaskSpans.SpanVisitor() {
+            @Override
+            public void visit(int y, int x0, int x1) {
+                visited.add(new int[]{y, x0, x1});
+            }
+        });
+        assertEquals(3, visited.size());
+        assertArrayEquals(new int[]{0, 2, 3}, visited.get(0));
+        assertArrayEquals(new int[]{0, 4, 5}, visited.get(1));
+        assertArrayEquals(new int[]{2, 2, 5}, visited.get(2));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNull() {
+        MaskSpans.of(null);
+    }
+}
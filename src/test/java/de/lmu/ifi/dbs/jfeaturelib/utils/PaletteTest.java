@@ -0,0 +1,94 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import java.awt.image.IndexColorModel;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PaletteTest {
+
+    static IndexColorModel createColorModel() {
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) (i * 7);
+            g[i] = (byte) (255 - i);
+            b[i] = (byte) (i * 3 + 11);
+        }
+        return new IndexColorModel(8, 256, r, g, b);
+    }
+
+    @Test
+    public void testColors() {
+        ByteProcessor ip = new ByteProcessor(3, 2);
+        ip.setColorModel(createColorModel());
+        int[] colors = Palette.colors(ip);
+
+        assertEquals(256, colors.length);
+        for (int i = 0; i < 256; i++) {
+            assertEquals((i * 7 & 0xff) << 16 | (255 - i) << 8 | (i * 3 + 11 & 0xff), colors[i] & 0xffffff);
+        }
+    }
+
+    @Test
+    public void testNoPalette() {
+        assertNull(Palette.colors(new ColorProcessor(3, 2)));
+        ByteProcessor ip = new ByteProcessor(3, 2);
+        ip.setColorModel(new IndexColorModel(8, 2, new byte[]{0, 1}, new byte[]{0, 1}, new byte[]{0, 1}));
+        assertNull(Palette.colors(ip));
+    }
+
+    @Test
+    public void testCount() {
+        byte[] pixels = {1, 1, 2, -1, 1, 0};
+        int[] counts = Palette.count(pixels, 3, null);
+        assertEquals(1, counts[0]);
+        assertEquals(3, counts[1]);
+        assertEquals(1, counts[2]);
+        assertEquals(1, counts[255]);
+
+        ByteProcessor mask = new ByteProcessor(3, 2);
+        mask.set(0, 0, 255);
+        mask.set(2, 1, 255);
+        counts = Palette.count(pixels, 3, MaskSpans.of(mask));
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(2, counts[0] + counts[1] + counts[2] + counts[255]);
+    }
+
+    @Test
+    public void testCountLabels() {
+        byte[] pixels = {1, 1, 2, -1, 1, 0};
+        ByteProcessor labels = new ByteProcessor(3, 2, new byte[]{0, 1, 1, 2, 2, 0});
+        int[][] counts = Palette.count(pixels, new LabelImage(labels));
+
+        assertEquals(2, counts.length);
+        assertEquals(1, counts[0][1]);
+        assertEquals(1, counts[0][2]);
+        assertEquals(1, counts[1][255]);
+        assertEquals(1, counts[1][1]);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PixelViewTest {
+
+    private ByteProcessor createByteProcessor() {
+        ByteProcessor ip = new ByteProcessor(5, 4);
+        for (int i = 0; i < ip.getPixelCount(); i++) {
+            ip.set(i, i * 10);
+        }
+        return ip;
+    }
+
+    @Test
+    public void testBytes() {
+        ByteProcessor ip = createByteProcessor();
+        PixelView.Bytes view = PixelView.bytes(ip);
+        assertEquals(5, view.width);
+        assertEquals(4, view.height);
+        assertEquals(5, view.stride);
+        assertEquals(0, view.offset);
+        assertSame(ip.getPixels(), view.pixels);
+        for (int y = 0; y < ip.getHeight(); y++) {
+            for (int x = 0; x < ip.getWidth(); x++) {
+                assertEquals(ip.get(x, y), view.get(x, y));
+                assertEquals(ip.getf(x, y), view.getf(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRoi() {
+        ByteProcessor ip = createByteProcessor();
+        PixelView.Bytes view = PixelView.bytes(ip, new Rectangle(1, 2, 3, 2));
+        assertEquals(3, view.width);
+        assertEquals(2, view.height);
+        assertEquals(5, view.stride);
+        assertEquals(11, view.index(0, 0));
+        assertEquals(ip.get(1, 2), view.get(0, 0));
+        assertEquals(ip.get(3, 3), view.get(2, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRoiOutside() {
+        PixelView.bytes(createByteProcessor(), new Rectangle(3, 0, 3, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBytesWrongType() {
+        PixelView.bytes(new FloatProcessor(2, 2));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNull() {
+        PixelView.of(null);
+    }
+
+    @Test
+    public void testInterpolate() {
+        ByteProcessor ip = createByteProcessor();
+        PixelView.Bytes view = PixelView.bytes(ip);
+        assertEquals(ip.get(1, 1), view.interpolate(1, 1), 1e-9);
+        // horizontal and vertical neighbors differ by 10 and 50
+        assertEquals(ip.get(1, 1) + 5, view.interpolate(1.5, 1), 1e-9);
+        assertEquals(ip.get(1, 1) + 25, view.interpolate(1, 1.5), 1e-9);
+        assertEquals(ip.get(1, 1) + 30, view.interpolate(1.5, 1.5), 1e-9);
+    }
+
+    @Test
+    public void testOf() {
+        assertTrue(PixelView.of(new ByteProcessor(2, 2)) instanceof PixelView.Bytes);
+        assertTrue(PixelView.of(new ShortProcessor(2, 2)) instanceof PixelView.Shorts);
+        assertTrue(PixelView.of(new FloatProcessor(2, 2)) instanceof PixelView.Floats);
+        assertTrue(PixelView.of(new ColorProcessor(2, 2)) instanceof PixelView.Rgb);
+    }
+
+    @Test
+    public void testShortsAndFloats() {
+        ShortProcessor sp = new ShortProcessor(3, 3);
+        sp.set(1, 2, 60000);
+        assertEquals(60000, ((PixelView.Shorts) PixelView.of(sp)).get(1, 2));
+
+        FloatProcessor fp = new FloatProcessor(3, 3);
+        fp.setf(2, 1, 0.5f);
+        assertEquals(0.5f, PixelView.of(fp).getf(2, 1), 0);
+    }
+
+    @Test
+    public void testRgb() {
+        ColorProcessor cp = new ColorProcessor(3, 2);
+        cp.set(2, 1, 0x102030);
+        PixelView.Rgb view = PixelView.rgb(cp);
+        int i = view.index(2, 1);
+        assertEquals(0x10, view.red[i] & 0xff);
+        assertEquals(0x20, view.green[i] & 0xff);
+        assertEquals(0x30, view.blue[i] & 0xff);
+        assertEquals((0x10 + 0x20 + 0x30) / 3f, view.getf(2, 1), 1e-6);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RowBandsTest {
+
+    @Test
+    public void testEachRowOnce() {
+        for (int rows : new int[]{0, 1, 5, 101}) {
+            for (int parallelism : new int[]{1, 3, 8}) {
+                final AtomicIntegerArray visits = new AtomicIntegerArray(rows);
+                RowBands.run(rows, parallelism, new RowBands.Band() {
+                    @Override
+                    public void process(int from, int to) {
+                        for (int y = from; y < to; y++) {
+                            visits.incrementAndGet(y);
+                        }
+                    }
+                });
+                for (int y = 0; y < rows; y++) {
+                    assertEquals(rows + "/" + parallelism + ": " + y, 1, visits.get(y));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testException() {
+        RowBands.run(10, 4, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+                if (from > 0) {
+                    throw new IllegalStateException();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testFirstBandFails() {
+        final AtomicInteger finished = new AtomicInteger();
+        try {
+            RowBands.run(10, 4, new RowBands.Band() {
+                @Override
+                public void process(int from, int to) {
+                    if (from == 0) {
+                        throw new IllegalStateException();
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.incrementAndGet();
+                }
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            // the other bands must be done when the exception arrives
+            assertEquals(3, finished.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelism() {
+        RowBands.run(10, 0, new RowBands.Band() {
+            @Override
+            public void process(int from, int to) {
+            }
+        });
+    }
+}
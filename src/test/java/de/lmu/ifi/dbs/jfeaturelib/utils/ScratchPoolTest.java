@@ -0,0 +1,137 @@
+/*
+ * This file is part of the JFeatureLib project: https://github.com/locked-fg/JFeatureLib
+ * JFeatureLib is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFeatureLib is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JFeatureLib; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * You are kindly asked to refer to the papers of the according authors which
+ * should be mentioned in the Javadocs of the respective classes as well as the
+ * JFeatureLib project itself.
+ *
+ * Hints how to cite the projects can be found at
+ * https://github.com/locked-fg/JFeatureLib/wiki/Citation
+ */
+package de.lmu.ifi.dbs.jfeaturelib.utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class ScratchPoolTest {
+
+    @After
+    public void tearDown() {
+        ScratchPool.clear();
+    }
+
+    @Test
+    public void testClassSize() {
+        assertEquals(64, ScratchPool.classSize(0));
+        assertEquals(64, ScratchPool.classSize(64));
+        assertEquals(96, ScratchPool.classSize(65));
+        assertEquals(96, ScratchPool.classSize(96));
+        assertEquals(128, ScratchPool.classSize(97));
+        assertEquals(3 << 17, ScratchPool.classSize(640 * 480));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLength() {
+        ScratchPool.borrowInts(-1);
+    }
+
+    @Test
+    public void testReuse() {
+        float[] a = ScratchPool.borrowFloats(1000);
+        assertTrue(a.length >= 1000);
+        ScratchPool.release(a);
+        float[] b = ScratchPool.borrowFloats(900);
+        assertSame(a, b);
+        // a second borrow must not return the same instance
+        float[] c = ScratchPool.borrowFloats(900);
+        assertNotSame(b, c);
+    }
+
+    @Test
+    public void testCleared() {
+        int[] a = ScratchPool.borrowInts(100);
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i + 1;
+        }
+        ScratchPool.release(a);
+        int[] b = ScratchPool.borrowInts(100);
+        assertSame(a, b);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, b[i]);
+        }
+    }
+
+    @Test
+    public void testDoubleRelease() {
+        long[] a = ScratchPool.borrowLongs(10);
+        ScratchPool.release(a);
+        ScratchPool.release(a);
+        assertSame(a, ScratchPool.borrowLongs(10));
+        assertNotSame(a, ScratchPool.borrowLongs(10));
+    }
+
+    @Test
+    public void testForeignArrayIgnored() {
+        double[] foreign = new double[100];
+        ScratchPool.release(foreign);
+        assertNotSame(foreign, ScratchPool.borrowDoubles(100));
+        ScratchPool.release((byte[]) null);
+    }
+
+    @Test
+    public void testThreadLocal() throws InterruptedException {
+        final byte[] a = ScratchPool.borrowBytes(500);
+        ScratchPool.release(a);
+
+        final AtomicReference<byte[]> other = new AtomicReference<byte[]>();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other.set(ScratchPool.borrowBytes(500));
+            }
+        });
+        t.start();
+        t.join();
+        assertNotSame(a, other.get());
+        assertSame(a, ScratchPool.borrowBytes(500));
+    }
+
+    @Test
+    public void testNotPooled() {
+        int length = ScratchPool.MAX_POOLED_LENGTH + 1;
+        byte[] a = ScratchPool.borrowBytes(length);
+        assertEquals(length, a.length);
+        ScratchPool.release(a);
+        assertNotSame(a, ScratchPool.borrowBytes(length));
+    }
+
+    @Test
+    public void testRetainedBytes() {
+        // 48 MB each, only one fits into the budget
+        double[] a = ScratchPool.borrowDoubles(3 << 21);
+        double[] b = ScratchPool.borrowDoubles(3 << 21);
+        ScratchPool.release(a);
+        ScratchPool.release(b);
+        assertSame(a, ScratchPool.borrowDoubles(3 << 21));
+        assertNotSame(b, ScratchPool.borrowDoubles(3 << 21));
+
+        // taking an array out frees its budget again
+        ScratchPool.release(b);
+        assertSame(b, ScratchPool.borrowDoubles(3 << 21));
+    }
+}